@@ -0,0 +1,427 @@
+package org.restflow;
+
+import static java.util.Arrays.asList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.restflow.actors.Actor;
+import org.restflow.actors.RestFlowActor;
+import org.restflow.data.Uri;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.util.TestUtilities;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * A long-running process that runs workflows on request, keeping the parsed definition of
+ * each workflow so that later runs of the same workflow skip reading and parsing it.  Parsed
+ * definitions are cached by workflow definition path and import mappings together with a
+ * hash of the content of the definition, so a definition that is edited between runs, or
+ * that is run with different import mappings, is parsed again.  Files imported by a
+ * definition are not included in the hash.
+ *
+ * Requests are read one per line from the standard input stream or from connections to a
+ * local socket, and are yaml flow mappings with the following entries:
+ *
+ *   id        - any value, returned with the response
+ *   workflow  - the workflow definition path, required
+ *   name      - the name of the workflow or actor to run
+ *   inputs    - a mapping of workflow input names to values
+ *   base      - the directory in which to create the run directory
+ *   run       - the name of the run directory
+ *   importMap - a mapping of import schemes to resources
+ *
+ * Requests run concurrently, each in its own workflow context and run directory and with
+ * its own trace database, and each is answered with a single-line yaml flow mapping giving
+ * the id, a status of ok or error, and either the runDirectory and outputs of the run or
+ * an error message.  Responses are written as runs complete, so they need not be in the
+ * order of the requests.  The standard output of workflows is not recorded.  When requests
+ * are read from the standard input stream, workflows print to the standard error stream so
+ * that only responses are written to the standard output stream.
+ *
+ * Usage: WorkflowDaemon [-port number] [-base directory] [-threads count]
+ *
+ * This class is thread safe.  Its mutable state is held in a concurrent map of parsed
+ * definitions, each of which parses its definition under its own lock.
+ */
+@ThreadSafe()
+public class WorkflowDaemon {
+
+	private static final String DEFAULT_ACTORS_LOCATION = "classpath:/org/restflow/java/";
+
+	private final String _runsDirectory;
+	private final ExecutorService _executor;
+	private final ConcurrentMap<String,CompiledWorkflow> _workflows = new ConcurrentHashMap<String,CompiledWorkflow>();
+	private final AtomicInteger _threadCount = new AtomicInteger(0);
+
+	public WorkflowDaemon(String runsDirectory, int threads) {
+		_runsDirectory = runsDirectory;
+		_executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		RestFlow.enableLog4J();
+
+		OptionParser parser = new OptionParser() {
+			{
+				acceptsAll(asList("h", "?"), "show help");
+				acceptsAll(asList("port"), "accept requests on this local port instead of stdin")
+					.withRequiredArg().ofType(Integer.class).describedAs("number");
+				acceptsAll(asList("base"), "default base working directory")
+					.withRequiredArg().ofType(String.class).describedAs("directory");
+				acceptsAll(asList("threads"), "maximum number of concurrent runs")
+					.withRequiredArg().ofType(Integer.class).describedAs("count");
+			}
+		};
+
+		OptionSet options = parser.parse(args);
+
+		if (options.has("h")) {
+			parser.printHelpOn(System.out);
+			return;
+		}
+
+		String runsDirectory = options.has("base") ? (String)options.valueOf("base") : System.getProperty("user.dir");
+		if (runsDirectory.equals("RESTFLOW_TESTRUNS_DIR")) {
+			runsDirectory = TestUtilities.getTestRunsDirectoryPath();
+		}
+
+		int threads = options.has("threads") ? (Integer)options.valueOf("threads") : Runtime.getRuntime().availableProcessors();
+
+		WorkflowDaemon daemon = new WorkflowDaemon(runsDirectory, threads);
+
+		try {
+			if (options.has("port")) {
+				daemon.listen((Integer)options.valueOf("port"));
+			} else {
+				// keep the output of workflows off the response stream
+				PrintStream responseStream = System.out;
+				System.setOut(System.err);
+				try {
+					daemon.serve(System.in, responseStream);
+				} finally {
+					System.setOut(responseStream);
+				}
+			}
+		} finally {
+			daemon.shutdown();
+		}
+	}
+
+	/**
+	 * Accepts connections on the given port of the loopback interface until the thread is
+	 * interrupted, serving the requests on each connection on a thread of its own.
+	 */
+	public void listen(int port) throws IOException {
+
+		ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getByName(null));
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+
+				final Socket socket = serverSocket.accept();
+
+				Thread connectionThread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							serve(socket.getInputStream(), socket.getOutputStream());
+						} catch (Exception e) {
+							e.printStackTrace(System.err);
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				}, "WorkflowDaemonConnection-" + socket.getPort());
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Runs the requests read from the input stream, writing a response to the output stream
+	 * as each run completes, and returns when the input stream ends and all of its requests
+	 * have been answered.
+	 */
+	public void serve(InputStream requestStream, OutputStream responseStream) throws Exception {
+
+		BufferedReader requests = new BufferedReader(new InputStreamReader(requestStream, "UTF-8"));
+		final Writer responses = new OutputStreamWriter(responseStream, "UTF-8");
+		final Yaml yaml = _newResponseYaml();
+
+		final OutstandingRuns outstandingRuns = new OutstandingRuns();
+
+		for (String line = requests.readLine(); line != null; line = requests.readLine()) {
+
+			if (line.trim().length() == 0) continue;
+
+			final String request = line;
+			outstandingRuns.started();
+			try {
+				_executor.execute(new Runnable() {
+					public void run() {
+						try {
+							_respond(request, yaml, responses);
+						} finally {
+							outstandingRuns.finished();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				outstandingRuns.finished();
+				throw e;
+			}
+		}
+
+		outstandingRuns.awaitNone();
+	}
+
+	// runs the request and writes its response, writing an error response if the run or
+	// the writing of its outputs fails in any way
+	private void _respond(String request, Yaml yaml, Writer responses) {
+
+		Object id = null;
+		String responseLine;
+		try {
+			Map<String,Object> response = handle(request);
+			id = response.get("id");
+			responseLine = yaml.dump(response);
+		} catch (Throwable t) {
+			Map<String,Object> response = new LinkedHashMap<String,Object>();
+			response.put("id", id);
+			_putError(response, t);
+			responseLine = yaml.dump(response);
+		}
+
+		synchronized(responses) {
+			try {
+				responses.write(responseLine);
+				responses.flush();
+			} catch (IOException e) {
+				e.printStackTrace(System.err);
+			}
+		}
+	}
+
+	/**
+	 * Runs the workflow described by a single request line and returns the response.
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String,Object> handle(String requestLine) {
+
+		Map<String,Object> response = new LinkedHashMap<String,Object>();
+
+		try {
+
+			Object parsedRequest = new Yaml().load(requestLine);
+			if (!(parsedRequest instanceof Map)) {
+				throw new Exception("Request must be a yaml mapping.");
+			}
+			Map<String,Object> request = (Map<String,Object>)parsedRequest;
+			response.put("id", request.get("id"));
+
+			String workflowPath = (String)request.get("workflow");
+			if (workflowPath == null) {
+				throw new Exception("Request must give the workflow definition path.");
+			}
+			if (!workflowPath.contains(":")) {
+				workflowPath = "file:" + workflowPath;
+			}
+
+			Map<String,String> importMappings = new HashMap<String,String>();
+			importMappings.put("workspace", Uri.extractParent(workflowPath));
+			importMappings.put("actors", DEFAULT_ACTORS_LOCATION);
+			if (request.get("importMap") != null) {
+				importMappings.putAll((Map<String,String>)request.get("importMap"));
+			}
+
+			String runsDirectory = (String)request.get("base");
+			if (runsDirectory == null) {
+				runsDirectory = _runsDirectory;
+			}
+
+			Map<String,Object> inputs = (Map<String,Object>)request.get("inputs");
+			if (inputs == null) {
+				inputs = new HashMap<String,Object>();
+			}
+
+			WorkflowRunner runner = new WorkflowRunner.Builder()
+				.workflowTemplate(getTemplate(workflowPath, importMappings))
+				.workflowDefinitionPath(workflowPath)
+				.workflowName((String)request.get("name"))
+				.importSchemeResourceMap(importMappings)
+				.inputBindings(inputs)
+				.runsDirectory(runsDirectory)
+				.runName((String)request.get("run"))
+				.recordStdout(false)
+				.rethrowExceptions(true)
+				.build();
+
+			Actor workflow = runner.run();
+
+			response.put("status", "ok");
+			response.put("runDirectory", runner.getRunDirectory());
+			response.put("outputs", workflow.getFinalOutputs());
+
+		} catch (Throwable t) {
+			_putError(response, t);
+		}
+
+		return response;
+	}
+
+	private static void _putError(Map<String,Object> response, Throwable t) {
+		response.put("status", "error");
+		response.put("message", String.valueOf(t.getMessage()));
+	}
+
+	/**
+	 * Returns the parsed definition of the workflow at the given path, parsing it only if
+	 * it has not been parsed before with the same import mappings or its content has
+	 * changed since.
+	 */
+	public WorkflowTemplate getTemplate(String workflowPath, Map<String,String> importMappings) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.importMappings(importMappings)
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		InputStream definition = context.getResource(workflowPath).getInputStream();
+		String contentHash;
+		try {
+			contentHash = _hash(definition);
+		} finally {
+			definition.close();
+		}
+
+		// imports are resolved when the definition is parsed, so the mappings are part of the key
+		String key = workflowPath + " " + new TreeMap<String,String>(importMappings);
+		
+		// concurrent requests for a new or changed definition agree on a single entry,
+		// which parses the definition once for all of them
+		CompiledWorkflow workflow = _workflows.get(key);
+		while (workflow == null || !workflow.contentHash.equals(contentHash)) {
+			CompiledWorkflow newWorkflow = new CompiledWorkflow(workflowPath, importMappings, contentHash);
+			boolean added = (workflow == null) ? _workflows.putIfAbsent(key, newWorkflow) == null
+											   : _workflows.replace(key, workflow, newWorkflow);
+			workflow = added ? newWorkflow : _workflows.get(key);
+		}
+
+		return workflow.getTemplate();
+	}
+
+	public void shutdown() {
+		_executor.shutdown();
+	}
+
+	private static String _hash(InputStream stream) throws Exception {
+
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		byte[] buffer = new byte[8192];
+		for (int count = stream.read(buffer); count != -1; count = stream.read(buffer)) {
+			digest.update(buffer, 0, count);
+		}
+
+		StringBuilder hash = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hash.append(String.format("%02x", b));
+		}
+		return hash.toString();
+	}
+
+	// dumps each response as a flow mapping on a single line
+	private static Yaml _newResponseYaml() {
+		DumperOptions options = new DumperOptions();
+		options.setDefaultFlowStyle(DumperOptions.FlowStyle.FLOW);
+		options.setDefaultScalarStyle(DumperOptions.ScalarStyle.DOUBLE_QUOTED);
+		options.setWidth(Integer.MAX_VALUE);
+		return new Yaml(new RestFlowActor.MyRepresenter(), options);
+	}
+
+	// parses the definition when the template is first requested, and again on the next
+	// request if parsing fails
+	private static class CompiledWorkflow {
+
+		final String contentHash;
+		private final String _workflowPath;
+		private final Map<String,String> _importMappings;
+		@GuardedBy("this") private WorkflowTemplate _template;
+
+		CompiledWorkflow(String workflowPath, Map<String,String> importMappings, String contentHash) {
+			this.contentHash = contentHash;
+			_workflowPath = workflowPath;
+			_importMappings = new HashMap<String,String>(importMappings);
+		}
+
+		synchronized WorkflowTemplate getTemplate() throws Exception {
+			if (_template == null) {
+				_template = WorkflowTemplate.compile(_workflowPath, null, _importMappings);
+			}
+			return _template;
+		}
+	}
+
+	// counts the runs of a request stream that have not yet been answered
+	private static class OutstandingRuns {
+
+		@GuardedBy("this") private int _count = 0;
+
+		synchronized void started() {
+			_count++;
+		}
+
+		synchronized void finished() {
+			if (--_count == 0) {
+				notifyAll();
+			}
+		}
+
+		synchronized void awaitNone() throws InterruptedException {
+			while (_count > 0) {
+				wait();
+			}
+		}
+	}
+
+	// creates daemon threads so that runs still in progress do not keep the JVM running
+	private class DaemonThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "WorkflowDaemonRun-" + _threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
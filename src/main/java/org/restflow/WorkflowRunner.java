@@ -51,6 +51,9 @@ public class WorkflowRunner {
 	private InputStream 		_workflowDefinitionStream;
 	private String 				_workflowName;
 	private boolean 			_closeTraceRecorderAfterRun;
+	private boolean 			_recordStdout;
+	private boolean 			_rethrowExceptions;
+	private WorkflowTemplate	_workflowTemplate;
 	
 	public static final String YAML_EXTENSION = ".yaml";
 	
@@ -71,6 +74,9 @@ public class WorkflowRunner {
 		private boolean cutTerminalConnectionsAfterPreamble = false;
 		private boolean traceReport = false;		
 		private boolean closeTraceRecorderAfterRun = true;
+		private boolean recordStdout = true;
+		private boolean rethrowExceptions = false;
+		private WorkflowTemplate workflowTemplate;
 		private Reporter finalReporter;
 		private String workflowDefinitionString;
 
@@ -156,6 +162,32 @@ public class WorkflowRunner {
 			return this;
 		}
 		
+		/**
+		 * Determines whether the standard output and error streams of the run are
+		 * recorded in the run metadata.  Recording replaces System.out and System.err
+		 * for the duration of the run, so it must be disabled for runs that share a
+		 * JVM with other runs executing at the same time.
+		 * 
+		 * @param val
+		 * @return
+		 */
+		public Builder recordStdout(boolean val) {
+			recordStdout = val;
+			return this;
+		}
+
+		/**
+		 * Determines whether an exception thrown while running the workflow is thrown
+		 * by run() rather than being printed to the standard error stream.
+		 * 
+		 * @param val
+		 * @return
+		 */
+		public Builder rethrowExceptions(boolean val) {
+			rethrowExceptions = val;
+			return this;
+		}
+		
 		public Builder suppressWorkflowStdout(boolean val) {
 			supressWorkflowStdout = val;
 			return this;
@@ -247,6 +279,20 @@ public class WorkflowRunner {
 			return this;
 		}
 		
+		/**
+		 * Sets previously parsed bean definitions for the workflow, which are then
+		 * used instead of reading the workflow definition.  The workflow definition
+		 * path should still be given so that the run context is configured as it
+		 * would be for the definition the template was compiled from.
+		 * 
+		 * @param val
+		 * @return
+		 */
+		public Builder workflowTemplate(WorkflowTemplate val) {
+			workflowTemplate = val;
+			return this;
+		}
+		
 		public Builder workflowDefinitionString(String val) {
 			workflowDefinitionString = val;
 			return this;
@@ -278,6 +324,9 @@ public class WorkflowRunner {
 		_traceReport = builder.traceReport;
 		_validateOnly = builder.validateOnly;
 		_closeTraceRecorderAfterRun = builder.closeTraceRecorderAfterRun;
+		_recordStdout = builder.recordStdout;
+		_rethrowExceptions = builder.rethrowExceptions;
+		_workflowTemplate = builder.workflowTemplate;
 		
 		// create the application context for the workflow run
 		_context = new WorkflowContextBuilder()
@@ -346,8 +395,9 @@ public class WorkflowRunner {
 		}
 		
 		final TraceRecorder traceRecorder = _context.getTraceRecorder();
+		final Exception[] failure = new Exception[1];
 
-		_metadataManager.buildStdoutRecorder(_suppressWorkflowStdout).recordExecution(new StdoutRecorder.WrappedCode() {
+		StdoutRecorder.WrappedCode runCode = new StdoutRecorder.WrappedCode() {
 			
 			@Override
 			public void execute() throws Exception {
@@ -375,10 +425,18 @@ public class WorkflowRunner {
 					}
 					
 				} catch (ActorException e) {
-					System.err.println(e.getMessage());
-					e.getCause().printStackTrace(System.err);
+					if (_rethrowExceptions) {
+						failure[0] = e;
+					} else {
+						System.err.println(e.getMessage());
+						e.getCause().printStackTrace(System.err);
+					}
 				} catch (Exception e) {
-					e.printStackTrace(System.err);
+					if (_rethrowExceptions) {
+						failure[0] = e;
+					} else {
+						e.printStackTrace(System.err);
+					}
 				} finally {
 					// show the final report we just ran a workflow
 					if ( _actor instanceof Workflow) {
@@ -386,7 +444,13 @@ public class WorkflowRunner {
 					}					
 				}
 			}
-		});
+		};
+
+		if (_recordStdout) {
+			_metadataManager.buildStdoutRecorder(_suppressWorkflowStdout).recordExecution(runCode);
+		} else {
+			runCode.execute();
+		}
 
 		//TODO this block is needed so unit tests can compare the workflow output without the output template clutter.
 		//TODO investigate modifying unit tests so this code block can be removed.
@@ -398,6 +462,10 @@ public class WorkflowRunner {
 			traceRecorder.close();
 		}
 		
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		
 		return _actor;
 	}
 
@@ -517,8 +585,10 @@ public class WorkflowRunner {
 		// create a yaml bean reader
 		YamlBeanDefinitionReader rdr = new YamlBeanDefinitionReader(_context);
 
-		// register bean definitions from the provided definition path or stream
-		if (_workflowDefinitionPath != null) {
+		// register bean definitions from the provided template, definition path, or stream
+		if (_workflowTemplate != null) {
+			_workflowTemplate.registerBeanDefinitions(_context);
+		} else if (_workflowDefinitionPath != null) {
 			rdr.registerBeanDefinitions(_workflowDefinitionPath);
 		} else if (_workflowDefinitionStream != null) {
 			rdr.loadBeanDefinitions(_workflowDefinitionStream, "-");
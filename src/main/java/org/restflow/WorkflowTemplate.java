@@ -0,0 +1,211 @@
+package org.restflow;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.restflow.WorkflowRunner.YamlStream;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.yaml.spring.YamlBeanDefinitionReader;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedSet;
+
+/**
+ * The bean definitions of a workflow, parsed once and registered again in any number of
+ * workflow contexts.  Refreshing a context the definitions have been registered in creates
+ * new instances of the workflow, its nodes, and its actors, without reading or parsing the
+ * workflow definition again.
+ *
+ * Each registration uses copies of the bean definitions, including the lists, sets, and maps
+ * in their property values, so neither changes made to the definitions in one context nor
+ * changes made by beans to the collections assigned to their properties are seen by the
+ * template or by other contexts.
+ *
+ * This class is thread safe.  Its fields are final and the maps they refer to are never
+ * modified after construction.
+ */
+@ThreadSafe()
+public class WorkflowTemplate {
+
+	private final Map<String,BeanDefinition> _beanDefinitions;
+	private final Map<String,String[]> _aliases;
+
+	/**
+	 * Creates a template holding copies of the bean definitions and aliases in the registry.
+	 */
+	public WorkflowTemplate(BeanDefinitionRegistry registry) {
+
+		Map<String,BeanDefinition> beanDefinitions = new LinkedHashMap<String,BeanDefinition>();
+		Map<String,String[]> aliases = new LinkedHashMap<String,String[]>();
+
+		for (String name : registry.getBeanDefinitionNames()) {
+			beanDefinitions.put(name, _copy(registry.getBeanDefinition(name)));
+			String[] beanAliases = registry.getAliases(name);
+			if (beanAliases.length > 0) {
+				aliases.put(name, beanAliases);
+			}
+		}
+
+		_beanDefinitions = Collections.unmodifiableMap(beanDefinitions);
+		_aliases = Collections.unmodifiableMap(aliases);
+	}
+
+	/**
+	 * Parses the workflow definition at the given path, or the given definition string if
+	 * the path is null, into a new template.
+	 */
+	public static WorkflowTemplate compile(String workflowDefinitionPath,
+			String workflowDefinitionString) throws Exception {
+		return compile(workflowDefinitionPath, workflowDefinitionString, null);
+	}
+
+	/**
+	 * Parses the workflow definition into a new template, resolving the schemes of the
+	 * workflow definition path and of the files it imports with the given import mappings.
+	 */
+	public static WorkflowTemplate compile(String workflowDefinitionPath,
+			String workflowDefinitionString, Map<String,String> importMappings) throws Exception {
+
+		WorkflowContext scratchContext = new WorkflowContextBuilder()
+			.importMappings(importMappings)
+			.workflowDefinitionString(workflowDefinitionString)
+			.workflowDefinitionPath(workflowDefinitionPath)
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		YamlBeanDefinitionReader reader = new YamlBeanDefinitionReader(scratchContext);
+
+		if (workflowDefinitionPath != null) {
+			reader.registerBeanDefinitions(workflowDefinitionPath);
+		} else {
+			InputStream stream = new YamlStream(workflowDefinitionString);
+			reader.loadBeanDefinitions(stream, "-");
+		}
+
+		return new WorkflowTemplate(scratchContext);
+	}
+
+	public int getBeanDefinitionCount() {
+		return _beanDefinitions.size();
+	}
+
+	/**
+	 * Registers copies of the template's bean definitions and aliases in the registry.
+	 */
+	public void registerBeanDefinitions(BeanDefinitionRegistry registry) {
+
+		for (Map.Entry<String,BeanDefinition> entry : _beanDefinitions.entrySet()) {
+			registry.registerBeanDefinition(entry.getKey(), _copy(entry.getValue()));
+		}
+
+		for (Map.Entry<String,String[]> entry : _aliases.entrySet()) {
+			for (String alias : entry.getValue()) {
+				registry.registerAlias(entry.getKey(), alias);
+			}
+		}
+	}
+
+	private static BeanDefinition _copy(BeanDefinition beanDefinition) {
+
+		BeanDefinition copy;
+		if (beanDefinition instanceof AbstractBeanDefinition) {
+			copy = ((AbstractBeanDefinition)beanDefinition).cloneBeanDefinition();
+		} else {
+			copy = new GenericBeanDefinition(beanDefinition);
+		}
+
+		MutablePropertyValues propertyValues = copy.getPropertyValues();
+		PropertyValue[] values = propertyValues.getPropertyValues();
+		for (int i = 0; i < values.length; i++) {
+			propertyValues.setPropertyValueAt(new PropertyValue(values[i], _copyValue(values[i].getValue())), i);
+		}
+
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object _copyValue(Object value) {
+
+		if (value instanceof BeanDefinitionHolder) {
+			BeanDefinitionHolder holder = (BeanDefinitionHolder)value;
+			return new BeanDefinitionHolder(_copy(holder.getBeanDefinition()), holder.getBeanName(), holder.getAliases());
+		
+		} else if (value instanceof BeanDefinition) {
+			return _copy((BeanDefinition)value);
+
+		} else if (value instanceof ManagedList) {
+			ManagedList<Object> original = (ManagedList<Object>)value;
+			ManagedList<Object> copy = new ManagedList<Object>(original.size());
+			copy.setSource(original.getSource());
+			copy.setElementTypeName(original.getElementTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			_copyElements(original, copy);
+			return copy;
+			
+		} else if (value instanceof ManagedSet) {
+			ManagedSet<Object> original = (ManagedSet<Object>)value;
+			ManagedSet<Object> copy = new ManagedSet<Object>(original.size());
+			copy.setSource(original.getSource());
+			copy.setElementTypeName(original.getElementTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			_copyElements(original, copy);
+			return copy;
+			
+		} else if (value instanceof ManagedMap) {
+			ManagedMap<Object,Object> original = (ManagedMap<Object,Object>)value;
+			ManagedMap<Object,Object> copy = new ManagedMap<Object,Object>(original.size());
+			copy.setSource(original.getSource());
+			copy.setKeyTypeName(original.getKeyTypeName());
+			copy.setValueTypeName(original.getValueTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			_copyEntries(original, copy);
+			return copy;
+			
+		} else if (value instanceof List) {
+			List<Object> copy = new ArrayList<Object>();
+			_copyElements((List<Object>)value, copy);
+			return copy;
+
+		} else if (value instanceof Set) {
+			Set<Object> copy = new LinkedHashSet<Object>();
+			_copyElements((Set<Object>)value, copy);
+			return copy;
+
+		} else if (value instanceof Map) {
+			Map<Object,Object> copy = new LinkedHashMap<Object,Object>();
+			_copyEntries((Map<Object,Object>)value, copy);
+			return copy;
+
+		} else {
+			return value;
+		}
+	}
+
+	private static void _copyElements(Collection<Object> original, Collection<Object> copy) {
+		for (Object element : original) {
+			copy.add(_copyValue(element));
+		}
+	}
+
+	private static void _copyEntries(Map<Object,Object> original, Map<Object,Object> copy) {
+		for (Map.Entry<Object,Object> entry : original.entrySet()) {
+			copy.put(_copyValue(entry.getKey()), _copyValue(entry.getValue()));
+		}
+	}
+}
@@ -22,6 +22,7 @@ import org.restflow.metadata.ActorState;
 import org.restflow.metadata.TraceRecorder;
 import org.restflow.nodes.ActorWorkflowNode;
 import org.restflow.util.Contract;
+import org.restflow.util.DirectoryAllocator;
 import org.restflow.util.ImmutableList;
 import org.restflow.util.ImmutableMap;
 import org.springframework.beans.BeansException;
@@ -157,6 +158,49 @@ public abstract class AbstractActor implements Actor, BeanNameAware, Application
 		return theClone;
 	}
 	
+	/**
+	 * Resets this clone of the given actor so that it may be stepped again in place of
+	 * a new clone.  The values of inputs, outputs and state variables, the actor status, 
+	 * and the step directory are copied from the master just as clone() copies them, 
+	 * reusing the collections already allocated by this clone.  Configuration fields 
+	 * are not copied because they do not change once the master is initialized.
+	 * 
+	 * Subclasses that keep other per-step state must override this method to reset it,
+	 * and must override isRecyclable() to return true.
+	 * 
+	 * @throws 	CloneNotSupportedException if this actor cannot be reset.
+	 */
+	public synchronized void resetClone(Actor master) throws CloneNotSupportedException {
+
+		if (master.getClass() != getClass()) {
+			throw new CloneNotSupportedException("Actor " + this + " is not a clone of " + master);
+		}
+		
+		AbstractActor source = (AbstractActor) master;
+		
+		synchronized(source) {
+			
+			Contract.requires(source._state == ActorFSM.INITIALIZED);
+
+			_replaceContents(_inputValues, source._inputValues);
+			_replaceContents(_outputValues, source._outputValues);
+			_replaceContents(_stateVariables, source._stateVariables);
+
+			_actorStatus.copyFrom(source._actorStatus);
+			
+			_runCount = source._runCount;
+			_stepDirectory = source._stepDirectory;
+			_stepOfScratchDirectory = source._stepOfScratchDirectory;
+			_scratchDirectoryPrefix = source._scratchDirectoryPrefix;
+			_state = source._state;
+		}
+	}
+
+	private static void _replaceContents(Map<String,Object> target, Map<String,Object> source) {
+		target.clear();
+		target.putAll(source);
+	}
+	
 	
 	///////////////////////////////////////////////////////////////////////////
 	///     actor configuration setters -- PROPERTIES_UNSET state only     ////
@@ -332,6 +376,12 @@ public abstract class AbstractActor implements Actor, BeanNameAware, Application
 		return input != null && input.isOptional();
 	}
 	
+	public boolean hasMutableInput(String name) {
+		Contract.disallows(_state == ActorFSM.CONSTRUCTED);
+		InputSignatureElement input = _inputSignature.get(name);
+		return input != null && input.isMutable();
+	}
+	
 	public String getInputType(String name) {
 		Contract.disallows(_state == ActorFSM.CONSTRUCTED);
 		InputSignatureElement input = _inputSignature.get(name);
@@ -368,6 +418,12 @@ public abstract class AbstractActor implements Actor, BeanNameAware, Application
 		return _usesStepDirectory;
 	}
 
+	// An actor is recyclable if resetClone() restores all of the per-step state of 
+	// its clones, so that a clone may be stepped repeatedly in place of new clones.
+	public boolean isRecyclable() {
+		return false;
+	}
+	
 	// The cloneable property declares whether an actor can 
 	// be run cloned and run concurrently with other clones
 	// with the same node.  If the property is not declared then
@@ -666,6 +722,11 @@ public abstract class AbstractActor implements Actor, BeanNameAware, Application
 				inputElement.setLocalPath(localPath);
 			}
 			
+			Boolean mutable = (Boolean) inputProperties.get("mutable");
+			if (mutable != null) {
+				inputElement.setMutable(mutable);
+			}
+			
 			boolean defaultIsNull = false;
 			if (inputProperties.containsKey("default")) {
 				Object defaultValue = inputProperties.get("default");
@@ -768,7 +829,7 @@ public abstract class AbstractActor implements Actor, BeanNameAware, Application
 			}
 			String scratchDirectory = runDirectoryPath + "/.steps/" + uriPrefix +  "/" + nodeName + "_" + step;
 			_stepDirectory = new File(scratchDirectory);
-			_stepDirectory.mkdirs();
+			DirectoryAllocator.createDirectory(_stepDirectory);
 			_stepOfScratchDirectory = step;
 			_scratchDirectoryPrefix = uriPrefix;
 		}
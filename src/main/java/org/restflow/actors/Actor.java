@@ -33,6 +33,7 @@ public interface Actor {
 	Collection<String> getInputNames();
 	Collection<String> getOutputNames();
 	boolean hasOptionalInput(String name);
+	boolean hasMutableInput(String name);
 	String getInputType(String label);
 	String getInputLocalPath(String label);	
 	
@@ -81,6 +82,12 @@ public interface Actor {
 
 	Object clone() throws CloneNotSupportedException;
 	
+	/** returns true if clones of the actor may be reset and stepped again */
+	boolean isRecyclable();
+	
+	/** resets a clone of the given actor to the state of a new clone */
+	void resetClone(Actor master) throws CloneNotSupportedException;
+	
 	
 	/**
 	 * Return the description of the input from the input signature.
@@ -44,6 +44,25 @@ public class ActorStatus implements Cloneable {
 		return theClone;
 	}
 
+	/**
+	 * Makes this status a copy of the given one, reusing the maps of this instance.
+	 */
+	public synchronized void copyFrom(ActorStatus other) {
+		synchronized(other) {
+			_stepCount = other._stepCount;
+			_callType = other._callType;
+			_stepDirectory = other._stepDirectory;
+			_replaceContents(_inputEnableMap, other._inputEnableMap);
+			_replaceContents(_outputEnableMap, other._outputEnableMap);
+			_replaceContents(_outputStreamClosedMap, other._outputStreamClosedMap);
+		}
+	}
+	
+	private static void _replaceContents(Map<String,Boolean> target, Map<String,Boolean> source) {
+		target.clear();
+		target.putAll(source);
+	}
+
 	
 	public synchronized void setStepDirectory(File directory) {
 		_stepDirectory = directory;
@@ -1,10 +1,15 @@
 package org.restflow.actors;
 
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import net.jcip.annotations.ThreadSafe;
 
 /**
+ * Runs a single actor step either on a thread of its own or on a thread provided
+ * by an executor such as a StepRunnerPool.
+ * 
  * This class is thread safe.  Its single mutable field refers to an immutable object and
  * is marked volatile.
  */
@@ -14,7 +19,7 @@ public abstract class AsynchronousActorRunner extends AbstractActorRunner {
 	/*************************
 	 *  private final fields *
 	 *************************/
-	private final Thread _thread;
+	private final CountDownLatch _completed;
 	
 	/***********************
 	 *  public constructor *
@@ -22,7 +27,7 @@ public abstract class AsynchronousActorRunner extends AbstractActorRunner {
 	
 	public AsynchronousActorRunner(Actor actor, Map<String,Object> variables) {
 		super(actor, variables);
-		_thread = new Thread(this, actor.toString());
+		_completed = new CountDownLatch(1);
 	}
 
 	/**********************
@@ -30,10 +35,29 @@ public abstract class AsynchronousActorRunner extends AbstractActorRunner {
 	 **********************/
 	
 	public void start() {
-		_thread.start();
+		new Thread(new CompletionSignalingRunner(), _actor.toString()).start();
 	}
 
+	public void start(Executor executor) {
+		if (executor == null) {
+			start();
+		} else {
+			executor.execute(new CompletionSignalingRunner());
+		}
+	}
+
+	// waits for everything done by run(), including work done by subclasses after the step
 	public void waitForCompletion() throws InterruptedException {
-		_thread.join();
-	}	
+		_completed.await();
+	}
+	
+	private class CompletionSignalingRunner implements Runnable {
+		public void run() {
+			try {
+				AsynchronousActorRunner.this.run();
+			} finally {
+				_completed.countDown();
+			}
+		}
+	}
 }
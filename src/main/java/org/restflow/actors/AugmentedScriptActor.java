@@ -2,15 +2,25 @@ package org.restflow.actors;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
 import org.apache.commons.io.FileUtils;
 import org.restflow.data.InputSignatureElement;
+import org.restflow.util.DeferredOutputWriter;
+import org.restflow.util.DelimitedOutputWriter;
 import org.restflow.util.PortableIO;
-import org.restflow.util.PortableIO.StreamSink;
+import org.restflow.util.ScriptWorker;
 import org.yaml.snakeyaml.Yaml;
 
 
@@ -20,14 +30,64 @@ public abstract class AugmentedScriptActor extends ScriptActor {
 
 	public enum DataSerializationFormat { YAML, JSON };
 	
+	public enum ProcessMode { FORK, WORKER };
+	
+	@GuardedBy("this") private ProcessMode _processMode = ProcessMode.FORK;
+	@GuardedBy("this") private WorkerPool _workerPool;
+	
 	public abstract ActorScriptBuilder getNewScriptBuilder();
 	public abstract String getScriptRunCommand();
 	public abstract DataSerializationFormat getOutputSerializationFormat();
 
+	/**
+	 * Returns the loop script run by the interpreter workers of this actor in the worker
+	 * process mode, following the protocol described by ScriptWorker, or null if the
+	 * actor's language does not support the worker process mode.
+	 */
+	public String getWorkerLoopScript() {
+		return null;
+	}
+	
+	/**
+	 * Returns the command line that starts an interpreter worker running the loop script
+	 * stored in the given file.
+	 */
+	public String getWorkerRunCommand(File loopScriptFile) {
+		return getScriptRunCommand() + " " + loopScriptFile.getAbsolutePath();
+	}
+	
+	/**
+	 * Selects whether each augmented script is run in a new interpreter process (fork),
+	 * or in a long-lived interpreter worker (worker).  Each clone of the actor running
+	 * at the same time gets a worker of its own, and idle workers are reused by the
+	 * next script run.  A worker that exits while running a script is replaced.
+	 */
+	public synchronized void setProcessMode(String mode) throws Exception {
+		if (mode.equals("fork")) {
+			_processMode = ProcessMode.FORK;
+		} else if (mode.equals("worker")) {
+			_processMode = ProcessMode.WORKER;
+		} else {
+			throw new Exception("Process mode string must be one of fork or worker.");
+		}
+	}
+	
+	public synchronized ProcessMode getProcessMode() {
+		return _processMode;
+	}
+	
 	public synchronized void configure() throws Exception {
 		
 		super.configure();
 	
+		if (_processMode == ProcessMode.WORKER && _workerPool == null) {
+			String loopScript = getWorkerLoopScript();
+			if (loopScript == null) {
+				throw new Exception("Actor " + this + " does not support the worker process mode.");
+			}
+			_workerPool = new WorkerPool(this, loopScript);
+		}
+	
 		if (_configureScript != null && !_configureScript.trim().isEmpty()) {
 
 			// augment the configure script
@@ -194,6 +254,11 @@ public abstract class AugmentedScriptActor extends ScriptActor {
 			_runAugmentedScript(augmentedDisposeScript);
 		}
 		
+		if (_workerPool != null) {
+			_workerPool.shutdown();
+			_workerPool = null;
+		}
+		
 		_state = ActorFSM.DISPOSED;
 	}
 	
@@ -217,7 +282,11 @@ public abstract class AugmentedScriptActor extends ScriptActor {
 	}
 
 	protected void _appendScriptSuffix(ActorScriptBuilder script) {
-		script.appendScriptExitCommend();
+		
+		// a worker must keep running after the script completes
+		if (_workerPool == null) {
+			script.appendScriptExitCommend();
+		}
 	}
 
 	protected void _appendInputControlFunctions(ActorScriptBuilder script) {
@@ -359,54 +428,69 @@ public abstract class AugmentedScriptActor extends ScriptActor {
 	
 	protected synchronized String _runAugmentedScript(String augmentedScript) throws Exception {
 
-		String runcommand = getScriptRunCommand();
-		
-		StreamSink[] outputs = PortableIO.runProcess(
-									runcommand, 
-					  				augmentedScript,
-					  				null, 
-					  				_actorStatus.getStepDirectory()
-		  						 );
-		
-		// capture the standard output from the run of the script
-		String completeStdout = outputs[0].toString();
-		  
-		String completeStderr = outputs[1].toString();
-		
-		String adjustedStderr = adjustStderr(completeStderr);
-		
-		if (!adjustedStderr.isEmpty() && _stderrMode == OutputStreamMode.IMMEDIATE) {
-			System.err.println(	">>>>>>>>>>>>>>>>>>>> Error running augmented actor script >>>>>>>>>>>>>>>>>>>>>>"	);
-			System.err.print  (	augmentedScript																		);
-			System.err.println(	"-------------------------------- Error message ---------------------------------"	);
-			System.err.print  (	completeStderr																		);
-			System.err.println(	"<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<"	);
-		}
-		
-		// find the beginning of the script output delimiter
-		int delimiterStart = completeStdout.lastIndexOf(_scriptOutputDelimiter);
-		
-		String scriptStdout;
-		String serializedOutputs;
-		
-		if (delimiterStart == -1) {
-			scriptStdout = completeStdout;
-			serializedOutputs = "";
-		} else {
-			scriptStdout = completeStdout.substring(0, delimiterStart);
-			int serializedOutputStart = delimiterStart + _scriptOutputDelimiter.length();
-			serializedOutputs = completeStdout.substring(serializedOutputStart);
-		}
-		
-		if (_stderrMode == OutputStreamMode.DELAYED) {
-			System.out.print(adjustedStderr);
+		// forward the output of the original script as it arrives, keeping in memory
+		// only the serialized outputs following the last script output delimiter
+		DeferredOutputWriter delayedStdout = null;
+		Writer scriptStdout = null;
+		if (_stdoutMode == OutputStreamMode.IMMEDIATE) {
+			scriptStdout = new OutputStreamWriter(System.out);
+		} else if (_stdoutMode == OutputStreamMode.DELAYED) {
+			scriptStdout = delayedStdout = new DeferredOutputWriter();
 		}
+		DelimitedOutputWriter stdout = new DelimitedOutputWriter(_scriptOutputDelimiter, scriptStdout);
 
-		if (_stdoutMode == OutputStreamMode.DELAYED) {
-			System.out.print(scriptStdout);
+		try {
+			
+			String completeStderr;
+			
+			if (_workerPool != null) {
+				
+				completeStderr = _workerPool.run(augmentedScript, stdout);
+				
+			} else {
+			
+				String runcommand = getScriptRunCommand();
+				StringWriter stderr = new StringWriter();
+				
+				PortableIO.runProcess(
+							runcommand, 
+			  				augmentedScript,
+			  				null, 
+			  				_actorStatus.getStepDirectory(),
+			  				stdout,
+			  				stderr
+						 );
+				  
+				completeStderr = stderr.toString();
+			}
+			
+			stdout.close();
+			
+			String adjustedStderr = adjustStderr(completeStderr);
+			
+			if (!adjustedStderr.isEmpty() && _stderrMode == OutputStreamMode.IMMEDIATE) {
+				System.err.println(	">>>>>>>>>>>>>>>>>>>> Error running augmented actor script >>>>>>>>>>>>>>>>>>>>>>"	);
+				System.err.print  (	augmentedScript																		);
+				System.err.println(	"-------------------------------- Error message ---------------------------------"	);
+				System.err.print  (	completeStderr																		);
+				System.err.println(	"<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<"	);
+			}
+			
+			if (_stderrMode == OutputStreamMode.DELAYED) {
+				System.out.print(adjustedStderr);
+			}
+	
+			if (delayedStdout != null) {
+				delayedStdout.writeTo(System.out);
+			}
+			
+		} finally {
+			if (delayedStdout != null) {
+				delayedStdout.dispose();
+			}
 		}
 
-		return serializedOutputs;
+		return stdout.getTextAfterDelimiter();
 	}
 	
 	private synchronized Map<String,Object> _parseSerializedOutput(String serializedOutput) throws Exception {
@@ -504,4 +588,93 @@ public abstract class AugmentedScriptActor extends ScriptActor {
 			}
 		}
 	}
+	
+	/**
+	 * The interpreter workers of an actor and its clones.  The pool is created by the
+	 * actor when it is configured and is shared with its clones, which take a worker
+	 * for each script they run and return it when the script completes, so there are
+	 * never more workers than scripts running at once.  The pool is shut down when the
+	 * actor is disposed.  Shutting down stops the idle workers at once and each busy
+	 * worker when its script completes, and the loop script is deleted only once every
+	 * worker has stopped.
+	 *
+	 * This class is thread safe.  Its mutable fields are synchronized on the instance,
+	 * and each worker is used by one thread at a time.
+	 */
+	@ThreadSafe()
+	private static final class WorkerPool {
+		
+		private final File _loopScriptFile;
+		private final String _runCommand;
+		@GuardedBy("this") private final Deque<ScriptWorker> _idleWorkers = new ArrayDeque<ScriptWorker>();
+		@GuardedBy("this") private int _busyWorkerCount = 0;
+		@GuardedBy("this") private boolean _closed = false;
+		
+		WorkerPool(AugmentedScriptActor actor, String loopScript) throws IOException {
+			_loopScriptFile = File.createTempFile("restflow-worker-", "." + actor._scriptExtension);
+			_loopScriptFile.deleteOnExit();
+			FileUtils.writeStringToFile(_loopScriptFile, loopScript);
+			_runCommand = actor.getWorkerRunCommand(_loopScriptFile);
+		}
+		
+		String run(String script, Writer stdout) throws Exception {
+			
+			ScriptWorker worker = _takeWorker();
+			
+			try {
+				return worker.run(script, stdout);
+			} catch (IOException e) {
+				
+				// the worker exited since its last script, so run the script in a new one 
+				worker = _startWorker();
+				return worker.run(script, stdout);
+				
+			} finally {
+				_returnWorker(worker);
+			}
+		}
+		
+		synchronized void shutdown() {
+			_closed = true;
+			for (ScriptWorker worker : _idleWorkers) {
+				worker.stop();
+			}
+			_idleWorkers.clear();
+			if (_busyWorkerCount == 0) {
+				_loopScriptFile.delete();
+			}
+		}
+		
+		private synchronized ScriptWorker _takeWorker() throws IOException {
+			if (_closed) {
+				throw new IllegalStateException("Cannot run a script on a worker pool that is shut down");
+			}
+			ScriptWorker worker = _idleWorkers.poll();
+			if (worker == null) {
+				worker = _startWorker();
+			}
+			_busyWorkerCount++;
+			return worker;
+		}
+		
+		private ScriptWorker _startWorker() throws IOException {
+			ScriptWorker worker = new ScriptWorker(_runCommand, null);
+			worker.start();
+			return worker;
+		}
+		
+		// stops workers returned after the pool is shut down, deleting the loop script
+		// once the last of them has stopped
+		private synchronized void _returnWorker(ScriptWorker worker) {
+			_busyWorkerCount--;
+			if (_closed) {
+				worker.stop();
+				if (_busyWorkerCount == 0) {
+					_loopScriptFile.delete();
+				}
+			} else if (worker.isAlive()) {
+				_idleWorkers.push(worker);
+			}
+		}
+	}
 }
@@ -0,0 +1,100 @@
+package org.restflow.actors;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.MappedPropertyDescriptor;
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * The getter and setter of one simple property of a bean class, looked up once so that
+ * a JavaActor can read and write the property on each step without the property name
+ * being parsed and the class introspected on every call.  The methods are those
+ * PropertyUtils would call for the same property, and throw the same exceptions.
+ *
+ * This class is thread safe because it is immutable.
+ */
+@Immutable()
+class BeanPropertyAccessor {
+
+	private final String _name;
+	private final Method _readMethod;
+	private final Method _writeMethod;
+
+	private BeanPropertyAccessor(String name, Method readMethod, Method writeMethod) {
+		_name = name;
+		_readMethod = readMethod;
+		_writeMethod = writeMethod;
+	}
+
+	/**
+	 * Returns an accessor for the named property of the bean, or null if the property is
+	 * not a simple property of a plain bean with a public getter or setter.  Nested,
+	 * indexed and mapped properties, and properties of maps and dyna beans, are left to
+	 * PropertyUtils.
+	 */
+	static BeanPropertyAccessor forProperty(Object bean, String name) {
+
+		if (bean instanceof Map || bean instanceof DynaBean) {
+			return null;
+		}
+
+		if (name.indexOf('.') >= 0 || name.indexOf('[') >= 0 || name.indexOf('(') >= 0) {
+			return null;
+		}
+
+		PropertyDescriptor descriptor;
+		try {
+			descriptor = PropertyUtils.getPropertyDescriptor(bean, name);
+		} catch (Exception e) {
+			return null;
+		}
+
+		if (descriptor == null ||
+			descriptor instanceof IndexedPropertyDescriptor ||
+			descriptor instanceof MappedPropertyDescriptor) {
+			return null;
+		}
+
+		Class<?> beanClass = bean.getClass();
+		Method readMethod = MethodUtils.getAccessibleMethod(beanClass, descriptor.getReadMethod());
+		Method writeMethod = MethodUtils.getAccessibleMethod(beanClass, descriptor.getWriteMethod());
+
+		if (readMethod == null && writeMethod == null) {
+			return null;
+		}
+
+		return new BeanPropertyAccessor(name, readMethod, writeMethod);
+	}
+
+	boolean isReadable() {
+		return _readMethod != null;
+	}
+
+	boolean isWriteable() {
+		return _writeMethod != null;
+	}
+
+	Object get(Object bean) throws IllegalAccessException, InvocationTargetException {
+		return _readMethod.invoke(bean);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value is not of the type the setter takes
+	 */
+	void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+		try {
+			_writeMethod.invoke(bean, value);
+		} catch (IllegalArgumentException e) {
+			// the setter was not called, so let PropertyUtils call it to report the mismatch
+			PropertyUtils.setSimpleProperty(bean, _name, value);
+		}
+	}
+}
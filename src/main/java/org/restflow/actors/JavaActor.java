@@ -2,7 +2,10 @@ package org.restflow.actors;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 
 import net.jcip.annotations.GuardedBy;
@@ -67,6 +70,8 @@ public class JavaActor extends AbstractActor {
 	
 	private Map<String,Field> _fields;
 	private boolean _fieldsAccessible;
+	private Map<String,BeanPropertyAccessor> _propertyAccessors;
+	private List<String> _resettableProperties;
 
 	///////////////////////////////////////////////////////////////////////////
 	////                      private enumerations                         ////
@@ -177,6 +182,40 @@ public class JavaActor extends AbstractActor {
 		return theClone;
 	}
 	
+	/**
+	 * Resets this clone of the given JavaActor so that it may be stepped again in place of
+	 * a new clone.  In addition to the state reset by the superclass, the bean properties 
+	 * corresponding to inputs, outputs and state variables are assigned the values of the 
+	 * same properties on the master's bean, i.e. the values a new clone of the bean would 
+	 * have.  Other fields of the bean are not reset, so beans that keep undeclared state
+	 * between steps must not be used in nodes that recycle actors.
+	 * 
+	 * @throws CloneNotSupportedException if a bean property cannot be read or assigned.
+	 */
+	@Override
+	public synchronized void resetClone(Actor master) throws CloneNotSupportedException {
+		
+		super.resetClone(master);
+		
+		JavaActor source = (JavaActor) master;
+		
+		synchronized(source) {
+			try {
+				for (String name : _resettableProperties) {
+					_setBeanProperty(name, source._getBeanProperty(name));
+				}
+			} catch (WorkflowRuntimeException e) {
+				throw new CloneNotSupportedException("Exception resetting bean wrapped by actor " + 
+						this + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	@Override
+	public boolean isRecyclable() {
+		return true;
+	}
+	
 	
 	///////////////////////////////////////////////////////////////////////////
 	////                     actor configuration setters                   ////
@@ -356,6 +395,19 @@ public class JavaActor extends AbstractActor {
 
 		_fieldsAccessible = _fields.size() > 0;
 
+		// look up the getters and setters of the declared variables not accessed as fields
+		_propertyAccessors = new HashMap<String,BeanPropertyAccessor>();
+		_cachePropertyAccessors(_inputSignature.keySet());
+		_cachePropertyAccessors(_outputSignature.keySet());
+		_cachePropertyAccessors(_stateVariables.keySet());
+		_cachePropertyAccessors(_constants.keySet());
+
+		// find the declared variables that resetClone() can copy between beans 
+		_resettableProperties = new ArrayList<String>();
+		_addResettableProperties(_inputSignature.keySet());
+		_addResettableProperties(_outputSignature.keySet());
+		_addResettableProperties(_stateVariables.keySet());
+
 		
 		// detect the clone method on the bean if it is cloneable
 		if (_wrappedBean instanceof Cloneable) {
@@ -372,6 +424,26 @@ public class JavaActor extends AbstractActor {
 		_state = ActorFSM.CONFIGURED;
 	}
 
+	private void _addResettableProperties(Iterable<String> names) {
+		for (String name : names) {
+			if (! _resettableProperties.contains(name) && (_fields.containsKey(name) || 
+					(PropertyUtils.isReadable(_wrappedBean, name) && PropertyUtils.isWriteable(_wrappedBean, name)))) {
+				_resettableProperties.add(name);
+			}
+		}
+	}
+
+	private void _cachePropertyAccessors(Iterable<String> names) {
+		for (String name : names) {
+			if (!_fields.containsKey(name) && !_propertyAccessors.containsKey(name)) {
+				BeanPropertyAccessor accessor = BeanPropertyAccessor.forProperty(_wrappedBean, name);
+				if (accessor != null) {
+					_propertyAccessors.put(name, accessor);
+				}
+			}
+		}
+	}
+
 	private void _cachePublicField(String name) {
 		Field field = null;
 		try { 
@@ -614,8 +686,14 @@ public class JavaActor extends AbstractActor {
 			}
 		} else {
 
+			BeanPropertyAccessor accessor = _propertyAccessors.get(name);
+
 			try {
-				value = PropertyUtils.getNestedProperty(_wrappedBean, name);
+				if (accessor != null && accessor.isReadable()) {
+					value = accessor.get(_wrappedBean);
+				} else {
+					value = PropertyUtils.getNestedProperty(_wrappedBean, name);
+				}
 				
 			} catch (Exception reflectionException) {
 				throw new WorkflowRuntimeException(
@@ -743,8 +821,14 @@ public class JavaActor extends AbstractActor {
 			}
 		} else {
 			
+			BeanPropertyAccessor accessor = _propertyAccessors.get(name);
+
 			try {
-				PropertyUtils.setNestedProperty(_wrappedBean, name, value);
+				if (accessor != null && accessor.isWriteable()) {
+					accessor.set(_wrappedBean, value);
+				} else {
+					PropertyUtils.setNestedProperty(_wrappedBean, name, value);
+				}
 				
 			} catch (IllegalArgumentException cause) {
 				throw new InputTypeException(
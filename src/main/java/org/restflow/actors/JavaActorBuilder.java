@@ -64,6 +64,10 @@ public class JavaActorBuilder implements ActorBuilder {
 		if (BitPattern.includes(InputProperty.DefaultReadinessFalse, propertyBitPattern)) {
 			properties.put("defaultReadiness", false);
 		}
+
+		if (BitPattern.includes(InputProperty.Mutable, propertyBitPattern)) {
+			properties.put("mutable", true);
+		}
 		
 		_inputs.put(name, properties);
 		return this;
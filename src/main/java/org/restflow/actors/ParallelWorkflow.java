@@ -1,23 +1,25 @@
 package org.restflow.actors;
 
 import java.io.File;
-import java.io.InputStream;
 import java.util.Map;
 
+import net.jcip.annotations.GuardedBy;
+
 import org.restflow.WorkflowContext;
 import org.restflow.WorkflowContextBuilder;
-import org.restflow.WorkflowRunner.YamlStream;
+import org.restflow.WorkflowTemplate;
 import org.restflow.data.ProtocolRegistry;
 import org.restflow.metadata.BasicTraceRecorder;
 import org.restflow.metadata.TraceRecorder;
 import org.restflow.util.Contract;
 
-import org.restflow.yaml.spring.YamlBeanDefinitionReader;
-
 public class ParallelWorkflow extends Workflow {
 	
 	private boolean _runEnabled = false;
 	
+	// the parsed workflow definition, shared by the clones made after initialization
+	@GuardedBy("this") private WorkflowTemplate _template;
+	
 	public synchronized Object clone() throws CloneNotSupportedException {
 
 		Contract.requires(_state == ActorFSM.INITIALIZED);
@@ -36,6 +38,19 @@ public class ParallelWorkflow extends Workflow {
 		_runEnabled = true;
 	}
 	
+	@Override
+	public synchronized void initialize() throws Exception {
+		
+		super.initialize();
+
+		// parse the workflow definition once for all steps of this workflow and its clones
+		if (!_runEnabled && _template == null) {
+			_template = WorkflowTemplate.compile(
+					_workflowContext.getWorkflowDefinitionPath(),
+					_workflowContext.getWorkflowDefinitionString());
+		}
+	}
+	
 	public synchronized void step() throws Exception {
 		
 		if (_runEnabled) {
@@ -45,8 +60,11 @@ public class ParallelWorkflow extends Workflow {
 		
 		_runCount++;
 
-		String workflowDefinitionString = _workflowContext.getWorkflowDefinitionString();
-		String workflowDefinitionPath = _workflowContext.getWorkflowDefinitionPath();
+		if (_template == null) {
+			_template = WorkflowTemplate.compile(
+					_workflowContext.getWorkflowDefinitionPath(),
+					_workflowContext.getWorkflowDefinitionString());
+		}
 		
 		File runDirectory = null;
 		String runDirectoryPath = _workflowContext.getRunDirectoryPath();
@@ -60,25 +78,17 @@ public class ParallelWorkflow extends Workflow {
 		((BasicTraceRecorder)(recorder)).setWritableTrace(_workflowContext.getWritableTrace());
 		
 		WorkflowContext context = new WorkflowContextBuilder()
-			.workflowDefinitionString(workflowDefinitionString)
-			.workflowDefinitionPath(workflowDefinitionPath)
+			.workflowDefinitionString(_workflowContext.getWorkflowDefinitionString())
+			.workflowDefinitionPath(_workflowContext.getWorkflowDefinitionPath())
 			.runDirectory(runDirectory)
 			.recorder(recorder)
 			.metadataManager(_workflowContext.getMetaDataManager())
 			.build();
 				
-		// create a yaml bean reader
-		YamlBeanDefinitionReader rdr = new YamlBeanDefinitionReader(context);
-
-		// register bean definitions from the provided definition path or stream
-		if (workflowDefinitionPath != null) {
-			rdr.registerBeanDefinitions(workflowDefinitionPath);
-		} else {
-			InputStream stream = new YamlStream(workflowDefinitionString);
-			rdr.loadBeanDefinitions(stream, "-");
-		}
+		// register copies of the parsed bean definitions
+		_template.registerBeanDefinitions(context);
 		
-		// read the bean definitions
+		// instantiate the beans
 		context.refresh();
 		
 		// load the protocol registry bean
@@ -89,7 +99,7 @@ public class ParallelWorkflow extends Workflow {
 		}
 		
 		// load all Actor beans
-		String actorBeanNames[] = context.getBeanNamesForType(Class.forName("org.restflow.actors.Actor"));
+		String actorBeanNames[] = context.getBeanNamesForType(Actor.class);
 		if (actorBeanNames.length == 0) {
 			throw new Exception("Must have at least one Actor defined in workflow script.");
 		}
@@ -5,16 +5,20 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
 
 import org.apache.commons.io.FileUtils;
 import org.restflow.RestFlow;
 import org.restflow.WorkflowRunner;
+import org.restflow.WorkflowTemplate;
+import org.restflow.data.Uri;
 import org.restflow.metadata.ActorState;
 import org.restflow.metadata.FileSystemMetadataManager;
 import org.restflow.metadata.RunMetadata;
 import org.restflow.util.Contract;
 import org.restflow.util.StdoutRecorder;
+import org.restflow.util.StdoutRouter;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.nodes.Node;
 import org.yaml.snakeyaml.nodes.Tag;
@@ -22,6 +26,21 @@ import org.yaml.snakeyaml.representer.Represent;
 import org.yaml.snakeyaml.representer.Representer;
 
 
+/**
+ * An actor that steps by running a workflow.  By default each step starts a new JVM that
+ * runs the workflow with org.restflow.RestFlow, passing the actor's inputs through a yaml
+ * file and reading its outputs back from the run directory.
+ * 
+ * Setting restflow-runMode to inprocess instead runs the workflow with a WorkflowRunner on
+ * the thread stepping the actor.  Each step still gets its own workflow context, trace, and
+ * run directory, but input and output values are passed as objects without being
+ * serialized, and no JVM is started.  The workflow definition is parsed on the first step
+ * and again only when the workflow file or import mappings change, so edits made to the
+ * definition during a run are not seen.  As in the process mode, what the workflow prints
+ * to the standard output stream is not shown, but it is discarded rather than recorded,
+ * so the outputs of an in-process step do not include restflow-stdout.  The
+ * restflow-daemon and restflow-generateDot settings apply only to the process mode.
+ */
 public class RestFlowActor extends AbstractActor implements Cloneable {
 
 	public static final String VARNAME_WORKFLOW_FILE = "restflow-file";
@@ -34,6 +53,12 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 	public static final String VARNAME_WORKFLOW_RUNNAME = "restflow-runName";
 	public static final String VARNAME_WORKFLOW_REPORTNAME ="restflow-reportName";
 	public static final String VARNAME_WORKFLOW_GENERATE_DOT = "restflow-generateDot";	
+	public static final String VARNAME_WORKFLOW_RUN_MODE = "restflow-runMode";
+	
+	public enum RunMode { PROCESS, IN_PROCESS };
+	
+	private WorkflowTemplate _workflowTemplate;
+	private String _workflowTemplateKey;
 		
 	public synchronized RestFlowActor clone() throws CloneNotSupportedException {
 		RestFlowActor theClone = (RestFlowActor) super.clone();
@@ -70,6 +95,66 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 		inputValues.putAll(_inputValues);
 		_inputValues.putAll(_stateVariables);
 		
+		Map<String,Object> outputValues;
+		ActorState state;
+		
+		if (resolveRunMode() == RunMode.IN_PROCESS) {
+			
+			Actor workflow = _runWorkflowInProcess(inputValues);
+			outputValues = workflow.getFinalOutputs();
+			state = workflow.getFinalState();
+
+		} else {
+
+			RunMetadata metadata = _runWorkflowInChildProcess(inputValues);
+
+			if (metadata == null) {
+				//TODO cannot use the stdout recorder here because it is not thread safe.
+//				_outputValues.put("restflow-stdout", recorder.getStdoutRecording());
+//				_outputValues.put("restflow-stderr", recorder.getStderrRecording());			
+				return;
+			}
+
+			outputValues = metadata.getOutputValues();
+			state = metadata.getActorState();
+		}
+		
+		_outputValues.putAll(outputValues);
+		
+		// update stored values for state variables
+		for (String label : _stateVariables.keySet()) {
+			_stateVariables.put(label, _outputValues.get(label));
+		}		
+
+		// update stored values for state variables
+		Map<String, Boolean> inputEnableMap = state.getInputEnableMap();
+		if (inputEnableMap != null) {
+
+			for (String label : inputEnableMap.keySet()) {
+
+				Boolean inputEnable = inputEnableMap.get(label);
+				if (inputEnable == true) {
+					_actorStatus.enableInput(label);
+				} else {
+					_actorStatus.disableInput(label);
+				}
+			}
+		}
+		
+		Map<String, Boolean> outputEnableMap = state.getOutputEnableMap();
+		for (String label : outputEnableMap.keySet()) {
+			
+			if ( outputEnableMap.get(label) == true ) {
+				_actorStatus.enableOutput(label);
+			} else {
+				_actorStatus.disableOutput(label);				
+			}
+		}		
+
+		_state = ActorFSM.STEPPED;
+	}
+	
+	private RunMetadata _runWorkflowInChildProcess(Map<String,Object> inputValues) throws Exception {
 		
 		List<String> restflowArgs = new Vector<String>();
 		restflowArgs.add("java");
@@ -121,50 +206,83 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 		System.out.print(p.exitValue());
 		metadata = FileSystemMetadataManager.restoreMetadata(resolveBaseDirectory() + "/1");
 		
-		if (metadata == null) {
-			Map<String,Object> outputs = new HashMap();
-			//TODO cannot use the stdout recorder here because it is not thread safe.
-//			_outputValues.put("restflow-stdout", recorder.getStdoutRecording());
-//			_outputValues.put("restflow-stderr", recorder.getStderrRecording());			
-			return;
-		}
-		Map<String,Object> outputs = metadata.getOutputValues();
-		_outputValues.putAll(metadata.getOutputValues());
-		
-		
-		// update stored values for state variables
-		for (String label : _stateVariables.keySet()) {
-			_stateVariables.put(label, _outputValues.get(label));
-		}		
+		return metadata;
+	}
+	
+	/**
+	 * Runs the workflow on the calling thread in a new workflow context, using the same
+	 * workflow file, run directory, and import mappings as a run in a child process would,
+	 * and returns the disposed workflow so its final outputs and state can be read.
+	 * Standard output is discarded for the calling thread only, because recording replaces
+	 * System.out for the whole JVM, and errors in the workflow are thrown rather than printed.
+	 */
+	private Actor _runWorkflowInProcess(Map<String,Object> inputValues) throws Exception {
 
-		// update stored values for state variables
-		ActorState state = metadata.getActorState();
+		String workflowFile = _qualifyWorkflowFile(resolveWorkflowFile());
+
+		Map<String,String> importMappings = new HashMap<String,String>();
+		importMappings.put("actors", "classpath:/org/restflow/java/");
+		importMappings.putAll(resolveImportMappings());
+		importMappings.put("workspace", Uri.extractParent(workflowFile));
 		
-		Map<String, Boolean> inputEnableMap = state.getInputEnableMap();
-		if (inputEnableMap != null) {
+		WorkflowRunner.Builder wrb = new WorkflowRunner.Builder()
+			.workflowTemplate(_getWorkflowTemplate(workflowFile, importMappings))
+			.workflowDefinitionPath(workflowFile)
+			.workflowName(resolveWorkflowName())
+			.inputBindings(inputValues)
+			.importSchemeResourceMap(importMappings)
+			.recordStdout(false)
+			.rethrowExceptions(true);
+		
+		String baseDirectory = resolveBaseDirectory();
+		if (baseDirectory != null) {
+			wrb.runsDirectory(baseDirectory).runName("1");
+		}
 
-			for (String label : inputEnableMap.keySet()) {
+		Boolean enableTrace = resolveEnableTrace();
+		if (enableTrace != null && enableTrace) {
+			wrb.traceReport(true);
+		}
 
-				Boolean inputEnable = inputEnableMap.get(label);
-				if (inputEnable == true) {
-					_actorStatus.enableInput(label);
-				} else {
-					_actorStatus.disableInput(label);
-				}
+		final WorkflowRunner runner = wrb.build();
+		final Actor[] workflow = new Actor[1];
+		StdoutRouter.discardStdout(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {
+				workflow[0] = runner.run();
 			}
+		});
+		
+		return workflow[0];
+	}
+
+	// parses the workflow definition unless it was last parsed with the same file and mappings
+	private synchronized WorkflowTemplate _getWorkflowTemplate(String workflowFile, 
+			Map<String,String> importMappings) throws Exception {
+		
+		String key = workflowFile + " " + new TreeMap<String,String>(importMappings);
+		if (_workflowTemplate == null || !key.equals(_workflowTemplateKey)) {
+			_workflowTemplate = compileWorkflowTemplate(workflowFile, importMappings);
+			_workflowTemplateKey = key;
 		}
 		
-		Map<String, Boolean> outputEnableMap = state.getOutputEnableMap();
-		for (String label : outputEnableMap.keySet()) {
-			
-			if ( outputEnableMap.get(label) == true ) {
-				_actorStatus.enableOutput(label);
-			} else {
-				_actorStatus.disableOutput(label);				
-			}
-		}		
+		return _workflowTemplate;
+	}
 
-		_state = ActorFSM.STEPPED;
+	/**
+	 * Parses the workflow definition run by in-process steps.
+	 */
+	protected WorkflowTemplate compileWorkflowTemplate(String workflowFile, 
+			Map<String,String> importMappings) throws Exception {
+		return WorkflowTemplate.compile(workflowFile, null, importMappings);
+	}
+
+	// adds the file scheme to workflow file paths without one as org.restflow.RestFlow does 
+	private static String _qualifyWorkflowFile(String workflowFile) {
+		if (workflowFile.contains(":")) {
+			return workflowFile;
+		} else {
+			return "file:" + workflowFile;
+		}
 	}
 	
 	public synchronized void wrapup() throws Exception {		
@@ -238,6 +356,23 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 	
 	protected synchronized void bindResourceMapToArgs( List<String> restflowArgs  ) {
 		List<String> resourceList = new Vector<String>();
+		Map<String, String> thisResourceMap = resolveImportMappings();
+		
+		for (String resourceName : thisResourceMap.keySet()) {
+			String resourcePath = thisResourceMap.get(resourceName);
+			resourceList.add("-import-map");
+			resourceList.add( resourceName + "="+ resourcePath);			
+		}
+
+		restflowArgs.addAll(resourceList);
+	}
+
+	/**
+	 * Returns the import mappings of the workflow context with the overrides given by
+	 * restflow-importMapOverride applied, omitting the workspace mapping. 
+	 */
+	@SuppressWarnings("unchecked")
+	protected synchronized Map<String,String> resolveImportMappings() {
 		Map<String, String> parentResourceMap = _workflowContext.getImportMappings();
 		
 		Map<String, String> thisResourceMap = new HashMap<String,String>();
@@ -251,14 +386,9 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 		if (importMapOverrides != null)
 			thisResourceMap.putAll( importMapOverrides );
 		
-		for (String resourceName : thisResourceMap.keySet()) {
-			if (resourceName == "workspace") continue;
-			String resourcePath = thisResourceMap.get(resourceName);
-			resourceList.add("-import-map");
-			resourceList.add( resourceName + "="+ resourcePath);			
-		}
-
-		restflowArgs.addAll(resourceList);
+		thisResourceMap.remove("workspace");
+		
+		return thisResourceMap;
 	}
 
 	
@@ -286,6 +416,22 @@ public class RestFlowActor extends AbstractActor implements Cloneable {
 	
 	
 
+	private synchronized RunMode resolveRunMode() throws Exception {
+		String runMode;
+		runMode = (String)_inputValues.get(VARNAME_WORKFLOW_RUN_MODE);	
+		if (runMode == null) {
+			runMode = (String)_constants.get(VARNAME_WORKFLOW_RUN_MODE);
+		}
+		
+		if (runMode == null || runMode.equals("process")) {
+			return RunMode.PROCESS;
+		} else if (runMode.equals("inprocess")) {
+			return RunMode.IN_PROCESS;
+		} else {
+			throw new Exception("Run mode string must be one of process or inprocess.");
+		}
+	}
+
 	private synchronized Boolean resolveGenerateDot() {
 		Boolean dot;
 		dot = (Boolean)_inputValues.get(VARNAME_WORKFLOW_GENERATE_DOT);	
@@ -0,0 +1,70 @@
+package org.restflow.actors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Runs the concurrent actor steps of the nodes in a workflow on reusable threads
+ * rather than on a new thread per step.  The pool grows to the largest number of
+ * steps running at once, so steps that block (e.g. on nested workflows) never wait
+ * for one another, and threads idle for a minute are released.  The underlying
+ * executor is created on first use and discarded by shutdown(), after which a 
+ * later step creates a new one.
+ * 
+ * This class is thread safe.  Its single mutable field is synchronized on the instance.
+ */
+@ThreadSafe()
+public class StepRunnerPool implements Executor {
+
+	/*************************
+	 *  private final fields *
+	 *************************/
+	private static final long IDLE_THREAD_SECONDS = 60;
+	private final AtomicInteger _threadCount = new AtomicInteger(0);
+	
+	/*******************
+	 *  private fields *
+	 *******************/
+	@GuardedBy("this") private ExecutorService _executor;
+
+	/**********************
+	 *  lifecycle methods *
+	 **********************/
+
+	@Override
+	public synchronized void execute(Runnable runner) {
+		
+		if (_executor == null) {
+			_executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 
+					IDLE_THREAD_SECONDS, TimeUnit.SECONDS, 
+					new SynchronousQueue<Runnable>(),
+					new StepRunnerThreadFactory());
+		}
+		
+		_executor.execute(runner);
+	}
+
+	public synchronized void shutdown() {
+		if (_executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+	}
+	
+	// creates daemon threads so that an undisposed workflow cannot keep the JVM running
+	private class StepRunnerThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "StepRunner-" + _threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
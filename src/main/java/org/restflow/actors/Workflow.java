@@ -77,6 +77,8 @@ public class Workflow extends AbstractActor {
 	private boolean 	_showPreambleReport = true;
 	private boolean 	_showFinalReport = true;
 	
+	private final StepRunnerPool _stepRunnerPool = new StepRunnerPool();
+	
 	///////////////////////////////////////////////////////////////////////////
 	////                  private final class fields                       ////
 
@@ -289,6 +291,11 @@ public class Workflow extends AbstractActor {
 		return new ImmutableList<WorkflowNode>(_sinks);
 	}
 
+	// not synchronized so that nodes may submit steps while the workflow is running
+	public StepRunnerPool getStepRunnerPool() {
+		return _stepRunnerPool;
+	}
+
 	///////////////////////////////////////////////////////////////////////////
 	////               public actor lifecycle methods                      ////
 	
@@ -545,8 +552,31 @@ public class Workflow extends AbstractActor {
 		
 		Contract.requires(_state == ActorFSM.INITIALIZED || _state == ActorFSM.STEPPED);
 
-		super.wrapup();
-		
+		Exception failure = null;
+		try {
+			super.wrapup();
+		} catch (Exception e) {
+			failure = e;
+		}
+
+		// make sure the trace is complete before it can be queried, even if wrapping up
+		// failed, and report any failure to record it
+		if (_node == null && _recorder != null) {
+			try {
+				_recorder.flush();
+			} catch (Exception e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
 		_state = ActorFSM.WRAPPED_UP;
 	}
 	
@@ -562,6 +592,8 @@ public class Workflow extends AbstractActor {
 		
 		_director.dispose();
 		
+		_stepRunnerPool.shutdown();
+		
 		_state = ActorFSM.DISPOSED;
 	}
 
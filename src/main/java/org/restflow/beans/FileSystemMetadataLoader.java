@@ -63,6 +63,7 @@ public class FileSystemMetadataLoader  {
 	 * Errors generated when the metadata was loaded. 
 	 */
 	public List<String> getRestoreErrors() {
+		_metadata.restoreAll();
 		return _metadata.getRestoreErrors(); 
 	}
 	
@@ -80,6 +80,21 @@ public abstract class AbstractPacket implements Packet {
 		return Arrays.copyOf(_metadataValues, _metadataValues.length);
 	}
 
+	/** @return The number of metadata items associated with data in the packet. */
+	public int getMetadataCount() {
+		return _metadataKeys.length;
+	}
+
+	/** @return The name of the metadata item at the given index, without copying the names. */
+	public String getMetadataKey(int index) {
+		return _metadataKeys[index];
+	}
+
+	/** @return The value of the metadata item at the given index, without copying the values. */
+	public Object getMetadataValue(int index) {
+		return _metadataValues[index];
+	}
+
 	public Protocol getProtocol() {
 		return _protocol;
 	}
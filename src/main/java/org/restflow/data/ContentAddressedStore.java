@@ -0,0 +1,145 @@
+package org.restflow.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Stores the contents of published files under the SHA-256 digest of their bytes so
+ * that identical files published during a run occupy a single file on disk.  Each blob
+ * is kept in a subdirectory of the store named for the first two hex digits of its
+ * digest, and published files are hard links to (or copies of) the blobs.
+ *
+ * Blobs are always copies of the files stored, never links to them, and are made read
+ * only before they are placed in the store, so no writable path to a blob is ever
+ * handed out and blobs are never modified once stored.  Each blob is first written to
+ * a uniquely named temporary file in the store and then linked into place only if no
+ * blob with the same digest exists, so concurrent writers of the same content never
+ * see a partially written blob and never replace one another's blobs.
+ *
+ * This class is thread safe.  Its only field is final and immutable, and all other
+ * coordination is through atomic file system operations.
+ */
+@ThreadSafe()
+public class ContentAddressedStore {
+
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final File _directory;
+
+	public ContentAddressedStore(File directory) {
+		_directory = directory;
+	}
+
+	public File getDirectory() {
+		return _directory;
+	}
+
+	/**
+	 * Computes the digest of the file by streaming its contents once.
+	 */
+	public static String digest(File file) throws IOException {
+
+		MessageDigest messageDigest = _newMessageDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		InputStream stream = new FileInputStream(file);
+		try {
+			for (int count = stream.read(buffer); count != -1; count = stream.read(buffer)) {
+				messageDigest.update(buffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+
+		return _toHex(messageDigest.digest());
+	}
+
+	public File getBlob(String digest) {
+		return new File(_directory, digest.substring(0, 2) + File.separator + digest.substring(2));
+	}
+
+	/**
+	 * Adds a read-only copy of the file to the store if no blob with the given digest
+	 * is stored yet, and returns the blob.
+	 */
+	public File put(File source, String digest) throws IOException {
+
+		File blob = getBlob(digest);
+
+		if (blob.exists()) {
+			return blob;
+		}
+
+		blob.getParentFile().mkdirs();
+		File temporary = File.createTempFile(digest.substring(2), ".tmp", blob.getParentFile());
+
+		try {
+			Files.copy(source.toPath(), temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			temporary.setReadOnly();
+			_createIfAbsent(temporary, blob);
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+
+		return blob;
+	}
+
+	/**
+	 * Stores the contents of the file and returns its digest.
+	 */
+	public String put(File source) throws IOException {
+		String digest = digest(source);
+		put(source, digest);
+		return digest;
+	}
+
+	// places the temporary file at the blob path unless a blob is already there, in which
+	// case the blob stored concurrently under the same digest has identical contents
+	private static void _createIfAbsent(File temporary, File blob) throws IOException {
+
+		// creating a link fails atomically if the blob exists
+		try {
+			Files.createLink(blob.toPath(), temporary.toPath());
+			return;
+		} catch (FileAlreadyExistsException e) {
+			return;
+		} catch (IOException e) {
+		} catch (UnsupportedOperationException e) {
+		}
+
+		// without hard links fall back to a move that does not replace an existing blob
+		try {
+			Files.move(temporary.toPath(), blob.toPath());
+		} catch (FileAlreadyExistsException e) {
+		}
+	}
+
+	private static MessageDigest _newMessageDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(DIGEST_ALGORITHM + " digests are not supported by this JVM", e);
+		}
+	}
+
+	private static String _toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] 		= HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] 	= HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
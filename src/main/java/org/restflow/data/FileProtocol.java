@@ -1,25 +1,85 @@
 package org.restflow.data;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import net.jcip.annotations.ThreadSafe;
 
 import org.apache.commons.io.FileUtils;
 import org.restflow.actors.Actor;
+import org.restflow.metadata.FileSystemMetadataManager;
 import org.restflow.nodes.WorkflowNode;
 import org.restflow.util.PortableIO;
 import org.springframework.context.ApplicationContextAware;
 
 
 /**
- * This class is thread safe.  Its single mutable field is volatile and refers to a 
- * thread safe class.
+ * Publishes files and directories to the run directory and delivers them to the step
+ * directories of subscribing actors.  The publish mode determines how files are placed 
+ * in the run directory:
+ * 
+ *   COPY     - the published file is a copy of the file output by the actor (the default)
+ *   HARDLINK - the published file is a hard link to the output file, or a copy if 
+ *              the two are on different file systems
+ *   SYMLINK  - the published file is a symbolic link to the output file
+ *   MOVE     - the output file is moved to the run directory
+ * 
+ * In every mode but COPY, subscribers receive hard links (or symbolic links in SYMLINK 
+ * mode) to the published files rather than copies, unless the input of the actor is 
+ * declared mutable, in which case the actor receives a copy it may safely modify.
+ * 
+ * When deduplication is enabled, published files are placed in a content-addressed 
+ * store under the .metadata directory of the run and the files in the run directory 
+ * are links to the stored blobs, so identical products occupy a single file on disk.
+ * The blobs are read-only copies of the output files, so published files and the links
+ * to them delivered to subscribers cannot be modified in place.
+ * The digest of each deduplicated file is recorded with its resource in the trace.
+ * 
+ * This class is thread safe.  Its mutable fields are volatile and refer to immutable
+ * or thread safe objects.
  */
 @ThreadSafe()
 public class FileProtocol extends AbstractProtocol implements ApplicationContextAware {
 
+	public enum PublishMode {
+		COPY,
+		HARDLINK,
+		SYMLINK,
+		MOVE
+	}
+	
+	public static final String CONTENT_STORE_DIRECTORY = "blobs";
+	
+	private volatile PublishMode _publishMode = PublishMode.COPY;
+	private volatile boolean _deduplicate = false;
+	
+	public void setPublishMode(PublishMode mode) {
+		_publishMode = mode;
+	}
+	
+	public PublishMode getPublishMode() {
+		return _publishMode;
+	}
+
+	public void setDeduplicate(boolean deduplicate) {
+		_deduplicate = deduplicate;
+	}
+	
+	public boolean isDeduplicate() {
+		return _deduplicate;
+	}
+	
+	public ContentAddressedStore getContentStore() {
+		return new ContentAddressedStore(new File(_context.getRunDirectoryPath() + 
+				FileSystemMetadataManager.METADATA_DIR + CONTENT_STORE_DIRECTORY));
+	}
+
 	@Override
 	public void validateOutflowUriTemplate(WorkflowNode node, String label,
 			UriTemplate uriTemplate) throws Exception {
@@ -66,21 +126,34 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 
 			File localResource = (File)data;
 			
-			// if the resource is a single file, copy it to the published location
+			// if the resource is a single file, publish it to the published location
 			if (localResource.isFile()) {
 
-				FileUtils.copyFile(localResource, publishedResource);
-				resource = new PublishedResource(data, uri, uriTemplate.getReducedPath(), true);
+				String digest = _publishFile(localResource, publishedResource);
+				File publishedFile = (_publishMode == PublishMode.MOVE) ? publishedResource : localResource;
+				resource = new PublishedResource(publishedFile, uri, uriTemplate.getReducedPath(), true, digest);
    			    packet = new SingleResourcePacket(resource, this, uriTemplate.getVariableNames(), variableValues);
 			
-			// if it is a directory then recursively copy the whole directory tree
+			// if it is a directory then recursively publish the whole directory tree
 			} else if (localResource.isDirectory()) {
 				
+				File listedDirectory = localResource;
+				Map<String,String> digests = new HashMap<String,String>();
+				
 				if (! (localResource.getAbsolutePath()).equals(publishedResource.getAbsolutePath())) {
-					FileUtils.copyDirectory(localResource, publishedResource);
+					if (_deduplicate) {
+						_publishDeduplicatedDirectory(localResource, publishedResource, digests);
+					} else {
+						_publishDirectory(localResource, publishedResource);
+					}
+					if (_publishMode == PublishMode.MOVE) {
+						listedDirectory = publishedResource;
+					}
+				} else if (_deduplicate) {
+					_storeDirectoryContents(publishedResource, digests);
 				}
 				
-				_addDirectoryOfResources(resources, uri, uriTemplate.getReducedPath(), localResource);
+				_addDirectoryOfResources(resources, uri, uriTemplate.getReducedPath(), listedDirectory, digests);
 				packet = new MultiResourcePacket(resources, this, uriTemplate.getVariableNames(), variableValues);
 				
 			} else {
@@ -88,10 +161,14 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 			}
 		// if the resource is not a File object then publish its string value to a file
 		} else {
+			String digest = null;
 			if (data != null) {
 				FileUtils.writeStringToFile(publishedResource, String.valueOf(data));
+				if (_deduplicate) {
+					digest = _storeFileContents(publishedResource);
+				}
 			}
-			resource = new PublishedResource(data, uri, uriTemplate.getReducedPath(), true);
+			resource = new PublishedResource(data, uri, uriTemplate.getReducedPath(), true, digest);
 			resources.add(resource);
 			packet = new MultiResourcePacket(resources, this, uriTemplate.getVariableNames(), variableValues);
 		}
@@ -101,7 +178,8 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 		return packet;
 	}
 	
-	private void _addDirectoryOfResources(Collection<PublishedResource> resources, Uri baseUri, String baseBinding, File directory) {
+	private void _addDirectoryOfResources(Collection<PublishedResource> resources, Uri baseUri, String baseBinding, 
+			File directory, Map<String,String> digests) {
 		
 		PublishedResource resource = new PublishedResource(directory, baseUri, baseBinding, true);
 		
@@ -112,9 +190,10 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 			Uri uri = new Uri(baseUri + "/" + name);
 			String binding = baseBinding + "/" + name;
 			if (item.isDirectory()) {
-				_addDirectoryOfResources(resources, uri, binding, item);
+				_addDirectoryOfResources(resources, uri, binding, item, digests);
 			} else {
-				resource = new PublishedResource(item, uri, binding, true);
+				String digest = digests.get(_getPublishedFile(uri).getAbsolutePath());
+				resource = new PublishedResource(item, uri, binding, true, digest);
 				resources.add(resource);
 			}
 		}
@@ -154,7 +233,7 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 					throw new Exception("File " + localPath + " already exists in run directory." );
 				}
 				
-				FileUtils.copyFile(inFile, duplicateFile);
+				_deliverFile(inFile, duplicateFile, actor.hasMutableInput(label));
 				
 				packetPayload = duplicateFile;
 			
@@ -168,7 +247,7 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 
 			// duplicate the directory to the current step directory
 			File duplicateDirectory = new File(actor.getNextStepDirectory() + "/" + localPath);				
-			FileUtils.copyDirectory(inFile, duplicateDirectory);
+			_deliverDirectory(inFile, duplicateDirectory, actor.hasMutableInput(label));
 			
 			packetPayload = duplicateDirectory;
 			
@@ -180,6 +259,187 @@ public class FileProtocol extends AbstractProtocol implements ApplicationContext
 		return packetPayload;
 	}
 
+	///////////////////////////////////////////////////////////////////////////
+	////                   private file placement methods                  ////
+
+	private File _getPublishedFile(Uri uri) {
+		return new File(_context.getRunDirectoryPath() + "/" + uri.getPath());
+	}
+	
+	// places the file at the published location and returns its digest if deduplicated
+	private String _publishFile(File source, File target) throws IOException {
+		
+		if (_deduplicate) {
+			return _publishDeduplicatedFile(source, target);
+		}
+		
+		switch (_publishMode) {
+		
+			case HARDLINK:
+				_linkOrCopyFile(source, target);
+				break;
+				
+			case SYMLINK:
+				_symbolicLink(source, target);
+				break;
+				
+			case MOVE:
+				target.getParentFile().mkdirs();
+				Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				break;
+				
+			default:
+				FileUtils.copyFile(source, target);
+		}
+		
+		return null;
+	}
+
+	private String _publishDeduplicatedFile(File source, File target) throws IOException {
+
+		// the blob is a read-only copy so that no actor can modify it through its output file
+		String digest = ContentAddressedStore.digest(source);
+		File blob = getContentStore().put(source, digest);
+		
+		if (_publishMode == PublishMode.SYMLINK) {
+			_symbolicLink(blob, target);
+		} else {
+			_linkOrCopyFile(blob, target);
+		}
+		
+		if (_publishMode == PublishMode.MOVE && 
+				! source.getAbsolutePath().equals(target.getAbsolutePath())) {
+			Files.delete(source.toPath());
+		}
+		
+		return digest;
+	}
+	
+	private void _publishDeduplicatedDirectory(File source, File target, Map<String,String> digests) throws IOException {
+		
+		target.mkdirs();
+		
+		for (File item : source.listFiles()) {
+			File targetItem = new File(target, item.getName());
+			if (item.isDirectory()) {
+				_publishDeduplicatedDirectory(item, targetItem, digests);
+			} else {
+				digests.put(targetItem.getAbsolutePath(), _publishDeduplicatedFile(item, targetItem));
+			}
+		}
+		
+		if (_publishMode == PublishMode.MOVE) {
+			FileUtils.deleteDirectory(source);
+		}
+	}
+
+	// replaces a file already in the run directory with a link to the stored blob
+	private String _storeFileContents(File file) throws IOException {
+		String digest = ContentAddressedStore.digest(file);
+		File blob = getContentStore().put(file, digest);
+		_linkOrCopyFile(blob, file);
+		return digest;
+	}
+
+	private void _storeDirectoryContents(File directory, Map<String,String> digests) throws IOException {
+		for (File item : directory.listFiles()) {
+			if (item.isDirectory()) {
+				_storeDirectoryContents(item, digests);
+			} else {
+				digests.put(item.getAbsolutePath(), _storeFileContents(item));
+			}
+		}
+	}
+	
+	private void _publishDirectory(File source, File target) throws IOException {
+		
+		switch (_publishMode) {
+		
+			case HARDLINK:
+				_linkOrCopyDirectory(source, target);
+				break;
+				
+			case SYMLINK:
+				if (target.exists()) {
+					FileUtils.copyDirectory(source, target);
+				} else {
+					_symbolicLink(source, target);
+				}
+				break;
+				
+			case MOVE:
+				if (target.exists()) {
+					FileUtils.copyDirectory(source, target);
+					FileUtils.deleteDirectory(source);
+				} else {
+					target.getParentFile().mkdirs();
+					FileUtils.moveDirectory(source, target);
+				}
+				break;
+				
+			default:
+				FileUtils.copyDirectory(source, target);
+		}
+	}
+	
+	// copies the published file only if the actor may modify it or files are always copied
+	private void _deliverFile(File published, File target, boolean mutable) throws IOException {
+		
+		if (mutable || _publishMode == PublishMode.COPY) {
+			FileUtils.copyFile(published, target);
+		} else if (_publishMode == PublishMode.SYMLINK) {
+			_symbolicLink(published, target);
+		} else {
+			_linkOrCopyFile(published, target);
+		}
+	}
+	
+	private void _deliverDirectory(File published, File target, boolean mutable) throws IOException {
+		
+		if (mutable || _publishMode == PublishMode.COPY) {
+			FileUtils.copyDirectory(published, target);
+		} else if (_publishMode == PublishMode.SYMLINK) {
+			_symbolicLink(published, target);
+		} else {
+			_linkOrCopyDirectory(published, target);
+		}
+	}
+
+	private static void _linkOrCopyFile(File source, File target) throws IOException {
+		
+		target.getParentFile().mkdirs();
+		Files.deleteIfExists(target.toPath());
+		
+		// hard links cannot span file systems and are not supported by all of them
+		try {
+			Files.createLink(target.toPath(), source.toPath());
+		} catch (IOException e) {
+			FileUtils.copyFile(source, target);
+		} catch (UnsupportedOperationException e) {
+			FileUtils.copyFile(source, target);
+		}
+	}
+	
+	private static void _linkOrCopyDirectory(File source, File target) throws IOException {
+		
+		target.mkdirs();
+		
+		for (File item : source.listFiles()) {
+			File targetItem = new File(target, item.getName());
+			if (item.isDirectory()) {
+				_linkOrCopyDirectory(item, targetItem);
+			} else {
+				_linkOrCopyFile(item, targetItem);
+			}
+		}
+	}
+
+	private static void _symbolicLink(File source, File target) throws IOException {
+		target.getParentFile().mkdirs();
+		Files.deleteIfExists(target.toPath());
+		Files.createSymbolicLink(target.toPath(), source.getAbsoluteFile().toPath());
+	}
+	
 	public String getResourceSummaryLine(PublishedResource resource) {
 		return resource.getUri().toString();
 	}
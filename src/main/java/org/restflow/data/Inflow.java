@@ -60,6 +60,10 @@ public class Inflow implements Comparable<Inflow> {
 		return _uriTemplate.getVariableNames();
 	}
 
+	public String getVariableName(int index) {
+		return _uriTemplate.getVariableName(index);
+	}
+
 	public String getPath() {
 		return _uriTemplate.getPath();
 	}
@@ -1,23 +1,124 @@
 package org.restflow.data;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A first-in, first-out queue of the packets waiting to be received on one inflow of a
+ * node.  Packets are held in a circular array that doubles in size when full, so adding
+ * a packet and removing the packet at the head of the queue take constant time and
+ * allocate nothing once the array has grown to the largest number of packets queued.
+ *
+ * This class is not thread safe.  Each instance must be used by one thread at a time,
+ * or under a lock held by its owner.
+ */
+@NotThreadSafe()
+public class InflowQueue {
+
+	private static final int INITIAL_CAPACITY = 8;
 
-@SuppressWarnings("serial")
-public class InflowQueue extends LinkedList<Packet> {
-	
 	private final String _nodeName;
 	private final String _label;
-	
+
+	private Packet[] _packets = new Packet[INITIAL_CAPACITY];
+	private int _head = 0;
+	private int _size = 0;
+
 	public InflowQueue(String nodeName, String label) {
 		_nodeName = nodeName;
 		_label = label;
 	}
-	
+
 	public String getNodeName() {
 		return _nodeName;
 	}
-	
+
 	public String getLabel() {
 		return _label;
 	}
+
+	/**
+	 * Adds the packet to the tail of the queue.
+	 */
+	public void add(Packet packet) {
+
+		if (_size == _packets.length) {
+			_grow();
+		}
+
+		_packets[(_head + _size) & (_packets.length - 1)] = packet;
+		_size++;
+	}
+
+	/**
+	 * Returns the packet at the head of the queue without removing it, or null if the
+	 * queue is empty.
+	 */
+	public Packet peek() {
+		return (_size == 0) ? null : _packets[_head];
+	}
+
+	/**
+	 * Removes and returns the packet at the head of the queue, or returns null if the
+	 * queue is empty.
+	 */
+	public Packet poll() {
+
+		if (_size == 0) {
+			return null;
+		}
+
+		Packet packet = _packets[_head];
+		_packets[_head] = null;
+		_head = (_head + 1) & (_packets.length - 1);
+		_size--;
+
+		return packet;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	public void clear() {
+
+		for (int i = 0; i < _size; i++) {
+			_packets[(_head + i) & (_packets.length - 1)] = null;
+		}
+
+		_head = 0;
+		_size = 0;
+	}
+
+	/**
+	 * Returns a new list of the queued packets from head to tail.
+	 */
+	public List<Packet> toList() {
+
+		List<Packet> packets = new ArrayList<Packet>(_size);
+		for (int i = 0; i < _size; i++) {
+			packets.add(_packets[(_head + i) & (_packets.length - 1)]);
+		}
+
+		return packets;
+	}
+
+	// doubles the capacity of the array, moving the head of the queue to index zero
+	private void _grow() {
+
+		Packet[] packets = new Packet[_packets.length * 2];
+
+		int headLength = _packets.length - _head;
+		System.arraycopy(_packets, _head, packets, 0, headLength);
+		System.arraycopy(_packets, 0, packets, headLength, _head);
+
+		_packets = packets;
+		_head = 0;
+	}
 }
@@ -6,4 +6,5 @@ public class InputProperty extends BitPattern {
 	public static final int Nullable = 1;
 	public static final int Optional = 2;
 	public static final int DefaultReadinessFalse = 4;
+	public static final int Mutable = 8;
 }
\ No newline at end of file
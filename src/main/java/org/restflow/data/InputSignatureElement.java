@@ -13,6 +13,7 @@ public class InputSignatureElement extends AbstractSignatureElement {
 	private volatile Object _defaultValue = null;
 	private volatile boolean _defaultInputEnable = true;
 	private volatile String _localPath = "";
+	private volatile boolean _mutable = false;
 
 	public InputSignatureElement(String label) {
 		super(label);
@@ -41,4 +42,13 @@ public class InputSignatureElement extends AbstractSignatureElement {
 	public String getLocalPath() {
 		return _localPath;
 	}
+
+	// declares that the actor may modify the files it receives on this input
+	public void setMutable(boolean mutable) {
+		_mutable = mutable;
+	}
+
+	public boolean isMutable() {
+		return _mutable;
+	}
 }
@@ -170,14 +170,8 @@ public class Outflow implements ApplicationContextAware {
 			System.out.println("****** OUTPUT PACKET IS NULL ************");
 			Thread.dumpStack();
 			System.exit(1);
-		} else if (_outputPacket.getMetadataKeys() == null) {
-			System.out.println("****** METADATA KEYS IS NULL ************");
-			Thread.dumpStack();
-			System.exit(1);
 		}
 
-		int variableCount = _outputPacket.getMetadataKeys().length;
-
 		//TODO Remove scheme from metadata URIs
 		//TODO Add tests for nested workflows using file scheme in subworkflows
 //		for (int i = 0; i < variableCount; i++) {
@@ -9,6 +9,9 @@ public interface Packet {
 
 	String[] getMetadataKeys();
 	Object[] getMetadataValues();
+	int getMetadataCount();
+	String getMetadataKey(int index);
+	Object getMetadataValue(int index);
 	Protocol getProtocol();
 	PublishedResource getResource(String pathTemplate);
 	void setID(Long packetID);
@@ -15,6 +15,7 @@ public class PublishedResource {
 	private final Uri uri;
 	private final String key;
 	private final boolean referencesData;
+	private final String digest;
 
 	///////////////////////////////////////////////////////////////////
 	////                  public class constants                   ////
@@ -23,11 +24,16 @@ public class PublishedResource {
 	public static final Uri defaultUri = new Uri(defaultKey);
 	public static final Protocol defaultProtocol = AbstractPacket.defaultProtocol;
 	
-	public PublishedResource(Object data, Uri uri, String key, boolean referencesData) {
+	public PublishedResource(Object data, Uri uri, String key, boolean referencesData, String digest) {
 		this.data = data;
 		this.uri = uri;
 		this.key = key;
 		this.referencesData = referencesData;
+		this.digest = digest;
+	}
+
+	public PublishedResource(Object data, Uri uri, String key, boolean referencesData) {
+		this(data, uri, key, referencesData, null);
 	}
 
 	public PublishedResource(Object data, Uri uri, String key) {
@@ -58,6 +64,11 @@ public class PublishedResource {
 		return uri;
 	}
 
+	// the digest of the published file contents, or null if the contents are not stored by digest
+	public String getDigest() {
+		return digest;
+	}
+
 	public String toString() {
 		return defaultProtocol.getResourceSummaryLine(this);
 	}
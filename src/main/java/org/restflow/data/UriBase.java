@@ -164,8 +164,10 @@ public abstract class UriBase {
 			spp.path = uriString.substring(spp.scheme.length() + 1);
 		}
 		
-		// reduce any double-slashes in path to single slashes
-		spp.path = spp.path.replaceAll("//", "/");
+		// reduce any double-slashes in path to single slashes, compiling the pattern only if there are any
+		if (spp.path.indexOf("//") >= 0) {
+			spp.path = spp.path.replaceAll("//", "/");
+		}
 		
 		// return the scheme-path pair as a single return value
 		return spp;
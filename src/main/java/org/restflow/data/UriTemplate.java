@@ -139,6 +139,11 @@ public class UriTemplate extends UriBase {
 		return Arrays.copyOf(_variableNames, _variableNames.length);
 	}
 
+	/** @return The name of the variable at the given position in the URI template, without copying the names */
+	public String getVariableName(int index) {
+		return _variableNames[index];
+	}
+
 	/** 
 	 * @return true if the reduced paths of the two templates are identical, otherwise false
 	 */
@@ -28,6 +28,7 @@ public abstract class AbstractDirector implements Director  {
 	protected Workflow _workflow;
 	protected List<WorkflowNode> _nodes;
 	protected InflowToOutflowsMap _inflowToOutflowsMap;
+	protected RoutingTable _routingTable;
 	protected boolean _nodesStepOnce = false;
 	@GuardedBy("this") protected WorkflowContext _workflowContext;
 	
@@ -80,6 +81,7 @@ public abstract class AbstractDirector implements Director  {
 
 		_nodes = _workflow.getNodes();
 		_inflowToOutflowsMap = _workflow.getInflowToOutflowsMap();
+		_routingTable = new RoutingTable(_nodes, _inflowToOutflowsMap);
 
 //		if (_nodesStepOnce) {
 //			for (WorkflowNode node: _nodes) {
@@ -1,11 +1,11 @@
 package org.restflow.directors;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.restflow.actors.Workflow;
 import org.restflow.data.Inflow;
@@ -23,6 +23,12 @@ public class BufferedPublisher implements Publisher {
 	protected InflowToOutflowsMap _inflowToOutflowsMap;
 	private PublishSubscribeDirector _director;
 	List<InflowQueue> _packetQueues;
+
+	// subscriptions to each route ordered by node, and the subscriptions of each node
+	// in the order its inflows are flushed, both indexed by routing table id and built
+	// by elaborate()
+	private Subscription[][] _routeSubscriptions;
+	private Subscription[][] _nodeSubscriptions;
 	
 	public void setWorkflow(Workflow workflow) {
 		_inflowToOutflowsMap = workflow.getInflowToOutflowsMap();
@@ -57,6 +63,39 @@ public class BufferedPublisher implements Publisher {
 		_packetQueues.add(queue);
 	}
 	
+	public void elaborate(RoutingTable routingTable) throws Exception {
+
+		_routeSubscriptions = new Subscription[routingTable.getRouteCount()][];
+		for (int routeId = 0; routeId < routingTable.getRouteCount(); routeId++) {
+
+			List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+			Map<WorkflowNode, Map<String,InflowQueue>> subscriptionsForOutflow = 
+				_outflowToSubscriptionsMap.get(routingTable.getRoute(routeId).outflow);
+
+			if (subscriptionsForOutflow != null) {
+
+				// order the subscribers to the outflow by node
+				List<WorkflowNode> nodes = new ArrayList<WorkflowNode>(subscriptionsForOutflow.keySet());
+				Collections.sort(nodes);
+
+				for (WorkflowNode node : nodes) {
+					for (Map.Entry<String,InflowQueue> labelAndQueue : subscriptionsForOutflow.get(node).entrySet()) {
+						subscriptions.add(new Subscription(node, routingTable.nodeId(node), labelAndQueue.getKey(), labelAndQueue.getValue()));
+					}
+				}
+			}
+
+			_routeSubscriptions[routeId] = subscriptions.toArray(new Subscription[subscriptions.size()]);
+		}
+
+		// list the subscriptions of each node in the order of its inflows and their outflows
+		_nodeSubscriptions = new Subscription[routingTable.getNodeCount()][];
+		for (int nodeId = 0; nodeId < routingTable.getNodeCount(); nodeId++) {
+			_nodeSubscriptions[nodeId] = _orderNodeSubscriptions(routingTable.getNode(nodeId), nodeId);
+		}
+	}
+
 	public void clearPacketBuffers() {
 		
 		for (InflowQueue queue : _packetQueues) {
@@ -64,45 +103,31 @@ public class BufferedPublisher implements Publisher {
 		}
 	}
 
-	public boolean flushPacketToNode(WorkflowNode node) throws Exception {
+	public boolean flushPacketToNode(int nodeId) throws Exception {
 
 		boolean packetSent = false;
 
-		// get all of the input bindings for the node
-		for (Inflow inflow : node.getNodeInflows()) {
-
-			List<Outflow> outflows = _inflowToOutflowsMap
-					.get(inflow);
-
-			for (Outflow outflow : outflows) {
-				// get the subscriptions for the uri
-				Map<WorkflowNode, Map<String, InflowQueue>> subscriptionsForUri = _outflowToSubscriptionsMap
-						.get(outflow);
-
-				Map<String, InflowQueue> labelToBufferMapForUri = subscriptionsForUri
-						.get(node);
+		Subscription[] subscriptions = _nodeSubscriptions[nodeId];
+		if (subscriptions.length == 0) {
+			return false;
+		}
 
-				for (String label : labelToBufferMapForUri.keySet()) {
-					// check if the node is ready for more input on this binding
-					if (node.readyForInputPacket(label)) {
+		WorkflowNode node = subscriptions[0].node;
 
-						// get the buffer for this node
-						List<Packet> buffer = labelToBufferMapForUri.get(label);
+		for (Subscription subscription : subscriptions) {
 
-						// check if there is any data in the buffer
-						if (buffer != null && buffer.size() > 0) {
+			// check if the node is ready for more input on this binding
+			if (node.readyForInputPacket(subscription.label)) {
 
-							// get the next value from the buffer
-							Packet bufferedPacket = buffer.get(0);
-							buffer.remove(0);
+				// get the next value from the buffer if there is one
+				Packet bufferedPacket = subscription.queue.poll();
+				if (bufferedPacket != null) {
 
-							// send the value to the node
-							node.setInputPacket(label, bufferedPacket);
+					// send the value to the node
+					node.setInputPacket(subscription.label, bufferedPacket);
 
-							// note that data was flushed to node
-							packetSent = true;
-						}
-					}
+					// note that data was flushed to node
+					packetSent = true;
 				}
 			}
 		}
@@ -110,49 +135,30 @@ public class BufferedPublisher implements Publisher {
 		return packetSent;
 	}
 	
-	public void publish(Outflow outflow, Packet packet) throws Exception {
+	public void publish(RoutingTable.Route route, Packet packet) throws Exception {
 		
-		// get the subscriptions for the uri
-		Map<WorkflowNode, Map<String, InflowQueue>> subscriptionsForUri = 
-			_outflowToSubscriptionsMap.get(outflow);
+		// get the subscriptions for the route
+		Subscription[] subscriptions = _routeSubscriptions[route.id];
 		
-		// return immediately if there are not subscribers for the uri
-		if (subscriptionsForUri == null) {
+		// return immediately if there are not subscribers for the route
+		if (subscriptions.length == 0) {
 			return;
 		}
 
-		// loop over the subscribers and newly published value to
-		// the list of value to send to each 
-		for (WorkflowNode node : subscriptionsForUri.keySet()) {
-			
-			Map<String,InflowQueue> labelToBufferMapForUri =
-				subscriptionsForUri.get(node);
-			
-			for (InflowQueue buffer : labelToBufferMapForUri.values()) {
-				buffer.add(packet);
-			}
+		// add the newly published value to the list of values to send to each subscriber
+		for (Subscription subscription : subscriptions) {
+			subscription.queue.add(packet);
 		}
 
 		// loop over the subscribers again and send each the value
 		// published to them least recently 
+		for (Subscription subscription : subscriptions) {
 		
-		Set<WorkflowNode> buffers = subscriptionsForUri.keySet();
-		List<WorkflowNode> list = new LinkedList<WorkflowNode>(buffers);
-		Collections.sort(list);
+			if (_director.nodeReadyForPacketOnLabel(subscription.node, subscription.label)) {
 		
-		for (WorkflowNode node : list) {
-			
-			Map<String, InflowQueue> labelToBufferMapForUri = 
-					subscriptionsForUri.get(node);
-
-			for (String label : labelToBufferMapForUri.keySet()) {
-
-				if (_director.nodeReadyForPacketOnLabel(node, label)) {
-
-					List<Packet> buffer = labelToBufferMapForUri.get(label);
-					packet = buffer.get(0);
-					buffer.remove(0);
-					_director.update(node, label, packet);
+				Packet bufferedPacket = subscription.queue.poll();
+				if (bufferedPacket != null) {
+					_director.update(subscription.nodeId, subscription.label, bufferedPacket);
 				}
 			}
 		}
@@ -168,7 +174,7 @@ public class BufferedPublisher implements Publisher {
 			
 			if (queue.size() > 0) {
 				
-				List<Packet> unusedPackets = new LinkedList<Packet>(queue);
+				List<Packet> unusedPackets = queue.toList();
 				
 				unusedDataRecordList.add(new WrapupResult.UnusedDataRecord(
 							queue.getNodeName(),
@@ -180,4 +186,38 @@ public class BufferedPublisher implements Publisher {
 		
 		return new WrapupResult(unusedDataRecordList);
 	}
+
+	// lists the subscriptions of the node in the order the node's inflows are flushed
+	private Subscription[] _orderNodeSubscriptions(WorkflowNode node, int nodeId) {
+
+		List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+		for (Inflow inflow : node.getNodeInflows()) {
+			List<Outflow> outflows = _inflowToOutflowsMap.get(inflow);
+			if (outflows == null) continue;
+			for (Outflow outflow : outflows) {
+				Map<String, InflowQueue> labelToBufferMap = _outflowToSubscriptionsMap.get(outflow).get(node);
+				for (Map.Entry<String,InflowQueue> labelAndQueue : labelToBufferMap.entrySet()) {
+					subscriptions.add(new Subscription(node, nodeId, labelAndQueue.getKey(), labelAndQueue.getValue()));
+				}
+			}
+		}
+
+		return subscriptions.toArray(new Subscription[subscriptions.size()]);
+	}
+
+	private static class Subscription {
+
+		final WorkflowNode node;
+		final int nodeId;
+		final String label;
+		final InflowQueue queue;
+
+		Subscription(WorkflowNode node, int nodeId, String label, InflowQueue queue) {
+			this.node = node;
+			this.nodeId = nodeId;
+			this.label = label;
+			this.queue = queue;
+		}
+	}
 }
@@ -1,17 +1,20 @@
 package org.restflow.directors;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.restflow.data.Inflow;
 import org.restflow.data.InflowToOutflowsMap;
-import org.restflow.data.Outflow;
 import org.restflow.data.Packet;
 import org.restflow.enums.ChangedState;
 import org.restflow.enums.WorkflowModified;
-import org.restflow.nodes.NodeInput;
 import org.restflow.metadata.WrapupResult;
 import org.restflow.nodes.BufferNode;
 import org.restflow.nodes.WorkflowNode;
@@ -23,7 +26,8 @@ public class DataDrivenDirector extends AbstractDirector {
 	///////////////////////////////////////////////////////////////////////////
 	////                    private instance fields                        ////
 
-	private OutflowSubscriptions _outflowSubscriptions;
+	private boolean			_parallel;
+	private ExecutorService	_executor;
 	
 	///////////////////////////////////////////////////////////////////////////
 	////              public constructors and clone methods                ////
@@ -34,6 +38,40 @@ public class DataDrivenDirector extends AbstractDirector {
 	public DataDrivenDirector() {
 		super();
 		_state = DirectorFSM.CONSTRUCTED;
+		_parallel = false;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////
+	///   workflow configuration setters -- PROPERTIES_UNSET state only    ////
+
+	/**
+	 * Runs the workflow in waves.  Each wave triggers every node that may be able to step,
+	 * the nodes other than buffer nodes in parallel on an executor, and then publishes the
+	 * outputs of the nodes one at a time in the order of the nodes.  Triggering a node only
+	 * touches the node's own inputs and outputs, and packets move between nodes only while
+	 * publishing, so the packets each node receives and the order it receives them in do
+	 * not depend on the timing of the steps.  A packet advances one node per wave rather
+	 * than through as many nodes as it can in one pass, so the order in which different
+	 * nodes step, and any output they write to the console, may differ from a sequential
+	 * run.  Unless an executor is provided the nodes are triggered on the process-wide
+	 * SharedNodeExecutor.
+	 */
+	public void setParallel(boolean parallel) {
+		Contract.requires(_state == DirectorFSM.CONSTRUCTED);
+		_parallel = parallel;
+	}
+	
+	/**
+	 * Sets the executor used to trigger nodes and enables parallel mode.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		Contract.requires(_state == DirectorFSM.CONSTRUCTED);
+		_executor = executor;
+		_parallel = true;
+	}
+	
+	public boolean isParallel() {
+		return _parallel;
 	}
 	
 	///////////////////////////////////////////////////////////////////////////
@@ -60,9 +98,6 @@ public class DataDrivenDirector extends AbstractDirector {
 			return WorkflowModified.TRUE;
 
 		} else {
-			
-			// create subscriptions for inflows on corresponding outflows
-			_outflowSubscriptions = new OutflowSubscriptions(_inflowToOutflowsMap);
 		
 			_state = DirectorFSM.ELABORATED;
 			
@@ -92,6 +127,12 @@ public class DataDrivenDirector extends AbstractDirector {
 		
 		_state = DirectorFSM.RUNNING;
 		
+		if (_parallel) {
+			_runWaves();
+			_state = DirectorFSM.RAN;
+			return;
+		}
+		
 		boolean workflowRunning;
 		
 		// execute outer loop of workflow run at least once
@@ -102,8 +143,10 @@ public class DataDrivenDirector extends AbstractDirector {
 			workflowRunning = false;
 			
 			// inner loop over nodes in the workflow graph
-			for (WorkflowNode node : _nodes) {
+			for (int nodeId = 0; nodeId < _routingTable.getNodeCount(); nodeId++) {
 
+				WorkflowNode node = _routingTable.getNode(nodeId);
+				
 				// attempt to step the current node
 				if (node.trigger()== ChangedState.TRUE ) {
 					workflowRunning = true;
@@ -111,7 +154,7 @@ public class DataDrivenDirector extends AbstractDirector {
 				
 				// attempt to publish the current node's outputs
 				// regardless of whether the node was just stepped above
-				if (node.outputsReady() && _publishOutputs(node)) {
+				if (node.outputsReady() && _publishOutputs(nodeId)) {
 					workflowRunning = true;
 				}
 			}
@@ -169,15 +212,13 @@ public class DataDrivenDirector extends AbstractDirector {
 	///////////////////////////////////////////////////////////////////////////
 	////                   private helper methods                          ////
 	
-	private boolean _allReceiversReady(List<NodeInput> subscriptions) throws Exception {
+	private boolean _allReceiversReady(RoutingTable.Route route) throws Exception {
 	
 		Contract.requires(_state == DirectorFSM.RUNNING);
 	
 		// make sure all receivers are ready
-		for (NodeInput nodeInput : subscriptions ) {
-			WorkflowNode node = nodeInput.getNode();
-			String inputLabel = nodeInput.getInputLabel();
-			if (node.readyForInputPacket(inputLabel) == false) {
+		for (int i = 0; i < route.receivers.length; i++) {
+			if (route.receivers[i].readyForInputPacket(route.receiverLabels[i]) == false) {
 				return false;
 			}
 		}
@@ -185,6 +226,144 @@ public class DataDrivenDirector extends AbstractDirector {
 		return true;
 	}
 
+	private void _runWaves() throws Exception {
+
+		Contract.requires(_state == DirectorFSM.RUNNING);
+		
+		if (_executor == null) {
+			_executor = SharedNodeExecutor.getExecutor();
+		}
+		
+		int nodeCount = _routingTable.getNodeCount();
+		
+		// create a task triggering each node other than the buffer nodes, which are
+		// quicker to trigger on this thread
+		List<Callable<ChangedState>> triggerTasks = new ArrayList<Callable<ChangedState>>(nodeCount);
+		for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+			final WorkflowNode node = _routingTable.getNode(nodeId);
+			
+			// resolve the qualified name of the node while this thread holds the lock on
+			// the workflow, which a node step on another thread could otherwise wait for
+			node.getQualifiedName();
+			
+			triggerTasks.add((node instanceof BufferNode) ? null : new Callable<ChangedState>() {
+				public ChangedState call() throws Exception {
+					return node.trigger();
+				}
+			});
+		}
+		
+		// nodes that may be able to step because they stepped, sent their outputs, or 
+		// received an input packet since they were last triggered
+		boolean[] mayStep = new boolean[nodeCount];
+		Arrays.fill(mayStep, true);
+		boolean allNodesTriggered = true;
+		
+		List<Integer> waveNodeIds = new ArrayList<Integer>(nodeCount);
+		List<Callable<ChangedState>> waveTasks = new ArrayList<Callable<ChangedState>>(nodeCount);
+
+		boolean workflowRunning;
+		
+		do {
+			
+			workflowRunning = false;
+			
+			// trigger the buffer nodes that may step on this thread and queue the others
+			for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+				if (mayStep[nodeId]) {
+					mayStep[nodeId] = false;
+					Callable<ChangedState> task = triggerTasks.get(nodeId);
+					if (task == null) {
+						if (_routingTable.getNode(nodeId).trigger() == ChangedState.TRUE) {
+							mayStep[nodeId] = true;
+							workflowRunning = true;
+						}
+					} else {
+						waveNodeIds.add(nodeId);
+						waveTasks.add(task);
+					}
+				}
+			}
+			
+			// trigger the other nodes in parallel
+			if (_triggerWave(waveNodeIds, waveTasks, mayStep)) {
+				workflowRunning = true;
+			}
+			waveNodeIds.clear();
+			waveTasks.clear();
+			
+			// publish the outputs of all nodes in node order
+			for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+				WorkflowNode node = _routingTable.getNode(nodeId);
+				if (node.outputsReady() && _publishOutputs(nodeId)) {
+					workflowRunning = true;
+					mayStep[nodeId] = true;
+					for (RoutingTable.Route route : _routingTable.routesFrom(nodeId)) {
+						for (int receiverId : route.receiverIds) {
+							if (receiverId >= 0) {
+								mayStep[receiverId] = true;
+							}
+						}
+					}
+				}
+			}
+			
+			// before concluding that the workflow has stopped, confirm that no node steps
+			if (!workflowRunning && !allNodesTriggered) {
+				Arrays.fill(mayStep, true);
+				workflowRunning = true;
+				allNodesTriggered = true;
+			} else {
+				allNodesTriggered = false;
+			}
+			
+		} while (workflowRunning);
+	}
+	
+	// Triggers the given nodes in parallel and waits for all of them to finish, marking
+	// the nodes that stepped as able to step again.  Throws the exception of the first 
+	// node in node order that failed, if any.
+	private boolean _triggerWave(List<Integer> nodeIds, List<Callable<ChangedState>> tasks, 
+			boolean[] mayStep) throws Exception {
+		
+		if (tasks.isEmpty()) {
+			return false;
+		}
+		
+		boolean nodeStepped = false;
+		
+		// trigger a lone node on this thread
+		if (tasks.size() == 1) {
+			if (tasks.get(0).call() == ChangedState.TRUE) {
+				mayStep[nodeIds.get(0)] = true;
+				nodeStepped = true;
+			}
+			return nodeStepped;
+		}
+		
+		List<Future<ChangedState>> results = _executor.invokeAll(tasks);
+		
+		for (int i = 0; i < results.size(); i++) {
+			
+			ChangedState triggered;
+			try {
+				triggered = results.get(i).get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) throw (Exception)cause;
+				if (cause instanceof Error) throw (Error)cause;
+				throw e;
+			}
+			
+			if (triggered == ChangedState.TRUE) {
+				mayStep[nodeIds.get(i)] = true;
+				nodeStepped = true;
+			}
+		}
+		
+		return nodeStepped;
+	}
+	
 	private void _insertBufferNodes() throws Exception {
 	
 		Contract.requires(_state == DirectorFSM.PROPERTIES_SET);
@@ -203,33 +382,27 @@ public class DataDrivenDirector extends AbstractDirector {
 		}
 	}
 
-	private boolean _publishOutputs(WorkflowNode node) throws Exception {
+	private boolean _publishOutputs(int nodeId) throws Exception {
 
 		Contract.requires(_state == DirectorFSM.RUNNING);
 
 		boolean published = false;
 
-		Map<String, Outflow> outflows = node.getOutflows();
-
-		// loop over all outputs from the node by output label
-		for (Outflow outflow : outflows.values()) {
+		WorkflowNode node = _routingTable.getNode(nodeId);
+		
+		// loop over the routes from each output of the node
+		for (RoutingTable.Route route : _routingTable.routesFrom(nodeId)) {
 
-			if (outflow.packetReady()) {
+			if (route.outflow.packetReady()) {
 				
-				// get the subscriptions for the uri
-				List<NodeInput> subscribedNodeInputs = _outflowSubscriptions
-						.findAllNodeInputsBoundToOutflow(outflow);
-	
-				// return immediately if there are not subscribers for the uri
-				if (subscribedNodeInputs != null
-						&& _allReceiversReady(subscribedNodeInputs)) {
+				// skip the output if there are no subscribers or one is not ready
+				if (route.hasReceivers() && _allReceiversReady(route)) {
 	
 					// get the object output to that binding
-					Packet packet = node.getOutputPacket(outflow.getLabel());
+					Packet packet = node.getOutputPacket(route.outflowLabel);
 	
-					for (NodeInput nodeInput : subscribedNodeInputs) {
-						nodeInput.getNode().setInputPacket(
-								nodeInput.getInputLabel(), packet);
+					for (int i = 0; i < route.receivers.length; i++) {
+						route.receivers[i].setInputPacket(route.receiverLabels[i], packet);
 						published = true;
 					}
 				}
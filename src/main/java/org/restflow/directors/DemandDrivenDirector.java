@@ -1,11 +1,8 @@
 package org.restflow.directors;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-import org.restflow.data.Inflow;
-import org.restflow.data.Outflow;
 import org.restflow.data.Packet;
 import org.restflow.enums.WorkflowModified;
 import org.restflow.metadata.WrapupResult;
@@ -24,8 +21,8 @@ public class DemandDrivenDirector extends AbstractDirector {
 	///////////////////////////////////////////////////////////////////////////
 	////              private collection instance fields                   ////
 
-	private Map<WorkflowNode, Boolean> _nodeHasStepped;
-	private List<WorkflowNode> 		   _sinks;
+	private boolean[]	_nodeHasStepped;
+	private int[]		_sinkIds;
 
 	///////////////////////////////////////////////////////////////////////////
 	////              public constructors and clone methods                ////
@@ -63,8 +60,12 @@ public class DemandDrivenDirector extends AbstractDirector {
 		Contract.requires(_state == DirectorFSM.PROPERTIES_SET);
 		super.elaborate();
 		
-		_sinks = _workflow.getSinks();
-		_nodeHasStepped = new HashMap<WorkflowNode, Boolean>();
+		List<WorkflowNode> sinks = _workflow.getSinks();
+		_sinkIds = new int[sinks.size()];
+		for (int i = 0; i < _sinkIds.length; i++) {
+			_sinkIds[i] = _routingTable.nodeId(sinks.get(i));
+		}
+		_nodeHasStepped = new boolean[_routingTable.getNodeCount()];
 		
 		_state = DirectorFSM.ELABORATED;
 		
@@ -93,8 +94,8 @@ public class DemandDrivenDirector extends AbstractDirector {
 		
 		for (int i = 0; i < _firingCount; i++) {
 			_resetSteppingRecord();
-			for (WorkflowNode node : _sinks) {
-				_activateNode(node);
+			for (int sinkId : _sinkIds) {
+				_activateNode(sinkId);
 			}
 		}
 
@@ -119,32 +120,25 @@ public class DemandDrivenDirector extends AbstractDirector {
 	///////////////////////////////////////////////////////////////////////////
 	////                   private helper methods                          ////
 
-	private void _activateNode(WorkflowNode node) throws Exception {
+	private void _activateNode(int nodeId) throws Exception {
 	
 		Contract.requires(_state == DirectorFSM.RUNNING);
 	
-		// loop over all inflows to the node
-		for (Inflow inflow : node.getNodeInflows()) {
+		WorkflowNode node = _routingTable.getNode(nodeId);
+		
+		// loop over the upstream outflows feeding each inflow to the node
+		for (RoutingTable.Feed feed : _routingTable.feedsTo(nodeId)) {
 			
-			// look up outflow connected to inflow
-			// TODO rename to upstreamOutflow
-			List<Outflow> outflows = _inflowToOutflowsMap.get(inflow);
-	
-			for (Outflow outflow: outflows) {
-				// look up the upstream node that publishes this outflow
-				WorkflowNode upstreamNode = outflow.getNode();
-	
-				// activate the upstream node if it hasn't been already for this round
-				if (!_nodeHasStepped.get(upstreamNode)) {
-					_activateNode(upstreamNode);
-					_nodeHasStepped.put(upstreamNode, true);
-				}
-	
-				Packet packet = outflow.peek();
-				
-				if (packet != null) {
-					node.setInputPacket(inflow.getLabel(), packet);
-				}
+			// activate the upstream node if it hasn't been already for this round
+			if (!_nodeHasStepped[feed.senderId]) {
+				_activateNode(feed.senderId);
+				_nodeHasStepped[feed.senderId] = true;
+			}
+
+			Packet packet = feed.outflow.peek();
+			
+			if (packet != null) {
+				node.setInputPacket(feed.inflowLabel, packet);
 			}
 		}
 		
@@ -155,11 +149,10 @@ public class DemandDrivenDirector extends AbstractDirector {
 
 		Contract.requires(_state == DirectorFSM.RUNNING);
 
-		for (WorkflowNode node : _nodes) {
-			_nodeHasStepped.put(node, false);
-			for (Outflow outflow : node.getOutflows().values()) {
-				outflow.clear();
-			}
+		Arrays.fill(_nodeHasStepped, false);
+		
+		for (int i = 0; i < _routingTable.getRouteCount(); i++) {
+			_routingTable.getRoute(i).outflow.clear();
 		}
 	}
 }
@@ -0,0 +1,53 @@
+package org.restflow.directors;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A snapshot of the queue of packets waiting on one inflow of a node run by an
+ * MTDataDrivenDirector.  Gives the number of packets queued when the snapshot was taken,
+ * the largest number queued at once during the run, and the number of times a packet
+ * sent to the inflow found the queue at the capacity set on the director.
+ *
+ * This class is thread safe because it is immutable.
+ */
+@Immutable()
+public class InflowQueueStatistics {
+
+	private final String _nodeName;
+	private final String _label;
+	private final int _depth;
+	private final int _maxDepth;
+	private final long _timesFull;
+
+	public InflowQueueStatistics(String nodeName, String label, int depth, int maxDepth, long timesFull) {
+		_nodeName = nodeName;
+		_label = label;
+		_depth = depth;
+		_maxDepth = maxDepth;
+		_timesFull = timesFull;
+	}
+
+	public String getNodeName() {
+		return _nodeName;
+	}
+
+	public String getLabel() {
+		return _label;
+	}
+
+	public int getDepth() {
+		return _depth;
+	}
+
+	public int getMaxDepth() {
+		return _maxDepth;
+	}
+
+	public long getTimesFull() {
+		return _timesFull;
+	}
+
+	public String toString() {
+		return _nodeName + "." + _label + ": depth " + _depth + ", max depth " + _maxDepth + ", times full " + _timesFull;
+	}
+}
@@ -1,13 +1,16 @@
 package org.restflow.directors;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.restflow.data.Inflow;
-import org.restflow.data.Outflow;
 import org.restflow.data.Packet;
 import org.restflow.enums.WorkflowModified;
 import org.restflow.metadata.WrapupResult;
@@ -22,12 +25,17 @@ public class MTDataDrivenDirector extends AbstractDirector {
 
 	private Exception 		 _actorException;
 	private volatile boolean _haltRequested; // volatile ensures visibility across threads
+	private boolean			 _pooled;
+	private int				 _inflowQueueCapacity;
+	private ExecutorService	 _executor;
+	private CountDownLatch	 _nodeTasksFinished;
+	private final AtomicInteger _activeNodeTasks = new AtomicInteger(0);
 
 	///////////////////////////////////////////////////////////////////////////
 	////              private collection instance fields                   ////
 	
 	private Map<WorkflowNode, NodeTriggerConsumer> _nodeTriggerConsumers;
-	private Map<WorkflowNode, NodeTriggerProducer> _nodeTriggerProducers;
+	private volatile Map<WorkflowNode, NodeTriggerProducer> _nodeTriggerProducers;
 	private List<Thread> 				   		   _threads;
 
 	
@@ -40,6 +48,77 @@ public class MTDataDrivenDirector extends AbstractDirector {
 	public MTDataDrivenDirector() {
 		super();
 		_state = DirectorFSM.CONSTRUCTED;
+		_pooled = false;
+		_inflowQueueCapacity = 0;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////
+	///   workflow configuration setters -- PROPERTIES_UNSET state only    ////
+
+	/**
+	 * Runs the producer and consumer work of each node as event-driven tasks
+	 * on an executor rather than on two dedicated threads per node.  Unless an
+	 * executor is provided the tasks run on the process-wide SharedNodeExecutor.
+	 */
+	public void setPooled(boolean pooled) {
+		Contract.requires(_state == DirectorFSM.CONSTRUCTED);
+		_pooled = pooled;
+	}
+	
+	/**
+	 * Sets the executor used to run node tasks and enables pooled mode.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		Contract.requires(_state == DirectorFSM.CONSTRUCTED);
+		_executor = executor;
+		_pooled = true;
+	}
+	
+	public boolean isPooled() {
+		return _pooled;
+	}
+	
+	/**
+	 * Limits the number of packets queued on each inflow of each node, so that a fast
+	 * node cannot queue an unbounded number of packets for a slow one.  A node sending a
+	 * packet to a full queue waits until the receiving node takes a packet from it; in
+	 * pooled mode the sending node instead starts no further triggers until then, so
+	 * queues may exceed the capacity by the packets of triggers already started.  
+	 * 
+	 * A capacity of zero, the default, leaves the queues unbounded.  Workflows in which 
+	 * a node waits for packets from two nodes fed by the same upstream node, or in which 
+	 * packets flow around a loop, can stall with a small capacity, because a node blocked 
+	 * on one full queue cannot send the packets another node is waiting for.
+	 */
+	public void setInflowQueueCapacity(int capacity) throws Exception {
+		Contract.requires(_state == DirectorFSM.CONSTRUCTED);
+		if (capacity < 0) {
+			throw new Exception("Inflow queue capacity must be zero or greater.");
+		}
+		_inflowQueueCapacity = capacity;
+	}
+	
+	public int getInflowQueueCapacity() {
+		return _inflowQueueCapacity;
+	}
+	
+	/**
+	 * Returns the current depth, the largest depth, and the number of times found full of
+	 * the queue for each inflow of each node that has received a packet during the current
+	 * or most recent run.  May be called from any thread while the workflow runs.
+	 */
+	public List<InflowQueueStatistics> getInflowQueueStatistics() {
+		
+		List<InflowQueueStatistics> statistics = new ArrayList<InflowQueueStatistics>();
+		
+		Map<WorkflowNode, NodeTriggerProducer> producers = _nodeTriggerProducers;
+		if (producers != null) {
+			for (NodeTriggerProducer producer : producers.values()) {
+				statistics.addAll(producer.getInflowQueueStatistics());
+			}
+		}
+		
+		return statistics;
 	}
 	
 	///////////////////////////////////////////////////////////////////////////
@@ -91,14 +170,21 @@ public class MTDataDrivenDirector extends AbstractDirector {
 		
 		_state = DirectorFSM.RUNNING;
 
-		// start all of the node threads
-		for (Thread thread : _threads) {
-			thread.start();
-		}
-
-		// wait for all of the node threads
-		for (Thread thread : _threads) {
-			thread.join();
+		if (_pooled) {
+			
+			_runNodeTasks();
+		
+		} else {
+			
+			// start all of the node threads
+			for (Thread thread : _threads) {
+				thread.start();
+			}
+	
+			// wait for all of the node threads
+			for (Thread thread : _threads) {
+				thread.join();
+			}
 		}
 
 		_state = DirectorFSM.RAN;
@@ -171,20 +257,21 @@ public class MTDataDrivenDirector extends AbstractDirector {
 		// record the request for a halt
 		_haltRequested = true;
 		
-		// wake up all of the node threads so that the halt is sure to be noticed
-		for (NodeTriggerProducer producer : _nodeTriggerProducers.values()) {
-			if (producer != nodeThreadRunner) {
-				synchronized(producer) {
-					producer.notifyAll();
-				}
+		if (_pooled) {
+			
+			// schedule all of the node tasks so that the halt is sure to be noticed
+			for (NodeTriggerProducer producer : _nodeTriggerProducers.values()) {
+				producer.scheduleTriggers();
+			}
+			for (NodeTriggerConsumer consumer : _nodeTriggerConsumers.values()) {
+				consumer.scheduleFinish();
 			}
-		}
 
-		for (NodeTriggerConsumer consumer : _nodeTriggerConsumers.values()) {
-			if (consumer != nodeThreadRunner) {
-				synchronized(consumer) {
-					consumer.notifyAll();
-				}
+		} else {
+		
+			// wake up all of the node threads so that the halt is sure to be noticed
+			for (NodeTriggerProducer producer : _nodeTriggerProducers.values()) {
+				producer.signalHalt();
 			}
 		}
 
@@ -198,6 +285,24 @@ public class MTDataDrivenDirector extends AbstractDirector {
 
 		return _haltRequested;
 	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                  node task callback methods                       ////
+
+	// The count of active node tasks includes every task that is queued or running.
+	// Node tasks are only ever scheduled by the director before it releases its own
+	// hold on the count, or by other node tasks while they run, so the count reaches
+	// zero only when no node can make further progress.
+	void submitTask(NodeTask task) {
+		_activeNodeTasks.incrementAndGet();
+		_executor.execute(task);
+	}
+	
+	void taskCompleted() {
+		if (_activeNodeTasks.decrementAndGet() == 0) {
+			_nodeTasksFinished.countDown();
+		}
+	}
 	
 	///////////////////////////////////////////////////////////////////////////
 	////                   private helper methods                          ////
@@ -206,25 +311,51 @@ public class MTDataDrivenDirector extends AbstractDirector {
 	
 			Contract.requires(_state == DirectorFSM.INITIALIZED || _state == DirectorFSM.WRAPPED_UP);
 			
-			for (Inflow inflow : _inflowToOutflowsMap.keySet()) {
-				// set up an inter-thread communication channel corresponding to
-				// each inflow
-				for (Outflow outflow : _inflowToOutflowsMap.get(inflow)) {
-	
-					// look up the threads managing the source and receiver
-					// nodes for the current inflow
-					NodeTriggerConsumer consumer = _nodeTriggerConsumers
-							.get(outflow.getNode());
-					NodeTriggerProducer producer = _nodeTriggerProducers.get(inflow
-							.getNode());
-	
-					// subscribe the receiver thread to the source thread for
-					// this inflow
-					consumer.registerReceiver(producer, outflow, inflow);
-				}
+			// index the producers of the nodes by routing table node id
+			NodeTriggerProducer[] producers = new NodeTriggerProducer[_routingTable.getNodeCount()];
+			for (int nodeId = 0; nodeId < producers.length; nodeId++) {
+				producers[nodeId] = _nodeTriggerProducers.get(_routingTable.getNode(nodeId));
+			}
+			
+			// give the consumer for each node the producers receiving on each of its routes
+			for (int nodeId = 0; nodeId < producers.length; nodeId++) {
+				_nodeTriggerConsumers.get(_routingTable.getNode(nodeId))
+					.setRoutes(_routingTable.routesFrom(nodeId), producers);
 			}
 		}
 
+	private void _runNodeTasks() throws InterruptedException {
+		
+		Contract.requires(_state == DirectorFSM.RUNNING);
+		
+		if (_executor == null) {
+			_executor = SharedNodeExecutor.getExecutor();
+		}
+
+		_nodeTasksFinished = new CountDownLatch(1);
+		
+		// hold the task count above zero until every node has been scheduled once
+		_activeNodeTasks.set(1);
+		for (NodeTriggerProducer producer : _nodeTriggerProducers.values()) {
+			producer.scheduleTriggers();
+		}
+		taskCompleted();
+		
+		// wait for the node tasks, letting a fork-join pool compensate for the blocked 
+		// worker when this director runs a subworkflow on one of the pool's own threads
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			
+			public boolean block() throws InterruptedException {
+				_nodeTasksFinished.await();
+				return true;
+			}
+			
+			public boolean isReleasable() {
+				return _nodeTasksFinished.getCount() == 0;
+			}
+		});
+	}
+	
 	private void _createNodeTriggerThreads() {
 		
 		Contract.requires(_state == DirectorFSM.INITIALIZED || _state == DirectorFSM.WRAPPED_UP);
@@ -238,13 +369,16 @@ public class MTDataDrivenDirector extends AbstractDirector {
 			
 			NodeTriggerProducer producer =  new NodeTriggerProducer(node, this);
 			_nodeTriggerProducers.put(node, producer);
-			Thread producerThread = new Thread(producer, node.getName());
-			_threads.add(producerThread);
 
 			NodeTriggerConsumer consumer =  new NodeTriggerConsumer(node, this, producer);
 			_nodeTriggerConsumers.put(node, consumer);
-			Thread consumerThread = new Thread(consumer, node.getName());
-			_threads.add(consumerThread);
+			producer.setConsumer(consumer);
+
+			// in pooled mode the producer and consumer run as tasks instead
+			if (! _pooled) {
+				_threads.add(new Thread(producer, node.getName()));
+				_threads.add(new Thread(consumer, node.getName()));
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package org.restflow.directors;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * A unit of per-node work run on the executor of a pooled MTDataDrivenDirector.
+ * Requests to schedule the task while it is already queued or running are coalesced,
+ * so at most one instance of the task runs at a time, and any request arriving
+ * during a run causes exactly one further run.  A task therefore never blocks
+ * waiting for an event; whoever causes the event simply schedules the task again.
+ */
+@ThreadSafe()
+abstract class NodeTask implements Runnable {
+
+	private final MTDataDrivenDirector _director;
+	private final AtomicInteger _pendingRequests = new AtomicInteger(0);
+
+	NodeTask(MTDataDrivenDirector director) {
+		_director = director;
+	}
+
+	void schedule() {
+		if (_pendingRequests.getAndIncrement() == 0) {
+			_director.submitTask(this);
+		}
+	}
+
+	public final void run() {
+
+		int requests = _pendingRequests.get();
+
+		try {
+			do {
+				runOnce();
+				requests = _pendingRequests.addAndGet(-requests);
+			} while (requests != 0);
+		} catch (RuntimeException e) {
+			_pendingRequests.set(0);
+			_director.halt(e, this);
+		} finally {
+			_director.taskCompleted();
+		}
+	}
+
+	/**
+	 * Performs as much of the task's work as is currently possible and returns
+	 * without waiting for further input.
+	 */
+	protected abstract void runOnce();
+}
@@ -1,12 +1,7 @@
 package org.restflow.directors;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
-import org.restflow.data.Inflow;
-import org.restflow.data.Outflow;
 import org.restflow.data.Packet;
 import org.restflow.nodes.WorkflowNode;
 
@@ -16,13 +11,22 @@ public class NodeTriggerConsumer implements Runnable {
 	private WorkflowNode _node;
 	private MTDataDrivenDirector _director;
 	private NodeTriggerProducer _producer;
-	private Map<Outflow, Map<NodeTriggerProducer, List<String>>> _outflowToSubscriptionsMap =
-		new HashMap<Outflow,Map<NodeTriggerProducer, List<String>>>();
+	private final NodeTask _finishTask;
+	
+	// the routes from the node's outflows, and for each route the producers of the
+	// receiving nodes in the order of the route's receivers
+	private RoutingTable.Route[] _routes = new RoutingTable.Route[0];
+	private NodeTriggerProducer[][] _routeReceivers = new NodeTriggerProducer[0][];
 	
 	public NodeTriggerConsumer(WorkflowNode node, MTDataDrivenDirector director, NodeTriggerProducer producer) {
 		_node = node;
 		_director = director;
 		_producer = producer;
+		_finishTask = new NodeTask(director) {
+			protected void runOnce() {
+				_finishTriggers();
+			}
+		};
 	}
 	
 	public void run() {
@@ -57,56 +61,141 @@ public class NodeTriggerConsumer implements Runnable {
 		}
 	}
 		
+	/**
+	 * Requests that the node's active triggers be finished on the director's executor.
+	 * Used only when the director is pooled.
+	 */
+	void scheduleFinish() {
+		_finishTask.schedule();
+	}
+	
+	// Pooled counterpart of run().  Returns when no trigger is active; the producer
+	// schedules the task again each time it starts a trigger.
+	private void _finishTriggers() {
+		
+		try {
+			
+			while (!_director.isHalted() && _producer.hasActiveTrigger()) {
+				
+				try {
+					_finishTrigger();
+				} catch (Exception e) {
+					_director.halt(e, _finishTask);
+					return;
+				}
+				
+				_sendOutputPackets();
+				
+				_producer.decrementActiveTriggers();
+				_producer.scheduleTriggers();
+			}
+			
+		} catch (Exception e) {
+			_director.halt(e, _finishTask);
+		}
+	}
+
+	private void _finishTrigger() throws Exception {
+		
+		// triggers of non-concurrent nodes complete within startTrigger()
+		if (_node.getMaxConcurrentSteps() == 1) {
+			_node.finishTrigger();
+			return;
+		}
+		
+		// otherwise let a fork-join pool compensate for the worker blocked waiting for the actor
+		FinishTriggerBlocker blocker = new FinishTriggerBlocker();
+		ForkJoinPool.managedBlock(blocker);
+		if (blocker.exception != null) {
+			throw blocker.exception;
+		}
+	}
+	
+	private class FinishTriggerBlocker implements ForkJoinPool.ManagedBlocker {
+		
+		private boolean finished = false;
+		private Exception exception = null;
+		
+		public boolean block() {
+			try {
+				_node.finishTrigger();
+			} catch (Exception e) {
+				exception = e;
+			}
+			finished = true;
+			return true;
+		}
+		
+		public boolean isReleasable() {
+			return finished;
+		}
+	}
+	
 	private void _sendOutputPackets() throws Exception {
 		
 		// System.out.println("Consumer for node " + _node + " preparing to broadcast.");
 		
-		// loop over all outputs from the node by output label
-		for (Outflow outflow : _node.getOutflows().values()) {
+		// loop over the routes from each output of the node
+		for (int i = 0; i < _routes.length; i++) {
 
-			if (outflow.packetReady()) {
+			RoutingTable.Route route = _routes[i];
 			
-				// get the subscriptions for the uri
-				Map<NodeTriggerProducer, List<String>> subscriptionsForUri = _outflowToSubscriptionsMap.get(outflow);
-	
-				// return immediately if there are no subscribers for the uri
-				if (subscriptionsForUri != null) {
-	
-					// get the object output to that binding
-					Packet packet = _node.getOutputPacket(outflow.getLabel());
-					
-					// System.out.println("Consumer for node " + _node + " broadcasting packet " + ((SingleResourcePacket)packet).getResource());
+			if (route.outflow.packetReady() && route.hasReceivers()) {
+			
+				// get the object output to that binding
+				Packet packet = _node.getOutputPacket(route.outflowLabel);
+				
+				// System.out.println("Consumer for node " + _node + " broadcasting packet " + ((SingleResourcePacket)packet).getResource());
 
-					for (NodeTriggerProducer targetThread : subscriptionsForUri.keySet()) {
-	
-						List<String> labelList = subscriptionsForUri.get(targetThread);
-	
-						for(String targetLabel : labelList) {						
-	
-							targetThread.queueInputPacket(targetLabel, packet);						
-						}
-					}
+				NodeTriggerProducer[] receivers = _routeReceivers[i];
+				for (int j = 0; j < receivers.length; j++) {
+					receivers[j].queueInputPacket(route.receiverLabels[j], packet);
 				}
 			}
 		}
 	}
+	
+	/**
+	 * Sets the routes from the node's outflows, given the producers of all nodes indexed 
+	 * by routing table node id.  Called by the director before each run.
+	 */
+	void setRoutes(RoutingTable.Route[] routes, NodeTriggerProducer[] producers) throws Exception {
 		
-	public void registerReceiver(NodeTriggerProducer producer, Outflow outflow, Inflow inflow) {
-		
-		Map<NodeTriggerProducer, List<String>> subscriptionsForUri = _outflowToSubscriptionsMap.get(outflow);
+		_routes = routes;
+		_routeReceivers = new NodeTriggerProducer[routes.length][];
 		
-		if (subscriptionsForUri == null) {
-			subscriptionsForUri = new HashMap<NodeTriggerProducer, List<String>>();
-			_outflowToSubscriptionsMap.put(outflow, subscriptionsForUri);
+		for (int i = 0; i < routes.length; i++) {
+			
+			int[] receiverIds = routes[i].receiverIds;
+			_routeReceivers[i] = new NodeTriggerProducer[receiverIds.length];
+			
+			for (int j = 0; j < receiverIds.length; j++) {
+				if (receiverIds[j] < 0) {
+					throw new Exception("Node " + routes[i].receivers[j] + " receiving from node " + _node + 
+							" is not a node of the workflow");
+				}
+				_routeReceivers[i][j] = producers[receiverIds[j]];
+				_routeReceivers[i][j].addUpstreamProducer(_producer);
+			}
 		}
+	}
+	
+	/**
+	 * Reports whether every inflow receiving packets from this node has room in its queue.
+	 * Used only when the director is pooled and has an inflow queue capacity.
+	 */
+	boolean receiversHaveQueueCapacity() {
 		
-		List<String> labelList = subscriptionsForUri.get(producer);
-		if (labelList == null) {
-			labelList = new LinkedList<String>();
-			subscriptionsForUri.put(producer,labelList);
+		for (int i = 0; i < _routes.length; i++) {
+			NodeTriggerProducer[] receivers = _routeReceivers[i];
+			for (int j = 0; j < receivers.length; j++) {
+				if (! receivers[j].hasQueueCapacity(_routes[i].receiverLabels[j])) {
+					return false;
+				}
+			}
 		}
 		
-		labelList.add(inflow.getLabel());
+		return true;
 	}
 
 	public String toString() {
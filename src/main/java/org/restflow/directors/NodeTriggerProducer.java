@@ -1,78 +1,246 @@
 package org.restflow.directors;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.GuardedBy;
 
 import org.restflow.data.Packet;
 import org.restflow.enums.ChangedState;
 import org.restflow.nodes.WorkflowNode;
 
 
+/**
+ * Starts the triggers of a node run by an MTDataDrivenDirector, and queues the packets
+ * sent to the node.  Threads waiting on a producer block on conditions that are signaled
+ * by exactly the events that let them proceed:  the producer thread waits for a free
+ * trigger slot or for an input packet, and the consumer thread waits for an active
+ * trigger or for the producer to stop.  A halt of the director signals all of them.
+ * 
+ * If the director sets an inflow queue capacity, a thread sending a packet to a full
+ * queue waits until the node takes a packet from that queue.  In pooled mode node tasks
+ * never wait, so instead the producer does not start a trigger while any queue the node
+ * sends packets to is full, and a producer taking a packet from a full queue schedules the
+ * producers of the nodes sending to it.  Queues then exceed the capacity by at most the
+ * packets sent by triggers that were already started.
+ */
 public class NodeTriggerProducer implements Runnable {
 
 	private final WorkflowNode _node;
-	private final Map<String, BlockingQueue<Packet>> _labelToQueueMap = new HashMap<String, BlockingQueue<Packet>>();
 	private final MTDataDrivenDirector _director;
-	private final Object _activeTriggerMonitor = new Object();
 	private final int _maxConcurrentTriggers;
-	private volatile boolean _isRunning = true;
+	private final int _inflowQueueCapacity;
+	private final NodeTask _triggerTask;
+	private NodeTriggerConsumer _consumer;
+
+	private final Lock _triggerLock = new ReentrantLock();
+	private final Condition _triggerSlotFreed = _triggerLock.newCondition();
+	private final Condition _triggerStartedOrStopped = _triggerLock.newCondition();
+	@GuardedBy("_triggerLock") private int _activeTriggers = 0;
+	@GuardedBy("_triggerLock") private boolean _isRunning = true;
+
+	private final Lock _inputLock = new ReentrantLock();
+	private final Condition _inputQueued = _inputLock.newCondition();
+	private final Condition _inputTaken = _inputLock.newCondition();
+	@GuardedBy("_inputLock") private final Map<String, BlockingQueue<Packet>> _labelToQueueMap = 
+			new HashMap<String, BlockingQueue<Packet>>();
+	@GuardedBy("_inputLock") private final Map<String, QueueCounters> _labelToCountersMap = 
+			new HashMap<String, QueueCounters>();
 	
-	private int _activeTriggers = 0;
+	// producers of the nodes sending packets to this node, registered before the run starts
+	private final Set<NodeTriggerProducer> _upstreamProducers = new LinkedHashSet<NodeTriggerProducer>();
 	
 	public NodeTriggerProducer(WorkflowNode node, MTDataDrivenDirector director) {
 		_node = node;
 		_director = director;
 		_maxConcurrentTriggers = _node.getMaxConcurrentSteps();
+		_inflowQueueCapacity = director.getInflowQueueCapacity();
+		_triggerTask = new NodeTask(director) {
+			protected void runOnce() {
+				_startTriggers();
+			}
+		};
+	}
+	
+	void setConsumer(NodeTriggerConsumer consumer) {
+		_consumer = consumer;
 	}
 	
 	Map<String, BlockingQueue<Packet>> getLabelToQueueMap() {
 		return _labelToQueueMap;
 	}
 	
+	void addUpstreamProducer(NodeTriggerProducer producer) {
+		_upstreamProducers.add(producer);
+	}
+	
+	/**
+	 * Returns a snapshot of the state of the queue for each inflow that has received a packet.
+	 */
+	List<InflowQueueStatistics> getInflowQueueStatistics() {
+		_inputLock.lock();
+		try {
+			List<InflowQueueStatistics> statistics = new ArrayList<InflowQueueStatistics>();
+			for (Map.Entry<String, BlockingQueue<Packet>> entry : _labelToQueueMap.entrySet()) {
+				QueueCounters counters = _labelToCountersMap.get(entry.getKey());
+				statistics.add(new InflowQueueStatistics(_node.getName(), entry.getKey(),
+						entry.getValue().size(), counters.maxDepth, counters.timesFull));
+			}
+			return statistics;
+		} finally {
+			_inputLock.unlock();
+		}
+	}
+	
+	/**
+	 * Reports whether the queue for the given inflow can take another packet without 
+	 * exceeding the capacity set on the director.  A queue found full is counted once
+	 * however often it is checked, and again only after a packet has been taken from it.
+	 */
+	boolean hasQueueCapacity(String label) {
+		
+		if (_inflowQueueCapacity == 0) {
+			return true;
+		}
+		
+		_inputLock.lock();
+		try {
+			BlockingQueue<Packet> queue = _labelToQueueMap.get(label);
+			if (queue == null) {
+				return true;
+			}
+			QueueCounters counters = _labelToCountersMap.get(label);
+			if (queue.size() < _inflowQueueCapacity) {
+				counters.full = false;
+				return true;
+			}
+			if (!counters.full) {
+				counters.full = true;
+				counters.timesFull++;
+			}
+			return false;
+		} finally {
+			_inputLock.unlock();
+		}
+	}
+	
 	private void _incrementActiveTriggers() {
-		synchronized(_activeTriggerMonitor) {
+		_triggerLock.lock();
+		try {
 			_activeTriggers++;
-			_activeTriggerMonitor.notifyAll();
+			_triggerStartedOrStopped.signal();
+		} finally {
+			_triggerLock.unlock();
 		}
 	}
 
 	public void decrementActiveTriggers() {
-		synchronized(_activeTriggerMonitor) {
+		_triggerLock.lock();
+		try {
 			_activeTriggers--;
-			_activeTriggerMonitor.notifyAll();
+			_triggerSlotFreed.signal();
+		} finally {
+			_triggerLock.unlock();
 		}
 	}
 
+	boolean hasActiveTrigger() {
+		_triggerLock.lock();
+		try {
+			return _activeTriggers > 0;
+		} finally {
+			_triggerLock.unlock();
+		}
+	}
+
+	private boolean _hasFreeTriggerSlot() {
+		_triggerLock.lock();
+		try {
+			return _activeTriggers < _maxConcurrentTriggers;
+		} finally {
+			_triggerLock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks the producer thread until fewer than the maximum number of triggers
+	 * are active or the director halts.
+	 */
 	public boolean waitForTriggerCompletion() throws InterruptedException {
 		
-		synchronized(_activeTriggerMonitor) {
-			if (_activeTriggers < _maxConcurrentTriggers) {
-				return true;
-			} else {
-				_activeTriggerMonitor.wait(100);	
-				return _activeTriggers < _maxConcurrentTriggers;
+		_triggerLock.lock();
+		try {
+			while (_activeTriggers >= _maxConcurrentTriggers && !_director.isHalted()) {
+				_triggerSlotFreed.await();
 			}
+			return _activeTriggers < _maxConcurrentTriggers;
+		} finally {
+			_triggerLock.unlock();
 		}
 	}
 
-	
+	/**
+	 * Blocks the consumer thread until a trigger is active, the producer
+	 * thread stops, or the director halts.
+	 */
 	public boolean waitForActiveTrigger() throws InterruptedException {
 		
-		synchronized(_activeTriggerMonitor) {
-			if (_activeTriggers > 0) {
-				return true;
-			} else {
-				_activeTriggerMonitor.wait(100);
-				return _activeTriggers > 0;
+		_triggerLock.lock();
+		try {
+			while (_activeTriggers == 0 && _isRunning && !_director.isHalted()) {
+				_triggerStartedOrStopped.await();
 			}
+			return _activeTriggers > 0;
+		} finally {
+			_triggerLock.unlock();
+		}
+	}
+	
+	/**
+	 * Wakes every thread waiting on this producer so that a halt of the director is noticed.
+	 */
+	void signalHalt() {
+		
+		_triggerLock.lock();
+		try {
+			_triggerSlotFreed.signalAll();
+			_triggerStartedOrStopped.signalAll();
+		} finally {
+			_triggerLock.unlock();
+		}
+		
+		_inputLock.lock();
+		try {
+			_inputQueued.signalAll();
+			_inputTaken.signalAll();
+		} finally {
+			_inputLock.unlock();
+		}
+	}
+	
+	private void _setRunning(boolean isRunning) {
+		_triggerLock.lock();
+		try {
+			_isRunning = isRunning;
+			_triggerStartedOrStopped.signal();
+		} finally {
+			_triggerLock.unlock();
 		}
 	}
 	
 	public void run() {
 
-		_isRunning = true;
+		_setRunning(true);
 		
 		try {
 			
@@ -104,7 +272,69 @@ public class NodeTriggerProducer implements Runnable {
 			e.printStackTrace(System.err);
 		}
 		
-		_isRunning = false;
+		_setRunning(false);
+	}
+	
+	/**
+	 * Requests that the node's triggers be started on the director's executor.
+	 * Used only when the director is pooled.
+	 */
+	void scheduleTriggers() {
+		_triggerTask.schedule();
+	}
+	
+	// Pooled counterpart of run().  Rather than waiting for a free trigger slot or for
+	// input packets, returns and relies on the consumer or an upstream node to schedule
+	// the task again once progress is possible.
+	private void _startTriggers() {
+
+		try {
+			
+			while (!_director.isHalted() && ! _node.isNodeFinished() && !_node.allEosSent()) {
+				
+				if (! _hasFreeTriggerSlot()) {
+					return;
+				}
+				
+				// while a node this node sends packets to has a full queue, only take input
+				// so that upstream nodes can proceed, and let the receiving node reschedule 
+				// this task once it takes a packet from its queue
+				if (! _consumer.receiversHaveQueueCapacity()) {
+					_inputLock.lock();
+					try {
+						_processInputPackets();
+					} finally {
+						_inputLock.unlock();
+					}
+					return;
+				}
+				
+				ChangedState triggerStarted = ChangedState.FALSE;
+				
+				try {
+					triggerStarted = _node.startTrigger();
+				} catch (Exception e) {
+					_director.halt(e, _triggerTask);
+					return;
+				}
+
+				if (triggerStarted == ChangedState.TRUE) {
+					_incrementActiveTriggers();
+					_consumer.scheduleFinish();
+				} else if (!_node.isNodeFinished()) {
+					_inputLock.lock();
+					try {
+						if (!_processInputPackets() && !_node.allEosReceived()) {
+							return;
+						}
+					} finally {
+						_inputLock.unlock();
+					}
+				}
+			}
+		} catch (Exception e) {
+			_director.halt(e, _triggerTask);
+		}
 	}
 	
 	public void queueInputPacket(String label, Packet packet) throws Exception {
@@ -115,26 +345,65 @@ public class NodeTriggerProducer implements Runnable {
 		
 		// System.out.println("Node " + _node + " queueing packet " + ((SingleResourcePacket)packet).getResource());
 		
-		synchronized(this) {
+		_inputLock.lock();
+		try {
 			
 			BlockingQueue<Packet> queueForLabel = _labelToQueueMap.get(label);
+			QueueCounters counters = _labelToCountersMap.get(label);
 			
 			if (queueForLabel == null) {
 				queueForLabel = new LinkedBlockingQueue<Packet>();
 				_labelToQueueMap.put(label,queueForLabel);
+				counters = new QueueCounters();
+				_labelToCountersMap.put(label, counters);
+			}
+			
+			// in thread mode wait for the node to take a packet from a full queue
+			if (!_director.isPooled() && _inflowQueueCapacity > 0 && queueForLabel.size() >= _inflowQueueCapacity) {
+				counters.timesFull++;
+				_waitForQueueCapacity(queueForLabel);
 			}
 			
 			queueForLabel.put(packet);
-			this.notifyAll();
+			counters.maxDepth = Math.max(counters.maxDepth, queueForLabel.size());
+			_inputQueued.signal();
+		} finally {
+			_inputLock.unlock();
+		}
+		
+		if (_director.isPooled()) {
+			scheduleTriggers();
 		}
 	}
 
-	private void _getInputs() throws Exception {
-		synchronized (this) {
+	// Blocks the sending thread until the queue is below capacity or the director halts.
+	// The sender may itself be a worker of a fork-join pool running a subworkflow, so the
+	// pool is allowed to compensate for it.
+	private void _waitForQueueCapacity(final BlockingQueue<Packet> queue) throws InterruptedException {
+		
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			
+			public boolean block() throws InterruptedException {
+				while (!isReleasable()) {
+					_inputTaken.await();
+				}
+				return true;
+			}
 			
+			public boolean isReleasable() {
+				return queue.size() < _inflowQueueCapacity || _director.isHalted();
+			}
+		});
+	}
+
+	private void _getInputs() throws Exception {
+		_inputLock.lock();
+		try {
 			if (!_director.isHalted()  && !_processInputPackets() && !_node.allEosReceived()) {
-				this.wait();
+				_inputQueued.await();
 			}
+		} finally {
+			_inputLock.unlock();
 		}
 	}
 	
@@ -146,9 +415,14 @@ public class NodeTriggerProducer implements Runnable {
 			if (_node.readyForInputPacket(label) == true) {
 				BlockingQueue<Packet> queue = _labelToQueueMap.get(label);
 				if (queue.size() > 0) {
+					boolean wasFull = _inflowQueueCapacity > 0 && queue.size() >= _inflowQueueCapacity;
 					Packet packet = queue.take();
 					_node.setInputPacket(label, packet);
 					packetReceived = true;
+					if (wasFull) {
+						_labelToCountersMap.get(label).full = false;
+						_signalQueueCapacity();
+					}
 				}
 			}
 		}
@@ -156,11 +430,33 @@ public class NodeTriggerProducer implements Runnable {
 		return packetReceived;
 	}
 	
+	// wakes the threads sending to a full queue, or in pooled mode reschedules their producers
+	private void _signalQueueCapacity() {
+		if (_director.isPooled()) {
+			for (NodeTriggerProducer producer : _upstreamProducers) {
+				producer.scheduleTriggers();
+			}
+		} else {
+			_inputTaken.signalAll();
+		}
+	}
+	
 	public String toString() {
 		return "NodeThreadRunner for " + _node.getName();
 	}
 
-	public synchronized boolean isRunning() {
-		return _isRunning || _activeTriggers > 0;
+	public boolean isRunning() {
+		_triggerLock.lock();
+		try {
+			return _isRunning || _activeTriggers > 0;
+		} finally {
+			_triggerLock.unlock();
+		}
+	}
+	
+	private static class QueueCounters {
+		int maxDepth = 0;
+		long timesFull = 0;
+		boolean full = false;
 	}
 }
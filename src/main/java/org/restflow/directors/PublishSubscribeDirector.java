@@ -55,6 +55,7 @@ public class PublishSubscribeDirector extends AbstractDirector {
 				_publisher.subscribe(inflow.getNode(), inflow.getLabel(), outflow);
 			}
 		}
+		_publisher.elaborate(_routingTable);
 		
 		_state = DirectorFSM.ELABORATED;
 		
@@ -90,12 +91,12 @@ public class PublishSubscribeDirector extends AbstractDirector {
 			workflowRunning = false;
 
 			// loop over workflow nodes
-			for (WorkflowNode node : _nodes) {
+			for (int nodeId = 0; nodeId < _routingTable.getNodeCount(); nodeId++) {
 								
-				if (node.trigger() == ChangedState.TRUE) {
-					_publishNodeOutputPackets(node);
+				if (_routingTable.getNode(nodeId).trigger() == ChangedState.TRUE) {
+					_publishNodeOutputPackets(nodeId);
 					workflowRunning = true;
-				} else if (_publisher.flushPacketToNode(node)) {
+				} else if (_publisher.flushPacketToNode(nodeId)) {
 					workflowRunning = true;
 				}			
 			}
@@ -126,11 +127,13 @@ public class PublishSubscribeDirector extends AbstractDirector {
 		return node.readyForInputPacket(label);
 	}
 	
-	public void update(WorkflowNode node, String label, Packet packet)
+	public void update(int nodeId, String label, Packet packet)
 			throws Exception {
 
 		Contract.requires(_state == DirectorFSM.RUNNING);
 		
+		WorkflowNode node = _routingTable.getNode(nodeId);
+		
 		// apply the value to the receiving node
 		node.setInputPacket(label, packet);
 		
@@ -139,23 +142,24 @@ public class PublishSubscribeDirector extends AbstractDirector {
 
 		// publish the node's outputs if it stepped
 		if (nodeStepped == ChangedState.TRUE) {
-			 _publishNodeOutputPackets(node);
+			 _publishNodeOutputPackets(nodeId);
 		}			
 	}
 	
 	///////////////////////////////////////////////////////////////////////////
 	////                   private helper methods                          ////
 
-	private void _publishNodeOutputPackets(WorkflowNode node) throws Exception {
+	private void _publishNodeOutputPackets(int nodeId) throws Exception {
 
 		Contract.requires(_state == DirectorFSM.RUNNING);
 
-		// TODO: redefine node.getOutflows() to return list of outflows, not the original map
-		for (Outflow outflow : node.getOutflows().values()) {
-			if (outflow.packetReady()) {
-				Packet outputPacket = node.getOutputPacket(outflow.getLabel());
+		WorkflowNode node = _routingTable.getNode(nodeId);
+		
+		for (RoutingTable.Route route : _routingTable.routesFrom(nodeId)) {
+			if (route.outflow.packetReady()) {
+				Packet outputPacket = node.getOutputPacket(route.outflowLabel);
 				if (outputPacket != null ) {
-					_publisher.publish(outflow, outputPacket);
+					_publisher.publish(route, outputPacket);
 				}
 			}
 		}
@@ -11,11 +11,17 @@ public interface Publisher {
 
 	void setWorkflow(Workflow workflow);
 
-	void publish(Outflow outflow, Packet outputPacket) throws Exception;
+	void publish(RoutingTable.Route route, Packet outputPacket) throws Exception;
 	
 	void subscribe(WorkflowNode node, String label, Outflow binding) throws Exception ;
 
-	boolean flushPacketToNode(WorkflowNode node) throws Exception;
+	/**
+	 * Called once all nodes have subscribed, before any packet is published, with the
+	 * routing table giving the node and route ids later passed to the publisher.
+	 */
+	void elaborate(RoutingTable routingTable) throws Exception;
+
+	boolean flushPacketToNode(int nodeId) throws Exception;
 
 	void clearPacketBuffers();
 
@@ -0,0 +1,189 @@
+package org.restflow.directors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+
+import org.restflow.data.Inflow;
+import org.restflow.data.InflowToOutflowsMap;
+import org.restflow.data.Outflow;
+import org.restflow.nodes.WorkflowNode;
+
+/**
+ * The dataflow connections of an elaborated workflow compiled into arrays indexed by
+ * integer node and route ids, so that directors can route each packet without hashing.
+ * Nodes are numbered in the order the workflow lists them, and each outflow of a node is
+ * a route numbered across the whole workflow.  The routes from a node are listed in the
+ * order of the node's outflows, the receivers on each route in the order the inflow to
+ * outflows map lists them, and the feeds into a node in the order of the node's inflows.
+ *
+ * A receiving or sending node that is not one of the listed nodes has node id -1.
+ *
+ * This class is thread safe because it is immutable after construction.
+ */
+@Immutable()
+public class RoutingTable {
+
+	private final WorkflowNode[] _nodes;
+	private final Route[] _routes;
+	private final Route[][] _routesFromNode;
+	private final Feed[][] _feedsToNode;
+	private final Map<WorkflowNode,Integer> _nodeIds;
+
+	public RoutingTable(List<WorkflowNode> nodes, InflowToOutflowsMap inflowToOutflowsMap) {
+
+		_nodes = nodes.toArray(new WorkflowNode[nodes.size()]);
+
+		_nodeIds = new HashMap<WorkflowNode,Integer>();
+		for (int i = 0; i < _nodes.length; i++) {
+			_nodeIds.put(_nodes[i], i);
+		}
+
+		// collect the inflows receiving from each outflow
+		Map<Outflow,List<Inflow>> outflowToInflows = new HashMap<Outflow,List<Inflow>>();
+		for (Map.Entry<Inflow,List<Outflow>> entry : inflowToOutflowsMap.entrySet()) {
+			for (Outflow outflow : entry.getValue()) {
+				List<Inflow> inflows = outflowToInflows.get(outflow);
+				if (inflows == null) {
+					inflows = new ArrayList<Inflow>();
+					outflowToInflows.put(outflow, inflows);
+				}
+				inflows.add(entry.getKey());
+			}
+		}
+
+		// number the outflows of each node as routes
+		List<Route> routes = new ArrayList<Route>();
+		Map<Outflow,Route> outflowToRoute = new HashMap<Outflow,Route>();
+		_routesFromNode = new Route[_nodes.length][];
+		for (int i = 0; i < _nodes.length; i++) {
+
+			List<Route> routesFromNode = new ArrayList<Route>();
+			for (Outflow outflow : _nodes[i].getOutflows().values()) {
+				Route route = new Route(routes.size(), i, outflow, outflowToInflows.get(outflow));
+				routes.add(route);
+				routesFromNode.add(route);
+				outflowToRoute.put(outflow, route);
+			}
+
+			_routesFromNode[i] = routesFromNode.toArray(new Route[routesFromNode.size()]);
+		}
+		_routes = routes.toArray(new Route[routes.size()]);
+
+		// list the feeds into each node
+		_feedsToNode = new Feed[_nodes.length][];
+		for (int i = 0; i < _nodes.length; i++) {
+
+			List<Feed> feeds = new ArrayList<Feed>();
+			for (Inflow inflow : _nodes[i].getNodeInflows()) {
+				List<Outflow> outflows = inflowToOutflowsMap.get(inflow);
+				if (outflows != null) {
+					for (Outflow outflow : outflows) {
+						feeds.add(new Feed(inflow.getLabel(), outflow, nodeId(outflow.getNode())));
+					}
+				}
+			}
+
+			_feedsToNode[i] = feeds.toArray(new Feed[feeds.size()]);
+		}
+	}
+
+	public int getNodeCount() {
+		return _nodes.length;
+	}
+
+	public int getRouteCount() {
+		return _routes.length;
+	}
+
+	public WorkflowNode getNode(int nodeId) {
+		return _nodes[nodeId];
+	}
+
+	public Route getRoute(int routeId) {
+		return _routes[routeId];
+	}
+
+	/**
+	 * Returns the id of the given node, or -1 if it is not one of the listed nodes.
+	 * Intended for use while setting up a run, not on the per-packet path.
+	 */
+	public int nodeId(WorkflowNode node) {
+		Integer id = _nodeIds.get(node);
+		return (id == null) ? -1 : id;
+	}
+
+	/**
+	 * Returns the routes from the outflows of the node with the given id.  The returned
+	 * array is shared and must not be modified.
+	 */
+	public Route[] routesFrom(int nodeId) {
+		return _routesFromNode[nodeId];
+	}
+
+	/**
+	 * Returns the feeds into the inflows of the node with the given id.  The returned
+	 * array is shared and must not be modified.
+	 */
+	public Feed[] feedsTo(int nodeId) {
+		return _feedsToNode[nodeId];
+	}
+
+	/**
+	 * An outflow and the node inflows receiving the packets sent on it.
+	 */
+	@Immutable()
+	public class Route {
+
+		public final int id;
+		public final int senderId;
+		public final Outflow outflow;
+		public final String outflowLabel;
+		public final WorkflowNode[] receivers;
+		public final int[] receiverIds;
+		public final String[] receiverLabels;
+
+		private Route(int id, int senderId, Outflow outflow, List<Inflow> inflows) {
+
+			this.id = id;
+			this.senderId = senderId;
+			this.outflow = outflow;
+			this.outflowLabel = outflow.getLabel();
+
+			int count = (inflows == null) ? 0 : inflows.size();
+			receivers = new WorkflowNode[count];
+			receiverIds = new int[count];
+			receiverLabels = new String[count];
+			for (int i = 0; i < count; i++) {
+				Inflow inflow = inflows.get(i);
+				receivers[i] = inflow.getNode();
+				receiverIds[i] = nodeId(inflow.getNode());
+				receiverLabels[i] = inflow.getLabel();
+			}
+		}
+
+		public boolean hasReceivers() {
+			return receivers.length > 0;
+		}
+	}
+
+	/**
+	 * An inflow of a node and one of the outflows it receives packets from.
+	 */
+	@Immutable()
+	public static class Feed {
+
+		public final String inflowLabel;
+		public final Outflow outflow;
+		public final int senderId;
+
+		private Feed(String inflowLabel, Outflow outflow, int senderId) {
+			this.inflowLabel = inflowLabel;
+			this.outflow = outflow;
+			this.senderId = senderId;
+		}
+	}
+}
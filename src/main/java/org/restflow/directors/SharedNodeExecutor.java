@@ -0,0 +1,42 @@
+package org.restflow.directors;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Provides the process-wide work-stealing pool used by pooled MTDataDrivenDirectors
+ * that are not given an executor of their own.  The pool is shared by all workflows
+ * and subworkflows in the process, so the number of threads running nodes depends
+ * only on the parallelism of the pool and not on the size of the workflow graphs.
+ * The parallelism defaults to the number of available processors, but at least two
+ * so that an actor blocking in a step cannot stall every other node, and may be set
+ * with the restflow.director.parallelism system property.
+ */
+@ThreadSafe()
+public class SharedNodeExecutor {
+
+	public static final String PARALLELISM_PROPERTY = "restflow.director.parallelism";
+
+	@GuardedBy("SharedNodeExecutor.class") private static ForkJoinPool _pool;
+
+	private SharedNodeExecutor() {}
+
+	public static synchronized ExecutorService getExecutor() {
+
+		if (_pool == null) {
+
+			int parallelism = Integer.getInteger(PARALLELISM_PROPERTY,
+					Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+			// use FIFO scheduling because node tasks are event driven and never joined
+			_pool = new ForkJoinPool(parallelism,
+					ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		}
+
+		return _pool;
+	}
+}
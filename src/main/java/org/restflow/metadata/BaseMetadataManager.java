@@ -68,7 +68,9 @@ public abstract class BaseMetadataManager implements MetadataManager {
 			}
 		}
 		
-		outputValues.put("restflow-stdout", getStdoutRecording());
+		if (_stdoutRecorder != null) {
+			outputValues.put("restflow-stdout", getStdoutRecording());
+		}
 
 		_runMetadata.setOutputValues(outputValues);
 		
@@ -1,15 +1,15 @@
 package org.restflow.metadata;
 
 
-import java.sql.ResultSet;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -27,8 +27,6 @@ import org.restflow.nodes.AbstractWorkflowNode;
 import org.restflow.nodes.WorkflowNode;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
 
 
 /**
@@ -38,7 +36,7 @@ import org.yaml.snakeyaml.Yaml;
 @ThreadSafe()
 public class BasicTraceRecorder implements TraceRecorder {
 
-	private DumperOptions _yamlDumperOptions;
+	private final ProductsIndexWriter _productsIndexWriter;
 
 	private Map<String,Object> _dataStore;
 	private WritableTrace _writableTrace;
@@ -47,23 +45,29 @@ public class BasicTraceRecorder implements TraceRecorder {
 	private Map<Inflow,Long> 				_inflowIdMap	  = new Hashtable<Inflow,Long>();
 	private Map<Outflow,Long> 				_outflowIdMap	  = new Hashtable<Outflow,Long>();
 	private Map<WorkflowNode,Long> 			_nodeIdMap 		  = new Hashtable<WorkflowNode,Long>();
-	private Set<Packet>						_unsentPackets	  = new HashSet<Packet>();
-	
-	private final String EOL = System.getProperty("line.separator");
+	private Set<Packet>						_unsentPackets	  = Collections.newSetFromMap(new ConcurrentHashMap<Packet,Boolean>());
 	
 	public Map<Long,Long> _currentStepIdMap = new Hashtable<Long,Long>();
 		
 	public BasicTraceRecorder(BasicTraceRecorder parentRecorder) {
 		_currentStepIdMap.putAll(parentRecorder._currentStepIdMap);
+		
+		// share the products index writer so entries of both recorders stay in order
+		_productsIndexWriter = parentRecorder._productsIndexWriter;
 	}
 
 	public BasicTraceRecorder() {
+		_productsIndexWriter = new ProductsIndexWriter();
 	}
 
 	public synchronized void setApplicationContext(ApplicationContext context) throws BeansException {
 		_workflowContext = (WorkflowContext)context;
 	}
 
+	protected synchronized WorkflowContext getWorkflowContext() {
+		return _workflowContext;
+	}
+
 	public void setDataStore(Map<String,Object> dataStore) {
 		_dataStore = dataStore;
 	}
@@ -88,9 +92,22 @@ public class BasicTraceRecorder implements TraceRecorder {
 
 	@Override
 	public Trace getReadOnlyTrace() throws SQLException {
+		_writableTrace.flush();
 		return _writableTrace.getReadOnlyTrace();
 	}
 	
+	/**
+	 * Waits until every event recorded so far has been written to the trace database,
+	 * and every product recorded so far to the products index.
+	 */
+	@Override
+	public void flush() throws SQLException {
+		_flushProductsIndex();
+		if (_writableTrace != null) {
+			_writableTrace.flush();
+		}
+	}
+	
 	public void recordWorkflowGraph(Workflow workflow) throws Exception {
 		
 		if (_writableTrace == null) {
@@ -104,8 +121,12 @@ public class BasicTraceRecorder implements TraceRecorder {
 	
 	public void close() throws SQLException {
 
-		if (_writableTrace != null) {
-			_writableTrace.close();
+		try {
+			_flushProductsIndex();
+		} finally {
+			if (_writableTrace != null) {
+				_writableTrace.close();
+			}
 		}
 	}
 	
@@ -126,39 +147,40 @@ public class BasicTraceRecorder implements TraceRecorder {
 				}
 				
 				long packetCount = inflow.getEventCount();
-				_writableTrace.insertPortEvent(portID, packet.getID(), null, "r", packetCount, _getCurrentTimestamp());
-				_writableTrace.updatePortPacketCount(portID, packetCount);
+				_writableTrace.queueUnassociatedReadEvent(nodeID, portID, packet.getID(), packetCount, _getCurrentTimestamp());
+				_writableTrace.queuePortPacketCount(portID, packetCount);
 			
 			}
 		}
 	}
 
+	/**
+	 * Assigns the packet an ID from the in-memory packet sequence and queues the rows
+	 * describing it.  Nothing here waits on the trace database or on other threads
+	 * recording packets, so creating a packet never blocks the node that created it.
+	 */
 	public void recordPacketCreated(Packet packet, Long stepID) throws Exception {
 		
-		synchronized(_writableTrace) {
-
-			Long packetID = _writableTrace.insertPacket(null);	
-			packet.setID(packetID);
-			_unsentPackets.add(packet);
-		
-			if (packet instanceof MultiResourcePacket) {
-				for (PublishedResource resource : ((MultiResourcePacket)packet).getResources()) {
-					_recordResource(packetID, resource, resource.referencesData());
-				}
-			} else {
-				PublishedResource resource = ((SingleResourcePacket)packet).getResource();
-					_recordResource(packetID, resource, resource.referencesData());
+		long packetID = _writableTrace.queuePacket(null);	
+		packet.setID(packetID);
+		_unsentPackets.add(packet);
+	
+		if (packet instanceof MultiResourcePacket) {
+			for (PublishedResource resource : ((MultiResourcePacket)packet).getResources()) {
+				_recordResource(packetID, resource, resource.referencesData());
 			}
+		} else {
+			PublishedResource resource = ((SingleResourcePacket)packet).getResource();
+				_recordResource(packetID, resource, resource.referencesData());
+		}
 
-			String[] keys = packet.getMetadataKeys();
-			Object[] values = packet.getMetadataValues();
-			for (int i = 0; i < keys.length; i++) {
-				try {
-					long dataID = _writableTrace.insertData(values[i], false, null);
-					_writableTrace.insertPacketMetadata(packetID, keys[i], dataID);
-				} catch (SQLException e) {
-					e.printStackTrace();
-				}
+		int metadataCount = packet.getMetadataCount();
+		for (int i = 0; i < metadataCount; i++) {
+			try {
+				long dataID = _writableTrace.queueData(packet.getMetadataValue(i), false, null);
+				_writableTrace.queuePacketMetadata(packetID, packet.getMetadataKey(i), dataID);
+			} catch (SQLException e) {
+				e.printStackTrace();
 			}
 		}
 	}
@@ -172,9 +194,9 @@ public class BasicTraceRecorder implements TraceRecorder {
 		}
 		
 		try {
-			long dataID = _writableTrace.insertData(stringValue, isReference, null);
-			long resourceID = _writableTrace.insertResource(resource.getUri().toString(), dataID);
-			_writableTrace.insertPacketResource(packetID, resourceID);
+			long dataID = _writableTrace.queueData(stringValue, isReference, null);
+			long resourceID = _writableTrace.queueResource(resource.getUri().toString(), dataID, resource.getDigest());
+			_writableTrace.queuePacketResource(packetID, resourceID);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -201,13 +223,12 @@ public class BasicTraceRecorder implements TraceRecorder {
 				}
 		
 				long packetCount = outflow.getEventCount();
-				long portEventID = _writableTrace.insertPortEvent(portID, packet.getID(), 
+				long portEventID = _writableTrace.queuePortEvent(portID, packet.getID(), 
 						stepID, "w", packetCount, _getCurrentTimestamp());
-				_writableTrace.updatePortPacketCount(portID, packetCount);
+				_writableTrace.queuePortPacketCount(portID, packetCount);
 				
-				if (_unsentPackets.contains(packet)) {
-					_writableTrace.updatePacketOriginEvent(packet.getID(), portEventID);
-					_unsentPackets.remove(packet);
+				if (_unsentPackets.remove(packet)) {
+					_writableTrace.queuePacketOriginEvent(packet.getID(), portEventID);
 				}
 			}
 		}
@@ -222,6 +243,15 @@ public class BasicTraceRecorder implements TraceRecorder {
 		}
 	}
 	
+	// waits for the products index writer, reporting its failures as trace failures
+	private void _flushProductsIndex() throws SQLException {
+		try {
+			_productsIndexWriter.flush();
+		} catch (IOException e) {
+			throw new SQLException("Error writing products index", e);
+		}
+	}
+
 	private Timestamp _getCurrentTimestamp() {
 		Date date = new Date();	
 		return new Timestamp(date.getTime());
@@ -244,34 +274,26 @@ public class BasicTraceRecorder implements TraceRecorder {
 		}
 	}
 	
-	private synchronized void _appendToProductsIndex(PublishedResource resource) {
+	// queues the entry for the products index writer, rendering the value to a string 
+	// now because the published value may change after this call returns
+	private void _appendToProductsIndex(PublishedResource resource) {
 		
 		Uri uri = resource.getUri();
 		String path = uri.getPath();
 		String scheme = uri.getScheme();
-			
-		String payload = null;		
+		
+		MetadataManager metadataManager = _workflowContext.getMetaDataManager();
 				
 		if (scheme != null && scheme.equals("file")) {
 			
-			payload = "!file " + path;
-			_workflowContext.getMetaDataManager().writeToProductsFile(path + ": " + payload + EOL);	
+			_productsIndexWriter.appendFile(metadataManager, path);
 			
 		} else {
 			
-			if (_yamlDumperOptions == null) {
-				_yamlDumperOptions = new DumperOptions();
-				_yamlDumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-				_yamlDumperOptions.setWidth(160);
-			}
-			
 			Object data = resource.getData();
 			
 			if (data != null) {
-				Map<String,String> map = new HashMap<String,String>();
-				map.put(path, data.toString());
-				Yaml yaml = new Yaml(_yamlDumperOptions);
-				_workflowContext.getMetaDataManager().writeToProductsFile(yaml.dump(map));
+				_productsIndexWriter.appendValue(metadataManager, path, data.toString());
 			}
 		}
 	}
@@ -299,12 +321,10 @@ public class BasicTraceRecorder implements TraceRecorder {
 			// get the ID of the top workflow node
 			Long topNodeID = _writableTrace.identifyTopNode();
 			
-			Long lastStepCount = _writableTrace.getStepCountForNode(topNodeID);
-			Long newStepCount = lastStepCount + 1;
+			Long newStepCount = _writableTrace.incrementStepCount(topNodeID);
 			
 			// record the step of the top node
-			_writableTrace.updateNodeStepCount(topNodeID, newStepCount);
-			Long stepID = _writableTrace.insertStep(topNodeID, null, newStepCount, 0L, _getCurrentTimestamp(), null);
+			Long stepID = _writableTrace.queueStep(topNodeID, null, newStepCount, 0L, _getCurrentTimestamp(), null);
 			_currentStepIdMap.put(topNodeID, stepID);
 
 		}
@@ -318,8 +338,12 @@ public class BasicTraceRecorder implements TraceRecorder {
 			Long topNodeID = _writableTrace.identifyTopNode();
 
 			long stepID = _currentStepIdMap.get(topNodeID);
-			_writableTrace.updateStepEnd(stepID, _getCurrentTimestamp());
+			_writableTrace.queueStepEnd(stepID, _getCurrentTimestamp());
 		}
+		
+		// make the complete products index and trace of the run visible to readers
+		_flushProductsIndex();
+		_writableTrace.flush();
 	}
 		
 	public long recordStepStarted(WorkflowNode node) throws Exception {
@@ -334,28 +358,16 @@ public class BasicTraceRecorder implements TraceRecorder {
 				parentStepID = _currentStepIdMap.get(parentNodeID);
 			}
 
-			// get a lock on the trace database
-			_writableTrace.startTransaction();
-			
 			// update the step count of the node
-			Long lastStepCount = _writableTrace.getStepCountForNode(nodeID);
-			Long newStepCount = lastStepCount + 1;
-			_writableTrace.updateNodeStepCount(nodeID, newStepCount);
+			Long newStepCount = _writableTrace.incrementStepCount(nodeID);
 
 			// record the step in the trace
-			Long stepID = _writableTrace.insertStep(nodeID, parentStepID, newStepCount, 0L, _getCurrentTimestamp(), null);
+			Long stepID = _writableTrace.queueStep(nodeID, parentStepID, newStepCount, 0L, _getCurrentTimestamp(), null);
 			
-			// get the data read events on this node not yet associated with a step
-			ResultSet resultSet = _writableTrace.getUnassociatedReadEventsForNode(nodeID);
-			
-			// associate each of these read events with the new step
-			while (resultSet.next()) {
-				Long portEventID = resultSet.getLong("PortEventID");
-				_writableTrace.updatePortEventStepID(portEventID, stepID);
+			// associate the data read events on this node not yet associated with a step with the new step
+			for (Long portEventID : _writableTrace.takeUnassociatedReadEvents(nodeID)) {
+				_writableTrace.queuePortEventStepID(portEventID, stepID);
 			}
-			
-			// unlock the trace database
-			_writableTrace.endTransaction();
 
 			// associate the new step record with the node
 			_currentStepIdMap.put(nodeID, stepID);
@@ -371,7 +383,7 @@ public class BasicTraceRecorder implements TraceRecorder {
 		synchronized(_writableTrace) {
 			long nodeID = _getNodeID(node);
 			long stepID = _currentStepIdMap.get(nodeID);
-			_writableTrace.updateStepEnd(stepID, _getCurrentTimestamp());
+			_writableTrace.queueStepEnd(stepID, _getCurrentTimestamp());
 		}
 	}
 	
@@ -383,31 +395,31 @@ public class BasicTraceRecorder implements TraceRecorder {
 
 	@Override
 	public void recordWorkflowInputEvent(String inputName, Object value) throws Exception {
-		Long dataID = _writableTrace.insertData(value, false, null);
-		Long resourceID = _writableTrace.insertResource(null, dataID);
-		Long packetID = _writableTrace.insertPacket(null);
-		_writableTrace.insertPacketResource(packetID, resourceID);
+		long dataID = _writableTrace.queueData(value, false, null);
+		long resourceID = _writableTrace.queueResource(null, dataID, null);
+		long packetID = _writableTrace.queuePacket(null);
+		_writableTrace.queuePacketResource(packetID, resourceID);
 		Long nodeID = _writableTrace.identifyTopNode();
 		Long stepID = _currentStepIdMap.get(nodeID);
 		Long stepCount = _writableTrace.getStepCountForNode(nodeID);
 		Long portID = _writableTrace.identifyInflow(nodeID, inputName);
-		Long originEventID = _writableTrace.insertPortEvent(portID, packetID, stepID, "r", stepCount, _getCurrentTimestamp());
-		_writableTrace.updatePortPacketCount(portID, stepCount);
-		_writableTrace.updatePacketOriginEvent(packetID, originEventID);
+		long originEventID = _writableTrace.queuePortEvent(portID, packetID, stepID, "r", stepCount, _getCurrentTimestamp());
+		_writableTrace.queuePortPacketCount(portID, stepCount);
+		_writableTrace.queuePacketOriginEvent(packetID, originEventID);
 	}
 
 	@Override
 	public void recordWorkflowOutputEvent(String inputName, Object value) throws Exception {
-		Long dataID = _writableTrace.insertData(value, false, null);
-		Long resourceID = _writableTrace.insertResource(null, dataID);
-		Long packetID = _writableTrace.insertPacket(null);
-		_writableTrace.insertPacketResource(packetID, resourceID);
+		long dataID = _writableTrace.queueData(value, false, null);
+		long resourceID = _writableTrace.queueResource(null, dataID, null);
+		long packetID = _writableTrace.queuePacket(null);
+		_writableTrace.queuePacketResource(packetID, resourceID);
 		Long nodeID = _writableTrace.identifyTopNode();
 		Long stepID = _currentStepIdMap.get(nodeID);
 		Long stepCount = _writableTrace.getStepCountForNode(nodeID);
 		Long portID = _writableTrace.identifyOutflow(nodeID, inputName);
-		Long originEventID = _writableTrace.insertPortEvent(portID, packetID, stepID, "w", stepCount, _getCurrentTimestamp());
-		_writableTrace.updatePortPacketCount(portID, stepCount);
-		_writableTrace.updatePacketOriginEvent(packetID, originEventID);
+		long originEventID = _writableTrace.queuePortEvent(portID, packetID, stepID, "w", stepCount, _getCurrentTimestamp());
+		_writableTrace.queuePortPacketCount(portID, stepCount);
+		_writableTrace.queuePacketOriginEvent(packetID, originEventID);
 	}
 }
\ No newline at end of file
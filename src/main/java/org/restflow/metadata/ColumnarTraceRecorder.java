@@ -0,0 +1,27 @@
+package org.restflow.metadata;
+
+import org.restflow.WorkflowContext;
+
+/**
+ * A BasicTraceRecorder that records runs as columnar segment files in the metadata
+ * directory of each run instead of in a trace database file.  Select it with
+ * WorkflowContextBuilder.recorder().  Runs whose metadata manager keeps no files are
+ * recorded in an in-memory trace database as by a BasicTraceRecorder.
+ */
+public class ColumnarTraceRecorder extends BasicTraceRecorder {
+
+	@Override
+	public void createTrace() throws Exception {
+
+		WorkflowContext context = getWorkflowContext();
+		MetadataManager metadataManager = context.getMetaDataManager();
+
+		if (metadataManager instanceof FileSystemMetadataManager) {
+			String metadataDirectory = ((FileSystemMetadataManager)metadataManager).getMetadataDirectory();
+			setWritableTrace(new ColumnarWritableTrace(context,
+					metadataDirectory + TraceSegmentLoader.SEGMENT_DIRECTORY));
+		} else {
+			super.createTrace();
+		}
+	}
+}
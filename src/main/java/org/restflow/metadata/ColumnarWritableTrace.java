@@ -0,0 +1,92 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.sql.SQLException;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.restflow.WorkflowContext;
+import org.restflow.actors.Workflow;
+
+/**
+ * Records a workflow run as columnar segment files rather than in a trace database file.
+ * The workflow graph is stored in a private in-memory trace database, where it is
+ * needed to identify nodes and ports as the run is recorded, and is saved to the
+ * segment directory as a SQL script whenever it changes.  The rows recording steps,
+ * packets, resources, and port events are appended to segment files by a
+ * TraceSegmentWriter.
+ *
+ * getReadOnlyTrace() commits the rows recorded so far and materializes them with a
+ * TraceSegmentLoader, loading the segments again only when rows have been committed
+ * since the last load.  A trace loaded from the segments reflects the rows recorded
+ * before it was returned, so call getReadOnlyTrace() again to see later rows.
+ */
+public class ColumnarWritableTrace extends WritableTrace {
+
+	private final String _segmentDirectory;
+	private final TraceSegmentWriter _segmentWriter;
+
+	@GuardedBy("this") private Trace _loadedTrace;
+	@GuardedBy("this") private long _loadedRowCount;
+
+	public ColumnarWritableTrace(WorkflowContext context, String segmentDirectory) throws Exception {
+		this(segmentDirectory, new TraceSegmentWriter(segmentDirectory));
+		createTraceDBTables(context, _traceDBConnection);
+		_saveGraph();
+	}
+
+	private ColumnarWritableTrace(String segmentDirectory, TraceSegmentWriter segmentWriter) throws SQLException {
+		super(createPrivateVolatileDatabase(), segmentWriter);
+		_segmentDirectory = segmentDirectory;
+		_segmentWriter = segmentWriter;
+	}
+
+	public String getSegmentDirectory() {
+		return _segmentDirectory;
+	}
+
+	@Override
+	public void storeWorkflowGraph(Workflow workflow, Long parentNodeID) throws Exception {
+
+		super.storeWorkflowGraph(workflow, parentNodeID);
+
+		// nested workflows are stored by the call storing the top-level workflow
+		if (parentNodeID == null) {
+			_saveGraph();
+		}
+	}
+
+	@Override
+	public synchronized Trace getReadOnlyTrace() throws SQLException {
+
+		flush();
+
+		long rowCount = _segmentWriter.getCommittedRowCount();
+		if (_loadedTrace == null || _loadedRowCount != rowCount) {
+			_loadedTrace = TraceSegmentLoader.load(_segmentDirectory);
+			_loadedRowCount = rowCount;
+		}
+
+		return _loadedTrace;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		super.close();
+		_segmentWriter.close();
+	}
+
+	// writes the graph tables as a script the loader runs to create its database
+	private void _saveGraph() throws SQLException {
+
+		String path = new File(_segmentDirectory, TraceSegmentLoader.GRAPH_SCRIPT_FILE).getAbsolutePath();
+
+		synchronized(_traceDBConnection) {
+			_statement.execute("SCRIPT TO '" + path.replace("'", "''") + "'");
+		}
+
+		synchronized(this) {
+			_loadedTrace = null;
+		}
+	}
+}
@@ -1,11 +1,12 @@
 package org.restflow.metadata;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,9 +28,14 @@ public class FileSystemMetadataManager extends BaseMetadataManager {
 	private static final String OUTPUTS_FILE = METADATA_DIR + "outputs" + YAML_EXTENSION;	
 	public static final String REPORTS_DEFINITION_FILE = METADATA_DIR + "report-defs" + YAML_EXTENSION;				
 	public static final String ACTOR_STATE_FILE = METADATA_DIR + "endstate" + YAML_EXTENSION;
+	private static final String TRACE_DB_FILE = METADATA_DIR + "tracedb.h2.db";
+	private static final String TRACE_SEGMENT_DIR = METADATA_DIR + TraceSegmentLoader.SEGMENT_DIRECTORY;
 
 	private Map<String, PrintStream> _logStreams = new HashMap<String,PrintStream>();
 	private PrintStream _productsFileStream;
+	private FileOutputStream _productsFileOutputStream;
+	
+	private static final int PRODUCTS_FILE_BUFFER_SIZE = 64 * 1024;
 	
 	@Override	
 	public String getRunDirectory() {
@@ -130,6 +136,20 @@ public class FileSystemMetadataManager extends BaseMetadataManager {
 		_productsFileStream.append(message);
 	}
 	
+	/**
+	 * Writes any buffered text of the products file and forces it to disk, throwing an
+	 * exception if any text written to the file since it was opened could not be written.
+	 */
+	public synchronized void syncProductsFile() throws IOException {
+		if (_productsFileStream != null) {
+			_productsFileStream.flush();
+			if (_productsFileStream.checkError()) {
+				throw new IOException("Error writing products file");
+			}
+			_productsFileOutputStream.getChannel().force(false);
+		}
+	}
+	
 	/**
 	 * Allows an active instance of the MetaDataManager to return a copy of the current metadata.
 	 * 
@@ -138,109 +158,93 @@ public class FileSystemMetadataManager extends BaseMetadataManager {
 	 */
 	@Override
 	public RunMetadata getRunMetadata(TraceRecorder recorder) throws Exception {
+		
+		// write out products still queued by the recorder before they are read back
+		if (recorder != null) {
+			recorder.flush();
+		}
+		
 		return restoreMetadata(_runMetadata.getRunDirectory());
 	}
 
-	static public RunMetadata restoreMetadata(String runDirectoryPath) throws Exception {
-		
-		RunMetadata metadata = new RunMetadata();
-		metadata.setRunDirectory(runDirectoryPath);
-		File runDirectory = new File(runDirectoryPath);
+	/**
+	 * Returns a string that changes whenever a file read by restoreMetadata() is created,
+	 * deleted, or rewritten, built from the modification times and lengths of the files and
+	 * of the run and metadata directories.  The files include the trace database and each
+	 * file in the trace segment directory.  Lets callers caching restored metadata tell 
+	 * whether a run directory has changed without reading its files.
+	 */
+	static public String metadataSignature(String runDirectoryPath) {
 		
-		try {
-			metadata.setMetadataStorageProperty("runName", runDirectory.getName());
-			metadata.setMetadataStorageProperty("lastModified", runDirectory.lastModified());
-		} catch (Exception e ) {
-			metadata.getRestoreErrors().add( e.getMessage() );			
-		}
-			
-		Yaml rdr = new Yaml();
-
-		File report = new File (runDirectoryPath + REPORTS_DEFINITION_FILE);
-		File control = new File (runDirectoryPath + CONTROL_FILE);		
-		File productsFile = new File( runDirectoryPath + PRODUCTS_FILE );
-		File stdout = new File(runDirectoryPath + File.separator + METADATA_DIR + StdoutRecorder.STDOUT_FILE );
-		File stderr = new File(runDirectoryPath + File.separator + METADATA_DIR + StdoutRecorder.STDERR_FILE );
-		File inputFile = new File(runDirectoryPath + INPUTS_FILE );
-		File outputFile = new File(runDirectoryPath + OUTPUTS_FILE );
-		File stateFile = new File (runDirectoryPath + ACTOR_STATE_FILE );		
+		StringBuilder signature = new StringBuilder();
 		
+		String[] paths = new String[] {
+			"", 
+			METADATA_DIR,
+			REPORTS_DEFINITION_FILE,
+			CONTROL_FILE,
+			PRODUCTS_FILE,
+			File.separator + METADATA_DIR + StdoutRecorder.STDOUT_FILE,
+			File.separator + METADATA_DIR + StdoutRecorder.STDERR_FILE,
+			INPUTS_FILE,
+			OUTPUTS_FILE,
+			ACTOR_STATE_FILE,
+			TRACE_DB_FILE,
+			TRACE_SEGMENT_DIR
+		};
 		
-		try {
-			metadata.setReporters( (HashMap<String,Reporter>)rdr.load(new FileInputStream(report)) );
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
+		for (String path : paths) {
+			_appendFileSignature(signature, new File(runDirectoryPath + path));
 		}
 		
-		try {	
-			metadata.setProcessProperties((Map<String,Object>)rdr.load(FileUtils.readFileToString(control)));
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
-
-		try {
-			String productsYamlString = PortableIO.readTextFile(productsFile);
-			metadata.setProductsYamlString(productsYamlString);
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
+		// segment files are appended to in place, so the directory times alone do not change
+		File[] segmentFiles = new File(runDirectoryPath + TRACE_SEGMENT_DIR).listFiles();
+		if (segmentFiles != null) {
+			Arrays.sort(segmentFiles);
+			for (File file : segmentFiles) {
+				signature.append(file.getName()).append('=');
+				_appendFileSignature(signature, file);
+			}
 		}
 		
-		try {
-			metadata.setStdoutText( FileUtils.readFileToString(stdout) );
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
-		try {
-			metadata.setStderr(FileUtils.readFileToString(stderr) );
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
-		try {
-			String metadataDirectory = runDirectoryPath + METADATA_DIR;
-			Trace trace = new Trace(metadataDirectory);
-			metadata.setTrace(trace);
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
+		return signature.toString().trim();
+	}
+	
+	private static void _appendFileSignature(StringBuilder signature, File file) {
+		signature.append(file.lastModified()).append(':').append(file.length()).append(' ');
+	}
+	
+	/**
+	 * Returns the metadata of the run in the given directory.  Each part of the metadata
+	 * is read from the directory when it is first requested.
+	 */
+	static public RunMetadata restoreMetadata(String runDirectoryPath) throws Exception {
 		
-		Yaml reader = new Yaml();
-		try { 
-			if (inputFile.exists()) {
-				Map<String,Object> inputs = new HashMap<String,Object>();		
-				String inputFileContents =FileUtils.readFileToString(inputFile);
-				Map<String,Object> inputMap = (Map<String,Object>)reader.load(inputFileContents);
-				if ( inputMap != null) {
-					inputs.putAll( inputMap );
-				}
-				metadata.setInputValues(inputs);
-			}
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
+		RunMetadata metadata = new RestoredRunMetadata(
+				runDirectoryPath,
+				REPORTS_DEFINITION_FILE,
+				CONTROL_FILE,
+				PRODUCTS_FILE,
+				File.separator + METADATA_DIR + StdoutRecorder.STDOUT_FILE,
+				File.separator + METADATA_DIR + StdoutRecorder.STDERR_FILE,
+				INPUTS_FILE,
+				OUTPUTS_FILE,
+				ACTOR_STATE_FILE,
+				METADATA_DIR);
 		
-		try {
-			Map<String,Object> outputValues = new HashMap<String,Object>();
-			outputValues = (Map<String,Object>) reader.load( FileUtils.readFileToString(outputFile ));
-	 		
-			metadata.setOutputValues(outputValues);
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
-		}
+		File runDirectory = new File(runDirectoryPath);
 		
 		try {
-			ActorState state = new ActorState();
-			state = (ActorState) reader.load( FileUtils.readFileToString( stateFile ));
-	 		
-			metadata.setActorState(state);
-		} catch (Exception e) {
-			metadata.getRestoreErrors().add( e.getMessage() );
+			metadata.setMetadataStorageProperty("runName", runDirectory.getName());
+			metadata.setMetadataStorageProperty("lastModified", runDirectory.lastModified());
+		} catch (Exception e ) {
+			metadata.getRestoreErrors().add( e.getMessage() );			
 		}
-
 		
 		return metadata;
 	}
 
-	public void createProductsFileStream() throws Exception {
+	public synchronized void createProductsFileStream() throws Exception {
 		
 		if (_productsFileStream == null) {
 			String path = 	_runMetadata.getRunDirectory() + 
@@ -255,7 +259,9 @@ public class FileSystemMetadataManager extends BaseMetadataManager {
 				throw new Exception("Error creating products file at " + path);
 			}
 			
-			_productsFileStream =  new PrintStream(fileOutputStream);
+			_productsFileOutputStream = fileOutputStream;
+			_productsFileStream =  new PrintStream(
+					new BufferedOutputStream(fileOutputStream, PRODUCTS_FILE_BUFFER_SIZE), false, "UTF-8");
 		}
 	}
 }
@@ -30,6 +30,7 @@ public class NoopTraceRecorder implements TraceRecorder {
 	@Override public void setApplicationContext(ApplicationContext context) throws BeansException {}
 	@Override public void recordWorkflowGraph(Workflow workflow) throws SQLException {}
 	@Override public void close() throws SQLException {}
+	@Override public void flush() throws SQLException {}
 	@Override public Trace getReadOnlyTrace() throws SQLException {return null;}
 	@Override public void recordWorkflowRunStarted() throws Exception {}
 	@Override public void recordWorkflowRunCompleted() throws Exception {}
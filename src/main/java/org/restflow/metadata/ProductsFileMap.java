@@ -0,0 +1,272 @@
+package org.restflow.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * A read-only map over the products file of a run directory that parses the value
+ * of each product only when it is first requested.  The products file is written as a
+ * sequence of one-entry YAML maps, each starting on a line that is not indented and is
+ * not an item of a block sequence, which is written unindented under its key.  The
+ * first use of the map scans the file once, recording the byte range of the entry for
+ * each key, and each later get() reads and parses only the entry for the requested key.
+ * The scan reads the key of an entry from the text of its first line, which needs no
+ * YAML parsing when the key is a plain string scalar, as the published paths written
+ * by a ProductsIndexWriter are, and parses only the entries whose keys are not.  Where
+ * a key occurs more than once the last entry gives the value and the first gives the
+ * position in the key set, as when the whole file is parsed as one map.  The file is
+ * read as UTF-8.
+ *
+ * This class is thread safe.  Its methods are synchronized.
+ */
+@ThreadSafe()
+class ProductsFileMap extends AbstractMap<String,Object> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String KEY_INDICATORS = "-?:,[]{}#&*!|>'\"%@`";
+
+	private final File _productsFile;
+	private final Yaml _reader = RunMetadata.newProductsReader();
+	private final Resolver _resolver = new Resolver();
+
+	private Map<String,Entry> _entries;
+	private final Map<String,Object> _values = new HashMap<String,Object>();
+
+	ProductsFileMap(File productsFile) {
+		_productsFile = productsFile;
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+
+		Entry entry = _index().get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		if (!_values.containsKey(key)) {
+			Map<String,Object> products = _parse(entry);
+			_values.put((String)key, (products == null) ? null : products.get(key));
+		}
+
+		return _values.get(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return _index().containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return _index().size();
+	}
+
+	@Override
+	public synchronized Set<String> keySet() {
+		return Collections.unmodifiableSet(_index().keySet());
+	}
+
+	@Override
+	public synchronized Set<Map.Entry<String,Object>> entrySet() {
+
+		Map<String,Object> products = new LinkedHashMap<String,Object>();
+		for (String key : _index().keySet()) {
+			products.put(key, get(key));
+		}
+
+		return Collections.unmodifiableSet(products.entrySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		_entries = new LinkedHashMap<String,Entry>();
+		_values.clear();
+	}
+
+	// scans the products file on first use, recording the byte range of each entry
+	private Map<String,Entry> _index() {
+
+		if (_entries != null) {
+			return _entries;
+		}
+
+		_entries = new LinkedHashMap<String,Entry>();
+
+		try {
+
+			InputStream stream = new BufferedInputStream(new FileInputStream(_productsFile));
+
+			try {
+
+				ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+				long entryStart = -1;
+				long offset = 0;
+				int lineCount = 0;
+				boolean atLineStart = true;
+				int b;
+
+				while ((b = stream.read()) != -1) {
+
+					// an entry starts at each line not indented and not continuing a complex key
+					// or a sequence value
+					if (atLineStart && b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != ':' && b != '#'
+							&& !_startsSequenceItem(b, stream)) {
+						if (entryStart >= 0) {
+							_indexEntry(new Entry(entryStart, (int)(offset - entryStart)), firstLine);
+						}
+						entryStart = offset;
+						firstLine.reset();
+						lineCount = 0;
+					}
+
+					if (atLineStart) {
+						lineCount++;
+					}
+
+					if (entryStart >= 0 && lineCount == 1) {
+						firstLine.write(b);
+					}
+
+					atLineStart = (b == '\n');
+					offset++;
+				}
+
+				if (entryStart >= 0) {
+					_indexEntry(new Entry(entryStart, (int)(offset - entryStart)), firstLine);
+				}
+
+			} finally {
+				stream.close();
+			}
+
+		} catch (IOException e) {
+			throw new IllegalStateException("Error reading products file " + _productsFile, e);
+		}
+
+		return _entries;
+	}
+
+	// returns true if the line starting with the given byte is an item of a block sequence,
+	// peeking at the byte after a dash without consuming it
+	private static boolean _startsSequenceItem(int b, InputStream stream) throws IOException {
+
+		if (b != '-') {
+			return false;
+		}
+
+		stream.mark(1);
+		int next = stream.read();
+		stream.reset();
+
+		return next == -1 || next == ' ' || next == '\t' || next == '\n' || next == '\r';
+	}
+
+	// records the key of an entry, read from its first line where it is a plain string
+	// and otherwise from the parsed entry, whose values are then kept as parsed
+	private void _indexEntry(Entry entry, ByteArrayOutputStream firstLine) {
+
+		String key = _plainKey(new String(firstLine.toByteArray(), UTF8));
+
+		if (key != null) {
+			_entries.put(key, entry);
+			_values.remove(key);
+			return;
+		}
+
+		Map<String,Object> products = _parse(entry);
+
+		if (products == null) {
+			return;
+		}
+
+		for (Map.Entry<String,Object> product : products.entrySet()) {
+			_entries.put(product.getKey(), entry);
+			_values.put(product.getKey(), product.getValue());
+		}
+	}
+
+	// returns the key of a line starting a block mapping with a plain scalar key that
+	// resolves to a string, or null if the key of the line is not such a scalar
+	private String _plainKey(String line) {
+
+		if (line.isEmpty() || KEY_INDICATORS.indexOf(line.charAt(0)) >= 0) {
+			return null;
+		}
+
+		// the key ends at the first colon followed by a space or the end of the line
+		int end = -1;
+		for (int i = line.indexOf(':'); i >= 0; i = line.indexOf(':', i + 1)) {
+			if (i + 1 == line.length() || Character.isWhitespace(line.charAt(i + 1))) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			return null;
+		}
+
+		String key = line.substring(0, end).trim();
+		if (key.isEmpty() || key.contains(" #") || key.contains("\t#")
+				|| !_resolver.resolve(NodeId.scalar, key, true).equals(Tag.STR)) {
+			return null;
+		}
+
+		return key;
+	}
+
+	// returns the products in the entry, or null if the entry is not a mapping
+	@SuppressWarnings("unchecked")
+	private Map<String,Object> _parse(Entry entry) {
+		try {
+			Object products = _reader.load(_read(entry));
+			return (products instanceof Map) ? (Map<String,Object>)products : null;
+		} catch (IOException e) {
+			throw new IllegalStateException("Error reading products file " + _productsFile, e);
+		}
+	}
+
+	private String _read(Entry entry) throws IOException {
+
+		RandomAccessFile file = new RandomAccessFile(_productsFile, "r");
+
+		try {
+			byte[] bytes = new byte[entry.length];
+			file.seek(entry.start);
+			file.readFully(bytes);
+			return new String(bytes, UTF8);
+		} finally {
+			file.close();
+		}
+	}
+
+	private static class Entry {
+
+		final long start;
+		final int length;
+
+		Entry(long start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.restflow.metadata;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.restflow.util.BackgroundWriter;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Appends entries to the products index of a run on the thread of a BackgroundWriter.
+ * Callers hand each published path and its value to the writer and return immediately.
+ * The writer thread drains the entries in batches, renders them with a single YAML
+ * serializer, and passes the text of each batch to the metadata manager in one write.
+ * Entries are written in the order they were queued.
+ *
+ * The writer asks a FileSystemMetadataManager to force the products file to disk at
+ * most once every SYNC_INTERVAL_MILLIS while entries are being written, and whenever
+ * flush() is called.  flush() waits until every entry queued before the call has been
+ * written and synced, so the products file may be read back once it returns, and
+ * throws any exception encountered while rendering, writing, or syncing entries since
+ * the last call to flush().
+ *
+ * This class is thread safe.  The BackgroundWriter it extends is thread safe, and the
+ * serializer and the record of unsynced writes are used only by the writer thread.
+ */
+@ThreadSafe()
+public class ProductsIndexWriter extends BackgroundWriter<ProductsIndexWriter.Entry> {
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    public class constants                         ////
+
+	public static final long	SYNC_INTERVAL_MILLIS	= 1000;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    private class constants                        ////
+
+	private static final int 	MAX_BATCH_SIZE 		= 4096;
+	private static final String EOL 				= System.getProperty("line.separator");
+	private static final long 	SYNC_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MILLIS);
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   private instance fields                         ////
+
+	private Yaml 						_yaml;
+	private MetadataManager 			_unsyncedManager;
+	private long 						_syncedAt = System.nanoTime();
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     public constructors                           ////
+
+	public ProductsIndexWriter() {
+		super("ProductsIndexWriter", MAX_BATCH_SIZE);
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                       public methods                              ////
+
+	/**
+	 * Queues an entry mapping the path of a file published at the path to the file.
+	 */
+	public void appendFile(MetadataManager metadataManager, String path) {
+		enqueue(new Entry(metadataManager, path, null, true));
+	}
+
+	/**
+	 * Queues an entry mapping a published path to the string form of its value.
+	 */
+	public void appendValue(MetadataManager metadataManager, String path, String value) {
+		enqueue(new Entry(metadataManager, path, value, false));
+	}
+
+	/**
+	 * Waits until every entry queued before the call has been written and synced.
+	 */
+	public void flush() throws IOException {
+
+		awaitFlush();
+
+		Exception failure = takeFailure();
+		if (failure instanceof IOException) {
+			throw (IOException)failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     protected methods                             ////
+
+	@Override
+	protected void writeBatch(List<Entry> entries) throws IOException {
+
+		// render the entries for each metadata manager in turn into a single write
+		StringBuilder text = new StringBuilder();
+		MetadataManager textManager = null;
+		for (Entry entry : entries) {
+			if (entry.metadataManager != textManager) {
+				if (textManager != null) {
+					_write(textManager, text);
+					_sync(textManager);
+				}
+				textManager = entry.metadataManager;
+			}
+			_render(entry, text);
+		}
+
+		_write(textManager, text);
+		_unsyncedManager = textManager;
+
+		if (System.nanoTime() - _syncedAt > SYNC_INTERVAL_NANOS) {
+			_syncUnsyncedManager();
+		}
+	}
+
+	@Override
+	protected void flushed() throws IOException {
+		_syncUnsyncedManager();
+	}
+
+	// sync entries left unsynced before going idle
+	@Override
+	protected void idle() throws IOException {
+		_syncUnsyncedManager();
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	private void _render(Entry entry, StringBuilder text) {
+
+		if (entry.isFile) {
+
+			text.append(entry.path).append(": !file ").append(entry.path).append(EOL);
+
+		} else {
+
+			if (_yaml == null) {
+				DumperOptions options = new DumperOptions();
+				options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+				options.setWidth(160);
+				_yaml = new Yaml(options);
+			}
+
+			text.append(_yaml.dump(Collections.singletonMap(entry.path, entry.value)));
+		}
+	}
+
+	private void _syncUnsyncedManager() throws IOException {
+		if (_unsyncedManager != null) {
+			MetadataManager metadataManager = _unsyncedManager;
+			_unsyncedManager = null;
+			_syncedAt = System.nanoTime();
+			_sync(metadataManager);
+		}
+	}
+
+	private static void _write(MetadataManager metadataManager, StringBuilder text) {
+		if (text.length() > 0) {
+			metadataManager.writeToProductsFile(text.toString());
+			text.setLength(0);
+		}
+	}
+
+	private static void _sync(MetadataManager metadataManager) throws IOException {
+		if (metadataManager instanceof FileSystemMetadataManager) {
+			((FileSystemMetadataManager)metadataManager).syncProductsFile();
+		}
+	}
+
+	static final class Entry {
+
+		final MetadataManager metadataManager;
+		final String path;
+		final String value;
+		final boolean isFile;
+
+		Entry(MetadataManager metadataManager, String path, String value, boolean isFile) {
+			this.metadataManager = metadataManager;
+			this.path = path;
+			this.value = value;
+			this.isFile = isFile;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.restflow.reporter.Reporter;
+import org.restflow.util.PortableIO;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Run metadata restored from a run directory, each part of which is read from its file
+ * the first time it is requested rather than when the metadata is restored.  Products
+ * are read through a ProductsFileMap so that only the values requested are parsed, and
+ * the text sent to stdout and stderr can be read as streams over the recorded files
+ * without reading either file into memory.  Errors reading a part are added to the
+ * restore errors when the part is first requested.  Setting a part replaces it without
+ * reading its file.
+ *
+ * This class is thread safe.  Its accessors are synchronized.
+ */
+@ThreadSafe()
+class RestoredRunMetadata extends RunMetadata {
+
+	private final File _reportsFile;
+	private final File _controlFile;
+	private final File _productsFile;
+	private final File _stdoutFile;
+	private final File _stderrFile;
+	private final File _inputsFile;
+	private final File _outputsFile;
+	private final File _actorStateFile;
+	private final String _metadataDirectory;
+
+	private String _productsYaml;
+
+	private boolean _reportersRestored = false;
+	private boolean _processPropertiesRestored = false;
+	private boolean _productsYamlRestored = false;
+	private boolean _productValueMapRestored = false;
+	private boolean _stdoutRestored = false;
+	private boolean _stderrRestored = false;
+	private boolean _inputValuesRestored = false;
+	private boolean _outputValuesRestored = false;
+	private boolean _actorStateRestored = false;
+	private boolean _traceRestored = false;
+
+	RestoredRunMetadata(String runDirectoryPath, String reportsFile, String controlFile,
+			String productsFile, String stdoutFile, String stderrFile, String inputsFile,
+			String outputsFile, String actorStateFile, String metadataDirectory) {
+
+		setRunDirectory(runDirectoryPath);
+
+		_reportsFile = new File(runDirectoryPath + reportsFile);
+		_controlFile = new File(runDirectoryPath + controlFile);
+		_productsFile = new File(runDirectoryPath + productsFile);
+		_stdoutFile = new File(runDirectoryPath + stdoutFile);
+		_stderrFile = new File(runDirectoryPath + stderrFile);
+		_inputsFile = new File(runDirectoryPath + inputsFile);
+		_outputsFile = new File(runDirectoryPath + outputsFile);
+		_actorStateFile = new File(runDirectoryPath + actorStateFile);
+		_metadataDirectory = runDirectoryPath + metadataDirectory;
+	}
+
+	@Override
+	public synchronized void restoreAll() {
+		getReporterCount();
+		getProcessProperties();
+		getProductsYaml();
+		getProductValueMap();
+		getStdout();
+		getStderr();
+		getTrace();
+		getInputValues();
+		getOutputValues();
+		getActorState();
+	}
+
+	@Override
+	public synchronized List<String> getRestoreErrors() {
+		return super.getRestoreErrors();
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                      reporters                            ////
+
+	@Override
+	public synchronized void setReporters(Map<String, Reporter> reporters) {
+		_reportersRestored = true;
+		super.setReporters(reporters);
+	}
+
+	@Override
+	public synchronized Reporter getReporter(String name) {
+		_restoreReporters();
+		return super.getReporter(name);
+	}
+
+	@Override
+	public synchronized int getReporterCount() {
+		_restoreReporters();
+		return super.getReporterCount();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void _restoreReporters() {
+		if (!_reportersRestored) {
+			_reportersRestored = true;
+			try {
+				InputStream stream = new FileInputStream(_reportsFile);
+				try {
+					super.setReporters((Map<String,Reporter>)new Yaml().load(stream));
+				} finally {
+					stream.close();
+				}
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                  process properties                       ////
+
+	@Override
+	public synchronized void setProcessProperties(Map<String, Object> properties) {
+		_processPropertiesRestored = true;
+		super.setProcessProperties(properties);
+	}
+
+	@Override
+	public synchronized void putProcessProperty(String key, Object value) {
+		_restoreProcessProperties();
+		super.putProcessProperty(key, value);
+	}
+
+	@Override
+	public synchronized void putProcessProperties(Map<String, Object> properties) {
+		_restoreProcessProperties();
+		super.putProcessProperties(properties);
+	}
+
+	@Override
+	public synchronized Map<String, Object> getProcessProperties() {
+		_restoreProcessProperties();
+		return super.getProcessProperties();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void _restoreProcessProperties() {
+		if (!_processPropertiesRestored) {
+			_processPropertiesRestored = true;
+			try {
+				super.setProcessProperties((Map<String,Object>)new Yaml().load(FileUtils.readFileToString(_controlFile)));
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                       products                            ////
+
+	@Override
+	public synchronized void setProductsYamlString(String yaml) {
+		_productsYamlRestored = true;
+		_productValueMapRestored = true;
+		_productsYaml = yaml;
+		super.setProductsYamlString(yaml);
+	}
+
+	@Override
+	public synchronized String getProductsYaml() {
+		if (!_productsYamlRestored) {
+			_productsYamlRestored = true;
+			try {
+				_productsYaml = PortableIO.readTextFile(_productsFile);
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return _productsYaml;
+	}
+
+	@Override
+	public synchronized Map<String, Object> getProductValueMap() {
+		if (!_productValueMapRestored) {
+			_productValueMapRestored = true;
+			try {
+				new FileInputStream(_productsFile).close();
+				ProductsFileMap products = new ProductsFileMap(_productsFile);
+				products.size();
+				super.setProductObjects(products);
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getProductValueMap();
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                    stdout and stderr                      ////
+
+	@Override
+	public synchronized void setStdoutText(String stdoutText) {
+		_stdoutRestored = true;
+		super.setStdoutText(stdoutText);
+	}
+
+	@Override
+	public synchronized String getStdout() {
+		if (!_stdoutRestored) {
+			_stdoutRestored = true;
+			try {
+				super.setStdoutText(FileUtils.readFileToString(_stdoutFile));
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getStdout();
+	}
+
+	@Override
+	public synchronized InputStream getStdoutStream() throws Exception {
+		return _stdoutRestored ? super.getStdoutStream() : new FileInputStream(_stdoutFile);
+	}
+
+	@Override
+	public synchronized void setStderr(String stderrText) {
+		_stderrRestored = true;
+		super.setStderr(stderrText);
+	}
+
+	@Override
+	public synchronized String getStderr() {
+		if (!_stderrRestored) {
+			_stderrRestored = true;
+			try {
+				super.setStderr(FileUtils.readFileToString(_stderrFile));
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getStderr();
+	}
+
+	@Override
+	public synchronized InputStream getStderrStream() throws Exception {
+		return _stderrRestored ? super.getStderrStream() : new FileInputStream(_stderrFile);
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                   inputs and outputs                      ////
+
+	@Override
+	public synchronized void setInputValues(Map<String, Object> inputValues) {
+		_inputValuesRestored = true;
+		super.setInputValues(inputValues);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized Map<String, Object> getInputValues() {
+		if (!_inputValuesRestored) {
+			_inputValuesRestored = true;
+			try {
+				if (_inputsFile.exists()) {
+					Map<String,Object> inputs = new HashMap<String,Object>();
+					Map<String,Object> inputMap = (Map<String,Object>)new Yaml().load(FileUtils.readFileToString(_inputsFile));
+					if (inputMap != null) {
+						inputs.putAll(inputMap);
+					}
+					super.setInputValues(inputs);
+				}
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getInputValues();
+	}
+
+	@Override
+	public synchronized void setOutputValues(Map<String, Object> outputValues) {
+		_outputValuesRestored = true;
+		super.setOutputValues(outputValues);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized Map<String, Object> getOutputValues() {
+		if (!_outputValuesRestored) {
+			_outputValuesRestored = true;
+			try {
+				super.setOutputValues((Map<String,Object>)new Yaml().load(FileUtils.readFileToString(_outputsFile)));
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getOutputValues();
+	}
+
+	///////////////////////////////////////////////////////////////////
+	////                  actor state and trace                    ////
+
+	@Override
+	public synchronized void setActorState(ActorState actorState) {
+		_actorStateRestored = true;
+		super.setActorState(actorState);
+	}
+
+	@Override
+	public synchronized ActorState getActorState() {
+		if (!_actorStateRestored) {
+			_actorStateRestored = true;
+			try {
+				super.setActorState((ActorState)new Yaml().load(FileUtils.readFileToString(_actorStateFile)));
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getActorState();
+	}
+
+	@Override
+	public synchronized void setTrace(Trace trace) {
+		_traceRestored = true;
+		super.setTrace(trace);
+	}
+
+	@Override
+	public synchronized Trace getTrace() {
+		if (!_traceRestored) {
+			_traceRestored = true;
+			try {
+				String segmentDirectory = _metadataDirectory + TraceSegmentLoader.SEGMENT_DIRECTORY;
+				if (TraceSegmentLoader.isSegmentDirectory(segmentDirectory)) {
+					super.setTrace(TraceSegmentLoader.load(segmentDirectory));
+				} else {
+					super.setTrace(new Trace(_metadataDirectory));
+				}
+			} catch (Exception e) {
+				super.getRestoreErrors().add(e.getMessage());
+			}
+		}
+		return super.getTrace();
+	}
+}
@@ -1,6 +1,8 @@
 package org.restflow.metadata;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -81,31 +83,38 @@ public class RunMetadata {
 	public Map<String, Object> getProcessProperties() 				{ return new HashMap<String,Object>(_processProperties); }
 	
 	// accessors for workflow products
-	public void setProductsYamlString(String yaml) 					{ _productsYamlString = yaml; _productValueMap = new ProductValueMap(yaml); }
+	public void setProductsYamlString(String yaml) 					{ _productsYamlString = yaml; _productValueMap = new ProductValueMap(_parseProducts(yaml)); }
 	public String getProductsYaml() 							{ return _productsYamlString; }
 	public Map<String, Object> getProductValueMap() 				{ return _productValueMap; }
+	protected void setProductObjects(Map<String,Object> products) 	{ _productValueMap = new ProductValueMap(products); }
 	
 	// accessors for workflow stdout
 	public void setStdoutText(String stdoutText) 					{_stdoutText = stdoutText; }
 	public String getStdout() 									{ return _stdoutText; }
+	public InputStream getStdoutStream() throws Exception			{ return _streamText(getStdout()); }
 	
 	// accessors for workflow stderr
 	public void setStderr(String stderrText) 						{ _stderrText = stderrText; }
 	public String getStderr() 										{ return _stderrText; }
+	public InputStream getStderrStream() throws Exception			{ return _streamText(getStderr()); }
 	
 	// accessors for workflow input values
 	public void setInputValues(Map<String, Object> inputValues) 	{ _inputValues = inputValues; }
 	public Map<String, Object> getInputValues() 					{ return _inputValues; }
-	public Object getInputValue(String name)						{ return _inputValues.get(name);}
+	public Object getInputValue(String name)						{ return getInputValues().get(name);}
 
 	// accessors for workflow output values
 	public void setOutputValues(Map<String, Object> outputValues) 	{ _outputValues = outputValues; }
 	public Map<String, Object> getOutputValues() 					{ return _outputValues; }
-	public Object getOutputValue(String name)						{ return _outputValues.get(name); }
+	public Object getOutputValue(String name)						{ return getOutputValues().get(name); }
 	
+	// accessors for errors restoring the parts of the metadata restored so far
 	public void setRestoreErrors(List<String> restoreErrors) 		{ _restoreErrors = restoreErrors; }
 	public List<String> getRestoreErrors() 							{ return _restoreErrors; }
 	
+	/** Restores any parts of the metadata not yet restored, so that all restore errors are recorded */
+	public void restoreAll() 										{ }
+	
 	public void setMetadataStorageProperty(String key, Object value){ _metadataStorageProperties.put(key, value); }
 	public Map<String, Object> getMetadataStorageProperties()		{ return new HashMap<String,Object>(_metadataStorageProperties); }
 
@@ -115,20 +124,32 @@ public class RunMetadata {
 	public void setTrace(Trace trace)	 							{ _trace = trace; }
 	public Trace getTrace() 										{ return _trace; }
 	
+	/**
+	 * Returns a reader for products YAML that replaces each value designated a !file 
+	 * with a File object with a path equal to that value.
+	 */
+	static Yaml newProductsReader() {
+		Constructor constructor = new Constructor();
+		constructor.addTypeDescription(new TypeDescription(File.class, "!file"));
+		return new Yaml(constructor);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String,Object> _parseProducts(String yaml) {
+		return (Map<String,Object>)newProductsReader().load(yaml);
+	}
+	
+	private static InputStream _streamText(String text) {
+		return (text == null) ? null : new ByteArrayInputStream(text.getBytes());
+	}
+	
 	//Class to map the products map, converting !file objects into String when requested
 	private class ProductValueMap implements Map<String,Object> {
 
 		private Map<String,Object> _productsObjectMap;
 		
-		public ProductValueMap(String yaml) {
-		
-			// parse the YAML to yield a Map<String,Object>, replacing each
-			// value designated a !file with a File object with a path equal to that value
-			Constructor constructor = new Constructor();
-			constructor.addTypeDescription(new TypeDescription(File.class, "!file"));
-			Yaml reader = new Yaml(constructor);
-			
-			_productsObjectMap = (Map<String,Object>)reader.load(yaml);
+		public ProductValueMap(Map<String,Object> productsObjectMap) {
+			_productsObjectMap = productsObjectMap;
 		}
 		
 		public Object get(Object key) {
@@ -23,6 +23,7 @@ public interface TraceRecorder extends ApplicationContextAware {
 	void recordStepCompleted(WorkflowNode node) throws Exception;
 	void setDataStore(Map<String, Object> store);
 	void close() throws SQLException;
+	void flush() throws SQLException;
 	void recordWorkflowRunStarted() throws Exception;
 	void recordWorkflowRunCompleted() throws Exception;
 	public void recordWorkflowInputEvent(String inputName, Object value) throws Exception;
@@ -0,0 +1,26 @@
+package org.restflow.metadata;
+
+import java.sql.SQLException;
+
+import org.restflow.metadata.TraceWriter.Operation;
+
+/**
+ * Stores the rows WritableTrace records for the steps, packets, resources, and port 
+ * events of a run.  A TraceWriter inserts the rows into the trace database, and a 
+ * TraceSegmentWriter appends them to columnar segment files from which a 
+ * TraceSegmentLoader can later materialize the trace database.
+ */
+public interface TraceRowWriter {
+
+	/**
+	 * Queues a row for the given operation, with values in the order of the parameters
+	 * of the operation's SQL statement.  Throws the exception for any earlier rows that 
+	 * could not be stored and have not yet been reported.
+	 */
+	void write(Operation operation, Object... values) throws SQLException;
+
+	/**
+	 * Waits until every row queued before the call has been stored.
+	 */
+	void flush() throws SQLException;
+}
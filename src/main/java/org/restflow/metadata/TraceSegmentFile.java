@@ -0,0 +1,205 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * An append-only file of trace segment data, written and read through memory-mapped
+ * regions of the file.  The first HEADER_SIZE bytes of the file hold the number of
+ * bytes of data committed to it, and readers see only the committed data, so a file
+ * that is still being written, or that was not closed cleanly, can be read up to its
+ * last commit.  Offsets passed to and returned by the methods of this class are
+ * offsets into the data following the header.
+ *
+ * This class is not thread safe.  TraceSegmentWriter appends to each file only while
+ * holding the lock guarding the file, and each TraceSegmentLoader reads its own files.
+ */
+final class TraceSegmentFile {
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    package class constants                        ////
+
+	static final int HEADER_SIZE = 8;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    private class constants                        ////
+
+	private static final int REGION_SIZE = 1 << 20;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   private instance fields                         ////
+
+	private final File 				_file;
+	private final RandomAccessFile 	_randomAccessFile;
+	private final FileChannel 		_channel;
+	private final MapMode 			_mapMode;
+	private final ByteBuffer 		_header = ByteBuffer.allocate(HEADER_SIZE);
+	private MappedByteBuffer 		_region;
+	private long 					_regionOffset;
+	private long 					_length;
+	private long 					_committedLength;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private constructors                          ////
+
+	private TraceSegmentFile(File file, boolean writable) throws IOException {
+		_file = file;
+		_randomAccessFile = new RandomAccessFile(file, writable ? "rw" : "r");
+		_channel = _randomAccessFile.getChannel();
+		_mapMode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                  package-private class methods                    ////
+
+	/**
+	 * Creates an empty file for appending, replacing any file at the same path.
+	 */
+	static TraceSegmentFile create(File file) throws IOException {
+		TraceSegmentFile segmentFile = new TraceSegmentFile(file, true);
+		segmentFile._channel.truncate(0);
+		segmentFile.commit(0);
+		return segmentFile;
+	}
+
+	/**
+	 * Opens an existing file for reading its committed data, returning null if there 
+	 * is no file at the path.
+	 */
+	static TraceSegmentFile open(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		TraceSegmentFile segmentFile = new TraceSegmentFile(file, false);
+		if (segmentFile._channel.size() >= HEADER_SIZE) {
+			segmentFile._channel.read(segmentFile._header, 0);
+			segmentFile._header.flip();
+			segmentFile._committedLength = Math.min(segmentFile._header.getLong(),
+					segmentFile._channel.size() - HEADER_SIZE);
+		}
+		segmentFile._length = segmentFile._committedLength;
+		return segmentFile;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                  package-private instance methods                 ////
+
+	File getFile() {
+		return _file;
+	}
+
+	/**
+	 * Returns the number of bytes of data appended to the file.
+	 */
+	long getLength() {
+		return _length;
+	}
+
+	/**
+	 * Returns the number of bytes of data readers of the file will see.
+	 */
+	long getCommittedLength() {
+		return _committedLength;
+	}
+
+	void appendByte(byte value) throws IOException {
+		_regionForAppend(1).put(value);
+		_length += 1;
+	}
+
+	void appendInt(int value) throws IOException {
+		_regionForAppend(4).putInt(value);
+		_length += 4;
+	}
+
+	void appendLong(long value) throws IOException {
+		_regionForAppend(8).putLong(value);
+		_length += 8;
+	}
+
+	void appendBytes(byte[] value) throws IOException {
+		_regionForAppend(value.length).put(value);
+		_length += value.length;
+	}
+
+	/**
+	 * Makes the first length bytes of data visible to readers of the file.
+	 */
+	void commit(long length) throws IOException {
+		_header.clear();
+		_header.putLong(length);
+		_header.flip();
+		_channel.write(_header, 0);
+		_committedLength = length;
+	}
+
+	byte readByte(long offset) throws IOException {
+		int index = _regionIndexForRead(offset, 1);
+		return _region.get(index);
+	}
+
+	int readInt(long offset) throws IOException {
+		int index = _regionIndexForRead(offset, 4);
+		return _region.getInt(index);
+	}
+
+	long readLong(long offset) throws IOException {
+		int index = _regionIndexForRead(offset, 8);
+		return _region.getLong(index);
+	}
+
+	byte[] readBytes(long offset, int length) throws IOException {
+		int index = _regionIndexForRead(offset, length);
+		byte[] bytes = new byte[length];
+		ByteBuffer region = _region.duplicate();
+		region.position(index);
+		region.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Forces the data and header of a file opened for appending to disk, and closes the file.
+	 */
+	void close() throws IOException {
+		if (_region != null && _mapMode == MapMode.READ_WRITE) {
+			_region.force();
+			_channel.force(true);
+		}
+		_region = null;
+		_randomAccessFile.close();
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	// maps a new region at the end of the data when the current one has too little room left
+	private MappedByteBuffer _regionForAppend(int bytes) throws IOException {
+		if (_region == null || _region.remaining() < bytes) {
+			_regionOffset = _length;
+			_region = _channel.map(_mapMode, HEADER_SIZE + _length, Math.max(REGION_SIZE, bytes));
+		}
+		return _region;
+	}
+
+	// maps the region starting at the offset when the current one does not hold the requested bytes
+	private int _regionIndexForRead(long offset, int bytes) throws IOException {
+
+		if (offset < 0 || offset + bytes > _committedLength) {
+			throw new IOException("Read past the committed data of trace segment " + _file);
+		}
+
+		if (_region == null || offset < _regionOffset ||
+				offset + bytes > _regionOffset + _region.capacity()) {
+			_regionOffset = offset;
+			_region = _channel.map(_mapMode, HEADER_SIZE + offset,
+					Math.min(Math.max(REGION_SIZE, bytes), _committedLength - offset));
+		}
+
+		return (int)(offset - _regionOffset);
+	}
+}
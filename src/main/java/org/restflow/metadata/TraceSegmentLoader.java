@@ -0,0 +1,196 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.metadata.TraceWriter.Operation;
+
+/**
+ * Materializes a trace recorded by a ColumnarWritableTrace.  The loader creates a private
+ * in-memory trace database from the script of the workflow graph saved in the segment
+ * directory, then decodes the rows in the segment files and inserts them with a
+ * TraceWriter, one operation at a time in the order of the Operation enumeration, so
+ * that every row is inserted before the rows referring to it and every update is
+ * applied after the row it updates.  The returned Trace answers all of the usual
+ * queries, but reflects only the rows committed to the segments when it was loaded.
+ */
+public class TraceSegmentLoader {
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    public class constants                         ////
+
+	public static final String SEGMENT_DIRECTORY 	= "tracesegments";
+	public static final String GRAPH_SCRIPT_FILE 	= "graph.sql";
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    private class constants                        ////
+
+	private static final int ROWS_PER_FLUSH = 64 * 1024;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                       public class methods                        ////
+
+	/**
+	 * Returns true if the directory holds a trace recorded as segment files.
+	 */
+	public static boolean isSegmentDirectory(String directory) {
+		return new File(directory, GRAPH_SCRIPT_FILE).isFile();
+	}
+
+	/**
+	 * Loads the trace recorded in the segment directory into a new in-memory database.
+	 */
+	public static Trace load(String directory) throws SQLException {
+
+		File graphScript = new File(directory, GRAPH_SCRIPT_FILE);
+		if (!graphScript.isFile()) {
+			throw new SQLException("No trace segments in " + directory);
+		}
+
+		Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("RUNSCRIPT FROM '" + _quote(graphScript.getAbsolutePath()) + "'");
+		} finally {
+			statement.close();
+		}
+
+		try {
+			replay(directory, new TraceWriter(connection));
+		} catch (IOException e) {
+			throw new SQLException("Error reading trace segments in " + directory, e);
+		}
+
+		return new Trace(connection);
+	}
+
+	/**
+	 * Decodes the rows committed to the segment files in the directory and writes them
+	 * to the given writer, waiting until the writer has stored them all.
+	 */
+	public static void replay(String directory, TraceRowWriter writer) throws IOException, SQLException {
+
+		String[] strings = _readStrings(new File(directory, TraceSegmentWriter.STRINGS_FILE));
+		TraceSegmentFile valuesFile = TraceSegmentFile.open(new File(directory, TraceSegmentWriter.VALUES_FILE));
+
+		try {
+
+			long rowsWritten = 0;
+
+			for (Operation operation : Operation.values()) {
+
+				int columnCount = operation.getColumnCount();
+				TraceSegmentFile[] columns = new TraceSegmentFile[columnCount];
+				int[] widths = new int[columnCount];
+
+				try {
+
+					// replay only the rows committed to every column of the operation
+					long rowCount = Long.MAX_VALUE;
+					for (int i = 0; i < columnCount; i++) {
+						columns[i] = TraceSegmentFile.open(
+								new File(directory, TraceSegmentWriter.columnFileName(operation, i)));
+						widths[i] = TraceSegmentWriter.columnWidth(operation.getColumnType(i));
+						long committedRows = (columns[i] == null) ? 0 : columns[i].getCommittedLength() / widths[i];
+						rowCount = Math.min(rowCount, committedRows);
+					}
+
+					for (long row = 0; row < rowCount; row++) {
+
+						Object[] values = new Object[columnCount];
+						for (int i = 0; i < columnCount; i++) {
+							values[i] = _decode(operation.getColumnType(i), columns[i], row * widths[i],
+									strings, valuesFile);
+						}
+						writer.write(operation, values);
+
+						// keep the rows waiting in the writer from growing without bound
+						if (++rowsWritten % ROWS_PER_FLUSH == 0) {
+							writer.flush();
+						}
+					}
+
+				} finally {
+					for (TraceSegmentFile column : columns) {
+						if (column != null) column.close();
+					}
+				}
+			}
+
+			writer.flush();
+
+		} finally {
+			if (valuesFile != null) valuesFile.close();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	private static Object _decode(int columnType, TraceSegmentFile column, long offset,
+			String[] strings, TraceSegmentFile valuesFile) throws IOException {
+
+		switch (columnType) {
+
+			case Types.BOOLEAN:
+				byte flag = column.readByte(offset);
+				if (flag == TraceSegmentWriter.NULL_BOOLEAN) return null;
+				return flag != 0;
+
+			case Types.CHAR:
+			case Types.VARCHAR:
+				int code = column.readInt(offset);
+				if (code == TraceSegmentWriter.NULL_CODE) return null;
+				return strings[code];
+
+			case Types.CLOB:
+				long valueOffset = column.readLong(offset);
+				if (valueOffset == TraceSegmentWriter.NULL_LONG) return null;
+				int length = valuesFile.readInt(valueOffset);
+				return new String(valuesFile.readBytes(valueOffset + 4, length), TraceSegmentWriter.UTF8);
+
+			case Types.TIMESTAMP:
+				long millis = column.readLong(offset);
+				if (millis == TraceSegmentWriter.NULL_LONG) return null;
+				return new Timestamp(millis);
+
+			default:
+				long value = column.readLong(offset);
+				if (value == TraceSegmentWriter.NULL_LONG) return null;
+				return value;
+		}
+	}
+
+	private static String[] _readStrings(File file) throws IOException {
+
+		List<String> strings = new ArrayList<String>();
+
+		TraceSegmentFile stringsFile = TraceSegmentFile.open(file);
+		if (stringsFile != null) {
+			try {
+				long offset = 0;
+				while (offset < stringsFile.getCommittedLength()) {
+					int length = stringsFile.readInt(offset);
+					strings.add(new String(stringsFile.readBytes(offset + 4, length), TraceSegmentWriter.UTF8));
+					offset += 4 + length;
+				}
+			} finally {
+				stringsFile.close();
+			}
+		}
+
+		return strings.toArray(new String[strings.size()]);
+	}
+
+	private static String _quote(String path) {
+		return path.replace("'", "''");
+	}
+}
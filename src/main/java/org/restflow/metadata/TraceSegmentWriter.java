@@ -0,0 +1,320 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.restflow.metadata.TraceWriter.Operation;
+
+/**
+ * Appends the rows queued by a WritableTrace to columnar segment files in a directory
+ * instead of inserting them into the trace database.  Each column of each operation is
+ * stored in its own append-only file of fixed-width values, written through memory-mapped
+ * regions of the file, so recording a row costs a few stores to memory rather than a
+ * database insert.  Updates are stored as rows of their own and applied when the trace
+ * is loaded.
+ *
+ * Values are encoded by the SQL type of their column.  Keys and counts are stored as
+ * longs, timestamps as longs holding milliseconds, and booleans as single bytes.
+ * Strings, such as the URIs of resources, the keys of packet metadata, and the classes
+ * of port events, are stored as codes into a dictionary of the distinct strings in the
+ * STRINGS_FILE, and the values of data as offsets into the VALUES_FILE.  A null is
+ * stored as a value no column otherwise holds.
+ *
+ * write() throws any exception encountered while appending its row, and flush() commits
+ * every row written before the call, making it visible to a TraceSegmentLoader reading
+ * the directory.  close() also forces the files to disk.
+ *
+ * This class is thread safe.  The columns of each operation are guarded by the segment
+ * holding them, the dictionary and its file by the dictionary, and the values file by
+ * itself.  Strings and values are encoded before the lock on a segment is taken, so no
+ * thread holds more than one of these locks at a time.
+ */
+@ThreadSafe()
+public class TraceSegmentWriter implements TraceRowWriter {
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    public class constants                         ////
+
+	public static final String STRINGS_FILE 	= "strings.seg";
+	public static final String VALUES_FILE 		= "values.seg";
+	public static final String COLUMN_EXTENSION = ".col";
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    package class constants                        ////
+
+	static final Charset UTF8 			= Charset.forName("UTF-8");
+	static final long NULL_LONG 		= Long.MIN_VALUE;
+	static final int NULL_CODE 			= -1;
+	static final byte NULL_BOOLEAN 		= -1;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   private instance fields                         ////
+
+	private final File 							_directory;
+	private final Segment[] 					_segments;
+	private volatile long 						_committedRowCount;
+
+	@GuardedBy("_dictionary") private final Map<String,Integer> _dictionary = new HashMap<String,Integer>();
+	@GuardedBy("_dictionary") private final TraceSegmentFile _stringsFile;
+	@GuardedBy("_valuesFile") private final TraceSegmentFile _valuesFile;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     public constructors                           ////
+
+	/**
+	 * Creates empty segment files in the directory, creating the directory if needed
+	 * and replacing any segment files already in it.
+	 */
+	public TraceSegmentWriter(String directory) throws IOException {
+
+		_directory = new File(directory);
+		if (!_directory.isDirectory() && !_directory.mkdirs()) {
+			throw new IOException("Error creating trace segment directory " + directory);
+		}
+
+		_stringsFile = TraceSegmentFile.create(new File(_directory, STRINGS_FILE));
+		_valuesFile = TraceSegmentFile.create(new File(_directory, VALUES_FILE));
+
+		Operation[] operations = Operation.values();
+		_segments = new Segment[operations.length];
+		for (Operation operation : operations) {
+			_segments[operation.ordinal()] = new Segment(_directory, operation);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                       public methods                              ////
+
+	/**
+	 * Appends a row for the given operation, with values in the order of the parameters
+	 * of the operation's SQL statement.
+	 */
+	@Override
+	public void write(Operation operation, Object... values) throws SQLException {
+
+		try {
+
+			// encode the values before taking the lock on the columns
+			long[] encodedValues = new long[values.length];
+			for (int i = 0; i < values.length; i++) {
+				encodedValues[i] = _encode(operation.getColumnType(i), values[i]);
+			}
+
+			Segment segment = _segments[operation.ordinal()];
+			synchronized(segment) {
+				segment.append(encodedValues);
+			}
+
+		} catch (IOException e) {
+			throw new SQLException("Error writing trace segment for " + operation, e);
+		}
+	}
+
+	/**
+	 * Commits every row written before the call.
+	 */
+	@Override
+	public void flush() throws SQLException {
+
+		try {
+
+			// count the rows to commit before committing the strings and values they refer to
+			long[] rowCounts = new long[_segments.length];
+			for (int i = 0; i < _segments.length; i++) {
+				synchronized(_segments[i]) {
+					rowCounts[i] = _segments[i].rowCount;
+				}
+			}
+
+			synchronized(_dictionary) {
+				_stringsFile.commit(_stringsFile.getLength());
+			}
+
+			synchronized(_valuesFile) {
+				_valuesFile.commit(_valuesFile.getLength());
+			}
+
+			long committedRowCount = 0;
+			for (int i = 0; i < _segments.length; i++) {
+				synchronized(_segments[i]) {
+					_segments[i].commit(rowCounts[i]);
+				}
+				committedRowCount += rowCounts[i];
+			}
+			_committedRowCount = committedRowCount;
+
+		} catch (IOException e) {
+			throw new SQLException("Error committing trace segments in " + _directory, e);
+		}
+	}
+
+	/**
+	 * Returns the number of rows committed by the last call to flush().
+	 */
+	public long getCommittedRowCount() {
+		return _committedRowCount;
+	}
+
+	/**
+	 * Commits every row written and forces the segment files to disk.
+	 */
+	public void close() throws SQLException {
+
+		flush();
+
+		try {
+
+			for (Segment segment : _segments) {
+				synchronized(segment) {
+					segment.close();
+				}
+			}
+
+			synchronized(_dictionary) {
+				_stringsFile.close();
+			}
+
+			synchronized(_valuesFile) {
+				_valuesFile.close();
+			}
+
+		} catch (IOException e) {
+			throw new SQLException("Error closing trace segments in " + _directory, e);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                  package-private class methods                    ////
+
+	/**
+	 * Returns the name of the file holding the given column of an operation's rows.
+	 */
+	static String columnFileName(Operation operation, int column) {
+		return operation.name() + "." + column + COLUMN_EXTENSION;
+	}
+
+	/**
+	 * Returns the number of bytes each value of a column of the given SQL type occupies.
+	 */
+	static int columnWidth(int columnType) {
+		switch (columnType) {
+			case Types.BOOLEAN:	return 1;
+			case Types.CHAR:
+			case Types.VARCHAR:	return 4;
+			default:			return 8;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	private long _encode(int columnType, Object value) throws IOException {
+
+		switch (columnType) {
+
+			case Types.BOOLEAN:
+				if (value == null) return NULL_BOOLEAN;
+				return ((Boolean)value) ? 1 : 0;
+
+			case Types.CHAR:
+			case Types.VARCHAR:
+				if (value == null) return NULL_CODE;
+				return _encodeString(value.toString());
+
+			case Types.CLOB:
+				if (value == null) return NULL_LONG;
+				return _appendValue(value.toString());
+
+			case Types.TIMESTAMP:
+				if (value == null) return NULL_LONG;
+				return ((Timestamp)value).getTime();
+
+			default:
+				if (value == null) return NULL_LONG;
+				return ((Number)value).longValue();
+		}
+	}
+
+	private int _encodeString(String string) throws IOException {
+		synchronized(_dictionary) {
+			Integer code = _dictionary.get(string);
+			if (code == null) {
+				byte[] bytes = string.getBytes(UTF8);
+				_stringsFile.appendInt(bytes.length);
+				_stringsFile.appendBytes(bytes);
+				code = _dictionary.size();
+				_dictionary.put(string, code);
+			}
+			return code;
+		}
+	}
+
+	private long _appendValue(String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		synchronized(_valuesFile) {
+			long offset = _valuesFile.getLength();
+			_valuesFile.appendInt(bytes.length);
+			_valuesFile.appendBytes(bytes);
+			return offset;
+		}
+	}
+
+	/**
+	 * The column files holding the rows of one operation.
+	 */
+	private static final class Segment {
+
+		final TraceSegmentFile[] columns;
+		final int[] widths;
+		long rowCount;
+		boolean failed;
+
+		Segment(File directory, Operation operation) throws IOException {
+			int columnCount = operation.getColumnCount();
+			columns = new TraceSegmentFile[columnCount];
+			widths = new int[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				columns[i] = TraceSegmentFile.create(new File(directory, columnFileName(operation, i)));
+				widths[i] = columnWidth(operation.getColumnType(i));
+			}
+		}
+
+		// stops appending after a failure, which may have left the columns of a row unaligned
+		void append(long[] encodedValues) throws IOException {
+			if (failed) {
+				throw new IOException("Trace segment " + columns[0].getFile() + " failed earlier");
+			}
+			failed = true;
+			for (int i = 0; i < columns.length; i++) {
+				switch (widths[i]) {
+					case 1:		columns[i].appendByte((byte)encodedValues[i]);	break;
+					case 4:		columns[i].appendInt((int)encodedValues[i]);	break;
+					default:	columns[i].appendLong(encodedValues[i]);		break;
+				}
+			}
+			failed = false;
+			rowCount++;
+		}
+
+		void commit(long committedRowCount) throws IOException {
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].commit(committedRowCount * widths[i]);
+			}
+		}
+
+		void close() throws IOException {
+			for (TraceSegmentFile column : columns) {
+				column.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package org.restflow.metadata;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.restflow.util.BackgroundWriter;
+
+/**
+ * Writes rows to the trace database on the thread of a BackgroundWriter.  Callers hand
+ * rows to the writer and return immediately, and the writer thread drains them in
+ * batches, adding each row to the batch of the prepared statement for its operation
+ * and executing all of the batches in a single transaction.
+ *
+ * The rows handed to the writer carry their own primary keys, allocated in memory by
+ * the caller, so no row needs to be read back from the database.  Rows of different
+ * operations are executed in the order of the Operation enumeration, which inserts
+ * rows before any rows that refer to them and applies updates after all inserts,
+ * while rows for the same operation are executed in the order they were queued.
+ *
+ * flush() waits until every row queued before the call has been committed.
+ *
+ * When a batch fails it is rolled back and its rows are written again one at a time, so
+ * that only the rows that cannot be written are lost.  The exception for each such row
+ * is held until the next call to write() or flush(), which throws it, with the
+ * exceptions for any further rows that failed added to it as suppressed exceptions.
+ *
+ * This class is thread safe.  The BackgroundWriter it extends is thread safe, and the
+ * prepared statements are used only by the writer thread while it holds the lock on
+ * the database connection.
+ */
+@ThreadSafe()
+public class TraceWriter extends BackgroundWriter<TraceWriter.Row> implements TraceRowWriter {
+
+	public enum Operation {
+
+		INSERT_DATA				("INSERT INTO Data (DataID, Value, IsReference, DataTypeID) VALUES (?, ?, ?, ?)",
+									Types.BIGINT, Types.CLOB, Types.BOOLEAN, Types.BIGINT),
+		INSERT_RESOURCE			("INSERT INTO Resource (ResourceID, Uri, DataID, Digest) VALUES (?, ?, ?, ?)",
+									Types.BIGINT, Types.VARCHAR, Types.BIGINT, Types.VARCHAR),
+		INSERT_PACKET			("INSERT INTO Packet (PacketID, OriginEventID) VALUES (?, ?)",
+									Types.BIGINT, Types.BIGINT),
+		INSERT_PACKET_RESOURCE	("INSERT INTO PacketResource (PacketID, ResourceID) VALUES (?, ?)",
+									Types.BIGINT, Types.BIGINT),
+		INSERT_PACKET_METADATA	("INSERT INTO PacketMetadata (MetadataID, PacketID, Key, DataID) VALUES (?, ?, ?, ?)",
+									Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.BIGINT),
+		INSERT_STEP				("INSERT INTO Step (StepID, NodeID, ParentStepID, StepNumber, UpdateCount, StartTime, EndTime) " +
+								 "VALUES (?, ?, ?, ?, ?, ?, ?)",
+									Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT,
+									Types.TIMESTAMP, Types.TIMESTAMP),
+		INSERT_PORT_EVENT		("INSERT INTO PortEvent (PortEventID, PortID, PacketID, StepID, EventClass, EventNumber, EventTime) " +
+								 "VALUES (?, ?, ?, ?, ?, ?, ?)",
+									Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.CHAR,
+									Types.BIGINT, Types.TIMESTAMP),
+		UPDATE_PACKET_ORIGIN	("UPDATE Packet SET OriginEventID = ? WHERE PacketID = ?",
+									Types.BIGINT, Types.BIGINT),
+		UPDATE_PORT_EVENT_STEP	("UPDATE PortEvent SET StepID = ? WHERE PortEventID = ?",
+									Types.BIGINT, Types.BIGINT),
+		UPDATE_PORT_PACKET_COUNT("UPDATE Port SET PacketCount = ? WHERE PortID = ?",
+									Types.BIGINT, Types.BIGINT),
+		UPDATE_STEP_END			("UPDATE Step SET EndTime = ? WHERE StepID = ?",
+									Types.TIMESTAMP, Types.BIGINT),
+		UPDATE_NODE_STEP_COUNT	("UPDATE Node SET StepCount = ? WHERE NodeID = ?",
+									Types.BIGINT, Types.BIGINT);
+
+		private final String _sql;
+		private final int[] _types;
+
+		private Operation(String sql, int... types) {
+			_sql = sql;
+			_types = types;
+		}
+
+		/**
+		 * Returns the number of values in each row of the operation.
+		 */
+		int getColumnCount() {
+			return _types.length;
+		}
+
+		/**
+		 * Returns the java.sql.Types code of the value in the given column of the operation's rows.
+		 */
+		int getColumnType(int column) {
+			return _types[column];
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    private class constants                        ////
+
+	private static final int 	MAX_BATCH_SIZE 		= 1024;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   private instance fields                         ////
+
+	private final Connection 					_connection;
+
+	@GuardedBy("_connection") private final PreparedStatement[] _statements =
+		new PreparedStatement[Operation.values().length];
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     public constructors                           ////
+
+	public TraceWriter(Connection connection) {
+		super("TraceWriter", MAX_BATCH_SIZE);
+		_connection = connection;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                       public methods                              ////
+
+	/**
+	 * Queues a row for the given operation, with values in the order of the parameters
+	 * of the operation's SQL statement.  Throws the exception for any rows that failed
+	 * to be written since the last call to write() or flush().
+	 */
+	@Override
+	public void write(Operation operation, Object... values) throws SQLException {
+		if (hasFailure()) {
+			_throwFailure();
+		}
+		enqueue(new Row(operation, values));
+	}
+
+	/**
+	 * Waits until every row queued before the call has been committed.
+	 */
+	@Override
+	public void flush() throws SQLException {
+		awaitFlush();
+		_throwFailure();
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     protected methods                             ////
+
+	@Override
+	protected void writeBatch(List<Row> rows) throws SQLException {
+
+		synchronized(_connection) {
+
+			boolean autoCommit = _connection.getAutoCommit();
+			_connection.setAutoCommit(false);
+
+			try {
+
+				boolean[] batched = new boolean[_statements.length];
+
+				try {
+
+					for (Row row : rows) {
+						_setParameters(row).addBatch();
+						batched[row.operation.ordinal()] = true;
+					}
+
+					// execute the batches in dependency order
+					for (int i = 0; i < batched.length; i++) {
+						if (batched[i]) {
+							_statements[i].executeBatch();
+						}
+					}
+
+					_connection.commit();
+
+				} catch (SQLException e) {
+					_connection.rollback();
+					for (PreparedStatement statement : _statements) {
+						if (statement != null) statement.clearBatch();
+					}
+					_writeRows(rows, batched);
+				}
+
+			} finally {
+				_connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	private void _throwFailure() throws SQLException {
+		Exception failure = takeFailure();
+		if (failure instanceof SQLException) {
+			throw (SQLException)failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		} else if (failure != null) {
+			throw new SQLException(failure);
+		}
+	}
+
+	// writes the rows of a failed batch one at a time in dependency order, committing
+	// each row that succeeds and holding the exception for each row that fails
+	private void _writeRows(List<Row> rows, boolean[] batched) throws SQLException {
+
+		for (int i = 0; i < batched.length; i++) {
+			if (batched[i]) {
+				for (Row row : rows) {
+					if (row.operation.ordinal() == i) {
+						try {
+							_setParameters(row).executeUpdate();
+							_connection.commit();
+						} catch (SQLException e) {
+							_connection.rollback();
+							addFailure(e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private PreparedStatement _setParameters(Row row) throws SQLException {
+
+		PreparedStatement statement = _getStatement(row.operation);
+		int[] types = row.operation._types;
+		for (int i = 0; i < types.length; i++) {
+			Object value = row.values[i];
+			if (value == null) {
+				statement.setNull(i + 1, types[i]);
+			} else {
+				statement.setObject(i + 1, value);
+			}
+		}
+		return statement;
+	}
+
+	private PreparedStatement _getStatement(Operation operation) throws SQLException {
+		int index = operation.ordinal();
+		if (_statements[index] == null) {
+			_statements[index] = _connection.prepareStatement(operation._sql);
+		}
+		return _statements[index];
+	}
+
+	static final class Row {
+
+		final Operation operation;
+		final Object[] values;
+
+		Row(Operation operation, Object[] values) {
+			this.operation = operation;
+			this.values = values;
+		}
+	}
+}
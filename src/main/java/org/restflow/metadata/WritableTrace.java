@@ -5,9 +5,16 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
 
 import org.apache.commons.io.IOUtils;
 import org.restflow.WorkflowContext;
@@ -20,11 +27,23 @@ import org.restflow.nodes.BufferNode;
 import org.restflow.nodes.InPortal;
 import org.restflow.nodes.OutPortal;
 import org.restflow.nodes.SourceNode;
+import org.restflow.metadata.TraceWriter.Operation;
 import org.restflow.nodes.WorkflowNode;
 import org.restflow.util.PortableDB;
 import org.springframework.context.ApplicationContext;
 
 
+/**
+ * Records a workflow run in the trace database.  The rows describing the workflow graph
+ * are inserted as the graph is stored, but the rows recording steps, packets, resources, 
+ * and port events are queued to a TraceRowWriter, by default a TraceWriter that inserts 
+ * them in batches on its own thread.  The primary keys of the queued rows are allocated from in-memory sequences 
+ * so that callers never wait on the database, and the step counts of nodes and the read 
+ * events not yet associated with a step are tracked in memory for the same reason.  
+ * Each sequence continues from the largest key already in its table, read when the 
+ * trace tables are created or, for a trace on an existing connection, when the first 
+ * key is allocated.  Call flush() before querying the trace for rows recorded by the queue methods.
+ */
 public class WritableTrace extends Trace {
 	
 	private PreparedStatement _identifyInflowStatement			= null;
@@ -35,27 +54,26 @@ public class WritableTrace extends Trace {
 	private PreparedStatement _insertActorStatement 			= null;
 	private PreparedStatement _insertActorVariableStatement 	= null;
 	private PreparedStatement _insertDataTypeStatement 			= null;
-	private PreparedStatement _insertDataStatement 				= null;
 	private PreparedStatement _insertDependencyRuleStatement 	= null;
 	private PreparedStatement _insertNodeStatement 				= null;
 	private PreparedStatement _insertNodeVariableStatement 		= null;
-	private PreparedStatement _insertPacketMetadataStatement	= null;	
-	private PreparedStatement _insertPacketResourceStatement	= null;	
-	private PreparedStatement _insertPacketStatement 			= null;
-	private PreparedStatement _insertPortEventStatement			= null;
 	private PreparedStatement _insertPortStatement 				= null;
-	private PreparedStatement _insertResourceStatement			= null;
 	private PreparedStatement _insertUpdateStatement 			= null;	
-	private PreparedStatement _insertStepStatement 				= null;	
-	private PreparedStatement _updatePacketStatement 			= null;
-	private PreparedStatement _updatePortPacketCountStatement	= null;
-	private PreparedStatement _updateStepEndStatement			= null;
-	private PreparedStatement _updateNodeStepCountStatement 	= null;
 	private PreparedStatement _getNodeStepCountStatement		= null;
-	private PreparedStatement _selectNullStepReadEventsStatement= null;
-	private PreparedStatement _updatePortEventStepIDStatement 	= null;
 	private PreparedStatement _identifyActorVariableStatement 	= null;
 		
+	private final TraceRowWriter _traceWriter;
+	
+	private final IdSequence _dataIDs 			= new IdSequence("Data", "DataID");
+	private final IdSequence _metadataIDs 		= new IdSequence("PacketMetadata", "MetadataID");
+	private final IdSequence _packetIDs 		= new IdSequence("Packet", "PacketID");
+	private final IdSequence _portEventIDs 		= new IdSequence("PortEvent", "PortEventID");
+	private final IdSequence _resourceIDs 		= new IdSequence("Resource", "ResourceID");
+	private final IdSequence _stepIDs 			= new IdSequence("Step", "StepID");
+	
+	@GuardedBy("_nodeStepCounts") 			private final Map<Long,Long> _nodeStepCounts = new HashMap<Long,Long>();
+	@GuardedBy("_unassociatedReadEvents") 	private final Map<Long,List<Long>> _unassociatedReadEvents = new HashMap<Long,List<Long>>();
+	
 	private Long _inportalActorID;
 	private Long _outportalActorID;
 	private Long _bufferActorID;
@@ -74,15 +92,26 @@ public class WritableTrace extends Trace {
 	public WritableTrace(WorkflowContext context) throws Exception {
 		this(createPrivateVolatileDatabase());
 		createTraceDBTables(context, _traceDBConnection);
+		_seedIdSequences();
 	}
 
 	public WritableTrace(WorkflowContext context, String metadataDirectory) throws Exception {
 		this(createNewPersistentDatabase(metadataDirectory));
 		createTraceDBTables(context, _traceDBConnection);
+		_seedIdSequences();
 	}
 	
 	public WritableTrace(Connection connection) throws SQLException {
+		this(connection, new TraceWriter(connection));
+	}
+	
+	/**
+	 * Creates a trace that stores the workflow graph on the connection and hands the 
+	 * queued rows to the given writer.
+	 */
+	protected WritableTrace(Connection connection, TraceRowWriter traceWriter) throws SQLException {
 		super(connection);
+		_traceWriter = traceWriter;
 	}
 	
 	public static Connection createPrivateVolatileDatabase() throws SQLException {
@@ -129,6 +158,7 @@ public class WritableTrace extends Trace {
 	}
 	
 	public void close() throws SQLException {
+		flush();
 		synchronized(_traceDBConnection) {
 			_statement.close(); 
 			_traceDBConnection.close();
@@ -146,6 +176,13 @@ public class WritableTrace extends Trace {
 	     }
 	 }
 	
+	/**
+	 * Waits until all queued rows have been stored by the trace writer.
+	 */
+	public void flush() throws SQLException {
+		_traceWriter.flush();
+	}
+	
 	public void startTransaction() throws SQLException {
 		synchronized(_traceDBConnection) {
 			_traceDBConnection.setAutoCommit(false);
@@ -218,7 +255,18 @@ public class WritableTrace extends Trace {
 	
 
 	
-	public synchronized Long getStepCountForNode(Long nodeID) throws Exception {
+	public Long getStepCountForNode(Long nodeID) throws Exception {
+
+		synchronized(_nodeStepCounts) {
+			Long stepCount = _nodeStepCounts.get(nodeID);
+			if (stepCount == null) {
+				stepCount = _selectStepCountForNode(nodeID);
+			}
+			return stepCount;
+		}
+	}
+
+	private long _selectStepCountForNode(Long nodeID) throws SQLException {
 
 		synchronized(_traceDBConnection) {
 			
@@ -242,28 +290,32 @@ public class WritableTrace extends Trace {
 	}
 	
 	public void updateNodeStepCount(long nodeID, long stepCount) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			PreparedStatement statement = _getUpdateNodeStepCountStatement();
+		queueNodeStepCount(nodeID, stepCount);
+		flush();
+	}
 	
-			PortableDB.setLongParameter(statement, 	1, stepCount);
-			PortableDB.setLongParameter(statement, 	2, nodeID);
-			statement.executeUpdate();
+	public void queueNodeStepCount(long nodeID, long stepCount) throws SQLException {
+		synchronized(_nodeStepCounts) {
+			_nodeStepCounts.put(nodeID, stepCount);
+			_traceWriter.write(Operation.UPDATE_NODE_STEP_COUNT, stepCount, nodeID);
 		}
 	}
 	
-	private PreparedStatement _getUpdateNodeStepCountStatement() throws SQLException {
-		if (_updateNodeStepCountStatement == null) {
-			String sql = "UPDATE Node " 		+
-						 "SET StepCount = ?"	+
-						 "WHERE NodeID = ?";
-			_updateNodeStepCountStatement = _traceDBConnection.prepareStatement(sql);
+	/**
+	 * Increments the step count of the node, queues the update, and returns the new count.
+	 */
+	public long incrementStepCount(long nodeID) throws SQLException {
+		synchronized(_nodeStepCounts) {
+			Long lastStepCount = _nodeStepCounts.get(nodeID);
+			if (lastStepCount == null) {
+				lastStepCount = _selectStepCountForNode(nodeID);
+			}
+			long stepCount = lastStepCount + 1;
+			queueNodeStepCount(nodeID, stepCount);
+			return stepCount;
 		}
-		return _updateNodeStepCountStatement;
 	}
-
-
+	
 	public long insertInflow(String portName, Long nodeID, Long nodeVariableID, 
 			String uriTemplate) throws SQLException {
 
@@ -335,37 +387,18 @@ public class WritableTrace extends Trace {
 	
 
 	
-	public synchronized long insertStep(long nodeID, Long parentStepID, Long stepNumber, long updateCount, 
+	public long insertStep(long nodeID, Long parentStepID, Long stepNumber, long updateCount, 
 			Timestamp startTime, Timestamp endTime) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-
-			long stepID;
-	
-			PreparedStatement statement = _getInsertStepStatement();
-	
-			PortableDB.setLongParameter(statement, 			1, nodeID);
-			PortableDB.setNullableLongParameter(statement, 	2, parentStepID);
-			PortableDB.setNullableLongParameter(statement, 	3, stepNumber);
-			PortableDB.setLongParameter(statement, 			4, updateCount);
-			PortableDB.setNullableTimeStamp(statement, 		5, startTime);
-			PortableDB.setNullableTimeStamp(statement, 		6, endTime);
-			statement.executeUpdate();
-	
-			stepID = PortableDB.getGeneratedID(statement);
-			
-			return stepID;
-		}
+		long stepID = queueStep(nodeID, parentStepID, stepNumber, updateCount, startTime, endTime);
+		flush();
+		return stepID;
 	}
 	
-	private PreparedStatement _getInsertStepStatement() throws SQLException {
-		if (_insertStepStatement == null) {
-			String sql = "INSERT INTO Step " 	+
-						 "(NodeID, ParentStepID, StepNumber, UpdateCount, StartTime, EndTime) " 	+
-						 "VALUES (?, ?, ?, ?, ?, ?)";
-			_insertStepStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertStepStatement;
+	public long queueStep(long nodeID, Long parentStepID, Long stepNumber, long updateCount, 
+			Timestamp startTime, Timestamp endTime) throws SQLException {
+		long stepID = _stepIDs.next();
+		_traceWriter.write(Operation.INSERT_STEP, stepID, nodeID, parentStepID, stepNumber, updateCount, startTime, endTime);
+		return stepID;
 	}
 	
 //	public void updateStepStart(long stepID, Long parentStepID,
@@ -397,243 +430,142 @@ public class WritableTrace extends Trace {
 //	}
 
 	public void updateStepEnd(long stepID, Timestamp timestamp) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-
-			PreparedStatement statement = _getUpdateStepEndStatement();
-	
-			PortableDB.setTimeStamp(statement, 		1, timestamp);
-			PortableDB.setLongParameter(statement, 	2, stepID);
-			statement.executeUpdate();
-		}
+		queueStepEnd(stepID, timestamp);
+		flush();
 	}
 
-	
-	private PreparedStatement _getUpdateStepEndStatement() throws SQLException {
-		if (_updateStepEndStatement == null) {
-			String sql = "UPDATE Step " 			+
-						 "SET EndTime = ? " 	+
-						 "WHERE StepID = ?";
-			_updateStepEndStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _updateStepEndStatement;
-	}	
+	public void queueStepEnd(long stepID, Timestamp timestamp) throws SQLException {
+		_traceWriter.write(Operation.UPDATE_STEP_END, timestamp, stepID);
+	}
 
-	public synchronized long insertPacket(Long originEventID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			long packetID;
-	
-			PreparedStatement statement = _getInsertPacketStatement();
-	
-			PortableDB.setNullableLongParameter(statement, 	1, originEventID);
-			statement.executeUpdate();
 	
-			packetID = PortableDB.getGeneratedID(statement);
-			
-			return packetID;
-		}
+	public long insertPacket(Long originEventID) throws SQLException {
+		long packetID = queuePacket(originEventID);
+		flush();
+		return packetID;
 	}
 	
-	private PreparedStatement _getInsertPacketStatement() throws SQLException {
-		if (_insertPacketStatement == null) {
-			String sql = "INSERT INTO Packet " 	+
-						 "(OriginEventID) " 	+
-						 "VALUES (?)";
-			_insertPacketStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertPacketStatement;
+	public long queuePacket(Long originEventID) throws SQLException {
+		long packetID = _packetIDs.next();
+		_traceWriter.write(Operation.INSERT_PACKET, packetID, originEventID);
+		return packetID;
 	}
 	
-	public synchronized void updatePacketOriginEvent(long packetID, long originEventID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			PreparedStatement statement = _getUpdatePacketStatement();
-	
-			PortableDB.setLongParameter(statement, 			1, originEventID);
-			PortableDB.setNullableLongParameter(statement, 	2, packetID);
-			statement.executeUpdate();
-		}
+	public void updatePacketOriginEvent(long packetID, long originEventID) throws SQLException {
+		queuePacketOriginEvent(packetID, originEventID);
+		flush();
 	}
-	
-	private PreparedStatement _getUpdatePacketStatement() throws SQLException {
-		if (_updatePacketStatement == null) {
-			String sql = "UPDATE Packet " 			+
-						 "SET OriginEventID = ? " 	+
-						 "WHERE PacketID = ?";
-			_updatePacketStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _updatePacketStatement;
+
+	public void queuePacketOriginEvent(long packetID, long originEventID) throws SQLException {
+		_traceWriter.write(Operation.UPDATE_PACKET_ORIGIN, originEventID, packetID);
 	}
 	
-	public synchronized long insertPortEvent(long portID, long packetID, Long stepID, String eventClass, 
+	public long insertPortEvent(long portID, long packetID, Long stepID, String eventClass, 
 			long eventNumber, Timestamp eventTime) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			PreparedStatement statement = _getInsertPortEventStatement();
-	
-			PortableDB.setLongParameter			(	statement, 	1,	portID		);
-			PortableDB.setLongParameter			(	statement,	2, 	packetID	);
-			PortableDB.setNullableLongParameter	(	statement,	3, 	stepID		);
-			PortableDB.setStringParameter		(	statement, 	4, 	eventClass	);
-			PortableDB.setLongParameter			(	statement, 	5, 	eventNumber	);
-			PortableDB.setNullableTimeStamp		(	statement, 	6, 	eventTime	);
+		long portEventID = queuePortEvent(portID, packetID, stepID, eventClass, eventNumber, eventTime);
+		flush();
+		return portEventID;
+	}
 
-			statement.executeUpdate();
+	public long queuePortEvent(long portID, long packetID, Long stepID, String eventClass, 
+			long eventNumber, Timestamp eventTime) throws SQLException {
+		long portEventID = _portEventIDs.next();
+		_traceWriter.write(Operation.INSERT_PORT_EVENT, portEventID, portID, packetID, stepID, 
+				eventClass, eventNumber, eventTime);
+		return portEventID;
+	}
 	
-			long portEventID = PortableDB.getGeneratedID(statement);
-			
+	/**
+	 * Queues a read event on an inflow of the node that will be associated with
+	 * the next step of the node.
+	 */
+	public long queueUnassociatedReadEvent(long nodeID, long portID, long packetID, 
+			long eventNumber, Timestamp eventTime) throws SQLException {
+		synchronized(_unassociatedReadEvents) {
+			long portEventID = queuePortEvent(portID, packetID, null, "r", eventNumber, eventTime);
+			List<Long> portEventIDs = _unassociatedReadEvents.get(nodeID);
+			if (portEventIDs == null) {
+				portEventIDs = new ArrayList<Long>();
+				_unassociatedReadEvents.put(nodeID, portEventIDs);
+			}
+			portEventIDs.add(portEventID);
 			return portEventID;
 		}
 	}
-	
-	private PreparedStatement _getInsertPortEventStatement() throws SQLException {
-		if (_insertPortEventStatement == null) {
-			String sql = "INSERT INTO PortEvent " 	+
-						 "(PortID, PacketID, StepID, EventClass, EventNumber, EventTime) " 	+
-						 "VALUES (?, ?, ?, ?, ?, ?)";
-			_insertPortEventStatement = _traceDBConnection.prepareStatement(sql);
+
+	/**
+	 * Returns the IDs of the read events queued for the node since its last step,
+	 * and forgets them.
+	 */
+	public List<Long> takeUnassociatedReadEvents(long nodeID) {
+		synchronized(_unassociatedReadEvents) {
+			List<Long> portEventIDs = _unassociatedReadEvents.remove(nodeID);
+			if (portEventIDs == null) {
+				return Collections.emptyList();
+			}
+			return portEventIDs;
 		}
-		return _insertPortEventStatement;
 	}
 	
 	public void updatePortPacketCount(long portID, long packetCount) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-
-			PreparedStatement statement = _getUpdatePortPacketCountStatement();
+		queuePortPacketCount(portID, packetCount);
+		flush();
+	}
 
-			PortableDB.setLongParameter(statement, 	1, packetCount);
-			PortableDB.setLongParameter(statement, 	2, portID);
-			statement.executeUpdate();
-		}
+	public void queuePortPacketCount(long portID, long packetCount) throws SQLException {
+		_traceWriter.write(Operation.UPDATE_PORT_PACKET_COUNT, packetCount, portID);
 	}
 	
-	private PreparedStatement _getUpdatePortPacketCountStatement() throws SQLException {
-		if (_updatePortPacketCountStatement == null) {
-			String sql = "UPDATE Port " 			+
-						 "SET PacketCount = ? " 	+
-						 "WHERE PortID = ?";
-			_updatePortPacketCountStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _updatePortPacketCountStatement;
+	public long insertResource(String uri, Long dataID) throws SQLException {
+		return insertResource(uri, dataID, null);
 	}
-
 	
-	public synchronized long insertResource(String uri, Long dataID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-
-			long resourceID;
+	public long insertResource(String uri, Long dataID, String digest) throws SQLException {
+		long resourceID = queueResource(uri, dataID, digest);
+		flush();
+		return resourceID;
+	}
 
-			PreparedStatement statement = _getInsertResourceStatement();
-	
-			PortableDB.setStringParameter(statement, 		1, uri);
-			PortableDB.setNullableLongParameter(statement,	2, dataID);
-			statement.executeUpdate();
-	
-			resourceID = PortableDB.getGeneratedID(statement);
-			
-			return resourceID;
-		}
+	public long queueResource(String uri, Long dataID, String digest) throws SQLException {
+		long resourceID = _resourceIDs.next();
+		_traceWriter.write(Operation.INSERT_RESOURCE, resourceID, uri, dataID, digest);
+		return resourceID;
 	}
 
-	private PreparedStatement _getInsertResourceStatement() throws SQLException {
-		if (_insertResourceStatement == null) {
-			String sql = "INSERT INTO Resource " 	+
-						 "(URI, DataID) " 	+
-						 "VALUES (?, ?)";
-			_insertResourceStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertResourceStatement;
+	public long insertData(Object value, boolean isReference, Long dataTypeID) throws SQLException {
+		long dataID = queueData(value, isReference, dataTypeID);
+		flush();
+		return dataID;
 	}
-	
 
-	public synchronized long insertData(Object value, boolean isReference, Long dataTypeID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			long dataID;
-	
-			PreparedStatement statement = _getInsertDataStatement();
-	
-			PortableDB.setObjectParameter(statement, 		1, value);
-			PortableDB.setBooleanParameter(statement, 		2, isReference);
-			PortableDB.setNullableLongParameter(statement,	3, dataTypeID);
-			statement.executeUpdate();
-	
-			dataID = PortableDB.getGeneratedID(statement);
-			
-			return dataID;
-		}
+	public long queueData(Object value, boolean isReference, Long dataTypeID) throws SQLException {
+		long dataID = _dataIDs.next();
+		_traceWriter.write(Operation.INSERT_DATA, dataID, value, isReference, dataTypeID);
+		return dataID;
 	}
 	
-	private PreparedStatement _getInsertDataStatement() throws SQLException {
-		if (_insertDataStatement == null) {
-			String sql = "INSERT INTO Data " 					+
-						 "(Value, IsReference, DataTypeID) " 	+
-						 "VALUES (?, ?, ?)";
-			_insertDataStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertDataStatement;
+	public void insertPacketResource(long packetID, long resourceID) throws SQLException {
+		queuePacketResource(packetID, resourceID);
+		flush();
 	}
 
-	public synchronized void insertPacketResource(long packetID, long resourceID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			PreparedStatement statement = _getInsertPacketResourceStatement();
-	
-			PortableDB.setLongParameter(statement,		1, packetID);
-			PortableDB.setLongParameter(statement,		2, resourceID);
-			statement.executeUpdate();
-		}
+	public void queuePacketResource(long packetID, long resourceID) throws SQLException {
+		_traceWriter.write(Operation.INSERT_PACKET_RESOURCE, packetID, resourceID);
 	}
 	
 	
-	private PreparedStatement _getInsertPacketResourceStatement() throws SQLException {
-		if (_insertPacketResourceStatement == null) {
-			String sql = "INSERT INTO PacketResource " 					+
-						 "(PacketID, ResourceID) " 	+
-						 "VALUES (?, ?)";
-			_insertPacketResourceStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertPacketResourceStatement;
+	public long insertPacketMetadata(long packetID, String key, long dataID) throws SQLException {
+		long metadataID = queuePacketMetadata(packetID, key, dataID);
+		flush();
+		return metadataID;
 	}
-	
-	public synchronized long insertPacketMetadata(long packetID, String key, long dataID) throws SQLException {
-		
-		synchronized(_traceDBConnection) {
-			
-			long metadataID;
-	
-			PreparedStatement statement = _getInsertPacketMetadataStatement();
-	
-			PortableDB.setLongParameter(statement, 		1, packetID);
-			PortableDB.setStringParameter(statement, 	2, key);
-			PortableDB.setLongParameter(statement,		3, dataID);
-			statement.executeUpdate();
-	
-			metadataID = PortableDB.getGeneratedID(statement);
-			
-			return metadataID;
-		}
+
+	public long queuePacketMetadata(long packetID, String key, long dataID) throws SQLException {
+		long metadataID = _metadataIDs.next();
+		_traceWriter.write(Operation.INSERT_PACKET_METADATA, metadataID, packetID, key, dataID);
+		return metadataID;
 	}
 	
-	private PreparedStatement _getInsertPacketMetadataStatement() throws SQLException {
-		if (_insertPacketMetadataStatement == null) {
-			String sql = "INSERT INTO PacketMetadata " 					+
-						 "(PacketID, Key, DataID) " 	+
-						 "VALUES (?, ?, ?)";
-			_insertPacketMetadataStatement = _traceDBConnection.prepareStatement(sql);
-		}
-		return _insertPacketMetadataStatement;
-	}
-
-
 	public synchronized long insertActor(String actorName) throws SQLException {
 		
 		synchronized(_traceDBConnection) {	
@@ -1064,45 +996,76 @@ public class WritableTrace extends Trace {
 
 	public ResultSet getUnassociatedReadEventsForNode(Long nodeID) throws SQLException {
 
+		flush();
+		
 		synchronized(_traceDBConnection) {			
-			PreparedStatement statement = _getSelectNullStepReadEventsStatement();
+			String sql = "SELECT PortEventID " 											+
+						 "From PortEvent JOIN PORT ON PortEvent.PortID = Port.PortID " 	+
+						 "WHERE NodeID = ? AND PortDirection = 'i' AND StepID IS NULL";
+			PreparedStatement statement = _traceDBConnection.prepareStatement(sql);
 			PortableDB.setLongParameter(statement, 1, nodeID);
 			ResultSet results = statement.executeQuery();
 			return results;
 		}
 	}
 
-	private PreparedStatement _getSelectNullStepReadEventsStatement() throws SQLException {
-		if (_selectNullStepReadEventsStatement == null) {
-			String sql = "SELECT PortEventID " 											+
-						 "From PortEvent JOIN PORT ON PortEvent.PortID = Port.PortID " 	+
-						 "WHERE NodeID = ? AND PortDirection = 'i' AND StepID IS NULL";
-			_selectNullStepReadEventsStatement = _traceDBConnection.prepareStatement(sql);
+	public void updatePortEventStepID(Long portEventID, Long stepID) throws SQLException {
+		queuePortEventStepID(portEventID, stepID);
+		flush();
+	}
+
+	public void queuePortEventStepID(long portEventID, long stepID) throws SQLException {
+		_traceWriter.write(Operation.UPDATE_PORT_EVENT_STEP, stepID, portEventID);
+	}
+
+	// reads the largest keys now so that allocating a key never waits on the database
+	private void _seedIdSequences() throws SQLException {
+		for (IdSequence sequence : new IdSequence[] {_dataIDs, _metadataIDs, _packetIDs, 
+				_portEventIDs, _resourceIDs, _stepIDs}) {
+			sequence._seed();
 		}
-		return _selectNullStepReadEventsStatement;
 	}
 
-	
-	public void updatePortEventStepID(Long portEventID, Long stepID) throws SQLException {
+	/**
+	 * Allocates the primary keys of the rows in one table, continuing from the largest
+	 * key already in the table when the first key is allocated.
+	 */
+	private final class IdSequence {
 		
-		synchronized(_traceDBConnection) {
-			
-			PreparedStatement statement = _getUpdatePortEventStepIDStatement();
-	
-			PortableDB.setLongParameter(statement, 	1, stepID);
-			PortableDB.setLongParameter(statement, 	2, portEventID);
-			statement.executeUpdate();
+		private final String _table;
+		private final String _column;
+		private final AtomicLong _nextID = new AtomicLong(-1);
+		
+		IdSequence(String table, String column) {
+			_table = table;
+			_column = column;
 		}
-	}
-	
-	private PreparedStatement _getUpdatePortEventStepIDStatement() throws SQLException {
-		if (_updatePortEventStepIDStatement == null) {
-			String sql = "UPDATE PortEvent " 		+
-						 "SET StepID = ? "	+
-						 "WHERE PortEventID = ?";
-			_updatePortEventStepIDStatement = _traceDBConnection.prepareStatement(sql);
+		
+		long next() throws SQLException {
+			while (true) {
+				long id = _nextID.get();
+				if (id < 0) {
+					_seed();
+				} else if (_nextID.compareAndSet(id, id + 1)) {
+					return id;
+				}
+			}
+		}
+		
+		private synchronized void _seed() throws SQLException {
+			if (_nextID.get() < 0) {
+				synchronized(_traceDBConnection) {
+					Statement statement = _traceDBConnection.createStatement();
+					try {
+						ResultSet resultSet = statement.executeQuery(
+								"SELECT MAX(" + _column + ") FROM " + _table);
+						resultSet.next();
+						_nextID.set(resultSet.getLong(1) + 1);
+					} finally {
+						statement.close();
+					}
+				}
+			}
 		}
-		return _updatePortEventStepIDStatement;
 	}
-
 }
@@ -41,7 +41,12 @@ import org.springframework.context.ApplicationContextAware;
 
 
 /**
- * This class is thread safe.  All of its mutable fields are synchronized on the instance.
+ * This class is thread safe.  Its state is divided into three regions.  The configuration
+ * fields are assigned before the node is initialized and are volatile, so they are read 
+ * without locking.  The input staging state (the inflows, variables and end-of-stream 
+ * count) is guarded by _inputLock, and the publication of output packets is serialized 
+ * by _outputLock.  Both locks are the instance itself unless a subclass passes separate 
+ * locks to the constructor, so nodes that synchronize on the instance are unaffected.
  */
 @ThreadSafe()
 public abstract class AbstractWorkflowNode implements WorkflowNode, 
@@ -51,12 +56,12 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	 *  private configuration fields  *
 	 **********************************/
 	
-	@GuardedBy("this")	private String _beanName;	
-	@GuardedBy("this")	private String _name;	
-	@GuardedBy("this")	private String _qualifiedName;
-	@GuardedBy("this")	private boolean _isHidden;
-	@GuardedBy("this")	private boolean _enableLog;
-	@GuardedBy("this")	private String _uriPrefix;
+	private volatile String _beanName;	
+	private volatile String _name;	
+	private volatile String _qualifiedName;
+	private volatile boolean _isHidden;
+	private volatile boolean _enableLog;
+	private volatile String _uriPrefix;
 	@GuardedBy("this")	private Map<String,Object> _inflowConfiguration;
 	@GuardedBy("this")	private Map<String,Object> _outflowConfiguration;
 	@GuardedBy("this")	private Map<String,Object> _exceptionConfiguration;
@@ -64,25 +69,33 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	/***********************************
 	 *  protected configuration fields *
 	 ***********************************/
-	@GuardedBy("this")	protected Map<String,Inflow> _inflows;
-	@GuardedBy("this")	protected Map<String,Outflow> _outflows;
-	@GuardedBy("this")	protected Map<Class<? extends Exception>,Outflow> _exceptionOutflows;
-	@GuardedBy("this")	protected Set<String> _dataOutflowNames;
-	@GuardedBy("this")	protected SortedClassVector _caughtExceptions;
+	protected volatile Map<String,Inflow> _inflows;
+	protected volatile Map<String,Outflow> _outflows;
+	private volatile ImmutableMap<String,Inflow> _inflowsView;
+	private volatile ImmutableMap<String,Outflow> _outflowsView;
+	protected volatile Map<Class<? extends Exception>,Outflow> _exceptionOutflows;
+	protected volatile Set<String> _dataOutflowNames;
+	protected volatile SortedClassVector _caughtExceptions;
+
+	/******************
+	 *  region locks  *
+	 ******************/
+	protected final Object _inputLock;
+	protected final Object _outputLock;
 
 	/**************************
 	 *  private state fields  *
 	 **************************/
-	@GuardedBy("this")	private int _receivedEosCount;
-	@GuardedBy("this")	private boolean _allEosSent;
+	@GuardedBy("_inputLock")	private int _receivedEosCount;
+	private volatile boolean _allEosSent;
 
 	/***************************
 	 *  protected state fields *
 	 ***************************/
-	@GuardedBy("this")	private DoneStepping _doneStepping;
-	@GuardedBy("this")	private NodeFinished _isFinished;
-	@GuardedBy("this")	protected boolean _stepsOnce;
-	@GuardedBy("this")	protected Map<String,Object> _variables;
+	private volatile DoneStepping _doneStepping;
+	private volatile NodeFinished _isFinished;
+	protected volatile boolean _stepsOnce;
+	@GuardedBy("_inputLock")	protected Map<String,Object> _variables;
 	
 	protected WorkflowContext _workflowContext;
 	protected Workflow _workflow;
@@ -115,7 +128,18 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	 *****************/
 
 	public AbstractWorkflowNode() {
+		this(null, null);
+	}
+
+	/**
+	 * Creates a node that stages inputs under inputLock and publishes outputs under
+	 * outputLock.  A null lock is replaced by the instance itself.
+	 */
+	protected AbstractWorkflowNode(Object inputLock, Object outputLock) {
 
+		_inputLock = (inputLock != null) ? inputLock : this;
+		_outputLock = (outputLock != null) ? outputLock : this;
+		
 		// initialize instance fields in synchronize block 
 		// to insure visibility to other threads
 		synchronized(this) {
@@ -267,12 +291,17 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	}
 
 
-	public synchronized Map<String,Inflow> getInflows() {
-		return new ImmutableMap<String,Inflow>(_inflows);
+	public Map<String,Inflow> getInflows() {
+		ImmutableMap<String,Inflow> view = _inflowsView;
+		Map<String,Inflow> inflows = _inflows;
+		if (view == null || !view.isViewOf(inflows)) {
+			_inflowsView = view = new ImmutableMap<String,Inflow>(inflows);
+		}
+		return view;
 	}
 
 
-	public synchronized Map<String,Inflow> getLabelInflowMap() {
+	public Map<String,Inflow> getLabelInflowMap() {
 		return getInflows();
 	}
 
@@ -290,16 +319,17 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	 *  Configuration getters *
 	 **************************/
 	
-	public synchronized String getName() {
+	public String getName() {
 		return _name;
 	}
 
-	public synchronized String getBeanName() {
+	public String getBeanName() {
 		return _beanName;
 	}
 
-	public synchronized String getQualifiedName() {
+	public String getQualifiedName() {
 		
+		// computing the name more than once is harmless because the result is always the same
 		if (_qualifiedName == null) {
 			
 			if (_workflow == null) {
@@ -326,13 +356,18 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	}
 	
 
-	public synchronized Map<String, Outflow> getOutflows() {
-		return new ImmutableMap<String, Outflow>(_outflows);
+	public Map<String, Outflow> getOutflows() {
+		ImmutableMap<String, Outflow> view = _outflowsView;
+		Map<String, Outflow> outflows = _outflows;
+		if (view == null || !view.isViewOf(outflows)) {
+			_outflowsView = view = new ImmutableMap<String, Outflow>(outflows);
+		}
+		return view;
 	}
 
 
 
-	public synchronized String getUriPrefix() {
+	public String getUriPrefix() {
 		return _uriPrefix;
 	}
 
@@ -341,16 +376,16 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 		return false;
 	}
 
-	public synchronized boolean isHidden() {
+	public boolean isHidden() {
 		return _isHidden;
 	}	
 
-	public synchronized boolean stepsOnce() {
+	public boolean stepsOnce() {
 		return _stepsOnce;
 	}
 
 
-	public synchronized String toString() {
+	public String toString() {
 		return _name;
 	}
 
@@ -391,18 +426,25 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	public synchronized void initialize() throws Exception {
 		_doneStepping = DoneStepping.FALSE;		
 		_isFinished = NodeFinished.FALSE;
-		_receivedEosCount = 0;
 		_allEosSent = false;
-		_variables.clear();
-		_clearInflows(true);
 		
-		// reset state of inflows
-		for (Inflow inflow : _inflows.values()) {
-			inflow.initialize();
+		synchronized(_inputLock) {
+			_receivedEosCount = 0;
+			_variables.clear();
+			_clearInflows(true);
+			
+			// reset state of inflows
+			for (Inflow inflow : _inflows.values()) {
+				inflow.initialize();
+			}
 		}
 
 		validate();
 		
+		// name the node now, as the workflow stays locked while it runs and steps failing on 
+		// other threads would otherwise wait on it to name the node in their exceptions
+		getQualifiedName();
+		
 		// validate and reset state of outflows
 		for (Outflow outflow : _outflows.values()) {
 			outflow.initialize();
@@ -414,12 +456,19 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	
 	public abstract boolean readyForInputPacket(String label) throws Exception;
 	
-	public synchronized void writeValueToInflow(String label, Object value) throws Exception {
+	public void writeValueToInflow(String label, Object value) throws Exception {
 		 Packet packet = new SingleResourcePacket(value);
 		 setInputPacket(label, packet);
 	}
 	
-	public synchronized void setInputPacket(String label, Packet packet) throws Exception {
+	public void setInputPacket(String label, Packet packet) throws Exception {
+		synchronized(_inputLock) {
+			_stageInputPacket(label, packet);
+		}
+	}
+
+	@GuardedBy("_inputLock")
+	private void _stageInputPacket(String label, Packet packet) throws Exception {
 
 		TraceRecorder recorder = _workflowContext.getTraceRecorder();
 
@@ -443,14 +492,11 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 
 		} else {
 
-			String[] inflowVariableNames = _inflows.get(label).getVariableNames();
-			String[] packetMetadataKeys = packet.getMetadataKeys();
-			Object[] packetMetadataValues = packet.getMetadataValues();
+			int packetMetadataCount = packet.getMetadataCount();
 			
-			
-			for (int i = 0; i < packetMetadataKeys.length; i++) {
-				String inflowVariableName = inflowVariableNames[i];
-				Object value = packetMetadataValues[i];
+			for (int i = 0; i < packetMetadataCount; i++) {
+				String inflowVariableName = inflow.getVariableName(i);
+				Object value = packet.getMetadataValue(i);
 				_variables.put(inflowVariableName, value);
 				_loadVariableValue(inflowVariableName, value);
 			}
@@ -482,11 +528,14 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 		return true;
 	}
 	
-	public synchronized Packet getOutputPacket(String label) throws Exception {
+	public Packet getOutputPacket(String label) throws Exception {
 		
 		Outflow outflow = _outflows.get(label);
 		
-		Packet packet = outflow.get();
+		Packet packet;
+		synchronized(_outputLock) {
+			packet = outflow.get();
+		}
 
 		if (packet == null) {
 			throw new Exception("Null packet found in outflow '" + outflow + "' on node " + this);
@@ -494,13 +543,13 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 		return packet;
 	}
 
-	public synchronized Object readValueFromOutflow(String label) throws Exception {
+	public Object readValueFromOutflow(String label) throws Exception {
 		SingleResourcePacket packet = (SingleResourcePacket)getOutputPacket(label);		
 		PublishedResource resource =  packet.getResource();
 		return resource.getData();
 	}
 	
-	public synchronized Packet peekOutputPacket(String label) throws Exception {
+	public Packet peekOutputPacket(String label) throws Exception {
 		
 		Outflow outflow = _outflows.get(label);
 		
@@ -512,12 +561,14 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 		return packet;
 	}	
 	
-	public synchronized boolean allEosReceived() {
-		return _receivedEosCount == _inflows.size();
+	public boolean allEosReceived() {
+		synchronized(_inputLock) {
+			return _receivedEosCount == _inflows.size();
+		}
 	}
 
 	@Override
-	public synchronized boolean allEosSent() {
+	public boolean allEosSent() {
 		return _allEosSent;
 	}
 
@@ -567,7 +618,7 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	 * Comparator for sorting *
 	 **************************/
 	
-	public synchronized int compareTo(WorkflowNode node) {
+	public int compareTo(WorkflowNode node) {
 		return _name.compareTo(node.getName());
 	}
 	
@@ -576,24 +627,28 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	 *    Protected methods   *
 	 **************************/
 	
-	protected synchronized boolean _allInputsStaged() throws Exception {
+	protected boolean _allInputsStaged() throws Exception {
 	
-		for (Map.Entry<String, Inflow> entry : _inflows.entrySet()) {
-			
-			Inflow inflow = entry.getValue();
-			String label = entry.getKey();
-			if (!inflow.hasInputPacket() && readyForInputPacket(label)) return false;
+		synchronized(_inputLock) {
+			for (Map.Entry<String, Inflow> entry : _inflows.entrySet()) {
+				
+				Inflow inflow = entry.getValue();
+				String label = entry.getKey();
+				if (!inflow.hasInputPacket() && readyForInputPacket(label)) return false;
+			}
 		}
 		
 		return true;
 	}
 
 
-	protected synchronized void _clearInflows(boolean clearAll) {
-		for (Inflow inflow : _inflows.values()) {
-		
-			if (clearAll || ! inflow.receiveOnce()) {
-				inflow.clear();
+	protected void _clearInflows(boolean clearAll) {
+		synchronized(_inputLock) {
+			for (Inflow inflow : _inflows.values()) {
+			
+				if (clearAll || ! inflow.receiveOnce()) {
+					inflow.clear();
+				}
 			}
 		}
 	}
@@ -602,7 +657,8 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	protected void _handleEndOfStream(String label, Packet endOfStreamPacket) throws Exception {}
 
 
-	protected synchronized void _loadInputPacket(String label, Packet inputPacket) throws Exception {
+	@GuardedBy("_inputLock")
+	protected void _loadInputPacket(String label, Packet inputPacket) throws Exception {
 
 		Inflow inflow = _inflows.get(label);
 		inflow.setInputPacket(inputPacket);
@@ -624,10 +680,12 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	}
 
 
-	protected synchronized void _sendEndOfStreamPackets() throws Exception {
+	protected void _sendEndOfStreamPackets() throws Exception {
 		
-		for (Outflow outflow: _outflows.values()) {
-			outflow.sendPacket(EndOfStreamPacket, null);
+		synchronized(_outputLock) {
+			for (Outflow outflow: _outflows.values()) {
+				outflow.sendPacket(EndOfStreamPacket, null);
+			}
 		}
 		
 		_allEosSent  = true;
@@ -710,7 +768,8 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	}
 
 
-	private synchronized void _loadControlPacket(String label, Packet inputPacket) throws Exception {
+	@GuardedBy("_inputLock")
+	private void _loadControlPacket(String label, Packet inputPacket) throws Exception {
 		Inflow inflow = _inflows.get(label);
 		inflow.setInputPacket(inputPacket);
 		
@@ -752,22 +811,23 @@ public abstract class AbstractWorkflowNode implements WorkflowNode,
 	}	
 	
 	
-	protected synchronized void _flagDoneStepping() {
+	protected void _flagDoneStepping() {
 		_doneStepping = DoneStepping.TRUE;
 	}
-	protected synchronized DoneStepping _checkDoneStepping() throws RestFlowException {
+	protected DoneStepping _checkDoneStepping() throws RestFlowException {
 		if ( _doneStepping == DoneStepping.UNINITIALIZED) throw new RestFlowException("Node was not initialized properly.");		
 		return _doneStepping;
 	}
 	
-	protected synchronized void _flagNodeFinished() {
+	protected void _flagNodeFinished() {
 		_isFinished = NodeFinished.TRUE;
 	}
 	
 	@Override
-	public synchronized boolean isNodeFinished() throws RestFlowException {
-		if ( _isFinished == NodeFinished.UNINITIALIZED) throw new RestFlowException("Node was not initialized properly.");
-		return (_isFinished == NodeFinished.TRUE);
+	public boolean isNodeFinished() throws RestFlowException {
+		NodeFinished isFinished = _isFinished;
+		if ( isFinished == NodeFinished.UNINITIALIZED) throw new RestFlowException("Node was not initialized properly.");
+		return (isFinished == NodeFinished.TRUE);
 	}
 	
 	
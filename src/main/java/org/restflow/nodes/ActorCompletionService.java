@@ -9,6 +9,7 @@ import org.restflow.actors.ActorRunner;
 public interface ActorCompletionService {
 	Actor submit(Actor actor, Map<String,Object> variables);
 	public ActorRunner take() throws InterruptedException;
+	void recycle(Actor actor);
 	void shutdown();
 	void start();
 }
@@ -25,6 +25,8 @@ public class ActorNodeBuilder  {
 	protected Map<String, String> 		_types = new LinkedHashMap<String, String>();
 	protected Map<String, List<Object>>	_sequences = new LinkedHashMap<String, List<Object>>();
 	protected boolean					_ordered = true;
+	protected boolean					_pooledSteps = true;
+	protected boolean					_recycleActors = false;
 	private boolean 					_endFlowOnNoOutput = false;
 	private boolean 					_stepsOnce = false;
 	private String 						_prefix;
@@ -148,6 +150,16 @@ public class ActorNodeBuilder  {
 		return this;
 	}
 
+	public ActorNodeBuilder pooledSteps(boolean pooledSteps) {
+		_pooledSteps = pooledSteps;
+		return this;
+	}
+
+	public ActorNodeBuilder recycleActors(boolean recycleActors) {
+		_recycleActors = recycleActors;
+		return this;
+	}
+
 	public ActorNodeBuilder sequence(String name, List<Object> values) {
 		_sequences.put(name, values);
 		return this;
@@ -205,6 +217,8 @@ public class ActorNodeBuilder  {
 		node.setRepeatValues(_repeatValues);
 		node.setMaxConcurrency(_maxConcurrency);
 		node.setOrdered(_ordered);
+		node.setPooledSteps(_pooledSteps);
+		node.setRecycleActors(_recycleActors);
 		node.setStepsOnce(_stepsOnce);
 		node.setEndFlowOnNoOutput(_endFlowOnNoOutput);
 		node.setNestedUriPrefix(_prefix);
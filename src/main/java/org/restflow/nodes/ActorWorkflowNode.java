@@ -6,6 +6,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 import org.restflow.actors.AbstractActorRunner;
 import org.restflow.actors.Actor;
@@ -34,7 +37,15 @@ import net.jcip.annotations.ThreadSafe;
 // TODO make endFlowOnNull and endFlowOnNoOutput properties of outflows rather than nodes
 
 /**
- * This class is thread safe.  All of its mutable fields are synchronized on the instance.
+ * This class is thread safe.  Its configuration fields are volatile and are not changed
+ * once the node is configured.  Staging inputs and starting steps are guarded by 
+ * _inputLock, and finishing steps and publishing their outputs by _outputLock, so that
+ * upstream nodes may deliver packets to a concurrent node while its earlier steps are 
+ * publishing their results.  Flagging the node done stepping and shutting down the 
+ * actor completion service also take _inputLock, so that a step is never submitted
+ * after the node is found done; _inputLock may be taken while holding _outputLock but
+ * not the reverse.  The actor and the actor completion service synchronize their own 
+ * state.
  */
 @ThreadSafe()
 public class ActorWorkflowNode extends AbstractWorkflowNode {
@@ -43,28 +54,31 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	 *  private configuration fields  *
 	 **********************************/
 	
-	@GuardedBy("this")	private Actor _actor;
-	@GuardedBy("this")	private boolean _endFlowOnNull;
-	@GuardedBy("this")	private boolean _endFlowOnNoOutput;
-	@GuardedBy("this")	private boolean _repeatValues;
-	@GuardedBy("this")	private boolean _endFlowOnActorException;
-	@GuardedBy("this")	private boolean _exitOnActorException;
-	@GuardedBy("this")	private boolean _concurrent;
-	@GuardedBy("this")	private int _maxConcurrency;
-	@GuardedBy("this")	private boolean _ordered;
-	@GuardedBy("this")	private boolean _validateInflowNames;
-	@GuardedBy("this")	private Map<String,Object> _initialValues;	
-	@GuardedBy("this")	private Map<String,Object> _constants;		
-	@GuardedBy("this")	private Map<String,List<Object>> _sequences;			
-	@GuardedBy("this")	private String _nestedUriPrefixTemplate;
+	private volatile Actor _actor;
+	private volatile boolean _endFlowOnNull;
+	private volatile boolean _endFlowOnNoOutput;
+	private volatile boolean _repeatValues;
+	private volatile boolean _endFlowOnActorException;
+	private volatile boolean _exitOnActorException;
+	private volatile boolean _concurrent;
+	private volatile int _maxConcurrency;
+	private volatile boolean _ordered;
+	private volatile boolean _pooledSteps;
+	private volatile boolean _recycleActors;
+	private volatile boolean _validateInflowNames;
+	private volatile Map<String,Object> _initialValues;	
+	private volatile Map<String,Object> _constants;		
+	private volatile Map<String,List<Object>> _sequences;			
+	private volatile String _nestedUriPrefixTemplate;
 
 	/**************************
 	 *  private state fields  *
 	 **************************/
 	
-	@GuardedBy("this")	private Sequences _parameterSequence;
-	@GuardedBy("this")	private int _stepCount;
-	@GuardedBy("this")	private ActorCompletionService _actorCompletionService;
+	@GuardedBy("_inputLock")	private Sequences _parameterSequence;
+	@GuardedBy("_inputLock")	private int _stepCount;
+	private volatile ActorCompletionService _actorCompletionService;
+	private final Queue<StepVariables> _freeStepVariables = new ConcurrentLinkedQueue<StepVariables>();
 
 	/*****************
 	 *  constructor  *
@@ -72,7 +86,7 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	
 	public ActorWorkflowNode() {
 		
-		super();
+		super(new Object(), new Object());
 		
 		synchronized(this) {
 			_endFlowOnNull = false;
@@ -83,6 +97,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 			_exitOnActorException = false;
 			_concurrent = false;
 			_ordered = true;
+			_pooledSteps = true;
+			_recycleActors = false;
 			_maxConcurrency = 1;
 			_actorCompletionService = null;
 			_validateInflowNames = true;
@@ -131,6 +147,23 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	public synchronized void setOrdered(boolean value) {
 		_ordered = value;
 	}
+
+	/**
+	 * Determines whether concurrent steps run on the reusable threads of the workflow's
+	 * StepRunnerPool (the default) or each on a new thread of its own.
+	 */
+	public synchronized void setPooledSteps(boolean value) {
+		_pooledSteps = value;
+	}
+
+	/**
+	 * Determines whether the clones of the actor stepped concurrently are reset and
+	 * reused for later steps rather than discarded after each step.  The actor must
+	 * be recyclable.
+	 */
+	public synchronized void setRecycleActors(boolean value) {
+		_recycleActors = value;
+	}
 	
 	public synchronized void setValidateInflowNames(boolean validate) {
 		_validateInflowNames = validate;
@@ -160,15 +193,15 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	 *  configuration getters  *
 	 ***************************/
 	
-	public synchronized Actor getActor() {
+	public Actor getActor() {
 		return _actor;
 	}
 
-	public synchronized Actor actor() {
+	public Actor actor() {
 		return getActor();
 	}
 
-	public synchronized int getMaxConcurrentSteps() { 
+	public int getMaxConcurrentSteps() { 
 		if (_concurrent) {
 			return _maxConcurrency;
 		} else {
@@ -176,7 +209,7 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		}
 	}
 
-	public synchronized boolean inputIsOptional(String label) {		
+	public boolean inputIsOptional(String label) {		
 		return _actor.hasOptionalInput(label);
 	}
 	
@@ -318,25 +351,33 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 			throw new IllegalWorkflowSpecException("Uncloneable actor " + _actor + " cannot be used within concurrent node " + this);
 		}
 		
+		if (_concurrent && _recycleActors && ! _actor.isRecyclable()) {
+			throw new IllegalWorkflowSpecException("Actor " + _actor + " cannot be recycled by node " + this);
+		}
+		
 		// TODO move this statement to configure()
 //		_stepsOnce = _stepsOnce || ( ! _actor.isStateful()  && _inflows.size() == 0 && _parameterSequence.maxSequenceLength() <= 1);
 		
 		_configureActorCompletionService();
+		
+		_configureStepVariables();
 	}
 
 	public synchronized void initialize() throws Exception {
 		
 		super.initialize();
 
-		_parameterSequence.initialize();
-		
-		_applyBootParameters();
-		_applyConstantParameters();
-		
-		_actorCompletionService.start();
-
-		_stepCount = 0;
-		_actor.setStepCount(_stepCount);
+		synchronized(_inputLock) {
+			_parameterSequence.initialize();
+			
+			_applyBootParameters();
+			_applyConstantParameters();
+			
+			_actorCompletionService.start();
+	
+			_stepCount = 0;
+			_actor.setStepCount(_stepCount);
+		}
 		
 		_actor.initialize();
 	}
@@ -347,7 +388,7 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	}
 
 
-	public synchronized boolean readyForInputPacket(String label) throws Exception {
+	public boolean readyForInputPacket(String label) throws Exception {
 		return _actor.readyForInput(label);
 	}	
 
@@ -362,72 +403,78 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		return triggered;
 	}
 
-	public synchronized ChangedState startTrigger() throws Exception {
+	public ChangedState startTrigger() throws Exception {
 		
 		// do nothing if the node has finished
 		if ( isNodeFinished() ) return ChangedState.FALSE;
 		
-		// output end-of-streams if node is done stepping
-		if ( _checkDoneStepping() == DoneStepping.TRUE) {
-			_actorCompletionService.shutdown();
-			return ChangedState.TRUE;
-		}
-		
-		// do nothing if not all required inputs have arrived
-		if (!_allInputsStaged()) return ChangedState.FALSE;
-		
-		if (! _applySequenceValuesToInflows()) {
-			_actorCompletionService.shutdown();
-			return ChangedState.TRUE;
+		synchronized(_inputLock) {
+			
+			// output end-of-streams if node is done stepping
+			if ( _checkDoneStepping() == DoneStepping.TRUE) {
+				_actorCompletionService.shutdown();
+				return ChangedState.TRUE;
+			}
+			
+			// do nothing if not all required inputs have arrived
+			if (!_allInputsStaged()) return ChangedState.FALSE;
+			
+			if (! _applySequenceValuesToInflows()) {
+				_stopStepping();
+				return ChangedState.TRUE;
+			}
+	
+			_clearInflows(false);
+			_stepCount++;
+			_actor.setStepCount(_stepCount);
+			_variables.put("STEP",_stepCount);
+			_variables.put("RUN",_actor.getRunCount());
+	
+			_actor.resetInputEnables();
+			
+			TraceRecorder recorder = _workflowContext.getTraceRecorder();
+			Long stepID = recorder.recordStepStarted(this);
+			_variables.put("STEP_ID", stepID);
+			
+			_actorCompletionService.submit(_actor, _copyVariablesForStep());
 		}
-
-		_clearInflows(false);
-		_stepCount++;
-		_actor.setStepCount(_stepCount);
-		_variables.put("STEP",_stepCount);
-		_variables.put("RUN",_actor.getRunCount());
-
-		_actor.resetInputEnables();
-		
-		TraceRecorder recorder = _workflowContext.getTraceRecorder();
-		Long stepID = recorder.recordStepStarted(this);
-		_variables.put("STEP_ID", stepID);
-		
-		_actorCompletionService.submit(_actor, new HashMap<String,Object>(_variables));
 		
 		return ChangedState.TRUE;
 	}
 	
 	@Override
-	public synchronized ChangedState manualStart() throws Exception {
-		
-		// output end-of-streams if node is done stepping
-		if ( _checkDoneStepping() == DoneStepping.TRUE) {
-			_actorCompletionService.shutdown();
-			return ChangedState.TRUE;
-		}
-		
-		// do nothing if not all required inputs have arrived
-		if (!_allInputsStaged()) throw new Exception( "Node " + getName() + " does not have all necessary inputs");
+	public ChangedState manualStart() throws Exception {
 		
-		if (! _applySequenceValuesToInflows()) {
-			_actorCompletionService.shutdown();
-			return ChangedState.TRUE;
+		synchronized(_inputLock) {
+			
+			// output end-of-streams if node is done stepping
+			if ( _checkDoneStepping() == DoneStepping.TRUE) {
+				_actorCompletionService.shutdown();
+				return ChangedState.TRUE;
+			}
+			
+			// do nothing if not all required inputs have arrived
+			if (!_allInputsStaged()) throw new Exception( "Node " + getName() + " does not have all necessary inputs");
+			
+			if (! _applySequenceValuesToInflows()) {
+				_stopStepping();
+				return ChangedState.TRUE;
+			}
+	
+//			_clearInflows(false);
+			_stepCount++;
+			_actor.setStepCount(_stepCount);
+			_variables.put("STEP",_stepCount);
+			_variables.put("RUN",_actor.getRunCount());
+	
+			_actor.resetInputEnables();
+			_clearInflows(false);
+	
+			TraceRecorder recorder = _workflowContext.getTraceRecorder();
+			recorder.recordStepStarted(this);
+			
+			_actorCompletionService.submit(_actor, _copyVariablesForStep());
 		}
-
-//		_clearInflows(false);
-		_stepCount++;
-		_actor.setStepCount(_stepCount);
-		_variables.put("STEP",_stepCount);
-		_variables.put("RUN",_actor.getRunCount());
-
-		_actor.resetInputEnables();
-		_clearInflows(false);
-
-		TraceRecorder recorder = _workflowContext.getTraceRecorder();
-		recorder.recordStepStarted(this);
-		
-		_actorCompletionService.submit(_actor, new HashMap<String,Object>(_variables));
 		
 		return ChangedState.TRUE;
 	}	
@@ -439,7 +486,7 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		
 		ActorRunner actorRunner = _actorCompletionService.take();
 
-		synchronized(this) {
+		synchronized(_outputLock) {
 			
 			if (actorRunner == AbstractActorRunner.EndOfActorRunners) {
 				_sendEndOfStreamPackets();
@@ -465,7 +512,9 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 						caughtException.printStackTrace(System.err);
 						System.exit(1);
 					} else if (_endFlowOnActorException) {
-						_actorCompletionService.shutdown();
+						synchronized(_inputLock) {
+							_stopStepping();
+						}
 						_sendEndOfStreamPackets();
 						_flagNodeFinished();
 						return;
@@ -478,7 +527,11 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 //			TraceRecorder recorder = _workflowContext.getTraceRecorder();
 //			recorder.recordStepCompleted(this);
 //	
-			if (_stepsOnce) _flagDoneStepping();
+			if (_stepsOnce) {
+				synchronized(_inputLock) {
+					_flagDoneStepping();
+				}
+			}
 			
 			// store all actor outputs in variables table
 			for (String label : _actor.getOutputNames()) {
@@ -499,6 +552,14 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 			
 			TraceRecorder recorder = _workflowContext.getTraceRecorder();
 			recorder.recordStepCompleted(this);	
+			
+			// the outputs of the actor have been sent so it may be reset for another step
+			_actorCompletionService.recycle(actor);
+			
+			// nothing refers to the variables for the step once its outputs have been sent
+			if (variables instanceof StepVariables) {
+				_freeStepVariables.add((StepVariables)variables);
+			}
 		}
 	}
 	
@@ -538,7 +599,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	 ***********************/
 
 	// TODO: Move to AbstractWorkflowNode?
-	protected synchronized boolean _applySequenceValuesToInflows() throws Exception {
+	@GuardedBy("_inputLock")
+	protected boolean _applySequenceValuesToInflows() throws Exception {
 		Map<String,Object > sequenceBundle = _parameterSequence.assembleNextSequenceBundle();
 		
 		for (Map.Entry<String, Object> entry : sequenceBundle.entrySet() ) {
@@ -560,7 +622,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	}
 
 	
-	protected synchronized void _handleEndOfStream(String label, Packet token) throws Exception {
+	@GuardedBy("_inputLock")
+	protected void _handleEndOfStream(String label, Packet token) throws Exception {
 				
 		if (_actor.hasOptionalInput(label)) {
 			
@@ -571,7 +634,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		}
 	}	
 
-	protected synchronized void _loadInputPacket(String label, Packet inputPacket)
+	@GuardedBy("_inputLock")
+	protected void _loadInputPacket(String label, Packet inputPacket)
 			throws Exception {
 
 		super._loadInputPacket(label, inputPacket);
@@ -589,7 +653,7 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	}
 
 
-	protected synchronized void _loadInputValue(String label, Object value) throws Exception {
+	protected void _loadInputValue(String label, Object value) throws Exception {
 		_actor.setInputValue(label, value);
 	}
 	
@@ -608,7 +672,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	 * @param stepID 
 	 * @throws Exception
 	 */
-	protected synchronized void _sendOutputPackets(Actor actor, Map<String, Object> variables, Long stepID) throws Exception {
+	@GuardedBy("_outputLock")
+	protected void _sendOutputPackets(Actor actor, Map<String, Object> variables, Long stepID) throws Exception {
 		
 		for (String outflowLabel : _dataOutflowNames) {
 			
@@ -621,7 +686,9 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 				if (value == null) {
 					
 					if (_endFlowOnNull) {
-						_flagDoneStepping();
+						synchronized(_inputLock) {
+							_flagDoneStepping();
+						}
 						outflow.sendPacket(EndOfStreamPacket, stepID);
 						return;
 					}
@@ -632,7 +699,9 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 			} else {
 				
 				if (_endFlowOnNoOutput) {
-					_flagDoneStepping();
+					synchronized(_inputLock) {
+						_flagDoneStepping();
+					}
 					outflow.sendPacket(EndOfStreamPacket, null);
 					return;
 				}
@@ -647,7 +716,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 	 *********************/
 	
 	// TODO: Move to AbstractWorkflowNode?
-	private synchronized void _applyBootParameters() throws Exception {
+	@GuardedBy("_inputLock")
+	private void _applyBootParameters() throws Exception {
 		
 		for (String label : _initialValues.keySet() ) {
 			Object value = _initialValues.get(label);
@@ -661,7 +731,8 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		
 	}
 
-	private synchronized void _applyConstantParameters() throws Exception {
+	@GuardedBy("_inputLock")
+	private void _applyConstantParameters() throws Exception {
 		
 		for (String label : _constants.keySet() ) {
 			Object value = _constants.get(label);
@@ -675,6 +746,14 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		
 	}	
 	
+	// flags the node done stepping and shuts down the actor completion service together,
+	// so that startTrigger() either submits its step first or finds the node done
+	@GuardedBy("_inputLock")
+	private void _stopStepping() {
+		_flagDoneStepping();
+		_actorCompletionService.shutdown();
+	}
+	
 	private synchronized void _assertActorControlInputs(Collection<String> nodeControlInputs) throws NodeDeclarationException {
 		
 		Collection<String> actorInputLabels = _actor.getInputNames();
@@ -690,16 +769,69 @@ public class ActorWorkflowNode extends AbstractWorkflowNode {
 		
 		// TODO move starting of actor completion service to configure?
 		if (getMaxConcurrentSteps() > 1) {
+			
+			// run steps on the workflow's pooled threads unless told to start a thread per step
+			Executor stepExecutor = null;
+			if (_pooledSteps && _workflow != null) {
+				stepExecutor = _workflow.getStepRunnerPool();
+			}
+			
+			AsynchronousActorCompletionService service;
 			if (_ordered) {
-				_actorCompletionService = new OrderedActorCompletionService(getMaxConcurrentSteps()+1);
+				service = new OrderedActorCompletionService(getMaxConcurrentSteps()+1, stepExecutor);
 			} else {
-				_actorCompletionService = new UnorderedActorCompletionService(getMaxConcurrentSteps()+1);				
+				service = new UnorderedActorCompletionService(getMaxConcurrentSteps()+1, stepExecutor);				
 			}
+			
+			service.setRecycleActors(_recycleActors);
+			_actorCompletionService = service;
 		} else {
 			_actorCompletionService = new SynchronousActorCompletionService();
 		}	
 	}
 	
+	// assigns slots to the variables set on each step: the step counters, the values and
+	// uri variables received on each inflow, and the actor outputs
+	private void _configureStepVariables() {
+		
+		List<String> names = new ArrayList<String>();
+		names.add("STEP");
+		names.add("RUN");
+		names.add("STEP_ID");
+		
+		for (Inflow inflow : _inflows.values()) {
+			names.add(inflow.getLabel());
+			for (String variableName : inflow.getVariableNames()) {
+				names.add(variableName);
+			}
+		}
+		
+		names.addAll(_actor.getOutputNames());
+		
+		synchronized(_inputLock) {
+			StepVariables variables = new StepVariables(new StepVariables.Slots(names));
+			variables.putAll(_variables);
+			_variables = variables;
+			_freeStepVariables.clear();
+		}
+	}
+	
+	// copies the variables for a step into variables freed by an earlier step if any
+	@GuardedBy("_inputLock")
+	private Map<String,Object> _copyVariablesForStep() {
+		
+		if (_variables instanceof StepVariables) {
+			StepVariables copy = _freeStepVariables.poll();
+			if (copy == null) {
+				copy = new StepVariables(((StepVariables)_variables).getSlots());
+			}
+			copy.copyFrom((StepVariables)_variables);
+			return copy;
+		}
+		
+		return new HashMap<String,Object>(_variables);
+	}
+	
 	@Override
 	protected WrapupResult _checkInflowsForUnconsumedData() {
 
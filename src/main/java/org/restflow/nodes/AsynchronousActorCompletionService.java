@@ -1,12 +1,16 @@
 package org.restflow.nodes;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.restflow.actors.AbstractActorRunner;
 import org.restflow.actors.Actor;
 import org.restflow.actors.ActorRunner;
+import org.restflow.actors.AsynchronousActorRunner;
 import org.restflow.util.Contract;
 
 import net.jcip.annotations.GuardedBy;
@@ -22,14 +26,27 @@ public abstract class AsynchronousActorCompletionService implements ActorComplet
 	@GuardedBy("this") protected Thread _completionManagementThread;
 	@GuardedBy("this") private int _activeActorCount;
 	@GuardedBy("this") private Service _state;
+	@GuardedBy("this") private Deque<Actor> _idleActors;
 	
 	protected final BlockingQueue<ActorRunner> _runningActorQueue;
 	protected final BlockingQueue<ActorRunner> _completedActorQueue;
+	private final Executor _stepExecutor;
+	private final int _maxIdleActors;
 	
 	public AsynchronousActorCompletionService(int maxConcurrency) {
+		this(maxConcurrency, null);
+	}
+
+	/**
+	 * Creates a service that runs actor steps on the threads of the given executor,
+	 * or on a new thread per step if the executor is null.
+	 */
+	public AsynchronousActorCompletionService(int maxConcurrency, Executor stepExecutor) {
 		
 		super();
 		
+		_stepExecutor = stepExecutor;
+		_maxIdleActors = maxConcurrency;
 		_runningActorQueue = new LinkedBlockingQueue<ActorRunner>(maxConcurrency);
 		_completedActorQueue = new LinkedBlockingQueue<ActorRunner>(maxConcurrency);
 
@@ -39,6 +56,16 @@ public abstract class AsynchronousActorCompletionService implements ActorComplet
 		}
 	}
 	
+	/**
+	 * Enables reuse of the actor clones returned to the service by recycle(), so that 
+	 * submit() resets an idle clone instead of cloning the master when one is available.
+	 * At most maxConcurrency idle clones are retained.
+	 */
+	public synchronized void setRecycleActors(boolean recycle) {
+		Contract.requires(_state == Service.STOPPED);
+		_idleActors = recycle ? new ArrayDeque<Actor>(_maxIdleActors) : null;
+	}
+	
 	public synchronized void start() {
 		
 		Contract.disallows(_state == Service.SHUTTING_DOWN, "Service cannot be started because it is shutting down");
@@ -58,12 +85,14 @@ public abstract class AsynchronousActorCompletionService implements ActorComplet
 		Contract.disallows(_state == Service.SHUTTING_DOWN, "Actor cannot be submitted because the service is being shut down");
 		Contract.disallows(_state == Service.SHUT_DOWN, "Actor cannot be submitted because the service is shut down");
 
-		Actor actor = null;
-		
-		try {
-			actor = (Actor) actorMaster.clone();
-		} catch (CloneNotSupportedException e) {
-			e.printStackTrace();
+		Actor actor = _resetIdleActor(actorMaster);
+
+		if (actor == null) {
+			try {
+				actor = (Actor) actorMaster.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("Error cloning actor " + actorMaster, e);
+			}
 		}
 
 		_state = Service.ACTIVE;
@@ -74,6 +103,29 @@ public abstract class AsynchronousActorCompletionService implements ActorComplet
 
 	
 	
+	// returns an idle clone reset from the master, or null if there is none; a clone
+	// that fails to reset is discarded, since it may be left partly reset
+	private synchronized Actor _resetIdleActor(Actor actorMaster) {
+
+		Actor actor = (_idleActors != null) ? _idleActors.poll() : null;
+
+		if (actor != null) {
+			try {
+				actor.resetClone(actorMaster);
+			} catch (Exception e) {
+				actor = null;
+			}
+		}
+
+		return actor;
+	}
+
+	public synchronized void recycle(Actor actor) {
+		if (_idleActors != null && _idleActors.size() < _maxIdleActors) {
+			_idleActors.push(actor);
+		}
+	}
+	
 	public ActorRunner take() throws InterruptedException {
 		
 		_takeBegin();
@@ -126,6 +178,10 @@ public abstract class AsynchronousActorCompletionService implements ActorComplet
 
 	public abstract void signalEndOfRunners();
 	
+	protected void startRunner(AsynchronousActorRunner runner) {
+		runner.start(_stepExecutor);
+	}
+	
 	protected Service getState() {
 		return _state;
 	}
@@ -1,6 +1,5 @@
 package org.restflow.nodes;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -179,10 +178,10 @@ public class BufferNode extends AbstractWorkflowNode {
 		recorder.recordStepStarted(this);
 	
 		// send the packet at the head of the queue to the outflow
-		_outflow.sendPacket(_packetQueue.get(0), null);
+		_outflow.sendPacket(_packetQueue.peek(), null);
 		
 		// remove the packet from the queue
-		_packetQueue.remove(0);
+		_packetQueue.poll();
 		
 		recorder.recordStepCompleted(this);
 	}
@@ -192,6 +191,6 @@ public class BufferNode extends AbstractWorkflowNode {
 	}
 	
 	public List<Packet> getQueueContents() {
-		return new ArrayList<Packet>(_packetQueue);
+		return _packetQueue.toList();
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.restflow.nodes;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.restflow.actors.AbstractActorRunner;
 import org.restflow.actors.Actor;
@@ -17,7 +18,11 @@ import net.jcip.annotations.ThreadSafe;
 public class OrderedActorCompletionService extends AsynchronousActorCompletionService {
 
 	public OrderedActorCompletionService(int maxConcurrency) {
-		super(maxConcurrency);
+		this(maxConcurrency, null);
+	}
+
+	public OrderedActorCompletionService(int maxConcurrency, Executor stepExecutor) {
+		super(maxConcurrency, stepExecutor);
 
 //		Runnable completionManager = new OrderedCompletionManager();
 
@@ -42,7 +47,7 @@ public class OrderedActorCompletionService extends AsynchronousActorCompletionSe
 
 		OrderedActorRunner actorRunner =  new OrderedActorRunner(actor, variables);
 		
-		actorRunner.start();
+		startRunner(actorRunner);
 
 		try {
 			_runningActorQueue.put(actorRunner);
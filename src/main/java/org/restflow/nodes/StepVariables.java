@@ -0,0 +1,290 @@
+package org.restflow.nodes;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * The variables of a node for one step, held in an array indexed by slots assigned to
+ * the variable names the node is known to use when it is configured.  Copying the
+ * variables for a step copies only the array, and the copies for finished steps can
+ * be reused for later steps, so that stepping a node need not allocate a new map and
+ * entries for every step.  Variables with names that have no slot are kept in a map
+ * created when the first such variable is assigned.  Null values are allowed, as in
+ * a HashMap.
+ *
+ * This class is not thread safe.  Each instance must be used by one thread at a time,
+ * or under a lock held by its owner.
+ */
+@NotThreadSafe()
+class StepVariables extends AbstractMap<String,Object> {
+
+	private static final Object ABSENT = new Object();
+
+	private final Slots _slots;
+	private final Object[] _values;
+	private int _slotCount;
+	private Map<String,Object> _unslotted;
+	private Set<Map.Entry<String,Object>> _entrySet;
+
+	StepVariables(Slots slots) {
+		_slots = slots;
+		_values = new Object[slots.size()];
+		for (int i = 0; i < _values.length; i++) {
+			_values[i] = ABSENT;
+		}
+	}
+
+	/**
+	 * Replaces the variables with those of another instance using the same slots.
+	 */
+	void copyFrom(StepVariables other) {
+
+		System.arraycopy(other._values, 0, _values, 0, _values.length);
+		_slotCount = other._slotCount;
+
+		if (other._unslotted != null && !other._unslotted.isEmpty()) {
+			if (_unslotted == null) {
+				_unslotted = new HashMap<String,Object>(other._unslotted);
+			} else {
+				_unslotted.clear();
+				_unslotted.putAll(other._unslotted);
+			}
+		} else if (_unslotted != null) {
+			_unslotted.clear();
+		}
+	}
+
+	Slots getSlots() {
+		return _slots;
+	}
+
+	@Override
+	public Object get(Object name) {
+		int slot = _slots.slotOf(name);
+		if (slot >= 0) {
+			Object value = _values[slot];
+			return (value == ABSENT) ? null : value;
+		}
+		return (_unslotted == null) ? null : _unslotted.get(name);
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		int slot = _slots.slotOf(name);
+		if (slot >= 0) {
+			return _values[slot] != ABSENT;
+		}
+		return _unslotted != null && _unslotted.containsKey(name);
+	}
+
+	@Override
+	public Object put(String name, Object value) {
+		int slot = _slots.slotOf(name);
+		if (slot >= 0) {
+			Object previous = _values[slot];
+			_values[slot] = value;
+			if (previous == ABSENT) {
+				_slotCount++;
+				return null;
+			}
+			return previous;
+		}
+		if (_unslotted == null) {
+			_unslotted = new HashMap<String,Object>();
+		}
+		return _unslotted.put(name, value);
+	}
+
+	@Override
+	public Object remove(Object name) {
+		int slot = _slots.slotOf(name);
+		if (slot >= 0) {
+			Object previous = _values[slot];
+			if (previous == ABSENT) {
+				return null;
+			}
+			_values[slot] = ABSENT;
+			_slotCount--;
+			return previous;
+		}
+		return (_unslotted == null) ? null : _unslotted.remove(name);
+	}
+
+	@Override
+	public int size() {
+		return _slotCount + ((_unslotted == null) ? 0 : _unslotted.size());
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < _values.length; i++) {
+			_values[i] = ABSENT;
+		}
+		_slotCount = 0;
+		if (_unslotted != null) {
+			_unslotted.clear();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String,Object>> entrySet() {
+		if (_entrySet == null) {
+			_entrySet = new EntrySet();
+		}
+		return _entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String,Object>> {
+
+		@Override
+		public int size() {
+			return StepVariables.this.size();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String,Object>> iterator() {
+
+			return new Iterator<Map.Entry<String,Object>>() {
+
+				private int _nextSlot = _advance(0);
+				private int _lastSlot = -1;
+				private Iterator<Map.Entry<String,Object>> _unslottedIterator = null;
+
+				public boolean hasNext() {
+					return _nextSlot < _values.length || _unslotted().hasNext();
+				}
+
+				public Map.Entry<String,Object> next() {
+					if (_nextSlot < _values.length) {
+						_lastSlot = _nextSlot;
+						_nextSlot = _advance(_nextSlot + 1);
+						return new SlotEntry(_lastSlot);
+					}
+					_lastSlot = -1;
+					if (!_unslotted().hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return _unslottedIterator.next();
+				}
+
+				public void remove() {
+					if (_lastSlot >= 0) {
+						StepVariables.this.remove(_slots.nameOf(_lastSlot));
+						_lastSlot = -1;
+					} else if (_unslottedIterator != null) {
+						_unslottedIterator.remove();
+					} else {
+						throw new IllegalStateException();
+					}
+				}
+
+				private int _advance(int slot) {
+					while (slot < _values.length && _values[slot] == ABSENT) {
+						slot++;
+					}
+					return slot;
+				}
+
+				private Iterator<Map.Entry<String,Object>> _unslotted() {
+					if (_unslottedIterator == null) {
+						_unslottedIterator = (_unslotted == null) ?
+								new HashMap<String,Object>().entrySet().iterator() :
+								_unslotted.entrySet().iterator();
+					}
+					return _unslottedIterator;
+				}
+			};
+		}
+	}
+
+	private class SlotEntry implements Map.Entry<String,Object> {
+
+		private final int _slot;
+
+		SlotEntry(int slot) {
+			_slot = slot;
+		}
+
+		public String getKey() {
+			return _slots.nameOf(_slot);
+		}
+
+		public Object getValue() {
+			Object value = _values[_slot];
+			return (value == ABSENT) ? null : value;
+		}
+
+		public Object setValue(Object value) {
+			return put(getKey(), value);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?,?> entry = (Map.Entry<?,?>)other;
+			Object value = getValue();
+			return getKey().equals(entry.getKey()) &&
+				(value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * The assignment of slots to variable names shared by the step variables of a node.
+	 *
+	 * This class is thread safe because it is immutable after construction.
+	 */
+	@Immutable()
+	static class Slots {
+
+		private final Map<String,Integer> _slotsByName;
+		private final String[] _names;
+
+		Slots(Collection<String> names) {
+
+			_slotsByName = new LinkedHashMap<String,Integer>();
+			for (String name : names) {
+				if (name != null && !_slotsByName.containsKey(name)) {
+					_slotsByName.put(name, _slotsByName.size());
+				}
+			}
+
+			_names = _slotsByName.keySet().toArray(new String[_slotsByName.size()]);
+		}
+
+		int size() {
+			return _names.length;
+		}
+
+		int slotOf(Object name) {
+			Integer slot = _slotsByName.get(name);
+			return (slot == null) ? -1 : slot;
+		}
+
+		String nameOf(int slot) {
+			return _names[slot];
+		}
+	}
+}
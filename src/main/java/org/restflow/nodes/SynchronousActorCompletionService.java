@@ -65,6 +65,10 @@ public class SynchronousActorCompletionService implements ActorCompletionService
 		return lastRunner;
 	}
 
+	// the actor stepped is the master itself, so there is nothing to recycle
+	public void recycle(Actor actor) {
+	}
+
 	public synchronized void shutdown() {
 		
 		if (_state == Service.BLOCKED || _state == Service.IDLE) {
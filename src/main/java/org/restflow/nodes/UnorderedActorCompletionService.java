@@ -2,6 +2,7 @@ package org.restflow.nodes;
 
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.restflow.actors.AbstractActorRunner;
@@ -23,8 +24,12 @@ public class UnorderedActorCompletionService extends AsynchronousActorCompletion
 	private UnorderedCompletionManager _completionManager;
 	
 	public UnorderedActorCompletionService(int maxConcurrency) {
+		this(maxConcurrency, null);
+	}
+
+	public UnorderedActorCompletionService(int maxConcurrency, Executor stepExecutor) {
 		
-		super(maxConcurrency);
+		super(maxConcurrency, stepExecutor);
 		
 		_steppedActorQueue = new LinkedBlockingQueue<ActorRunner>(maxConcurrency);
 //		_completionManager = new UnorderedCompletionManager();
@@ -57,7 +62,7 @@ public class UnorderedActorCompletionService extends AsynchronousActorCompletion
 			e.printStackTrace();
 		}
 		
-		actorRunner.start();
+		startRunner(actorRunner);
 		
 		return actor;
 	}
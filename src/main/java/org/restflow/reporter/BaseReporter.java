@@ -103,11 +103,12 @@ abstract public class BaseReporter implements Reporter {
 		
 		_reportModel.put("outputs", metadata.getOutputValues());
 
+		_reportModel.put("trace", metadata.getTrace());
+
+		// restored metadata records errors as each part is read, so check for them last
 		if (metadata.getRestoreErrors().size() > 0) {
 			_reportModel.put("errors", metadata.getRestoreErrors());
 		}	
-
-		_reportModel.put("trace", metadata.getTrace());
 	}
 	
 
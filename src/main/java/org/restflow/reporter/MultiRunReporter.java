@@ -1,13 +1,20 @@
 package org.restflow.reporter;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.restflow.metadata.FileSystemMetadataManager;
-import org.restflow.metadata.RunMetadata;
 import org.yaml.snakeyaml.Yaml;
 
 
@@ -18,6 +25,12 @@ import org.yaml.snakeyaml.Yaml;
  * of the sub directories for a report definition and if available
  * run the report on the directory.
  * 
+ * Reports are rendered concurrently on a pool of worker threads and 
+ * written in the order the sub directories are listed.  Unless disabled,
+ * the rendered reports are kept in a ReportIndex in the base directory,
+ * and the metadata of a run directory is restored again only if the 
+ * directory has changed since its report was indexed.
+ * 
  * @author scottm
  *
  */
@@ -25,35 +38,109 @@ public class MultiRunReporter {
 
 	private File _baseDir;
 	private String _reportName;
+	private int _threads;
+	private boolean _useIndex;
 
 	public MultiRunReporter(String baseDirectory, String reportName) {
 		super();
 		_baseDir = new File(baseDirectory);
 		_reportName = reportName;
+		_threads = Runtime.getRuntime().availableProcessors();
+		_useIndex = true;
 	}
 
+	public void setThreads(int threads) {
+		_threads = threads;
+	}
+	
+	public void setUseIndex(boolean useIndex) {
+		_useIndex = useIndex;
+	}
+	
 	public void renderReport() throws Exception {
 
 		String[] dirs =_baseDir.list(DirectoryFileFilter.INSTANCE);
 		
-		 for ( int i = 0; i < dirs.length; i++ ) {
-			 String runDir = _baseDir+ "/"+ dirs[i];
-		     System.out.println("---");
-		     try {
-		    	 Reporter reporter = ReporterUtilities.loadReporterFromRunDirectory(runDir, _reportName);
-		    	 
-		    	 RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(runDir);
-		    	 reporter.decorateModel(metadata);
-		    	 reporter.renderReport();
-		     } catch (Exception e) {
-		    	 HashMap<String,Object> model = new HashMap<String,Object>();
-		    	 List<String> errors = new Vector<String>();
-		    	 errors.add(e.getMessage());
-		    	 model.put("errors",errors);
-		    	 Yaml yaml = new Yaml();
-		    	 System.out.print(yaml.dump(model));
-		     }
-		 }
+		final ReportIndex index = _useIndex ? new ReportIndex(_baseDir, _reportName) : null;
+		if (index != null) {
+			index.load();
+			index.retainRuns(new HashSet<String>(Arrays.asList(dirs)));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, _threads));
+		
+		try {
+			
+			// render a bounded number of reports ahead of the one being written
+			Queue<Future<String>> reports = new ArrayDeque<Future<String>>();
+			int window = Math.max(1, _threads) * 4;
+			
+			for ( int i = 0; i < dirs.length; i++ ) {
+				
+				final String runName = dirs[i];
+				reports.add(executor.submit(new Callable<String>() {
+					public String call() {
+						return _renderRunReport(runName, index);
+					}
+				}));
+				
+				if (reports.size() >= window) {
+					_writeReport(reports.remove().get());
+				}
+			}
+			
+			while (!reports.isEmpty()) {
+				_writeReport(reports.remove().get());
+			}
+			
+		} finally {
+			executor.shutdown();
+		}
+		
+		if (index != null) {
+			try {
+				index.save();
+			} catch (Exception e) {
+				System.err.println("Warning: could not save report index: " + e.getMessage());
+			}
+		}
+	}
+	
+	private void _writeReport(String report) {
+		System.out.println("---");
+		System.out.print(report);
+	}
+	
+	// returns the report for one run directory, taking it from the index if the directory
+	// has not changed since it was indexed
+	private String _renderRunReport(String runName, ReportIndex index) {
+
+		String runDir = _baseDir+ "/"+ runName;
+		
+		String signature = null;
+		if (index != null) {
+			signature = FileSystemMetadataManager.metadataSignature(runDir);
+			String report = index.getReport(runName, signature);
+			if (report != null) {
+				return report;
+			}
+		}
+		
+		try {
+			Reporter reporter = ReporterUtilities.loadReporterFromRunDirectory(runDir, _reportName);
+			String report = reporter.getReport();
+			if (index != null) {
+				index.putReport(runName, signature, report);
+			}
+			return report;
+		} catch (Exception e) {
+			HashMap<String,Object> model = new HashMap<String,Object>();
+			List<String> errors = new Vector<String>();
+			errors.add(e.getMessage());
+			model.put("errors",errors);
+			Yaml yaml = new Yaml();
+			return yaml.dump(model);
+		}
 	}
 
 }
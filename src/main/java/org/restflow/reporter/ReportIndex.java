@@ -0,0 +1,147 @@
+package org.restflow.reporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.yaml.snakeyaml.Yaml;
+
+
+/**
+ * An on-disk index of the reports rendered for the runs in a directory of run directories,
+ * used by MultiRunReporter to avoid restoring the metadata of runs that have not changed
+ * since their report was last rendered.  Each entry holds the report text rendered for one
+ * run directory together with the metadata signature of the directory at the time, and is
+ * used only while the signature is unchanged.  The index for each report is kept in a yaml
+ * file in the base directory.
+ *
+ * This class is thread safe.  Its entries are held in a concurrent map.
+ */
+@ThreadSafe()
+public class ReportIndex {
+
+	public static final String INDEX_FILE_PREFIX = ".report-index-";
+
+	private static final String SIGNATURE_KEY = "signature";
+	private static final String REPORT_KEY = "report";
+
+	private final File _indexFile;
+	private final ConcurrentMap<String,Entry> _entries = new ConcurrentHashMap<String,Entry>();
+	private volatile boolean _modified = false;
+
+	public ReportIndex(File baseDirectory, String reportName) {
+		_indexFile = new File(baseDirectory, INDEX_FILE_PREFIX + reportName + ".yaml");
+	}
+
+	public File getIndexFile() {
+		return _indexFile;
+	}
+
+	/**
+	 * Reads the entries saved in the index file, if it exists.  An index file that cannot
+	 * be read is treated as empty, so that every report is rendered again.
+	 */
+	@SuppressWarnings("unchecked")
+	public void load() {
+
+		_entries.clear();
+
+		if (!_indexFile.exists()) {
+			return;
+		}
+
+		try {
+			InputStream stream = new FileInputStream(_indexFile);
+			try {
+				Object index = new Yaml().load(stream);
+				if (index instanceof Map) {
+					for (Map.Entry<String,Map<String,String>> entry : ((Map<String,Map<String,String>>)index).entrySet()) {
+						Map<String,String> fields = entry.getValue();
+						_entries.put(entry.getKey(), new Entry(fields.get(SIGNATURE_KEY), fields.get(REPORT_KEY)));
+					}
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (Exception e) {
+			_entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the report indexed for the named run directory if the directory still has
+	 * the given signature, or null otherwise.
+	 */
+	public String getReport(String runName, String signature) {
+		Entry entry = _entries.get(runName);
+		return (entry != null && entry.signature.equals(signature)) ? entry.report : null;
+	}
+
+	public void putReport(String runName, String signature, String report) {
+		_entries.put(runName, new Entry(signature, report));
+		_modified = true;
+	}
+
+	/**
+	 * Drops the entries for run directories not in the given set of names.
+	 */
+	public void retainRuns(Set<String> runNames) {
+		if (_entries.keySet().retainAll(runNames)) {
+			_modified = true;
+		}
+	}
+
+	public int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Writes the index file if any entry has changed since it was loaded, replacing the
+	 * previous file only once the new one has been written completely.
+	 */
+	public void save() throws Exception {
+
+		if (!_modified) {
+			return;
+		}
+
+		Map<String,Map<String,String>> index = new HashMap<String,Map<String,String>>();
+		for (Map.Entry<String,Entry> entry : _entries.entrySet()) {
+			Map<String,String> fields = new HashMap<String,String>();
+			fields.put(SIGNATURE_KEY, entry.getValue().signature);
+			fields.put(REPORT_KEY, entry.getValue().report);
+			index.put(entry.getKey(), fields);
+		}
+
+		File temporaryFile = new File(_indexFile.getPath() + ".tmp");
+		FileUtils.writeStringToFile(temporaryFile, new Yaml().dump(index), "UTF-8");
+
+		if (!temporaryFile.renameTo(_indexFile)) {
+			_indexFile.delete();
+			if (!temporaryFile.renameTo(_indexFile)) {
+				throw new Exception("Error replacing report index " + _indexFile);
+			}
+		}
+
+		_modified = false;
+	}
+
+	private static class Entry {
+
+		final String signature;
+		final String report;
+
+		Entry(String signature, String report) {
+			this.signature = signature;
+			this.report = report;
+		}
+	}
+}
@@ -21,6 +21,7 @@ public class YamlErrorReporter extends BaseReporter {
 	public String getReport() throws Exception {
 		Yaml yaml = new Yaml();
 		try {
+			_metadata.restoreAll();
 			Map<String, Object> emptyModel = new HashMap<String,Object>();
 			emptyModel.put("errors", _metadata.getRestoreErrors() );
 			emptyModel.put("meta", _metadata.getMetadataStorageProperties());
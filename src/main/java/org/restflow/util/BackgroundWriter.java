@@ -0,0 +1,240 @@
+package org.restflow.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Writes items on a dedicated thread.  Callers hand items to the writer on a lock-free
+ * queue and return immediately, and the writer thread drains the queue in batches,
+ * passing each batch to writeBatch() with the items in the order they were queued.
+ *
+ * The writer thread is started when items are queued and exits after it has been idle
+ * for a while, calling idle() whenever it runs out of items.  awaitFlush() waits until
+ * every item queued before the call has been written and flushed() has been called.
+ *
+ * Exceptions thrown by writeBatch(), flushed(), and idle() do not stop the writer
+ * thread.  The first is held, with any later ones added to it as suppressed exceptions,
+ * until a subclass takes it with takeFailure() to throw from its next call.
+ *
+ * This class is thread safe.  The queue and the flags coordinating the writer thread
+ * are thread safe, the pending failure is guarded by the writer, and the abstract
+ * methods are called only on the writer thread.
+ */
+@ThreadSafe()
+public abstract class BackgroundWriter<T> {
+
+	///////////////////////////////////////////////////////////////////////////
+	////                    private class constants                        ////
+
+	private static final long 	IDLE_PARK_NANOS 	= TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long 	IDLE_EXIT_NANOS 	= TimeUnit.SECONDS.toNanos(1);
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   private instance fields                         ////
+
+	private final String 						_threadName;
+	private final int 							_maxBatchSize;
+	private final Queue<Object> 				_queue = new ConcurrentLinkedQueue<Object>();
+	private final AtomicBoolean					_writerRunning = new AtomicBoolean(false);
+	private volatile Thread 					_writerThread;
+	private volatile boolean 					_writerParked;
+
+	@GuardedBy("this") private volatile Exception _failure;
+
+	///////////////////////////////////////////////////////////////////////////
+	////                   protected constructors                          ////
+
+	protected BackgroundWriter(String threadName, int maxBatchSize) {
+		_threadName = threadName;
+		_maxBatchSize = maxBatchSize;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                      protected methods                            ////
+
+	/**
+	 * Queues an item to be written by the writer thread.
+	 */
+	protected final void enqueue(T item) {
+		_enqueue(item);
+	}
+
+	/**
+	 * Waits until every item queued before the call has been written and flushed() has
+	 * been called.
+	 */
+	protected final void awaitFlush() {
+
+		CountDownLatch flushed = new CountDownLatch(1);
+		_enqueue(new FlushRequest(flushed));
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				flushed.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns true if an exception is waiting to be taken.
+	 */
+	protected final boolean hasFailure() {
+		return _failure != null;
+	}
+
+	/**
+	 * Holds an exception until it is taken, adding it to the exception already held
+	 * as a suppressed exception if there is one.
+	 */
+	protected final synchronized void addFailure(Exception e) {
+		if (_failure == null) {
+			_failure = e;
+		} else {
+			_failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Returns the exception held and stops holding it, or returns null if there is none.
+	 */
+	protected final synchronized Exception takeFailure() {
+		Exception failure = _failure;
+		_failure = null;
+		return failure;
+	}
+
+	/**
+	 * Writes a batch of items, in the order they were queued, on the writer thread.
+	 */
+	protected abstract void writeBatch(List<T> batch) throws Exception;
+
+	/**
+	 * Called on the writer thread once the items queued before a flush have been written.
+	 */
+	protected void flushed() throws Exception {
+	}
+
+	/**
+	 * Called on the writer thread each time it finds the queue empty, before it waits
+	 * for more items.
+	 */
+	protected void idle() throws Exception {
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	////                     private helper methods                        ////
+
+	private void _enqueue(Object item) {
+
+		_queue.offer(item);
+
+		if (!_writerRunning.get() && _writerRunning.compareAndSet(false, true)) {
+			_startWriterThread();
+		} else if (_writerParked) {
+			LockSupport.unpark(_writerThread);
+		}
+	}
+
+	private void _startWriterThread() {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				_writeQueuedItems();
+			}
+		}, _threadName);
+		thread.setDaemon(true);
+		_writerThread = thread;
+		thread.start();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void _writeQueuedItems() {
+
+		List<T> batch = new ArrayList<T>();
+		long idleSince = System.nanoTime();
+
+		while (true) {
+
+			// take items until the queue is empty, the batch is full, or a flush is requested
+			FlushRequest flush = null;
+			Object item;
+			while (batch.size() < _maxBatchSize && (item = _queue.poll()) != null) {
+				if (item instanceof FlushRequest) {
+					flush = (FlushRequest)item;
+					break;
+				}
+				batch.add((T)item);
+			}
+
+			if (!batch.isEmpty() || flush != null) {
+
+				if (!batch.isEmpty()) {
+					try {
+						writeBatch(batch);
+					} catch (Exception e) {
+						addFailure(e);
+					}
+					batch.clear();
+				}
+
+				if (flush != null) {
+					try {
+						flushed();
+					} catch (Exception e) {
+						addFailure(e);
+					}
+					flush.latch.countDown();
+				}
+
+				idleSince = System.nanoTime();
+				continue;
+			}
+
+			try {
+				idle();
+			} catch (Exception e) {
+				addFailure(e);
+			}
+
+			// park until more items are queued, exiting if none arrive for a while
+			_writerParked = true;
+			if (_queue.isEmpty()) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+			_writerParked = false;
+
+			if (_queue.isEmpty() && System.nanoTime() - idleSince > IDLE_EXIT_NANOS) {
+				_writerRunning.set(false);
+
+				// keep running if items were queued after the check but before the flag was cleared
+				if (_queue.isEmpty() || !_writerRunning.compareAndSet(false, true)) {
+					return;
+				}
+			}
+		}
+	}
+
+	private static final class FlushRequest {
+
+		final CountDownLatch latch;
+
+		FlushRequest(CountDownLatch latch) {
+			this.latch = latch;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.restflow.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Holds text written to it until it is replayed by writeTo().  Up to a fixed number of
+ * characters are held in memory, and the text beyond that is spilled to a temporary
+ * file, so the memory used does not depend on how much text is written.  Call dispose()
+ * to delete the temporary file once the text has been replayed.
+ *
+ * This class is not thread safe.  Each instance must be used by one thread at a time.
+ */
+@NotThreadSafe()
+public class DeferredOutputWriter extends Writer {
+
+	public static final int DEFAULT_MEMORY_LIMIT = 64 * 1024;
+
+	private static final String SPILL_FILE_ENCODING = "UTF-8";
+
+	private final int _memoryLimit;
+	private final StringBuilder _buffer = new StringBuilder();
+	private File _spillFile;
+	private Writer _spillWriter;
+
+	public DeferredOutputWriter() {
+		this(DEFAULT_MEMORY_LIMIT);
+	}
+
+	public DeferredOutputWriter(int memoryLimit) {
+		_memoryLimit = memoryLimit;
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+
+		if (_spillWriter == null && _buffer.length() + length > _memoryLimit) {
+			_spillFile = File.createTempFile("restflow-output-", ".txt");
+			_spillFile.deleteOnExit();
+			_spillWriter = new OutputStreamWriter(new FileOutputStream(_spillFile), SPILL_FILE_ENCODING);
+		}
+
+		if (_spillWriter == null) {
+			_buffer.append(chars, offset, length);
+		} else {
+			_spillWriter.write(chars, offset, length);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (_spillWriter != null) {
+			_spillWriter.close();
+		}
+	}
+
+	/**
+	 * Closes this writer and writes all of the text it holds to the given appendable.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+
+		close();
+		out.append(_buffer);
+
+		if (_spillWriter != null) {
+
+			Reader reader = new InputStreamReader(new FileInputStream(_spillFile), SPILL_FILE_ENCODING);
+			try {
+				char[] chars = new char[8192];
+				for (int count = reader.read(chars); count != -1; count = reader.read(chars)) {
+					out.append(new String(chars, 0, count));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Discards the text held by this writer.
+	 */
+	public void dispose() {
+
+		_buffer.setLength(0);
+
+		if (_spillWriter != null) {
+			try {
+				_spillWriter.close();
+			} catch (IOException e) {
+			}
+			_spillFile.delete();
+			_spillWriter = null;
+			_spillFile = null;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.restflow.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Splits a stream of text at the last occurrence of a delimiter as the text is written.
+ * Text preceding the last delimiter is passed on to a preamble writer as soon as it is
+ * known not to be part of a delimiter, and only the text following the most recent
+ * delimiter is kept, so the memory used does not depend on how much text precedes it.
+ * When another delimiter is written, the delimiter and text kept so far are passed on
+ * to the preamble writer, and the text following the new delimiter is kept instead.
+ *
+ * Closing the writer passes on any text held back as a possible partial delimiter and
+ * flushes the preamble writer, which is not closed.
+ *
+ * This class is not thread safe.  Each instance must be written by one thread at a time.
+ */
+@NotThreadSafe()
+public class DelimitedOutputWriter extends Writer {
+
+	private final char[] _delimiter;
+	private final int[] _fallback;
+	private final Writer _preamble;
+	private int _matched;
+	private StringBuilder _textAfterDelimiter;
+
+	/**
+	 * Creates a writer passing the text preceding the last delimiter to the preamble
+	 * writer, or discarding it if the preamble writer is null.
+	 */
+	public DelimitedOutputWriter(String delimiter, Writer preamble) {
+
+		Contract.requires(!delimiter.isEmpty());
+
+		_delimiter = delimiter.toCharArray();
+		_preamble = preamble;
+		_matched = 0;
+		_textAfterDelimiter = null;
+
+		// the length of the longest proper prefix of the delimiter that is also a suffix
+		// of the first i + 1 characters of the delimiter
+		_fallback = new int[_delimiter.length];
+		for (int i = 1, k = 0; i < _delimiter.length; i++) {
+			while (k > 0 && _delimiter[i] != _delimiter[k]) {
+				k = _fallback[k - 1];
+			}
+			if (_delimiter[i] == _delimiter[k]) {
+				k++;
+			}
+			_fallback[i] = k;
+		}
+	}
+
+	/**
+	 * Returns the text written after the last delimiter, or an empty string if no
+	 * delimiter was written.
+	 */
+	public String getTextAfterDelimiter() {
+		return (_textAfterDelimiter == null) ? "" : _textAfterDelimiter.toString();
+	}
+
+	public boolean foundDelimiter() {
+		return _textAfterDelimiter != null;
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+
+		int end = offset + length;
+		int i = offset;
+
+		while (i < end) {
+
+			// pass on runs of characters that cannot begin a delimiter all at once
+			if (_matched == 0) {
+				int runStart = i;
+				while (i < end && chars[i] != _delimiter[0]) {
+					i++;
+				}
+				if (i > runStart) {
+					_emit(chars, runStart, i - runStart);
+				}
+				if (i == end) {
+					break;
+				}
+			}
+
+			_write(chars[i++]);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (_preamble != null) {
+			_preamble.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		_emit(_delimiter, 0, _matched);
+		_matched = 0;
+		flush();
+	}
+
+	private void _write(char c) throws IOException {
+
+		// the characters held back are the first _matched characters of the delimiter
+		while (_matched > 0 && c != _delimiter[_matched]) {
+			int fallback = _fallback[_matched - 1];
+			_emit(_delimiter, 0, _matched - fallback);
+			_matched = fallback;
+		}
+
+		if (c == _delimiter[_matched]) {
+			_matched++;
+			if (_matched == _delimiter.length) {
+				_matched = 0;
+				_startTextAfterDelimiter();
+			}
+		} else {
+			_emit(new char[] {c}, 0, 1);
+		}
+	}
+
+	private void _startTextAfterDelimiter() throws IOException {
+
+		// the previous delimiter was not the last one
+		if (_textAfterDelimiter != null && _preamble != null) {
+			_preamble.write(_delimiter);
+			_preamble.append(_textAfterDelimiter);
+		}
+
+		_textAfterDelimiter = new StringBuilder();
+	}
+
+	private void _emit(char[] chars, int offset, int length) throws IOException {
+		if (length == 0) {
+			return;
+		} else if (_textAfterDelimiter != null) {
+			_textAfterDelimiter.append(chars, offset, length);
+		} else if (_preamble != null) {
+			_preamble.write(chars, offset, length);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.restflow.util;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Creates uniquely named directories in a parent directory without probing the
+ * names already taken one at a time.  A directory named name, name_1, name_2 and so
+ * on is allocated by first attempting to create name itself.  Only if that name is
+ * taken is the parent directory listed, once, to find the largest suffix in use, and
+ * the next suffix for the name is then kept in memory so that later allocations of
+ * the same name need a single mkdir.  Each directory is created with File.mkdir(),
+ * which fails atomically if the directory exists, so directories created by other
+ * processes since the parent was listed are skipped rather than shared.
+ *
+ * This class is thread safe.  Its cache of suffixes is synchronized on the instance,
+ * and holds the suffixes of at most MAX_CACHED_NAMES names.
+ */
+@ThreadSafe()
+public class DirectoryAllocator {
+
+	public static final int MAX_CACHED_NAMES = 1024;
+
+	private static final DirectoryAllocator _defaultAllocator = new DirectoryAllocator();
+
+	@GuardedBy("this") private final Map<String,Integer> _nextSuffixes;
+
+	public DirectoryAllocator() {
+		_nextSuffixes = new LinkedHashMap<String,Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String,Integer> eldest) {
+				return size() > MAX_CACHED_NAMES;
+			}
+		};
+	}
+
+	/** @return The allocator shared by the run and step directories of the process */
+	public static DirectoryAllocator getDefault() {
+		return _defaultAllocator;
+	}
+
+	/**
+	 * Creates a directory in the parent directory named after the base name, suffixed
+	 * with _1, _2 and so on if the base name is already taken.  The parent directory is
+	 * created if it does not exist.
+	 *
+	 * @return The directory created
+	 */
+	public File createUniqueDirectory(File parentDirectory, String baseDirectoryName) {
+
+		String key = new File(parentDirectory, baseDirectoryName).getAbsolutePath();
+
+		Integer cachedSuffix;
+		synchronized(this) {
+			cachedSuffix = _nextSuffixes.get(key);
+		}
+
+		// try the unsuffixed name first unless it is known to be taken
+		if (cachedSuffix == null) {
+			File directory = new File(parentDirectory, baseDirectoryName);
+			if (createDirectory(directory)) {
+				return directory;
+			}
+		}
+
+		while (true) {
+
+			int suffix = _reserveSuffix(key, parentDirectory, baseDirectoryName);
+			File directory = new File(parentDirectory, baseDirectoryName + "_" + suffix);
+			if (directory.mkdir()) {
+				return directory;
+			}
+
+			// the parent may have been deleted since the suffixes were counted
+			if (!parentDirectory.isDirectory()) {
+				synchronized(this) {
+					_nextSuffixes.remove(key);
+				}
+				if (!parentDirectory.mkdirs() && !parentDirectory.isDirectory()) {
+					throw new IllegalStateException("Cannot create directory " + parentDirectory);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the given directory, creating its missing ancestors only if the
+	 * directory cannot be created directly, so that a directory whose parent exists
+	 * costs a single mkdir.
+	 *
+	 * @return true if the directory was created, false if it already existed or could
+	 * 		   not be created
+	 */
+	public static boolean createDirectory(File directory) {
+
+		if (directory.mkdir()) {
+			return true;
+		}
+
+		File parent = directory.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			return directory.mkdirs();
+		}
+
+		return false;
+	}
+
+	// returns the next unused suffix for the name, counting the suffixes already present
+	// in the parent directory the first time the name is seen
+	private synchronized int _reserveSuffix(String key, File parentDirectory, String baseDirectoryName) {
+
+		Integer suffix = _nextSuffixes.get(key);
+
+		if (suffix == null) {
+			suffix = _largestSuffixInUse(parentDirectory, baseDirectoryName) + 1;
+		}
+
+		_nextSuffixes.put(key, suffix + 1);
+
+		return suffix;
+	}
+
+	private static int _largestSuffixInUse(File parentDirectory, String baseDirectoryName) {
+
+		int largestSuffix = 0;
+		String prefix = baseDirectoryName + "_";
+
+		String[] names = parentDirectory.list();
+		if (names == null) {
+			return largestSuffix;
+		}
+
+		for (String name : names) {
+			if (name.startsWith(prefix)) {
+				try {
+					int suffix = Integer.parseInt(name.substring(prefix.length()));
+					if (suffix > largestSuffix) {
+						largestSuffix = suffix;
+					}
+				} catch (NumberFormatException e) {
+					// the name only shares the prefix with those allocated here
+				}
+			}
+		}
+
+		return largestSuffix;
+	}
+}
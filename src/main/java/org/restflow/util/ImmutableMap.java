@@ -19,6 +19,9 @@ public class ImmutableMap<K,V> implements Map<K,V> {
 		_backing = new HashMap<K,V>();
 	}
 	
+	/* returns true if this map is a view of the given map */
+	public boolean isViewOf(Map<K,V> map) {return _backing == map;}
+	
 	// accessors (allowed)
 	public int size() {return _backing.size();}
 	public boolean isEmpty() {return _backing.isEmpty();}
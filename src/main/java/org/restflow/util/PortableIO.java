@@ -7,6 +7,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.text.NumberFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -99,20 +101,7 @@ public class PortableIO {
 	}
 
 	public static File createUniqueDirectory(File parentDirectory, String baseDirectoryName) {
-
-        String uniqueDirectoryName;
-        File uniqueDirectory;
-        int uniqueSuffix = 0;
-        
-        // create path to run directory
-        do {
-        	uniqueDirectoryName = baseDirectoryName;
-        	if (uniqueSuffix > 0) uniqueDirectoryName = uniqueDirectoryName + "_" + uniqueSuffix;
-        	uniqueDirectory = new File(parentDirectory, uniqueDirectoryName);
-        	uniqueSuffix++;
-        }   while (!uniqueDirectory.mkdirs());
-        
-        return uniqueDirectory;
+		return DirectoryAllocator.getDefault().createUniqueDirectory(parentDirectory, baseDirectoryName);
 	}
 	
 	private static final String[] month_abbreviation = { "Jan", "Feb", "Mar", "Apr", "May", "Jun",
@@ -223,6 +212,84 @@ public class PortableIO {
 		}
 	}
 	
+	/**
+	 * Copies the characters read from a stream to a writer as they arrive, flushing
+	 * the writer after each read so that the writer sees the data as soon as it does.
+	 */
+	public static class StreamPump implements Runnable {
+		
+		private final Reader _reader;
+		private final Writer _writer;
+		private volatile IOException _exception;
+		
+		public StreamPump(InputStream inputStream, Writer writer) {
+			_reader = new InputStreamReader(inputStream);
+			_writer = writer;
+		}
+
+		public void run() {
+			
+			char[] chars = new char[4096];
+			
+			try {
+				
+				try {
+					for (int count = _reader.read(chars); count != -1; count = _reader.read(chars)) {
+						_writer.write(chars, 0, count);
+						_writer.flush();
+					}
+				} finally {
+					_reader.close();
+				}
+				
+			} catch (IOException e) {
+				_exception = e;
+			}
+		}
+		
+		public IOException getException() {
+			return _exception;
+		}
+	}
+	
+	/**
+	 * Runs the command line, passing stdIn to the process and forwarding its standard 
+	 * output and error streams to the given writers as the process writes them.
+	 */
+	public static void runProcess(String cmdLine, String stdIn, String[] env, File workingDirectory,
+			Writer stdout, Writer stderr) throws IOException, InterruptedException {
+		
+		// start the external process using the provided command line string
+		Process process = Runtime.getRuntime().exec(cmdLine, env, workingDirectory);
+
+		// pump the stdout and stderr streams of the process to the writers
+		StreamPump stdoutPump = new StreamPump(process.getInputStream(), stdout);
+		StreamPump stderrPump = new StreamPump(process.getErrorStream(), stderr);
+		Thread p1 = new Thread(stdoutPump);
+		Thread p2 = new Thread(stderrPump);
+		p1.start();
+		p2.start();
+		
+		// send the provided standard input data to the stdin stream of the external process
+		PrintStream stdinStream = new PrintStream(process.getOutputStream(), true);
+		stdinStream.print(stdIn);
+		stdinStream.close();
+
+		// wait for the external process to complete
+		process.waitFor();
+		
+		// wait for the two output stream pumps to complete
+		p1.join();
+		p2.join();
+		
+		if (stdoutPump.getException() != null) {
+			throw stdoutPump.getException();
+		}
+		if (stderrPump.getException() != null) {
+			throw stderrPump.getException();
+		}
+	}
+	
 	public static StreamSink[] runProcess(String cmdLine, String stdIn, String[] env, File workingDirectory) throws IOException, InterruptedException {
 		
 		// start the external process using the provided command line string
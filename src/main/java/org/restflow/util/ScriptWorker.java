@@ -0,0 +1,233 @@
+package org.restflow.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A long-lived interpreter process that runs one script after another, so that
+ * scripts run many times do not pay for starting a new interpreter each time.
+ *
+ * The worker process runs a loop script supplied by the caller.  The loop script
+ * must repeatedly read a frame from its standard input, consisting of a line holding
+ * the length of a script in bytes followed by exactly that many bytes of script; run
+ * the script in a fresh scope starting in the worker's initial directory, with the
+ * script's output going to the worker's standard output and error streams; and then
+ * write a newline, the frame delimiter, and another newline first to its standard
+ * error and then to its standard output, flushing both.  The loop script must exit
+ * when its standard input is closed.
+ *
+ * The standard output of each script is forwarded to a writer as it arrives, holding
+ * back only the current line while it could still be the frame delimiter.
+ *
+ * If the worker process exits while running a script, run() returns once the output
+ * written so far has been forwarded and the worker is stopped.  Callers start a new worker for the
+ * next script.
+ *
+ * This class is not thread safe.  Each worker must be used by one thread at a time.
+ */
+@NotThreadSafe()
+public class ScriptWorker {
+
+	public static final String FRAME_DELIMITER = "__END_OF_WORKER_FRAME__";
+
+	private static final String END_OF_STREAM = new String("END_OF_STREAM");
+	private static final long STDERR_TIMEOUT_SECONDS = 10;
+
+	private final String _command;
+	private final File _workingDirectory;
+	private Process _process;
+	private OutputStream _stdin;
+	private Reader _stdout;
+	private BlockingQueue<String> _stderrFrames;
+	private boolean _alive;
+
+	/**
+	 * Creates a worker that will run the loop script with the given command line,
+	 * in the given working directory, or the current directory if it is null.
+	 */
+	public ScriptWorker(String command, File workingDirectory) {
+		_command = command;
+		_workingDirectory = workingDirectory;
+	}
+
+	public void start() throws IOException {
+
+		_process = Runtime.getRuntime().exec(_command, null, _workingDirectory);
+		_stdin = _process.getOutputStream();
+		_stdout = new BufferedReader(new InputStreamReader(_process.getInputStream()));
+		_stderrFrames = new LinkedBlockingQueue<String>();
+		_alive = true;
+
+		// drain stderr continuously so the worker never blocks writing to it
+		final Reader stderr = new BufferedReader(new InputStreamReader(_process.getErrorStream()));
+		final BlockingQueue<String> stderrFrames = _stderrFrames;
+		Thread stderrReader = new Thread(new Runnable() {
+			public void run() {
+				StringWriter frame = new StringWriter();
+				try {
+					while (_copyFrame(stderr, frame)) {
+						stderrFrames.add(frame.toString());
+						frame = new StringWriter();
+					}
+				} catch (IOException e) {
+				}
+				stderrFrames.add(frame.toString());
+				stderrFrames.add(END_OF_STREAM);
+			}
+		}, "ScriptWorker stderr");
+		stderrReader.setDaemon(true);
+		stderrReader.start();
+	}
+
+	public boolean isAlive() {
+		return _alive;
+	}
+
+	/**
+	 * Runs the script in the worker, forwarding what the script writes to standard
+	 * output to the given writer and returning what it wrote to standard error.
+	 * 
+	 * @throws IOException if the script could not be sent to the worker, in which
+	 * 		   case the script did not run and the worker is stopped.
+	 */
+	public String run(String script, Writer stdout) throws IOException, InterruptedException {
+
+		Contract.requires(_alive);
+
+		byte[] scriptBytes = script.getBytes();
+		try {
+			_stdin.write((scriptBytes.length + "\n").getBytes());
+			_stdin.write(scriptBytes);
+			_stdin.flush();
+		} catch (IOException e) {
+			stop();
+			throw e;
+		}
+
+		boolean completed;
+		try {
+			completed = _copyFrame(_stdout, stdout);
+		} catch (IOException e) {
+			completed = false;
+		}
+
+		String stderr = completed ? _stderrFrames.take() :
+			_stderrFrames.poll(STDERR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (stderr == null || stderr == END_OF_STREAM) {
+			stderr = "";
+		}
+
+		if (!completed) {
+			stop();
+		}
+
+		return stderr;
+	}
+
+	/**
+	 * Closes the standard input of the worker, which ends its loop, and makes sure
+	 * the process has exited.
+	 */
+	public void stop() {
+
+		if (_process == null) {
+			return;
+		}
+
+		_alive = false;
+
+		try {
+			_stdin.close();
+		} catch (IOException e) {
+		}
+
+		try {
+			_process.getInputStream().close();
+		} catch (IOException e) {
+		}
+
+		_process.destroy();
+		_process = null;
+	}
+
+	// copies characters to the writer until a line holding only the frame delimiter,
+	// returning false if the stream ends first; the newline the worker writes before
+	// the delimiter is not copied
+	private static boolean _copyFrame(Reader reader, Writer out) throws IOException {
+
+		char[] buffer = new char[4096];
+		StringBuilder line = new StringBuilder();
+		boolean lineMayBeDelimiter = true;
+		boolean newlinePending = false;
+
+		for (int count = reader.read(buffer); count != -1; count = reader.read(buffer)) {
+
+			for (int i = 0; i < count; i++) {
+
+				char c = buffer[i];
+
+				if (c == '\n') {
+
+					if (lineMayBeDelimiter && line.length() == FRAME_DELIMITER.length()) {
+						out.flush();
+						return true;
+					}
+
+					if (newlinePending) {
+						out.write('\n');
+					}
+					out.append(line);
+					line.setLength(0);
+					lineMayBeDelimiter = true;
+					newlinePending = true;
+
+				} else if (lineMayBeDelimiter) {
+
+					if (line.length() < FRAME_DELIMITER.length() && c == FRAME_DELIMITER.charAt(line.length())) {
+						line.append(c);
+					} else {
+						if (newlinePending) {
+							out.write('\n');
+							newlinePending = false;
+						}
+						out.append(line);
+						out.write(c);
+						line.setLength(0);
+						lineMayBeDelimiter = false;
+					}
+
+				} else {
+
+					// pass on the rest of the line at once
+					int end = i;
+					while (end < count && buffer[end] != '\n') {
+						end++;
+					}
+					out.write(buffer, i, end - i);
+					i = end - 1;
+				}
+			}
+
+			out.flush();
+		}
+
+		if (newlinePending) {
+			out.write('\n');
+		}
+		out.append(line);
+		out.flush();
+
+		return false;
+	}
+}
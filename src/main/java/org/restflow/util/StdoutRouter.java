@@ -0,0 +1,91 @@
+package org.restflow.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Discards what code running on a particular thread prints to System.out while output
+ * from other threads is still printed.  Unlike StdoutRecorder, which replaces System.out
+ * for the whole JVM while code runs, the router replaces System.out once with a stream
+ * that writes each thread's output to the stream routed for that thread, or to the
+ * original System.out if none is.  Threads started by the code inherit its route, but
+ * threads that already existed when the code started, such as pooled threads, do not.
+ *
+ * System.out is replaced again the next time code is run if it has since been set to
+ * another stream, for example by a StdoutRecorder.
+ *
+ * This class is thread safe.  Routes are held in an inheritable thread local, and
+ * System.out is replaced only while holding the class lock.
+ */
+@ThreadSafe()
+public class StdoutRouter {
+
+	private static final InheritableThreadLocal<OutputStream> _routes = new InheritableThreadLocal<OutputStream>();
+
+	private StdoutRouter() {}
+
+	/**
+	 * Executes the code, discarding what it and the threads it starts print to System.out.
+	 */
+	public static void discardStdout(StdoutRecorder.WrappedCode code) throws Exception {
+
+		_install();
+
+		OutputStream previousRoute = _routes.get();
+		_routes.set(new NullOutputStream());
+		try {
+			code.execute();
+		} finally {
+			if (previousRoute == null) {
+				_routes.remove();
+			} else {
+				_routes.set(previousRoute);
+			}
+		}
+	}
+
+	private static synchronized void _install() {
+		if (!(System.out instanceof RoutedPrintStream)) {
+			System.setOut(new RoutedPrintStream(System.out));
+		}
+	}
+
+	private static class RoutedPrintStream extends PrintStream {
+
+		RoutedPrintStream(PrintStream stdout) {
+			super(new RoutedOutputStream(stdout), true);
+		}
+	}
+
+	// writes to the route of the writing thread, or to the original stream if it has none
+	private static class RoutedOutputStream extends OutputStream {
+
+		private final PrintStream _stdout;
+
+		RoutedOutputStream(PrintStream stdout) {
+			_stdout = stdout;
+		}
+
+		public void write(int b) throws IOException {
+			_route().write(b);
+		}
+
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			_route().write(bytes, offset, length);
+		}
+
+		public void flush() throws IOException {
+			_route().flush();
+		}
+
+		private OutputStream _route() {
+			OutputStream route = _routes.get();
+			return (route == null) ? _stdout : route;
+		}
+	}
+}
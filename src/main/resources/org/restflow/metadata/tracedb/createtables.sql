@@ -110,7 +110,8 @@ CREATE TABLE PacketMetadata(
 CREATE TABLE Resource(
 	ResourceID		identity		NOT NULL		PRIMARY KEY,
 	Uri				varchar(10240)	NULL,
-	DataID			bigint			NULL			REFERENCES Data (DataID)
+	DataID			bigint			NULL			REFERENCES Data (DataID),
+	Digest			varchar(64)		NULL
 );
 
 CREATE TABLE PacketResource(
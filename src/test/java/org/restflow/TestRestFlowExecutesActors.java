@@ -63,6 +63,30 @@ public class TestRestFlowExecutesActors extends RestFlowTestCase {
 		assertEquals( 10, outputValues.get("sum") );
 	}
 
+	public void testRestFlowExecuteInProcessRestFlowActor() throws Exception {
+
+		String testRunsDir = TestUtilities.getTestRunsDirectoryPath();
+	    // Create temp file.
+	    final File temp = File.createTempFile("tmp", ".yaml");
+	    temp.deleteOnExit();
+	    
+	    //specify a run name so that we can get the metadata back out after the run.
+	    String runName = temp.getName().substring(0, temp.getName().indexOf("."));
+
+	    // Write to temp file
+	    FileUtils.writeStringToFile(temp, "{a: 5,b: 5}");
+
+				
+		RestFlow.main(new String[]{"-f","classpath:/org/restflow/test/TestRestFlowExecutesActors/actors.yaml",
+					"-w","InProcessAdder","-run", runName,
+					"-base", testRunsDir, "-infile",temp.getPath() } );		
+		
+		RunMetadata runMetadata = FileSystemMetadataManager.restoreMetadata(testRunsDir + "/" + runName );
+
+		Map<String,Object> outputValues = runMetadata.getOutputValues(); 
+		assertEquals( 10, outputValues.get("sum") );
+	}
+
 	public void testRestFlowExecuteStatefulRestFlowActor() throws Exception {
 
 		String testRunsDir = TestUtilities.getTestRunsDirectoryPath();
@@ -0,0 +1,142 @@
+package org.restflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.restflow.test.RestFlowTestCase;
+import org.restflow.util.TestUtilities;
+import org.yaml.snakeyaml.Yaml;
+
+
+@SuppressWarnings("unchecked")
+public class TestWorkflowDaemon extends RestFlowTestCase {
+
+	private WorkflowDaemon _daemon;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		_daemon = new WorkflowDaemon(TestUtilities.getTestRunsDirectoryPath(), 2);
+	}
+	
+	public void tearDown() throws Exception {
+		_daemon.shutdown();
+		super.tearDown();
+	}
+	
+	public void testHandle_MissingWorkflow() {
+		Map<String,Object> response = _daemon.handle("{id: 7, name: Adder}");
+		assertEquals(7, response.get("id"));
+		assertEquals("error", response.get("status"));
+		assertEquals("Request must give the workflow definition path.", response.get("message"));
+	}
+
+	public void testHandle_NotAMapping() {
+		Map<String,Object> response = _daemon.handle("[1, 2]");
+		assertEquals("error", response.get("status"));
+		assertEquals("Request must be a yaml mapping.", response.get("message"));
+	}
+
+	public void testServe_OneSingleLineResponsePerRequest() throws Exception {
+
+		String requests = "{id: 1}\n\n{id: \"two\\nlines\"}\n";
+		ByteArrayOutputStream responses = new ByteArrayOutputStream();
+		
+		_daemon.serve(new ByteArrayInputStream(requests.getBytes("UTF-8")), responses);
+		
+		String[] lines = responses.toString("UTF-8").split("\n");
+		assertEquals(2, lines.length);
+		
+		Set<Object> ids = new HashSet<Object>();
+		for (String line : lines) {
+			Map<String,Object> response = (Map<String,Object>) new Yaml().load(line);
+			assertEquals("error", response.get("status"));
+			ids.add(response.get("id"));
+		}
+		assertTrue(ids.contains(1));
+		assertTrue(ids.contains("two\nlines"));
+	}
+
+	public void testServe_ErrorResponseWhenRunOrResponseFails() throws Exception {
+
+		WorkflowDaemon daemon = new WorkflowDaemon(TestUtilities.getTestRunsDirectoryPath(), 2) {
+			public Map<String,Object> handle(String requestLine) {
+				if (requestLine.contains("error")) {
+					throw new AssertionError("run failed");
+				}
+				Map<String,Object> response = new HashMap<String,Object>();
+				response.put("id", 2);
+				response.put("status", "ok");
+				response.put("outputs", new UnreadableOutput());
+				return response;
+			}
+		};
+
+		ByteArrayOutputStream responses = new ByteArrayOutputStream();
+		try {
+			daemon.serve(new ByteArrayInputStream("{id: error}\n{id: 2}\n".getBytes("UTF-8")), responses);
+		} finally {
+			daemon.shutdown();
+		}
+
+		String[] lines = responses.toString("UTF-8").split("\n");
+		assertEquals(2, lines.length);
+
+		Map<Object,Map<String,Object>> responsesById = new HashMap<Object,Map<String,Object>>();
+		for (String line : lines) {
+			Map<String,Object> response = (Map<String,Object>) new Yaml().load(line);
+			assertEquals("error", response.get("status"));
+			responsesById.put(response.get("id"), response);
+		}
+		assertEquals("run failed", responsesById.get(null).get("message"));
+		assertTrue(responsesById.containsKey(2));
+	}
+
+	public void testServe_AnswersEveryRequest() throws Exception {
+
+		StringBuilder requests = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			requests.append("{id: " + i + "}\n");
+		}
+		ByteArrayOutputStream responses = new ByteArrayOutputStream();
+
+		_daemon.serve(new ByteArrayInputStream(requests.toString().getBytes("UTF-8")), responses);
+
+		assertEquals(200, responses.toString("UTF-8").split("\n").length);
+	}
+
+	public static class UnreadableOutput {
+		public int getValue() {
+			throw new IllegalStateException("output cannot be read");
+		}
+		public void setValue(int value) {
+		}
+	}
+
+	public void testHandle_RunsWorkflowWithCachedDefinition() throws Exception {
+
+		String request = "{workflow: 'classpath:/org/restflow/java/actors.yaml', name: Adder, inputs: {a: 2, b: 3}}";
+		
+		Map<String,Object> first = _daemon.handle(request);
+		assertEquals("ok", first.get("status"));
+		assertEquals(5, ((Map<String,Object>)first.get("outputs")).get("sum"));
+
+		Map<String,Object> second = _daemon.handle(request);
+		assertEquals("ok", second.get("status"));
+		assertFalse(first.get("runDirectory").equals(second.get("runDirectory")));
+		
+		Map<String,String> importMappings = new HashMap<String,String>();
+		importMappings.put("actors", "classpath:/org/restflow/java/");
+		assertSame(_daemon.getTemplate("classpath:/org/restflow/java/actors.yaml", importMappings),
+				   _daemon.getTemplate("classpath:/org/restflow/java/actors.yaml", importMappings));
+		
+		// the same definition is parsed again when run with different import mappings
+		Map<String,String> otherImportMappings = new HashMap<String,String>(importMappings);
+		otherImportMappings.put("workspace", "classpath:/org/restflow/java/");
+		assertNotSame(_daemon.getTemplate("classpath:/org/restflow/java/actors.yaml", importMappings),
+				      _daemon.getTemplate("classpath:/org/restflow/java/actors.yaml", otherImportMappings));
+	}
+}
@@ -0,0 +1,87 @@
+package org.restflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.test.RestFlowTestCase;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.context.support.GenericApplicationContext;
+
+
+public class TestWorkflowTemplate extends RestFlowTestCase {
+
+	private WorkflowTemplate _template;
+
+	public void setUp() throws Exception {
+
+		super.setUp();
+
+		GenericApplicationContext registry = new GenericApplicationContext();
+
+		GenericBeanDefinition child = new GenericBeanDefinition();
+		child.setBeanClass(Holder.class);
+		child.setScope(GenericBeanDefinition.SCOPE_PROTOTYPE);
+		child.getPropertyValues().add("values", new ArrayList<Object>());
+		registry.registerBeanDefinition("Child", child);
+
+		ManagedList<Object> children = new ManagedList<Object>();
+		children.add(new RuntimeBeanReference("Child"));
+		GenericBeanDefinition parent = new GenericBeanDefinition();
+		parent.setBeanClass(Holder.class);
+		parent.getPropertyValues().add("values", children);
+		registry.registerBeanDefinition("Parent", parent);
+		registry.registerAlias("Parent", "Top");
+
+		_template = new WorkflowTemplate(registry);
+	}
+
+	public void testRegisterBeanDefinitions_NewInstancesPerContext() throws Exception {
+
+		assertEquals(2, _template.getBeanDefinitionCount());
+
+		GenericApplicationContext first = _instantiate();
+		GenericApplicationContext second = _instantiate();
+
+		Holder firstParent = (Holder) first.getBean("Top");
+		Holder secondParent = (Holder) second.getBean("Parent");
+		assertNotSame(firstParent, secondParent);
+		assertEquals(1, firstParent.values.size());
+		assertTrue(firstParent.values.get(0) instanceof Holder);
+		assertNotSame(firstParent.values.get(0), secondParent.values.get(0));
+	}
+
+	public void testRegisterBeanDefinitions_CollectionsNotShared() throws Exception {
+
+		Holder first = (Holder) _instantiate().getBean("Child");
+		first.values.add("changed");
+
+		Holder second = (Holder) _instantiate().getBean("Child");
+		assertEquals(0, second.values.size());
+	}
+
+	public void testRegisterBeanDefinitions_DefinitionChangesNotShared() throws Exception {
+
+		GenericApplicationContext first = new GenericApplicationContext();
+		_template.registerBeanDefinitions(first);
+		first.getBeanDefinition("Child").setScope(GenericBeanDefinition.SCOPE_SINGLETON);
+
+		GenericApplicationContext second = _instantiate();
+		assertNotSame(second.getBean("Child"), second.getBean("Child"));
+	}
+
+	private GenericApplicationContext _instantiate() {
+		GenericApplicationContext context = new GenericApplicationContext();
+		_template.registerBeanDefinitions(context);
+		context.refresh();
+		return context;
+	}
+
+	public static class Holder {
+		public List<Object> values;
+		public void setValues(List<Object> values) {
+			this.values = values;
+		}
+	}
+}
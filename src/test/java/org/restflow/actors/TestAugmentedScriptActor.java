@@ -0,0 +1,340 @@
+package org.restflow.actors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.test.RestFlowTestCase;
+import org.restflow.util.ScriptWorker;
+import org.yaml.snakeyaml.Yaml;
+
+
+@SuppressWarnings("unchecked")
+public class TestAugmentedScriptActor extends RestFlowTestCase {
+
+	private WorkflowContext _context;
+	private static String EOL = System.getProperty("line.separator");
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_context = new WorkflowContextBuilder().build();
+	}
+
+	public void testStep_ForkMode() throws Exception {
+		BashActor actor = _createIncrementActor("fork");
+		_assertIncrements(actor);
+		assertFalse(_stepPid(actor).equals(_stepPid(actor)));
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testStep_WorkerMode() throws Exception {
+		BashActor actor = _createIncrementActor("worker");
+		_assertIncrements(actor);
+		assertEquals(_stepPid(actor), _stepPid(actor));
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testStep_WorkerMode_Clones() throws Exception {
+		BashActor actor = _createIncrementActor("worker");
+		BashActor clone = (BashActor) actor.clone();
+		clone.setInputValue("x", 41);
+		clone.step();
+		assertEquals(42, clone.getOutputValue("y"));
+		assertEquals(_stepPid(actor), _stepPid(clone));
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testStep_WorkerMode_RestartsWorkerThatExits() throws Exception {
+
+		BashActor actor = _createIncrementActor("worker");
+		String firstPid = _stepPid(actor);
+
+		// a step that kills its worker produces no outputs
+		actor.setStep("kill -9 $$");
+		actor.setInputValue("x", 1);
+		Exception exception = null;
+		try {
+			actor.step();
+		} catch (Exception e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+
+		// the next step runs in a new worker
+		String secondPid = _stepPid(actor);
+		assertFalse(firstPid.equals(secondPid));
+		assertEquals(secondPid, _stepPid(actor));
+
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testDispose_WorkerMode_StopsBusyWorkerWhenItsScriptCompletes() throws Exception {
+
+		BashActor actor = _createIncrementActor("worker");
+		File started = File.createTempFile("restflow-started-", ".txt");
+		started.delete();
+		final BashActor clone = (BashActor) actor.clone();
+		clone.setStep("touch '" + started.getAbsolutePath() + "'; sleep 1; y=$$");
+		clone.setInputValue("x", 0);
+
+		final Exception[] stepException = new Exception[1];
+		Thread stepThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					clone.step();
+				} catch (Exception e) {
+					stepException[0] = e;
+				}
+			}
+		});
+		stepThread.start();
+
+		// dispose of the actor while the clone's script is running in a worker
+		for (int i = 0; i < 250 && !started.exists(); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(started.delete());
+		actor.wrapup();
+		actor.dispose();
+
+		// the loop script is kept until the busy worker has completed its script
+		assertTrue(actor.loopScriptFile.exists());
+		stepThread.join();
+		assertNull(stepException[0]);
+		assertFalse(actor.loopScriptFile.exists());
+
+		// the worker returned after the pool was shut down is stopped
+		File workerProcess = new File("/proc/" + clone.getOutputValue("y"));
+		for (int i = 0; i < 100 && workerProcess.exists(); i++) {
+			Thread.sleep(20);
+		}
+		assertFalse(workerProcess.exists());
+	}
+
+	public void testStep_WorkerMode_LargeOutput() throws Exception {
+		BashActor actor = _createIncrementActor("worker");
+		actor.setStdoutMode("discard");
+		actor.setStep("for i in $(seq 1 20000); do echo line $i; done; y=$((x+1))");
+		actor.setInputValue("x", 1);
+		actor.step();
+		assertEquals(2, actor.getOutputValue("y"));
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testStep_ForkMode_DelayedStdout() throws Exception {
+		_assertDelayedStdout("fork");
+	}
+
+	public void testStep_WorkerMode_DelayedStdout() throws Exception {
+		_assertDelayedStdout("worker");
+	}
+
+	public void testStep_ForkMode_LargeOutput() throws Exception {
+		BashActor actor = _createIncrementActor("fork");
+		actor.setStep("for i in $(seq 1 20000); do echo line $i; done; y=$((x+1))");
+		actor.setInputValue("x", 1);
+		actor.step();
+		assertEquals(2, actor.getOutputValue("y"));
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	// the script's own output precedes the serialized outputs even if it prints the delimiter
+	private void _assertDelayedStdout(String processMode) throws Exception {
+
+		BashActor actor = _createIncrementActor(processMode);
+		actor.setStdoutMode("delayed");
+		actor.setStep("echo hello; echo " + AugmentedScriptActor._scriptOutputDelimiter + "; y=$((x+1))");
+		actor.setInputValue("x", 1);
+
+		PrintStream originalOut = System.out;
+		ByteArrayOutputStream capturedOut = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(capturedOut, true));
+		try {
+			actor.step();
+		} finally {
+			System.setOut(originalOut);
+		}
+
+		assertEquals(2, actor.getOutputValue("y"));
+		assertEquals("hello\n" + AugmentedScriptActor._scriptOutputDelimiter + "\n", capturedOut.toString());
+
+		actor.wrapup();
+		actor.dispose();
+	}
+
+	public void testSetProcessMode_BadMode() throws Exception {
+		Exception exception = null;
+		try {
+			new BashActor().setProcessMode("thread");
+		} catch (Exception e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		assertEquals("Process mode string must be one of fork or worker.", exception.getMessage());
+	}
+
+	private BashActor _createIncrementActor(String processMode) throws Exception {
+		BashActor actor = new BashActor();
+		actor.setName("Increment");
+		Yaml yaml = new Yaml();
+		actor.setInputs((Map<String,Object>)yaml.load("x:" + EOL));
+		actor.setOutputs((Map<String,Object>)yaml.load("y:" + EOL));
+		actor.setStep("y=$((x+1))");
+		actor.setProcessMode(processMode);
+		actor.setApplicationContext(_context);
+		actor.afterPropertiesSet();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+		return actor;
+	}
+
+	private void _assertIncrements(BashActor actor) throws Exception {
+		for (int i = 0; i < 5; i++) {
+			actor.setInputValue("x", i);
+			actor.step();
+			assertEquals(i + 1, actor.getOutputValue("y"));
+		}
+	}
+
+	// returns the process ID of the interpreter that runs a step of the actor
+	private String _stepPid(BashActor actor) throws Exception {
+		actor.setStep("y=$$");
+		actor.setInputValue("x", 0);
+		actor.step();
+		return actor.getOutputValue("y").toString();
+	}
+
+	/**
+	 * A minimal bash actor that supports both process modes.
+	 */
+	public static class BashActor extends AugmentedScriptActor {
+
+		public BashActor() {
+			super();
+			synchronized(this) {
+				_stdoutMode = OutputStreamMode.DISCARD;
+				_scriptExtension = "sh";
+			}
+		}
+
+		public ActorScriptBuilder getNewScriptBuilder() {
+			return new BashScriptBuilder();
+		}
+
+		public String getScriptRunCommand() {
+			return "bash";
+		}
+
+		public DataSerializationFormat getOutputSerializationFormat() {
+			return DataSerializationFormat.YAML;
+		}
+
+		public volatile File loopScriptFile;
+
+		public String getWorkerRunCommand(File loopScriptFile) {
+			this.loopScriptFile = loopScriptFile;
+			return super.getWorkerRunCommand(loopScriptFile);
+		}
+
+		public String getWorkerLoopScript() {
+			return	"start=$(pwd)"																+ EOL +
+					"while IFS= read -r length; do"												+ EOL +
+					"    LC_ALL=C IFS= read -r -d '' -N \"$length\" script"						+ EOL +
+					"    ( cd \"$start\"; eval \"$script\" )"										+ EOL +
+					"    printf '\\n%s\\n' " + ScriptWorker.FRAME_DELIMITER + " >&2"				+ EOL +
+					"    printf '\\n%s\\n' " + ScriptWorker.FRAME_DELIMITER							+ EOL +
+					"done"																		+ EOL;
+		}
+	}
+
+	public static class BashScriptBuilder implements ActorScriptBuilder {
+
+		private final StringBuilder _script = new StringBuilder();
+
+		public ActorScriptBuilder appendBlankLine() {
+			return append(EOL);
+		}
+
+		public ActorScriptBuilder appendChangeDirectory(String path) {
+			return appendCode("cd '" + path + "'");
+		}
+
+		public ActorScriptBuilder append(String text) {
+			_script.append(text);
+			return this;
+		}
+
+		public ActorScriptBuilder appendCode(String code) {
+			return append(code + EOL);
+		}
+
+		public ActorScriptBuilder appendComment(String text) {
+			return appendCode("# " + text);
+		}
+
+		public ActorScriptBuilder appendInputControlFunctions() {
+			return appendCode("enableInput() { enabledInputs=\"$enabledInputs $1\"; }")
+				  .appendCode("disableInput() { disabledInputs=\"$disabledInputs $1\"; }");
+		}
+
+		public ActorScriptBuilder appendOutputControlFunctions() {
+			return appendCode("enableOutput() { enabledOutputs=\"$enabledOutputs $1\"; }")
+				  .appendCode("disableOutput() { disabledOutputs=\"$disabledOutputs $1\"; }");
+		}
+
+		public ActorScriptBuilder appendLiteralAssignment(String name, Object value, String type,
+				boolean mutable, boolean nullable) throws Exception {
+			return appendCode(name + "='" + ((value == null) ? "" : value) + "'");
+		}
+
+		public ActorScriptBuilder appendPrintStringStatement(String string) {
+			return appendCode("echo '" + string + "'");
+		}
+
+		public ActorScriptBuilder appendSeparator() {
+			return appendComment("------------------------------------------------------------");
+		}
+
+		public ActorScriptBuilder appendSerializationBeginStatement() {
+			return this;
+		}
+
+		public ActorScriptBuilder appendSerializationEndStatement() {
+			return this;
+		}
+
+		public ActorScriptBuilder appendVariableSerializationStatement(String name, String type) {
+			return appendCode("echo \"" + name + ": ${" + name + ":-null}\"");
+		}
+
+		public ActorScriptBuilder appendOutputVariableSerializationStatement(String name, String type) {
+			return appendVariableSerializationStatement(name, type);
+		}
+
+		public ActorScriptBuilder appendNonNullStringVariableSerializationPrintStatement(String name) {
+			return appendCode("if [ -n \"$" + name + "\" ]; then echo \"" + name + ": '${" + name + "# }'\"; fi");
+		}
+
+		public void appendScriptHeader(ActorScriptBuilder script, String scriptType) throws IOException {
+		}
+
+		public ActorScriptBuilder appendScriptExitCommend() {
+			return appendCode("exit 0");
+		}
+
+		public String toString() {
+			return _script.toString();
+		}
+	}
+}
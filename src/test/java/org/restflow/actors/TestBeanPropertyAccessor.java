@@ -0,0 +1,55 @@
+package org.restflow.actors;
+
+import java.util.HashMap;
+
+import org.restflow.beans.Adder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestBeanPropertyAccessor extends RestFlowTestCase {
+
+	public void testForProperty_SimpleProperties() throws Exception {
+
+		Adder adder = new Adder();
+
+		BeanPropertyAccessor a = BeanPropertyAccessor.forProperty(adder, "a");
+		BeanPropertyAccessor b = BeanPropertyAccessor.forProperty(adder, "b");
+		BeanPropertyAccessor sum = BeanPropertyAccessor.forProperty(adder, "sum");
+
+		assertTrue(a.isWriteable());
+		assertFalse(a.isReadable());
+		assertTrue(sum.isReadable());
+		assertFalse(sum.isWriteable());
+
+		a.set(adder, 3);
+		b.set(adder, 4);
+		adder.add();
+		assertEquals(7, sum.get(adder));
+	}
+
+	public void testForProperty_PropertiesLeftToPropertyUtils() throws Exception {
+
+		assertNull(BeanPropertyAccessor.forProperty(new Adder(), "difference"));
+		assertNull(BeanPropertyAccessor.forProperty(new Adder(), "a.b"));
+		assertNull(BeanPropertyAccessor.forProperty(new Adder(), "a[0]"));
+		assertNull(BeanPropertyAccessor.forProperty(new HashMap<String,Object>(), "a"));
+
+		// getters on classes that are not public are not accessible to PropertyUtils either
+		assertNull(BeanPropertyAccessor.forProperty(new Object() {
+			@SuppressWarnings("unused") public int getValue() { return 1; }
+		}, "value"));
+	}
+
+	public void testSet_IncorrectType() throws Exception {
+
+		Adder adder = new Adder();
+		BeanPropertyAccessor a = BeanPropertyAccessor.forProperty(adder, "a");
+
+		try {
+			a.set(adder, "three");
+			fail("Exception expected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("argument type mismatch - had objects of type \"java.lang.String\""));
+		}
+	}
+}
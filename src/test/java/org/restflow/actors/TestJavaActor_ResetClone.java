@@ -0,0 +1,159 @@
+package org.restflow.actors;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestJavaActor_ResetClone extends RestFlowTestCase {
+
+	private WorkflowContext _context;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		_context = new WorkflowContextBuilder().build();
+	}
+	
+	public static class CountingBean extends CloneableBean {
+		public int count = 0;
+		public Integer value;
+		public Integer lastCount;
+		public void initialize() {}
+		public void step() { 
+			count++; 
+			lastCount = count;
+		}
+	}
+
+	public static class ConditionalOutputBean extends CloneableBean {
+		public Integer value;
+		public Boolean emit;
+		public Integer result = -1;
+		public int scratch = 0;
+		public void step() {
+			scratch++;
+			if (emit) result = value * 10;
+		}
+	}
+	
+	private JavaActor _buildCountingActor() throws Exception {
+		JavaActor actor = new JavaActorBuilder()
+			.name("Counter")
+			.context(_context)
+			.input("value")
+			.state("count")
+			.bean(new CountingBean())
+			.output("lastCount")
+			.build();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+		return actor;
+	}
+	
+	private JavaActor _buildConditionalActor() throws Exception {
+		JavaActor actor = new JavaActorBuilder()
+			.name("Conditional")
+			.context(_context)
+			.input("value")
+			.input("emit")
+			.bean(new ConditionalOutputBean())
+			.output("result")
+			.build();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+		return actor;
+	}
+	
+	public void testIsRecyclable() throws Exception {
+		assertTrue(_buildCountingActor().isRecyclable());
+	}
+	
+	public void testResetClone_StateVariablesDoNotLeak() throws Exception {
+		
+		JavaActor master = _buildCountingActor();
+		master.setInputValue("value", 1);
+		
+		JavaActor clone = (JavaActor) master.clone();
+		clone.step();
+		clone.step();
+		assertEquals(2, clone.getOutputValue("lastCount"));
+		assertEquals(2, clone.getStateValue("count"));
+
+		// a reset clone starts from the state of the master just like a new clone
+		clone.resetClone(master);
+		assertEquals(0, clone.getStateValue("count"));
+		clone.step();
+		assertEquals(1, clone.getOutputValue("lastCount"));
+		
+		// the master is unaffected by the steps of its clones
+		assertEquals(0, master.getStateValue("count"));
+		assertEquals(0, ((CountingBean)master.getWrappedBean()).count);
+	}
+
+	public void testResetClone_OutputsDoNotLeak() throws Exception {
+		
+		JavaActor master = _buildConditionalActor();
+		master.setInputValue("value", 3);
+		master.setInputValue("emit", true);
+		
+		JavaActor clone = (JavaActor) master.clone();
+		clone.step();
+		assertEquals(30, clone.getOutputValue("result"));
+		
+		// an output not assigned in the next step has the value of a new clone's bean
+		master.setInputValue("value", 4);
+		master.setInputValue("emit", false);
+		clone.resetClone(master);
+		assertNull(clone.getOutputValue("result"));
+		clone.step();
+		assertEquals(-1, clone.getOutputValue("result"));
+	}
+
+	public void testResetClone_InputsTakenFromMaster() throws Exception {
+
+		JavaActor master = _buildConditionalActor();
+		master.setInputValue("value", 3);
+		master.setInputValue("emit", true);
+
+		JavaActor clone = (JavaActor) master.clone();
+		clone.step();
+		assertEquals(30, clone.getOutputValue("result"));
+		
+		master.setInputValue("value", 5);
+		clone.resetClone(master);
+		clone.step();
+		assertEquals(50, clone.getOutputValue("result"));
+		assertSame(clone.getWrappedBean(), clone.getWrappedBean());
+	}
+	
+	public void testResetClone_UndeclaredBeanFieldsAreNotReset() throws Exception {
+
+		JavaActor master = _buildConditionalActor();
+		master.setInputValue("value", 3);
+		master.setInputValue("emit", true);
+
+		JavaActor clone = (JavaActor) master.clone();
+		Object bean = clone.getWrappedBean();
+		clone.step();
+		clone.resetClone(master);
+		clone.step();
+		
+		// the same bean is reused, so fields not declared as variables are retained
+		assertSame(bean, clone.getWrappedBean());
+		assertEquals(2, ((ConditionalOutputBean)bean).scratch);
+	}
+	
+	public void testResetClone_NotAClone() throws Exception {
+		
+		JavaActor master = _buildConditionalActor();
+		Workflow other = new Workflow();
+		
+		try {
+			((JavaActor) master.clone()).resetClone(other);
+			fail("Expected CloneNotSupportedException");
+		} catch (CloneNotSupportedException e) {
+		}
+	}
+}
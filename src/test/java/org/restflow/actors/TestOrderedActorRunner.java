@@ -102,6 +102,23 @@ public class TestOrderedActorRunner extends RestFlowTestCase {
 		assertNull(exception);
 	}
 	
+	public void testStart_StepRunnerPool() throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+		OrderedActorRunner runner = new OrderedActorRunner(_actor, variables);
+		assertEquals(false, _actor.getFieldValue("actorStepped"));
+		
+		StepRunnerPool pool = new StepRunnerPool();
+		runner.start(pool);
+		runner.waitForCompletion();
+		assertSame(_actor, runner.getActor());
+		assertSame(variables, runner.getVariables());
+		assertEquals(true, _actor.getFieldValue("actorStepped"));
+		assertNull(runner.getException());
+		
+		pool.shutdown();
+	}
+
 	public void testStart_WithException() throws Exception {
 		
 		_actor.setFieldValue("throwExceptionOnStep", true);
@@ -0,0 +1,141 @@
+package org.restflow.actors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.WorkflowTemplate;
+import org.restflow.data.ProtocolRegistry;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.test.RestFlowTestCase;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.yaml.snakeyaml.Yaml;
+
+
+@SuppressWarnings("unchecked")
+public class TestRestFlowActor_InProcess extends RestFlowTestCase {
+
+	private WorkflowContext _context;
+	private PrintStream _stdout;
+	private ByteArrayOutputStream _printed;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_context = new WorkflowContextBuilder()
+			.runDirectory(getRunDirectoryForTest("TestRestFlowActor_InProcess"))
+			.recorder(new NoopTraceRecorder())
+			.build();
+		_stdout = System.out;
+		_printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(_printed, true));
+	}
+
+	public void tearDown() throws Exception {
+		System.setOut(_stdout);
+		super.tearDown();
+	}
+
+	public void testStep_ParsesDefinitionOnceAndDiscardsNestedStdout() throws Exception {
+
+		TemplateCountingActor actor = new TemplateCountingActor();
+		actor.setName("NestedAdder");
+		Yaml yaml = new Yaml();
+		actor.setSettings((Map<String,Object>)yaml.load(
+			"restflow-file: classpath:/org/restflow/java/actors.yaml"	+ EOL +
+			"restflow-workflow: PrintingAdder"							+ EOL +
+			"restflow-runMode: inprocess"								+ EOL));
+		actor.setInputs((Map<String,Object>)yaml.load("a:" + EOL + "b:" + EOL));
+		actor.setOutputs((Map<String,Object>)yaml.load("sum:" + EOL));
+		actor.setUsesStepDirectory(true);
+		actor.setApplicationContext(_context);
+		actor.afterPropertiesSet();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+
+		actor.set("a", 2);
+		actor.set("b", 3);
+		actor.step();
+		assertEquals(5, actor.get("sum"));
+
+		// each step runs in a step directory of its own, as when stepped by a node
+		actor.setStepCount(1);
+		actor.set("a", 4);
+		actor.set("b", 5);
+		actor.step();
+		assertEquals(9, actor.get("sum"));
+		assertFalse(actor.getOutputNames().contains("restflow-stdout"));
+
+		actor.wrapup();
+		actor.dispose();
+
+		assertEquals(1, actor.compileCount);
+
+		// output of the nested workflow is discarded but output of the calling thread is not
+		System.out.print("after steps");
+		assertEquals("after steps", _printed.toString());
+	}
+
+	// builds the nested workflow from bean definitions instead of parsing its yaml definition
+	private static class TemplateCountingActor extends RestFlowActor {
+
+		int compileCount = 0;
+
+		protected WorkflowTemplate compileWorkflowTemplate(String workflowFile,
+				Map<String,String> importMappings) throws Exception {
+
+			compileCount++;
+
+			DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+			registry.registerBeanDefinition("DefaultProtocolRegistry",
+					_definition(ProtocolRegistry.class, new MutablePropertyValues()));
+
+			MutablePropertyValues adderProperties = new MutablePropertyValues();
+			adderProperties.add("beanClassName", PrintingAdder.class.getName());
+			adderProperties.add("stepMethod", "add");
+			adderProperties.add("inputs", new Yaml().load("a:" + EOL + "b:" + EOL));
+			adderProperties.add("outputs", new Yaml().load("sum:" + EOL));
+			GenericBeanDefinition adder = _definition(JavaActor.class, adderProperties);
+			adder.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+			registry.registerBeanDefinition("PrintingAdder", adder);
+
+			return new WorkflowTemplate(registry);
+		}
+
+		private static GenericBeanDefinition _definition(Class<?> beanClass, MutablePropertyValues properties) {
+			GenericBeanDefinition definition = new GenericBeanDefinition();
+			definition.setBeanClass(beanClass);
+			definition.setPropertyValues(properties);
+			return definition;
+		}
+	}
+
+	public static class PrintingAdder {
+
+		private int _a;
+		private int _b;
+		private int _sum;
+
+		public void setA(int a) {
+			_a = a;
+		}
+
+		public void setB(int b) {
+			_b = b;
+		}
+
+		public int getSum() {
+			return _sum;
+		}
+
+		public void add() {
+			System.out.println("adding " + _a + " and " + _b);
+			_sum = _a + _b;
+		}
+	}
+}
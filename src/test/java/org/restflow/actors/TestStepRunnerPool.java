@@ -0,0 +1,53 @@
+package org.restflow.actors;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestStepRunnerPool extends RestFlowTestCase {
+
+	public void testExecute_ReusesThreads() throws Exception {
+
+		StepRunnerPool pool = new StepRunnerPool();
+		final Set<Thread> threads = new HashSet<Thread>();
+		
+		for (int i = 0; i < 100; i++) {
+			final CountDownLatch done = new CountDownLatch(1);
+			pool.execute(new Runnable() {
+				public void run() {
+					synchronized(threads) { threads.add(Thread.currentThread()); }
+					done.countDown();
+				}
+			});
+			done.await();
+		}
+		
+		// consecutive steps each wait for the prior one, so each thread is free for the next
+		assertTrue(threads.size() < 100);
+		
+		for (Thread thread : threads) {
+			assertTrue(thread.isDaemon());
+		}
+		
+		pool.shutdown();
+	}
+	
+	public void testExecute_AfterShutdown() throws Exception {
+		
+		StepRunnerPool pool = new StepRunnerPool();
+		pool.shutdown();
+
+		final CountDownLatch done = new CountDownLatch(1);
+		pool.execute(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		done.await();
+		
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,145 @@
+package org.restflow.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.ActorRunner;
+import org.restflow.actors.CloneableBean;
+import org.restflow.actors.JavaActor;
+import org.restflow.actors.JavaActorBuilder;
+import org.restflow.actors.StepRunnerPool;
+import org.restflow.nodes.ActorCompletionService;
+import org.restflow.nodes.AsynchronousActorCompletionService;
+import org.restflow.nodes.OrderedActorCompletionService;
+import org.restflow.nodes.UnorderedActorCompletionService;
+
+
+/**
+ * Measures the rate at which the ordered and unordered actor completion services step
+ * a JavaActor doing trivial arithmetic, once starting a new thread per step and once
+ * running steps on a StepRunnerPool, and with the pool once cloning the actor for
+ * every step and once recycling the clones.  Steps are submitted the way a concurrent 
+ * node submits them, keeping up to maxConcurrency steps outstanding at once.  The bytes 
+ * allocated per step are those allocated by the thread submitting the steps.
+ *
+ * Usage: ActorRunnerStepRateBenchmark [steps [maxConcurrency]]
+ */
+public class ActorRunnerStepRateBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+		int maxConcurrency = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+
+		JavaActor actor = _buildAdder();
+		
+		System.out.println("service\trunners\tactors\tsteps\tconcurrency\tmillis\tsteps/sec\tbytes/step");
+
+		for (int round = 0; round < 2; round++) {
+			for (boolean ordered : new boolean[] {true, false}) {
+				for (int mode = 0; mode < 3; mode++) {
+					
+					boolean pooled = (mode > 0);
+					boolean recycled = (mode > 1);
+					
+					StepRunnerPool pool = pooled ? new StepRunnerPool() : null;
+					AsynchronousActorCompletionService service = ordered ? 
+							new OrderedActorCompletionService(maxConcurrency + 1, pool) :
+							new UnorderedActorCompletionService(maxConcurrency + 1, pool);
+					service.setRecycleActors(recycled);
+					
+					long allocatedBefore = _allocatedBytes();
+					long elapsed = _runSteps(actor, service, steps, maxConcurrency);
+					long allocated = _allocatedBytes() - allocatedBefore;
+					if (pool != null) pool.shutdown();
+	
+					// the first round only warms up the JIT
+					if (round > 0) {
+						System.out.println((ordered ? "ordered" : "unordered") + "\t" + 
+								(pooled ? "pooled" : "threads") + "\t" + (recycled ? "recycled" : "cloned") + "\t" + 
+								steps + "\t" + maxConcurrency + "\t" + elapsed / 1000000 + "\t" + 
+								(long)(steps / (elapsed / 1e9)) + "\t" + allocated / steps);
+					}
+				}
+			}
+		}
+	}
+	
+	public static class Adder extends CloneableBean {
+		public int a, b, sum;
+		public void step() { sum = a + b; }
+	}
+	
+	private static JavaActor _buildAdder() throws Exception {
+		
+		WorkflowContext context = new WorkflowContextBuilder().build();
+
+		JavaActor actor = new JavaActorBuilder()
+			.name("Adder")
+			.context(context)
+			.input("a")
+			.input("b")
+			.bean(new Adder())
+			.output("sum")
+			.build();
+		
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+		
+		return actor;
+	}
+	
+	private static long _runSteps(JavaActor actor, ActorCompletionService service, int steps, int maxConcurrency) throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+		int outstanding = 0;
+		
+		service.start();
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < steps; i++) {
+			
+			if (outstanding == maxConcurrency) {
+				_take(service);
+				outstanding--;
+			}
+			
+			actor.setInputValue("a", i);
+			actor.setInputValue("b", 1);
+			service.submit(actor, variables);
+			outstanding++;
+		}
+		
+		while (outstanding > 0) {
+			_take(service);
+			outstanding--;
+		}
+
+		long elapsed = System.nanoTime() - start;
+		
+		service.shutdown();
+		service.take();
+		
+		return elapsed;
+	}
+	
+	private static void _take(ActorCompletionService service) throws Exception {
+		ActorRunner runner = service.take();
+		if (runner.getException() != null) {
+			throw runner.getException();
+		}
+		service.recycle(runner.getActor());
+	}
+	
+	private static long _allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
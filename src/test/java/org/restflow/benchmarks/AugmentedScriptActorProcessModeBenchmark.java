@@ -0,0 +1,86 @@
+package org.restflow.benchmarks;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.TestAugmentedScriptActor.BashActor;
+import org.yaml.snakeyaml.Yaml;
+
+
+/**
+ * Measures the per-step latency of a bash actor stepped in each process mode of the
+ * AugmentedScriptActor.  In the fork mode every step starts a new interpreter, and
+ * in the worker mode every step is run by the same long-lived interpreter.  The step
+ * script only increments its input, so the latency is almost entirely the cost of
+ * getting the augmented script to an interpreter and its output back.
+ *
+ * Usage: AugmentedScriptActorProcessModeBenchmark [steps]
+ */
+public class AugmentedScriptActorProcessModeBenchmark {
+
+	private static final String EOL = System.getProperty("line.separator");
+
+	public static void main(String[] args) throws Exception {
+
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+
+		System.out.println("mode\tsteps\tmedian usec/step\tp99 usec/step\tmillis");
+
+		for (String mode : new String[] {"fork", "worker"}) {
+
+			BashActor actor = _createActor(mode);
+
+			// warm up the JIT and, in worker mode, start the worker
+			for (int i = 0; i < 20; i++) {
+				_step(actor, i);
+			}
+
+			long[] stepNanos = new long[steps];
+			long start = System.nanoTime();
+			for (int i = 0; i < steps; i++) {
+				long stepStart = System.nanoTime();
+				_step(actor, i);
+				stepNanos[i] = System.nanoTime() - stepStart;
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			actor.wrapup();
+			actor.dispose();
+
+			Arrays.sort(stepNanos);
+			System.out.println(mode + "\t" + steps + "\t" + stepNanos[steps / 2] / 1000 + "\t" +
+					stepNanos[steps * 99 / 100] / 1000 + "\t" + millis);
+		}
+	}
+
+	private static void _step(BashActor actor, int value) throws Exception {
+		actor.setInputValue("x", value);
+		actor.step();
+		if (!actor.getOutputValue("y").equals(value + 1)) {
+			throw new IllegalStateException("Unexpected output " + actor.getOutputValue("y"));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BashActor _createActor(String processMode) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder().build();
+
+		BashActor actor = new BashActor();
+		actor.setName("Increment");
+		Yaml yaml = new Yaml();
+		actor.setInputs((Map<String,Object>)yaml.load("x:" + EOL));
+		actor.setOutputs((Map<String,Object>)yaml.load("y:" + EOL));
+		actor.setStep("y=$((x+1))");
+		actor.setProcessMode(processMode);
+		actor.setApplicationContext(context);
+		actor.afterPropertiesSet();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+
+		return actor;
+	}
+}
@@ -0,0 +1,111 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.PublishSubscribeDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Measures the rate at which the PublishSubscribeDirector delivers packets published by
+ * one node to each of a number of subscribing nodes.  The nodes do no work beyond
+ * receiving their inputs, so the rate is dominated by the cost of publishing through the
+ * BufferedPublisher and of stepping the subscribers.  Each configuration is run several
+ * times and the fastest run is reported.
+ *
+ * Usage: BufferedPublisherFanOutBenchmark [packets [subscribers ...]]
+ *
+ * Defaults to 10000 packets published to 1, 8 and 64 subscribers.
+ */
+public class BufferedPublisherFanOutBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+
+		List<Integer> fanOuts = new ArrayList<Integer>();
+		for (int i = 1; i < args.length; i++) {
+			fanOuts.add(Integer.parseInt(args[i]));
+		}
+		if (fanOuts.isEmpty()) {
+			fanOuts.add(1);
+			fanOuts.add(8);
+			fanOuts.add(64);
+		}
+
+		System.out.println("subscribers\tpackets\tmillis\tdeliveries/sec");
+
+		for (int subscribers : fanOuts) {
+
+			long fastest = Long.MAX_VALUE;
+
+			for (int run = 0; run < RUNS; run++) {
+
+				Workflow workflow = _buildFanOut(packets, subscribers);
+				workflow.configure();
+				workflow.initialize();
+
+				long start = System.nanoTime();
+				workflow.run();
+				fastest = Math.min(fastest, System.nanoTime() - start);
+
+				workflow.wrapup();
+				workflow.dispose();
+			}
+
+			double deliveriesPerSecond = (double)packets * subscribers / (fastest / 1e9);
+			System.out.println(subscribers + "\t" + packets + "\t" + fastest / 1000000 + "\t" + (long)deliveriesPerSecond);
+		}
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	public static class Sink {
+		public Object input;
+		public void step() { }
+	}
+
+	private static Workflow _buildFanOut(int packets, int subscribers) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("FanOut")
+			.context(context)
+			.director(new PublishSubscribeDirector())
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/values"));
+
+		for (int i = 0; i < subscribers; i++) {
+			builder.node(new JavaNodeBuilder()
+				.name("Subscriber" + i)
+				.inflow("/values", "input")
+				.bean(new Sink()));
+		}
+
+		return builder.build();
+	}
+}
@@ -0,0 +1,76 @@
+package org.restflow.benchmarks;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.metadata.ColumnarWritableTrace;
+import org.restflow.metadata.Trace;
+import org.restflow.metadata.TraceSegmentLoader;
+import org.restflow.metadata.WritableTrace;
+import org.restflow.util.PortableIO;
+import org.restflow.util.TestUtilities;
+
+
+/**
+ * Measures the rate at which a WritableTrace records published resources, each as a
+ * data, a resource, a packet, and a packet-resource row, first when the rows are
+ * inserted into a trace database file and then when a ColumnarWritableTrace appends
+ * them to segment files.  The times reported include committing every row, and for
+ * the segments the time taken afterwards to load them into a trace database is
+ * reported separately.
+ *
+ * Usage: ColumnarTraceBenchmark [resources]
+ */
+public class ColumnarTraceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int resources = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+		WorkflowContext context = new WorkflowContextBuilder().build();
+
+		System.out.println("method\tresources\tmillis\tresources/sec\tbytes");
+
+		File directory = PortableIO.createUniqueTimeStampedDirectory(
+				TestUtilities.getTestRunsDirectoryPath(), "ColumnarTraceDatabase");
+		WritableTrace trace = new WritableTrace(context, directory.getAbsolutePath() + File.separator);
+		long start = System.nanoTime();
+		_recordResources(trace, resources);
+		trace.flush();
+		_report("database", resources, System.nanoTime() - start, directory);
+		trace.close();
+
+		directory = PortableIO.createUniqueTimeStampedDirectory(
+				TestUtilities.getTestRunsDirectoryPath(), "ColumnarTraceSegments");
+		trace = new ColumnarWritableTrace(context, directory.getAbsolutePath());
+		start = System.nanoTime();
+		_recordResources(trace, resources);
+		trace.flush();
+		_report("segments", resources, System.nanoTime() - start, directory);
+		trace.close();
+
+		start = System.nanoTime();
+		Trace loadedTrace = TraceSegmentLoader.load(directory.getAbsolutePath());
+		long nanos = System.nanoTime() - start;
+		if (loadedTrace.getRowCountForTable("Resource") != resources) {
+			throw new IllegalStateException("Loaded the wrong number of resources");
+		}
+		_report("load segments", resources, nanos, directory);
+	}
+
+	private static void _recordResources(WritableTrace trace, int resources) throws Exception {
+		for (int i = 0; i < resources; i++) {
+			long dataID = trace.queueData(String.valueOf(i), false, null);
+			long resourceID = trace.queueResource("/values/" + i, dataID, null);
+			long packetID = trace.queuePacket(null);
+			trace.queuePacketResource(packetID, resourceID);
+		}
+	}
+
+	private static void _report(String method, int resources, long nanos, File directory) {
+		System.out.println(method + "\t" + resources + "\t" + nanos / 1000000 + "\t" +
+				(long)(resources / (nanos / 1e9)) + "\t" + FileUtils.sizeOfDirectory(directory));
+	}
+}
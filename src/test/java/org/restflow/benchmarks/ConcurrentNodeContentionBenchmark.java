@@ -0,0 +1,122 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.MTDataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Measures the throughput of a single concurrent node as its maximum concurrency
+ * grows from 1 to 64.  A source feeds packets to the node, whose steps each spin
+ * for a fixed number of iterations, and a sink consumes its outputs, all run by the
+ * MTDataDrivenDirector so that the source, the node's producer and consumer threads
+ * and its concurrent steps all reach the node at once.  The speedup over a
+ * concurrency of 1 shows how far contention on the node limits parallel stepping.
+ *
+ * Usage: ConcurrentNodeContentionBenchmark [packets [spins]]
+ *
+ * Defaults to 20000 packets and 20000 spins per step.
+ */
+public class ConcurrentNodeContentionBenchmark {
+
+	private static final int[] CONCURRENCY_LEVELS = {1, 2, 4, 8, 16, 32, 64};
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int spins = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+		System.out.println("cores\t" + Runtime.getRuntime().availableProcessors());
+		System.out.println("concurrency\tpackets\tmillis\tsteps/sec\tspeedup");
+
+		double baseline = 0;
+
+		for (int concurrency : CONCURRENCY_LEVELS) {
+
+			Workflow workflow = _buildWorkflow(concurrency, packets, spins);
+			workflow.configure();
+			workflow.initialize();
+
+			System.gc();
+			long start = System.nanoTime();
+			workflow.run();
+			long elapsed = System.nanoTime() - start;
+
+			workflow.wrapup();
+			workflow.dispose();
+
+			double stepsPerSecond = packets / (elapsed / 1e9);
+			if (concurrency == 1) {
+				baseline = stepsPerSecond;
+			}
+
+			System.out.println(concurrency + "\t" + packets + "\t" + elapsed / 1000000 + "\t" +
+					(long)stepsPerSecond + "\t" + String.format("%.2f", stepsPerSecond / baseline));
+		}
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	public static class Sink {
+		public Object input;
+		public void step() {}
+	}
+
+	public static class Spin {
+		public Object input, output;
+		public Integer spins;
+		public void step() {
+			long sum = 0;
+			for (int i = 0; i < spins; i++) {
+				sum += i ^ (sum >>> 3);
+			}
+			output = (sum == 42) ? null : input;
+		}
+	}
+
+	private static Workflow _buildWorkflow(int concurrency, int packets, int spins) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		return new WorkflowBuilder()
+			.name("Contention")
+			.context(context)
+			.director(new MTDataDrivenDirector())
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/source"))
+			.node(new JavaNodeBuilder()
+				.name("Work")
+				.inflow("/source", "input")
+				.constant("spins", spins)
+				.bean(new Spin())
+				.maxConcurrency(concurrency)
+				.outflow("output", "/work"))
+			.node(new JavaNodeBuilder()
+				.name("Sink")
+				.inflow("/work", "input")
+				.bean(new Sink()))
+			.build();
+	}
+}
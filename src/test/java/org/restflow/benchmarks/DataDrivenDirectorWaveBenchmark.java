@@ -0,0 +1,142 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.DataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Compares the run time of the DataDrivenDirector triggering nodes one at a time with its
+ * parallel-wave mode on wide fan-out graphs, in which one source sends each packet to a
+ * number of independent branches of two nodes.  The first node of each branch does the
+ * given amount of work per step, either sleeping to stand in for an actor waiting on I/O
+ * or spinning to stand in for a compute-bound actor.  The parallel mode triggers the
+ * nodes on the SharedNodeExecutor, whose parallelism may be set with the
+ * restflow.director.parallelism system property.
+ *
+ * Usage: DataDrivenDirectorWaveBenchmark [sleep|spin [micros [packets [branches ...]]]]
+ *
+ * Defaults to 1000 microseconds of sleep for each of 20 packets on 8, 64 and 256 branches.
+ */
+public class DataDrivenDirectorWaveBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		boolean spin = (args.length > 0) && args[0].equals("spin");
+		long micros = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+		int packets = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		List<Integer> widths = new ArrayList<Integer>();
+		for (int i = 3; i < args.length; i++) {
+			widths.add(Integer.parseInt(args[i]));
+		}
+		if (widths.isEmpty()) {
+			widths.add(8);
+			widths.add(64);
+			widths.add(256);
+		}
+
+		System.out.println("work\tbranches\tpackets\tsequential ms\tparallel ms\tspeedup");
+
+		for (int branches : widths) {
+
+			long sequential = _run(false, spin, micros, packets, branches);
+			long parallel = _run(true, spin, micros, packets, branches);
+
+			System.out.println((spin ? "spin " : "sleep ") + micros + "us\t" + branches + "\t" + packets + "\t" +
+					sequential / 1000000 + "\t" + parallel / 1000000 + "\t" + (double)sequential / parallel);
+		}
+	}
+
+	private static long _run(boolean parallel, boolean spin, long micros, int packets, int branches) throws Exception {
+
+		Workflow workflow = _buildFanOut(parallel, spin, micros, packets, branches);
+		workflow.configure();
+		workflow.initialize();
+
+		long start = System.nanoTime();
+		workflow.run();
+		long elapsed = System.nanoTime() - start;
+
+		workflow.wrapup();
+		workflow.dispose();
+
+		return elapsed;
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	public static class Work {
+		public Object input, output;
+		public boolean spin;
+		public long micros;
+		public void step() throws InterruptedException {
+			if (spin) {
+				long end = System.nanoTime() + micros * 1000;
+				while (System.nanoTime() < end);
+			} else {
+				Thread.sleep(micros / 1000, (int)(micros % 1000) * 1000);
+			}
+			output = input;
+		}
+	}
+
+	public static class Sink {
+		public Object input;
+		public void step() { }
+	}
+
+	private static Workflow _buildFanOut(boolean parallel, boolean spin, long micros, 
+			int packets, int branches) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		DataDrivenDirector director = new DataDrivenDirector();
+		director.setParallel(parallel);
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("FanOut")
+			.context(context)
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/values"));
+
+		for (int i = 0; i < branches; i++) {
+			builder.node(new JavaNodeBuilder()
+					.name("Work" + i)
+					.inflow("/values", "input")
+					.constant("spin", spin)
+					.constant("micros", micros)
+					.bean(new Work())
+					.outflow("output", "/results" + i))
+				.node(new JavaNodeBuilder()
+					.name("Sink" + i)
+					.inflow("/results" + i, "input")
+					.bean(new Sink()));
+		}
+
+		return builder.build();
+	}
+}
@@ -0,0 +1,83 @@
+package org.restflow.benchmarks;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.restflow.util.DirectoryAllocator;
+import org.restflow.util.PortableIO;
+import org.restflow.util.TestUtilities;
+
+
+/**
+ * Measures the cost of creating many step and run directories in one parent directory.
+ * Step directories are created by name as AbstractActor names them, first with
+ * File.mkdirs() and then with DirectoryAllocator.createDirectory().  Run directories
+ * all share one base name and are allocated with DirectoryAllocator, and, for a smaller
+ * number of directories because its cost grows quadratically, by probing name, name_1,
+ * name_2 and so on with mkdirs() as run directories were once allocated.
+ *
+ * Usage: DirectoryAllocationBenchmark [directories [probedDirectories]]
+ *
+ * Defaults to 100000 directories, of which 2000 are allocated by probing.
+ */
+public class DirectoryAllocationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int directories = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int probedDirectories = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+		String benchmarkDirectoryPath = TestUtilities.getTestRunsDirectoryPath();
+
+		System.out.println("method\tdirectories\tmillis\tdirectories/sec");
+
+		File parent = PortableIO.createUniqueTimeStampedDirectory(benchmarkDirectoryPath, "StepMkdirs");
+		long start = System.nanoTime();
+		for (int step = 1; step <= directories; step++) {
+			new File(parent, ".steps/Workflow.Node_" + step).mkdirs();
+		}
+		_report("step mkdirs", directories, System.nanoTime() - start);
+		FileUtils.deleteDirectory(parent);
+
+		parent = PortableIO.createUniqueTimeStampedDirectory(benchmarkDirectoryPath, "StepAllocator");
+		start = System.nanoTime();
+		for (int step = 1; step <= directories; step++) {
+			DirectoryAllocator.createDirectory(new File(parent, ".steps/Workflow.Node_" + step));
+		}
+		_report("step allocator", directories, System.nanoTime() - start);
+		FileUtils.deleteDirectory(parent);
+
+		parent = PortableIO.createUniqueTimeStampedDirectory(benchmarkDirectoryPath, "RunProbing");
+		start = System.nanoTime();
+		for (int run = 0; run < probedDirectories; run++) {
+			_createByProbing(parent, "run");
+		}
+		_report("run probing", probedDirectories, System.nanoTime() - start);
+		FileUtils.deleteDirectory(parent);
+
+		parent = PortableIO.createUniqueTimeStampedDirectory(benchmarkDirectoryPath, "RunAllocator");
+		DirectoryAllocator allocator = new DirectoryAllocator();
+		start = System.nanoTime();
+		for (int run = 0; run < directories; run++) {
+			allocator.createUniqueDirectory(parent, "run");
+		}
+		_report("run allocator", directories, System.nanoTime() - start);
+		FileUtils.deleteDirectory(parent);
+	}
+
+	private static File _createByProbing(File parentDirectory, String baseDirectoryName) {
+		File directory;
+		int suffix = 0;
+		do {
+			String name = (suffix > 0) ? baseDirectoryName + "_" + suffix : baseDirectoryName;
+			directory = new File(parentDirectory, name);
+			suffix++;
+		} while (!directory.mkdirs());
+		return directory;
+	}
+
+	private static void _report(String method, int directories, long nanos) {
+		System.out.println(method + "\t" + directories + "\t" + nanos / 1000000 + "\t" +
+				(long)(directories / (nanos / 1e9)));
+	}
+}
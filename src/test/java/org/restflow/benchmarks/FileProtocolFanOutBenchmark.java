@@ -0,0 +1,157 @@
+package org.restflow.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.data.FileProtocol;
+import org.restflow.data.FileProtocol.PublishMode;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.util.PortableIO;
+import org.restflow.util.TestUtilities;
+
+
+/**
+ * Measures the cost of publishing one large file through the FileProtocol to a number
+ * of subscribing nodes in each publish mode.  The source node writes the file outside
+ * of the run directory and outputs a handle to it, and every subscriber receives the
+ * file in its own step directory.  Reported are the wall time of the run and the number
+ * of bytes of file data actually allocated on disk under the run directory, in which
+ * linked files are counted once.
+ *
+ * Usage: FileProtocolFanOutBenchmark [megabytes [subscribers]]
+ */
+public class FileProtocolFanOutBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+		int subscribers = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+
+		String benchmarkDirectoryPath = TestUtilities.getTestRunsDirectoryPath();
+
+		System.out.println("mode\tmegabytes\tsubscribers\tmillis\tmegabytes on disk");
+
+		for (PublishMode mode : PublishMode.values()) {
+
+			File runDirectory = PortableIO.createUniqueTimeStampedDirectory(
+					benchmarkDirectoryPath, "FileProtocolFanOut");
+			File sourceDirectory = PortableIO.createUniqueTimeStampedDirectory(
+					benchmarkDirectoryPath, "FileProtocolFanOutSource");
+
+			Workflow workflow = _buildFanOut(mode, runDirectory,
+					new File(sourceDirectory, "data.bin"), megabytes, subscribers);
+			workflow.configure();
+			workflow.initialize();
+
+			long start = System.nanoTime();
+			workflow.run();
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			workflow.wrapup();
+			workflow.dispose();
+
+			long diskBytes = _countDiskBytes(runDirectory);
+
+			System.out.println(mode.toString().toLowerCase() + "\t" + megabytes + "\t" + subscribers +
+					"\t" + millis + "\t" + (diskBytes >> 20));
+
+			FileUtils.deleteDirectory(runDirectory);
+			FileUtils.deleteDirectory(sourceDirectory);
+		}
+	}
+
+	public static class LargeFileSource {
+		public File file;
+		public int megabytes;
+		public File data;
+		public void step() throws Exception {
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			byte[] block = new byte[1 << 20];
+			for (int i = 0; i < megabytes; i++) {
+				block[i % block.length] = (byte) i;
+				out.write(block);
+			}
+			out.close();
+			data = file;
+		}
+	}
+
+	public static class FileSubscriber {
+		public File data;
+		public long length;
+		public void step() {
+			length = data.length();
+		}
+	}
+
+	// sums the sizes of the regular files under the directory, counting each linked file once
+	private static long _countDiskBytes(File directory) throws Exception {
+		return _countDiskBytes(directory, new HashSet<Object>());
+	}
+
+	private static long _countDiskBytes(File directory, Set<Object> fileKeys) throws Exception {
+
+		long bytes = 0;
+
+		for (File file : directory.listFiles()) {
+			BasicFileAttributes attributes = Files.readAttributes(
+					file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			if (attributes.isDirectory()) {
+				bytes += _countDiskBytes(file, fileKeys);
+			} else if (attributes.isRegularFile()) {
+				Object key = attributes.fileKey();
+				if (key == null || fileKeys.add(key)) {
+					bytes += attributes.size();
+				}
+			}
+		}
+
+		return bytes;
+	}
+
+	private static Workflow _buildFanOut(PublishMode mode, File runDirectory, File sourceFile,
+			int megabytes, int subscribers) throws Exception {
+
+		FileProtocol protocol = new FileProtocol();
+		protocol.setPublishMode(mode);
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.scheme("file", protocol)
+			.runDirectory(runDirectory)
+			.build();
+
+		LargeFileSource source = new LargeFileSource();
+		source.file = sourceFile;
+		source.megabytes = megabytes;
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("FanOut")
+			.context(context)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.bean(source)
+				.stepsOnce()
+				.outflow("data", "file:/data.bin"));
+
+		for (int i = 0; i < subscribers; i++) {
+			builder.node(new JavaNodeBuilder()
+				.name("Subscriber" + i)
+				.inflow("file:/data.bin", "data")
+				.bean(new FileSubscriber()));
+		}
+
+		return builder.build();
+	}
+}
@@ -0,0 +1,102 @@
+package org.restflow.benchmarks;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.JavaActor;
+import org.restflow.actors.JavaActorBuilder;
+import org.restflow.beans.Adder;
+import org.restflow.beans.Multiplier;
+import org.restflow.beans.StringConcatenator;
+
+
+/**
+ * Measures the rate at which a JavaActor steps the Adder, Multiplier and StringConcatenator
+ * beans, each of which does almost no work in its step, so that the cost of setting the
+ * bean's inputs and reading its output dominates.  The PropertyUtils rate is that of the
+ * same calls made the way JavaActor made them before caching the bean's getters and
+ * setters at configure(): a PropertyUtils call per input and output and a reflective call
+ * of the step method.  Each configuration is run several times and the fastest run is
+ * reported.
+ *
+ * Usage: JavaActorBeanAccessBenchmark [steps]
+ */
+public class JavaActorBeanAccessBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+		System.out.println("bean\tsteps\tPropertyUtils steps/sec\tJavaActor steps/sec");
+
+		_measure("Adder", new Adder(), "add", "a", 3, "b", 4, "sum", steps);
+		_measure("Multiplier", new Multiplier(), "multiply", "a", 3, "b", 4, "product", steps);
+		_measure("StringConcatenator", new StringConcatenator(), null,
+				"stringOne", "Hello ", "stringTwo", "world", "concatenatedString", steps);
+	}
+
+	private static void _measure(String beanName, Object bean, String stepMethodName,
+			String input1, Object value1, String input2, Object value2, String output,
+			int steps) throws Exception {
+
+		JavaActor actor = _buildActor(beanName, bean.getClass().newInstance(), stepMethodName, input1, input2, output);
+		Method stepMethod = (stepMethodName == null) ? null : bean.getClass().getMethod(stepMethodName);
+
+		long fastestProperties = Long.MAX_VALUE;
+		long fastestActor = Long.MAX_VALUE;
+
+		for (int run = 0; run < RUNS; run++) {
+
+			long start = System.nanoTime();
+			for (int i = 0; i < steps; i++) {
+				PropertyUtils.setNestedProperty(bean, input1, value1);
+				PropertyUtils.setNestedProperty(bean, input2, value2);
+				if (stepMethod != null) {
+					stepMethod.invoke(bean);
+				}
+				PropertyUtils.getNestedProperty(bean, output);
+			}
+			fastestProperties = Math.min(fastestProperties, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < steps; i++) {
+				actor.setInputValue(input1, value1);
+				actor.setInputValue(input2, value2);
+				actor.step();
+				actor.getOutputValue(output);
+			}
+			fastestActor = Math.min(fastestActor, System.nanoTime() - start);
+		}
+
+		System.out.println(beanName + "\t" + steps + "\t" +
+				(long)(steps / (fastestProperties / 1e9)) + "\t" + (long)(steps / (fastestActor / 1e9)));
+	}
+
+	private static JavaActor _buildActor(String name, Object bean, String stepMethodName,
+			String input1, String input2, String output) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder().build();
+
+		JavaActorBuilder builder = new JavaActorBuilder();
+		builder.name(name);
+		builder.context(context);
+		builder.input(input1);
+		builder.input(input2);
+		builder.bean(bean);
+		builder.output(output);
+		if (stepMethodName != null) {
+			builder.stepMethod(stepMethodName);
+		}
+
+		JavaActor actor = builder.build();
+		actor.elaborate();
+		actor.configure();
+		actor.initialize();
+
+		return actor;
+	}
+}
@@ -0,0 +1,129 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.MTDataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Measures the per-hop delay of the MTDataDrivenDirector on a 20-stage linear chain.
+ * The source emits one packet at a time, pausing between packets so that every stage
+ * is idle when the packet reaches it.  Each stage records the time it stepped, and the
+ * delay per hop is the time the packet took to go from the first stage to the last
+ * divided by the number of hops.
+ *
+ * Usage: MTDataDrivenDirectorLatencyBenchmark [packets [pause millis]]
+ */
+public class MTDataDrivenDirectorLatencyBenchmark {
+
+	private static final int STAGES = 20;
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+		int pause = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		System.out.println("mode\tstages\tpackets\tmedian usec/hop\tmax usec/hop\tcpu millis");
+
+		for (boolean pooled : new boolean[] {false, true}) {
+
+			long[][] stepTimes = new long[packets][STAGES];
+			Workflow workflow = _buildChain(packets, pause, pooled, stepTimes);
+			workflow.configure();
+			workflow.initialize();
+
+			long cpuStart = _processCpuTime();
+			workflow.run();
+			long cpuMillis = (_processCpuTime() - cpuStart) / 1000000;
+
+			workflow.wrapup();
+			workflow.dispose();
+
+			double[] hopMicros = new double[packets];
+			for (int i = 0; i < packets; i++) {
+				hopMicros[i] = (stepTimes[i][STAGES - 1] - stepTimes[i][0]) / 1000.0 / (STAGES - 1);
+			}
+			Arrays.sort(hopMicros);
+
+			System.out.println((pooled ? "pooled" : "threads") + "\t" + STAGES + "\t" + packets + "\t" +
+					(long)hopMicros[packets / 2] + "\t" + (long)hopMicros[packets - 1] + "\t" + cpuMillis);
+		}
+	}
+
+	public static class PacedSource {
+		public int pause, input, output;
+		public void step() throws InterruptedException {
+			Thread.sleep(pause);
+			output = input;
+		}
+	}
+
+	public static class TimedStage {
+		public long[][] stepTimes;
+		public int stage, input, output;
+		public void step() {
+			stepTimes[input][stage] = System.nanoTime();
+			output = input;
+		}
+	}
+
+	private static long _processCpuTime() {
+		java.lang.management.OperatingSystemMXBean os =
+			java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+		}
+		return 0;
+	}
+
+	private static Workflow _buildChain(int packets, int pause, boolean pooled, long[][] stepTimes) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		director.setPooled(pooled);
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		PacedSource source = new PacedSource();
+		source.pause = pause;
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("Chain")
+			.context(context)
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(source)
+				.outflow("output", "/stage"));
+
+		for (int i = 0; i < STAGES; i++) {
+			TimedStage stage = new TimedStage();
+			stage.stepTimes = stepTimes;
+			stage.stage = i;
+			builder.node(new JavaNodeBuilder()
+				.name("Stage" + i)
+				.inflow((i == 0) ? "/stage" : "/stage" + (i - 1), "input")
+				.bean(stage)
+				.outflow("output", "/stage" + i));
+		}
+
+		return builder.build();
+	}
+}
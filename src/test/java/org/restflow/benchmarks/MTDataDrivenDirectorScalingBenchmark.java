@@ -0,0 +1,110 @@
+package org.restflow.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.MTDataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Measures the throughput and peak thread count of the MTDataDrivenDirector on
+ * linear chains of pass-through nodes, once with a producer and consumer thread
+ * per node and once with node tasks on the shared executor.
+ *
+ * Usage: MTDataDrivenDirectorScalingBenchmark [packets [nodes ...]]
+ *
+ * Defaults to 100 packets through chains of 50, 500 and 5000 nodes.
+ */
+public class MTDataDrivenDirectorScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+
+		List<Integer> chainLengths = new ArrayList<Integer>();
+		for (int i = 1; i < args.length; i++) {
+			chainLengths.add(Integer.parseInt(args[i]));
+		}
+		if (chainLengths.isEmpty()) {
+			chainLengths.add(50);
+			chainLengths.add(500);
+			chainLengths.add(5000);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		System.out.println("mode\tnodes\tpackets\tmillis\thops/sec\tpeak threads");
+
+		for (int nodes : chainLengths) {
+			for (boolean pooled : new boolean[] {false, true}) {
+
+				Workflow workflow = _buildChain(nodes, packets, pooled);
+				workflow.configure();
+				workflow.initialize();
+
+				System.gc();
+				threads.resetPeakThreadCount();
+				long start = System.nanoTime();
+				workflow.run();
+				long elapsed = System.nanoTime() - start;
+
+				workflow.wrapup();
+				workflow.dispose();
+
+				double hopsPerSecond = (double)nodes * packets / (elapsed / 1e9);
+				System.out.println((pooled ? "pooled" : "threads") + "\t" + nodes + "\t" + packets + "\t" +
+						elapsed / 1000000 + "\t" + (long)hopsPerSecond + "\t" + threads.getPeakThreadCount());
+			}
+		}
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	private static Workflow _buildChain(int nodes, int packets, boolean pooled) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		director.setPooled(pooled);
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("Chain")
+			.context(context)
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/stage0"));
+
+		for (int i = 1; i < nodes; i++) {
+			builder.node(new JavaNodeBuilder()
+				.name("Stage" + i)
+				.inflow("/stage" + (i - 1), "input")
+				.bean(new PassThrough())
+				.outflow("output", "/stage" + i));
+		}
+
+		return builder.build();
+	}
+}
@@ -0,0 +1,119 @@
+package org.restflow.benchmarks;
+
+import org.restflow.WorkflowRunner;
+import org.restflow.util.TestUtilities;
+
+
+/**
+ * Measures the step rate of a ParallelWorkflow that adds one to each of a sequence of
+ * integers, for sequences of 10, 100 and 1000 integers.  Every step of the parallel
+ * workflow instantiates a new copy of its subworkflow from the workflow definition, so
+ * the rate is dominated by the cost of that instantiation.
+ *
+ * Usage: ParallelWorkflowIterationBenchmark [iterations...]
+ */
+public class ParallelWorkflowIterationBenchmark {
+
+	private static final String EOL = System.getProperty("line.separator");
+
+	public static void main(String[] args) throws Exception {
+
+		int[] iterationCounts = {10, 100, 1000};
+		if (args.length > 0) {
+			iterationCounts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				iterationCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		String runsDirectory = TestUtilities.getTestRunsDirectoryPath();
+
+		System.out.println("iterations\tmillis\tsteps/sec");
+
+		for (int iterations : iterationCounts) {
+
+			WorkflowRunner runner = new WorkflowRunner.Builder()
+				.workflowDefinitionString(_workflowDefinition(iterations))
+				.workflowName("IterateInParallelWorkflow")
+				.runsDirectory(runsDirectory)
+				.suppressWorkflowStdout(true)
+				.build();
+
+			long start = System.nanoTime();
+			runner.run();
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			runner.dispose();
+
+			System.out.println(iterations + "\t" + millis + "\t" + (iterations * 1000L / Math.max(millis, 1)));
+		}
+	}
+
+	private static String _workflowDefinition(int iterations) {
+		return
+			"imports:"																	+ EOL +
+			"  - classpath:/org/restflow/types.yaml"									+ EOL +
+			"  - classpath:/org/restflow/java/actors.yaml"								+ EOL +
+			"  - classpath:/org/restflow/directors.yaml"								+ EOL +
+			"components:"																+ EOL +
+			"  - id: Inputs"															+ EOL +
+			"    type: InPortal"														+ EOL +
+			"    properties:"															+ EOL +
+			"      outflows:"															+ EOL +
+			"        value: /value"														+ EOL +
+			"  - id: Increment"															+ EOL +
+			"    type: Node"															+ EOL +
+			"    properties:"															+ EOL +
+			"      actor: !ref Adder"													+ EOL +
+			"      stepsOnce: true"														+ EOL +
+			"      constants:"															+ EOL +
+			"        b: 1"																+ EOL +
+			"      inflows:"															+ EOL +
+			"        a: /value"															+ EOL +
+			"      outflows:"															+ EOL +
+			"        sum: /sum"															+ EOL +
+			"  - id: Outputs"															+ EOL +
+			"    type: OutPortal"														+ EOL +
+			"    properties:"															+ EOL +
+			"      inflows:"															+ EOL +
+			"        sum: /sum"															+ EOL +
+			"  - id: IncrementOnce"														+ EOL +
+			"    type: ParallelWorkflow"												+ EOL +
+			"    properties:"															+ EOL +
+			"      director: !ref DataDrivenDirector"									+ EOL +
+			"      nodes:"																+ EOL +
+			"        - !ref Inputs"														+ EOL +
+			"        - !ref Increment"													+ EOL +
+			"        - !ref Outputs"													+ EOL +
+			"      inputs:"																+ EOL +
+			"        value:"															+ EOL +
+			"      outputs:"															+ EOL +
+			"        sum:"																+ EOL +
+			"  - id: GenerateValues"													+ EOL +
+			"    type: Node"															+ EOL +
+			"    properties:"															+ EOL +
+			"      actor: !ref IntegerSequenceGenerator"								+ EOL +
+			"      endFlowOnNoOutput: true"												+ EOL +
+			"      constants:"															+ EOL +
+			"        initial: 1"														+ EOL +
+			"        step: 1"															+ EOL +
+			"        max: " + iterations												+ EOL +
+			"      outflows:"															+ EOL +
+			"        value: /values"													+ EOL +
+			"  - id: IncrementValues"													+ EOL +
+			"    type: Node"															+ EOL +
+			"    properties:"															+ EOL +
+			"      actor: !ref IncrementOnce"											+ EOL +
+			"      inflows:"															+ EOL +
+			"        value: /values"													+ EOL +
+			"      outflows:"															+ EOL +
+			"        sum: /sums"														+ EOL +
+			"  - id: IterateInParallelWorkflow"											+ EOL +
+			"    type: Workflow"														+ EOL +
+			"    properties:"															+ EOL +
+			"      director: !ref DataDrivenDirector"									+ EOL +
+			"      nodes:"																+ EOL +
+			"        - !ref GenerateValues"												+ EOL +
+			"        - !ref IncrementValues"											+ EOL;
+	}
+}
@@ -0,0 +1,112 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.DataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+
+
+/**
+ * Measures the bytes allocated per packet by the nodes of a linear chain of pass-through
+ * stages run by the DataDrivenDirector, which steps every node on the calling thread.
+ * The same packets are run through a chain of one stage and a chain of many stages, and
+ * the difference in the bytes allocated, divided by the number of additional hops, is
+ * the allocation per packet of one pass-through node.  That figure still includes the
+ * packet each stage publishes, its URI and the boxed step count, which no change to the
+ * receive path can remove.  Each configuration is run several times and the smallest
+ * allocation is reported.
+ *
+ * Usage: PassThroughNodeAllocationBenchmark [packets]
+ */
+public class PassThroughNodeAllocationBenchmark {
+
+	private static final int STAGES = 20;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+
+		long shortChain = _leastAllocated(1, packets);
+		long longChain = _leastAllocated(1 + STAGES, packets);
+
+		System.out.println("stages\tpackets\tbytes/packet/hop");
+		System.out.println(STAGES + "\t" + packets + "\t" + (longChain - shortChain) / ((long)STAGES * packets));
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() {
+			output = input;
+		}
+	}
+
+	private static long _leastAllocated(int stages, int packets) throws Exception {
+
+		long least = Long.MAX_VALUE;
+
+		for (int run = 0; run < RUNS; run++) {
+
+			Workflow workflow = _buildChain(stages, packets);
+			workflow.configure();
+			workflow.initialize();
+
+			long allocatedBefore = _allocatedBytes();
+			workflow.run();
+			least = Math.min(least, _allocatedBytes() - allocatedBefore);
+
+			workflow.wrapup();
+			workflow.dispose();
+		}
+
+		return least;
+	}
+
+	private static Workflow _buildChain(int stages, int packets) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < packets; i++) {
+			values.add(i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("Chain")
+			.context(context)
+			.director(new DataDrivenDirector())
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/stage"));
+
+		for (int i = 0; i < stages; i++) {
+			builder.node(new JavaNodeBuilder()
+				.name("Stage" + i)
+				.inflow((i == 0) ? "/stage" : "/stage" + (i - 1), "input")
+				.bean(new PassThrough())
+				.outflow("output", "/stage" + i));
+		}
+
+		return builder.build();
+	}
+
+	private static long _allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
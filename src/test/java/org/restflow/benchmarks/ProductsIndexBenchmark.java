@@ -0,0 +1,69 @@
+package org.restflow.benchmarks;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.restflow.metadata.FileSystemMetadataManager;
+import org.restflow.metadata.ProductsIndexWriter;
+import org.restflow.util.PortableIO;
+import org.restflow.util.TestUtilities;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+
+/**
+ * Measures the rate at which small published values are appended to the products index
+ * of a run, first as BasicTraceRecorder once appended them, building a serializer and
+ * writing each entry to the products file on the publishing thread, and then through
+ * a ProductsIndexWriter.  The times reported include syncing the products file once
+ * every entry has been written.
+ *
+ * Usage: ProductsIndexBenchmark [entries]
+ */
+public class ProductsIndexBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+		System.out.println("method\tentries\tmillis\tentries/sec\tbytes");
+
+		FileSystemMetadataManager manager = _createMetadataManager("ProductsIndexSynchronous");
+		long start = System.nanoTime();
+		for (int i = 0; i < entries; i++) {
+			DumperOptions options = new DumperOptions();
+			options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+			options.setWidth(160);
+			Map<String,String> map = new HashMap<String,String>();
+			map.put("/values/" + i, String.valueOf(i));
+			manager.writeToProductsFile(new Yaml(options).dump(map));
+		}
+		manager.syncProductsFile();
+		_report("synchronous", entries, System.nanoTime() - start, manager);
+
+		manager = _createMetadataManager("ProductsIndexWriter");
+		ProductsIndexWriter writer = new ProductsIndexWriter();
+		start = System.nanoTime();
+		for (int i = 0; i < entries; i++) {
+			writer.appendValue(manager, "/values/" + i, String.valueOf(i));
+		}
+		writer.flush();
+		_report("writer", entries, System.nanoTime() - start, manager);
+	}
+
+	private static FileSystemMetadataManager _createMetadataManager(String name) throws Exception {
+		File runDirectory = PortableIO.createUniqueTimeStampedDirectory(
+				TestUtilities.getTestRunsDirectoryPath(), name);
+		FileSystemMetadataManager manager = new FileSystemMetadataManager();
+		manager.setRunDirectory(runDirectory.getAbsolutePath());
+		manager.createProductsFileStream();
+		return manager;
+	}
+
+	private static void _report(String method, int entries, long nanos,
+			FileSystemMetadataManager manager) throws Exception {
+		System.out.println(method + "\t" + entries + "\t" + nanos / 1000000 + "\t" +
+				(long)(entries / (nanos / 1e9)) + "\t" + manager.getProductsAsString().length());
+	}
+}
@@ -0,0 +1,111 @@
+package org.restflow.benchmarks;
+
+import org.restflow.WorkflowRunner;
+import org.restflow.util.TestUtilities;
+
+
+/**
+ * Compares the step latency and memory use of a RestFlowActor that runs the Adder workflow
+ * in a child JVM on each step with one that runs it in process.  A sequence generator
+ * drives the actor through the given number of steps in each mode.  Memory is reported as
+ * the heap in use in this JVM after a garbage collection; in the process mode each step
+ * additionally starts a JVM whose memory is not included.
+ *
+ * Usage: RestFlowActorRunModeBenchmark [steps]
+ */
+public class RestFlowActorRunModeBenchmark {
+
+	private static final String EOL = System.getProperty("line.separator");
+
+	public static void main(String[] args) throws Exception {
+
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+
+		String runsDirectory = TestUtilities.getTestRunsDirectoryPath();
+
+		System.out.println("mode\tsteps\tms/step\theap KB");
+
+		for (String runMode : new String[] {"process", "inprocess"}) {
+
+			WorkflowRunner runner = new WorkflowRunner.Builder()
+				.workflowDefinitionString(_workflowDefinition(runMode, steps))
+				.workflowName("IncrementValues")
+				.runsDirectory(runsDirectory)
+				.suppressWorkflowStdout(true)
+				.build();
+
+			long heapBefore = _usedHeap();
+			long start = System.nanoTime();
+			runner.run();
+			long elapsed = System.nanoTime() - start;
+			long heapAfter = _usedHeap();
+
+			runner.dispose();
+
+			System.out.println(runMode + "\t" + steps + "\t" + (elapsed / 1000000.0 / steps) + "\t"
+					+ ((heapAfter - heapBefore) / 1024));
+		}
+	}
+
+	private static long _usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String _workflowDefinition(String runMode, int steps) {
+		return
+			"imports:"																	+ EOL +
+			"  - classpath:/org/restflow/types.yaml"									+ EOL +
+			"  - classpath:/org/restflow/java/actors.yaml"								+ EOL +
+			"  - classpath:/org/restflow/directors.yaml"								+ EOL +
+			"types:"																	+ EOL +
+			"  - id: RestFlowActor"														+ EOL +
+			"    className: org.restflow.actors.RestFlowActor"							+ EOL +
+			"    singleton: false"														+ EOL +
+			"components:"																+ EOL +
+			"  - id: NestedAdder"														+ EOL +
+			"    type: RestFlowActor"													+ EOL +
+			"    properties:"															+ EOL +
+			"      usesStepDirectory: true"												+ EOL +
+			"      settings:"															+ EOL +
+			"        restflow-file: classpath:/org/restflow/java/actors.yaml"			+ EOL +
+			"        restflow-workflow: Adder"											+ EOL +
+			"        restflow-runMode: " + runMode										+ EOL +
+			"      inputs:"																+ EOL +
+			"        a:"																+ EOL +
+			"        b:"																+ EOL +
+			"      outputs:"															+ EOL +
+			"        sum:"																+ EOL +
+			"  - id: GenerateValues"													+ EOL +
+			"    type: Node"															+ EOL +
+			"    properties:"															+ EOL +
+			"      actor: !ref IntegerSequenceGenerator"								+ EOL +
+			"      endFlowOnNoOutput: true"												+ EOL +
+			"      constants:"															+ EOL +
+			"        initial: 1"														+ EOL +
+			"        step: 1"															+ EOL +
+			"        max: " + steps														+ EOL +
+			"      outflows:"															+ EOL +
+			"        value: /values"													+ EOL +
+			"  - id: AddOne"															+ EOL +
+			"    type: Node"															+ EOL +
+			"    properties:"															+ EOL +
+			"      actor: !ref NestedAdder"												+ EOL +
+			"      constants:"															+ EOL +
+			"        b: 1"																+ EOL +
+			"      inflows:"															+ EOL +
+			"        a: /values"														+ EOL +
+			"      outflows:"															+ EOL +
+			"        sum: /sums"														+ EOL +
+			"  - id: IncrementValues"													+ EOL +
+			"    type: Workflow"														+ EOL +
+			"    properties:"															+ EOL +
+			"      director: !ref DataDrivenDirector"									+ EOL +
+			"      nodes:"																+ EOL +
+			"        - !ref GenerateValues"												+ EOL +
+			"        - !ref AddOne"														+ EOL;
+	}
+}
@@ -0,0 +1,151 @@
+package org.restflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.data.Outflow;
+import org.restflow.directors.OutflowSubscriptions;
+import org.restflow.directors.RoutingTable;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.nodes.NodeInput;
+import org.restflow.nodes.WorkflowNode;
+
+
+/**
+ * Measures the cost of finding the receivers of a packet sent by a node with several
+ * outflows, each read by a number of receiving nodes.  The map lookup resolves the node's
+ * outflow map and an OutflowSubscriptions lookup per outflow, as directors did before
+ * routing tables; the routing table lookup walks the arrays compiled at elaborate().
+ * Neither delivers the packet, so only the dispatch is measured.  Each configuration is
+ * run several times and the fastest run is reported.
+ *
+ * Usage: RoutingTableDispatchBenchmark [packets [receivers ...]]
+ *
+ * Defaults to 1000000 packets from a node with 4 outflows read by 1, 8 and 64 receivers.
+ */
+public class RoutingTableDispatchBenchmark {
+
+	private static final int RUNS = 5;
+	private static final int OUTFLOWS = 4;
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+		List<Integer> fanOuts = new ArrayList<Integer>();
+		for (int i = 1; i < args.length; i++) {
+			fanOuts.add(Integer.parseInt(args[i]));
+		}
+		if (fanOuts.isEmpty()) {
+			fanOuts.add(1);
+			fanOuts.add(8);
+			fanOuts.add(64);
+		}
+
+		System.out.println("receivers\tpackets\tmap ns/packet\ttable ns/packet");
+
+		for (int receivers : fanOuts) {
+
+			Workflow workflow = _buildFanOut(receivers);
+			OutflowSubscriptions subscriptions = new OutflowSubscriptions(workflow.getInflowToOutflowsMap());
+			RoutingTable routingTable = new RoutingTable(workflow.getNodes(), workflow.getInflowToOutflowsMap());
+			
+			WorkflowNode source = workflow.getNodes().get(0);
+			int sourceId = routingTable.nodeId(source);
+
+			long fastestMap = Long.MAX_VALUE;
+			long fastestTable = Long.MAX_VALUE;
+			long checksum = 0;
+
+			for (int run = 0; run < RUNS; run++) {
+
+				long start = System.nanoTime();
+				checksum += _dispatchWithMaps(source, subscriptions, packets);
+				fastestMap = Math.min(fastestMap, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				checksum -= _dispatchWithTable(routingTable, sourceId, packets);
+				fastestTable = Math.min(fastestTable, System.nanoTime() - start);
+			}
+
+			if (checksum != 0) {
+				throw new IllegalStateException("Lookups found different receivers");
+			}
+
+			System.out.println(receivers + "\t" + packets + "\t" + 
+					(double)fastestMap / packets + "\t" + (double)fastestTable / packets);
+		}
+	}
+
+	private static long _dispatchWithMaps(WorkflowNode node, OutflowSubscriptions subscriptions, int packets) {
+		long found = 0;
+		for (int i = 0; i < packets; i++) {
+			for (Outflow outflow : node.getOutflows().values()) {
+				List<NodeInput> nodeInputs = subscriptions.findAllNodeInputsBoundToOutflow(outflow);
+				if (nodeInputs != null) {
+					for (NodeInput nodeInput : nodeInputs) {
+						found += nodeInput.getInputLabel().length();
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	private static long _dispatchWithTable(RoutingTable routingTable, int nodeId, int packets) {
+		long found = 0;
+		for (int i = 0; i < packets; i++) {
+			for (RoutingTable.Route route : routingTable.routesFrom(nodeId)) {
+				for (int j = 0; j < route.receivers.length; j++) {
+					found += route.receiverLabels[j].length();
+				}
+			}
+		}
+		return found;
+	}
+
+	public static class MultiOutput {
+		public Object out0, out1, out2, out3;
+		public void step() { }
+	}
+
+	public static class Sink {
+		public Object input;
+		public void step() { }
+	}
+
+	private static Workflow _buildFanOut(int receivers) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		JavaNodeBuilder source = new JavaNodeBuilder();
+		source.name("Source");
+		source.bean(new MultiOutput());
+		for (int i = 0; i < OUTFLOWS; i++) {
+			source.outflow("out" + i, "/out" + i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("FanOut")
+			.context(context)
+			.node(source);
+
+		for (int i = 0; i < receivers; i++) {
+			builder.node(new JavaNodeBuilder()
+				.name("Receiver" + i)
+				.inflow("/out" + (i % OUTFLOWS), "input")
+				.bean(new Sink()));
+		}
+
+		return builder.build();
+	}
+}
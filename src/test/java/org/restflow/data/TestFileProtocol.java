@@ -1,14 +1,24 @@
 package org.restflow.data;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.sql.ResultSet;
+
+import org.apache.commons.io.FileUtils;
 
 import org.restflow.WorkflowContext;
 import org.restflow.WorkflowContextBuilder;
 import org.restflow.actors.CloneableBean;
+import org.restflow.actors.JavaActorBuilder;
 import org.restflow.actors.Workflow;
 import org.restflow.actors.WorkflowBuilder;
 import org.restflow.data.ConsumableObjectStore;
 import org.restflow.data.FileProtocol;
+import org.restflow.data.FileProtocol.PublishMode;
+import org.restflow.metadata.FileSystemMetadataManager;
+import org.restflow.metadata.Trace;
+import org.restflow.nodes.ActorNodeBuilder;
 import org.restflow.nodes.JavaNodeBuilder;
 import org.restflow.nodes.WorkflowNodeBuilder;
 import org.restflow.test.RestFlowTestCase;
@@ -368,4 +378,232 @@ public class TestFileProtocol extends RestFlowTestCase {
 		assertTrue(outputFile3.isFile());
 		assertEquals("12" + PortableIO.EOL, PortableIO.readTextFile(outputFile3));
 	}
+	
+	public void testPublishMode_Copy() throws Exception {
+		
+		File[] files = _runPublishWorkflow(PublishMode.COPY, 0);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the output file is copied to the run directory and again to the step directory
+		assertTrue(sourceFile.isFile());
+		assertFalse(Files.isSameFile(sourceFile.toPath(), publishedFile.toPath()));
+		assertFalse(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+	}
+
+	public void testPublishMode_Hardlink() throws Exception {
+		
+		File[] files = _runPublishWorkflow(PublishMode.HARDLINK, 0);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the output, published, and received files are all the same file on disk
+		assertFalse(Files.isSymbolicLink(publishedFile.toPath()));
+		assertTrue(Files.isSameFile(sourceFile.toPath(), publishedFile.toPath()));
+		assertTrue(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+	}
+
+	public void testPublishMode_Hardlink_MutableInput() throws Exception {
+		
+		File[] files = _runPublishWorkflow(PublishMode.HARDLINK, InputProperty.Mutable);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the published file is linked but the actor that may modify its input gets a copy
+		assertTrue(Files.isSameFile(sourceFile.toPath(), publishedFile.toPath()));
+		assertFalse(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+	}
+
+	public void testPublishMode_Symlink() throws Exception {
+		
+		File[] files = _runPublishWorkflow(PublishMode.SYMLINK, 0);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the published and received files are symbolic links to the output file
+		assertTrue(Files.isSymbolicLink(publishedFile.toPath()));
+		assertTrue(Files.isSymbolicLink(receivedFile.toPath()));
+		assertTrue(Files.isSameFile(sourceFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+	}
+
+	public void testPublishMode_Move() throws Exception {
+		
+		File[] files = _runPublishWorkflow(PublishMode.MOVE, 0);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the output file is moved to the run directory and linked to the step directory
+		assertFalse(sourceFile.exists());
+		assertTrue(publishedFile.isFile());
+		assertTrue(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+
+		// the published resource refers to the moved file rather than to the output file
+		assertEquals(publishedFile.getCanonicalFile(), ((File)_store.get("/data.txt")).getCanonicalFile());
+	}
+
+	public void testDeduplicate_OutputFiles_Move() throws Exception {
+
+		File[] files = _runPublishWorkflow(PublishMode.MOVE, 0, true);
+		File sourceFile = files[0], publishedFile = files[1];
+
+		assertFalse(sourceFile.exists());
+		assertTrue(publishedFile.isFile());
+		assertEquals(publishedFile.getCanonicalFile(), ((File)_store.get("/data.txt")).getCanonicalFile());
+	}
+
+	public void testDeduplicate_IdenticalFilesShareOneBlob() throws Exception {
+		
+		File runDirectory = PortableIO.createUniqueTimeStampedDirectory(
+				_testRunsDirectoryPath, "testDeduplicate");
+		
+		FileProtocol protocol = new FileProtocol();
+		protocol.setDeduplicate(true);
+		
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(_store)
+			.scheme("file", protocol)
+			.runDirectory(runDirectory)
+			.build();
+		
+		final Workflow workflow = new WorkflowBuilder() 
+			.context(context)
+			.node(new JavaNodeBuilder()
+				.bean(new Object() {
+					public String first, second, third;
+					public void step() {
+						first = "Hello";
+						second = "Hello";
+						third = "Hey";
+					}
+				})
+				.outflow("first", "file:/first.txt")
+				.outflow("second", "file:/second.txt")
+				.outflow("third", "file:/third.txt"))
+			.build();
+		workflow.configure();
+		workflow.initialize();
+		
+		new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {workflow.run();}});
+
+		File first = new File(runDirectory, "first.txt");
+		File second = new File(runDirectory, "second.txt");
+		File third = new File(runDirectory, "third.txt");
+		
+		// identical files are the same file on disk and distinct files are not
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(first));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(second));
+		assertEquals("Hey" + PortableIO.EOL, PortableIO.readTextFile(third));
+		assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+		assertFalse(Files.isSameFile(first.toPath(), third.toPath()));
+		
+		// the published files are links to blobs stored under their digests
+		String firstDigest = ContentAddressedStore.digest(first);
+		File firstBlob = protocol.getContentStore().getBlob(firstDigest);
+		assertTrue(Files.isSameFile(first.toPath(), firstBlob.toPath()));
+		assertEquals(firstDigest, ContentAddressedStore.digest(firstBlob));
+		assertEquals(64, firstDigest.length());
+		
+		// the digests are recorded with the resources in the trace
+		Trace trace = context.getTrace();
+		ResultSet resultSet = trace.query("SELECT Uri, Digest FROM Resource WHERE Digest IS NOT NULL ORDER BY Uri");
+		assertTrue(resultSet.next());
+		assertEquals("file:/first.txt", resultSet.getString("Uri"));
+		assertEquals(firstDigest, resultSet.getString("Digest"));
+		assertTrue(resultSet.next());
+		assertEquals("file:/second.txt", resultSet.getString("Uri"));
+		assertEquals(firstDigest, resultSet.getString("Digest"));
+		assertTrue(resultSet.next());
+		assertEquals("file:/third.txt", resultSet.getString("Uri"));
+		assertEquals(ContentAddressedStore.digest(third), resultSet.getString("Digest"));
+		assertFalse(resultSet.next());
+	}
+
+	public void testDeduplicate_OutputFiles_Hardlink() throws Exception {
+
+		File[] files = _runPublishWorkflow(PublishMode.HARDLINK, 0, true);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the blob is a read-only copy of the output file and all other files are links to it
+		File blob = new ContentAddressedStore(new File(publishedFile.getParent() + FileSystemMetadataManager.METADATA_DIR + 
+				FileProtocol.CONTENT_STORE_DIRECTORY)).getBlob(ContentAddressedStore.digest(publishedFile));
+		assertFalse(Files.isSameFile(sourceFile.toPath(), publishedFile.toPath()));
+		assertTrue(Files.isSameFile(blob.toPath(), publishedFile.toPath()));
+		assertTrue(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertFalse(Files.getPosixFilePermissions(blob.toPath()).contains(PosixFilePermission.OWNER_WRITE));
+		assertTrue(Files.getPosixFilePermissions(sourceFile.toPath()).contains(PosixFilePermission.OWNER_WRITE));
+	}
+
+	public void testDeduplicate_OutputFiles_Copy() throws Exception {
+
+		File[] files = _runPublishWorkflow(PublishMode.COPY, 0, true);
+		File sourceFile = files[0], publishedFile = files[1], receivedFile = files[2];
+		
+		// the output file is left alone and the subscriber still receives a copy
+		assertFalse(Files.isSameFile(sourceFile.toPath(), publishedFile.toPath()));
+		assertFalse(Files.isSameFile(publishedFile.toPath(), receivedFile.toPath()));
+		assertEquals("Hello" + PortableIO.EOL, PortableIO.readTextFile(receivedFile));
+	}
+
+	private File[] _runPublishWorkflow(PublishMode mode, int inputProperties) throws Exception {
+		return _runPublishWorkflow(mode, inputProperties, false);
+	}
+	
+	// runs a workflow in which one node outputs a file it wrote outside of the run directory
+	// and another receives it, returning the output, published, and received files
+	private File[] _runPublishWorkflow(PublishMode mode, int inputProperties, boolean deduplicate) throws Exception {
+		
+		final File runDirectory = PortableIO.createUniqueTimeStampedDirectory(
+				_testRunsDirectoryPath, "testPublishMode");
+		final File sourceDirectory = PortableIO.createUniqueTimeStampedDirectory(
+				_testRunsDirectoryPath, "testPublishModeSource");
+		
+		FileProtocol protocol = new FileProtocol();
+		protocol.setPublishMode(mode);
+		protocol.setDeduplicate(deduplicate);
+		
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(_store)
+			.scheme("file", protocol)
+			.runDirectory(runDirectory)
+			.build();
+
+		final File[] files = new File[3];
+		files[0] = new File(sourceDirectory, "data.txt");
+		files[1] = new File(runDirectory, "data.txt");
+		
+		final Workflow workflow = new WorkflowBuilder() 
+
+			.context(context)
+			
+			.node(new JavaNodeBuilder()
+				.bean(new Object() {
+					public File data;
+					public void step() throws Exception {
+						data = files[0];
+						FileUtils.writeStringToFile(data, "Hello" + PortableIO.EOL);
+					}
+				})
+				.outflow("data", "file:/data.txt"))
+				
+			.node(new ActorNodeBuilder()
+				.actor(new JavaActorBuilder()
+					.bean(new Object() {
+						public File data;
+						public void step() { files[2] = data; }
+					})
+					.input("data", inputProperties))
+				.inflow("file:/data.txt", "data"))
+				
+			.build();
+		
+		workflow.configure();
+		workflow.initialize();
+		
+		new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {workflow.run();}});
+		
+		assertNotNull(files[2]);
+		return files;
+	}
 }
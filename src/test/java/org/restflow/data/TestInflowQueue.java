@@ -0,0 +1,87 @@
+package org.restflow.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestInflowQueue extends RestFlowTestCase {
+
+	private InflowQueue _queue;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		_queue = new InflowQueue("Node", "input");
+	}
+	
+	public void testEmptyQueue() {
+		assertEquals("Node", _queue.getNodeName());
+		assertEquals("input", _queue.getLabel());
+		assertTrue(_queue.isEmpty());
+		assertNull(_queue.peek());
+		assertNull(_queue.poll());
+		assertEquals(0, _queue.toList().size());
+	}
+	
+	public void testFirstInFirstOut_AcrossGrowth() throws Exception {
+
+		List<Packet> packets = _packets(100);
+		for (Packet packet : packets) {
+			_queue.add(packet);
+		}
+		assertEquals(100, _queue.size());
+		assertEquals(packets, _queue.toList());
+
+		for (Packet packet : packets) {
+			assertSame(packet, _queue.peek());
+			assertSame(packet, _queue.poll());
+		}
+		assertTrue(_queue.isEmpty());
+	}
+
+	public void testFirstInFirstOut_WrappedAround() throws Exception {
+
+		List<Packet> packets = _packets(20);
+
+		// move the head of the queue away from the start of the array before it grows
+		for (int i = 0; i < 5; i++) {
+			_queue.add(packets.get(i));
+		}
+		for (int i = 0; i < 3; i++) {
+			assertSame(packets.get(i), _queue.poll());
+		}
+		for (int i = 5; i < 20; i++) {
+			_queue.add(packets.get(i));
+		}
+
+		assertEquals(packets.subList(3, 20), _queue.toList());
+		for (int i = 3; i < 20; i++) {
+			assertSame(packets.get(i), _queue.poll());
+		}
+		assertNull(_queue.poll());
+	}
+
+	public void testClear() throws Exception {
+
+		for (Packet packet : _packets(10)) {
+			_queue.add(packet);
+		}
+		_queue.clear();
+		assertTrue(_queue.isEmpty());
+		assertNull(_queue.peek());
+
+		Packet packet = _packets(1).get(0);
+		_queue.add(packet);
+		assertEquals(1, _queue.size());
+		assertSame(packet, _queue.poll());
+	}
+
+	private List<Packet> _packets(int count) throws Exception {
+		List<Packet> packets = new ArrayList<Packet>();
+		for (int i = 0; i < count; i++) {
+			packets.add(new SingleResourcePacket(i));
+		}
+		return packets;
+	}
+}
@@ -0,0 +1,221 @@
+package org.restflow.directors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.test.RestFlowTestCase;
+import org.restflow.util.StdoutRecorder;
+
+
+public class TestDataDrivenDirector_ParallelWaves extends RestFlowTestCase {
+
+	private static final int BRANCH_COUNT = 8;
+	private static final Map<String,List<Object>> _received = new ConcurrentHashMap<String,List<Object>>();
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		_received.clear();
+	}
+	
+	public void test_ParallelWaves_DefaultsToSequential() throws Exception {
+		assertFalse(new DataDrivenDirector().isParallel());
+	}
+	
+	public void test_ParallelWaves_FanOut() throws Exception {
+		
+		_runWorkflow(_buildFanOut(new DataDrivenDirector()));
+		Map<String,List<Object>> sequentialResults = new ConcurrentHashMap<String,List<Object>>(_received);
+		_received.clear();
+		
+		DataDrivenDirector director = new DataDrivenDirector();
+		director.setParallel(true);
+		_runWorkflow(_buildFanOut(director));
+		
+		assertEquals(BRANCH_COUNT, _received.size());
+		assertEquals(sequentialResults, _received);
+		assertEquals(_expectedProducts(3), _received.get("Collect3"));
+	}
+
+	public void test_ParallelWaves_UnusedData() throws Exception {
+		
+		StdoutRecorder sequential = _runWorkflow(_buildJoin(new DataDrivenDirector(), false));
+		_received.clear();
+		
+		DataDrivenDirector director = new DataDrivenDirector();
+		director.setParallel(true);
+		StdoutRecorder parallel = _runWorkflow(_buildJoin(director, false));
+		
+		assertEquals(3, _received.get("Join").size() / 2);
+		assertTrue(parallel.getStderrRecording().contains("wrapped up with unused data packets"));
+		assertTrue(parallel.getStderrRecording().contains("Join"));
+		assertEquals(sequential.getStderrRecording(), parallel.getStderrRecording());
+	}
+	
+	public void test_ParallelWaves_ExceptionInNode() throws Exception {
+		
+		DataDrivenDirector director = new DataDrivenDirector();
+		director.setParallel(true);
+		Workflow workflow = _buildJoin(director, true);
+		
+		workflow.configure();
+		workflow.initialize();
+		
+		Exception exception = null;
+		try {
+			workflow.run();
+		} catch (Exception e) {
+			exception = e;
+		}
+		
+		assertNotNull(exception);
+		assertTrue(_stackTraceContains(exception, "Join failed on 3"));
+	}
+
+	public static class Multiplier {
+		public Integer value, factor, product;
+		public void step() { product = value * factor; }
+	}
+	
+	public static class Collector {
+		public String name;
+		public Object value;
+		public void step() { _record(name, value); }
+	}
+
+	public static class Joiner {
+		public Integer a, b;
+		public boolean fail;
+		public void step() throws Exception { 
+			if (fail && a == 3) throw new Exception("Join failed on " + a);
+			_record("Join", a);
+			_record("Join", b);
+		}
+	}
+
+	private static void _record(String name, Object value) {
+		synchronized(_received) {
+			List<Object> values = _received.get(name);
+			if (values == null) {
+				values = Collections.synchronizedList(new ArrayList<Object>());
+				_received.put(name, values);
+			}
+			values.add(value);
+		}
+	}
+	
+	private static List<Object> _expectedProducts(int factor) {
+		List<Object> products = new ArrayList<Object>();
+		for (int i = 1; i <= 20; i++) {
+			products.add(i * factor);
+		}
+		return products;
+	}
+	
+	private static boolean _stackTraceContains(Throwable t, String message) {
+		for (; t != null; t = t.getCause()) {
+			if (String.valueOf(t.getMessage()).contains(message)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private StdoutRecorder _runWorkflow(final Workflow workflow) throws Exception {
+		workflow.configure();
+		workflow.initialize();
+		StdoutRecorder recorder = new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception { workflow.run(); }
+		});
+		workflow.wrapup();
+		workflow.dispose();
+		return recorder;
+	}
+	
+	private WorkflowContext _newContext() throws Exception {
+		return new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+	}
+	
+	// sends the values 1 through 20 down branches that each multiply the values by a
+	// different factor and collect the products
+	private Workflow _buildFanOut(DataDrivenDirector director) throws Exception {
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 1; i <= 20; i++) {
+			values.add(i);
+		}
+
+		WorkflowBuilder builder = new WorkflowBuilder();
+		builder.name("FanOut")
+			.context(_newContext())
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("value", values)
+				.bean(new Object() {
+					public Object value, output;
+					public void step() { output = value; }
+				})
+				.outflow("output", "/values"));
+		
+		for (int i = 1; i <= BRANCH_COUNT; i++) {
+			builder.node(new JavaNodeBuilder()
+					.name("Multiply" + i)
+					.inflow("/values", "value")
+					.constant("factor", i)
+					.bean(new Multiplier())
+					.outflow("product", "/products" + i))
+				.node(new JavaNodeBuilder()
+					.name("Collect" + i)
+					.inflow("/products" + i, "value")
+					.constant("name", "Collect" + i)
+					.bean(new Collector()));
+		}
+		
+		return builder.build();
+	}
+
+	// joins a stream of five values with a stream of three, leaving two values unused
+	private Workflow _buildJoin(DataDrivenDirector director, boolean fail) throws Exception {
+		
+		return new WorkflowBuilder()
+			.name("UnequalJoin")
+			.context(_newContext())
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("A")
+				.sequence("value", new Object[] {1, 2, 3, 4, 5})
+				.bean(new Object() {
+					public Object value, output;
+					public void step() { output = value; }
+				})
+				.outflow("output", "/a"))
+			.node(new JavaNodeBuilder()
+				.name("B")
+				.sequence("value", new Object[] {10, 20, 30})
+				.bean(new Object() {
+					public Object value, output;
+					public void step() { output = value; }
+				})
+				.outflow("output", "/b"))
+			.node(new JavaNodeBuilder()
+				.name("Join")
+				.inflow("/a", "a")
+				.inflow("/b", "b")
+				.constant("fail", fail)
+				.bean(new Joiner()))
+			.build();
+	}
+}
@@ -0,0 +1,140 @@
+package org.restflow.directors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestMTDataDrivenDirector_BoundedQueues extends RestFlowTestCase {
+
+	private static final int PACKET_COUNT = 100;
+	private static final AtomicInteger _packetsReceived = new AtomicInteger(0);
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		_packetsReceived.set(0);
+	}
+	
+	public void test_InflowQueueCapacity_DefaultsToUnbounded() throws Exception {
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		assertEquals(0, director.getInflowQueueCapacity());
+	}
+	
+	public void test_InflowQueueCapacity_Negative() throws Exception {
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		Exception exception = null;
+		try {
+			director.setInflowQueueCapacity(-1);
+		} catch (Exception e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		assertEquals("Inflow queue capacity must be zero or greater.", exception.getMessage());
+	}
+	
+	public void test_BoundedQueue_Threads() throws Exception {
+		
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		director.setInflowQueueCapacity(4);
+		
+		InflowQueueStatistics statistics = _runFastSourceSlowSink(director);
+
+		assertEquals(PACKET_COUNT, _packetsReceived.get());
+		assertEquals("Sink", statistics.getNodeName());
+		assertEquals("input", statistics.getLabel());
+		assertEquals(0, statistics.getDepth());
+		assertTrue(statistics.getMaxDepth() <= 4);
+		assertTrue(statistics.getTimesFull() > 0);
+	}
+
+	public void test_BoundedQueue_Pooled() throws Exception {
+		
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		director.setPooled(true);
+		director.setInflowQueueCapacity(4);
+		
+		InflowQueueStatistics statistics = _runFastSourceSlowSink(director);
+
+		assertEquals(PACKET_COUNT, _packetsReceived.get());
+		assertEquals(0, statistics.getDepth());
+		assertTrue(statistics.getMaxDepth() <= 5);
+		assertTrue(statistics.getTimesFull() > 0);
+		
+		// the queue is counted as full at most once for each packet the sink takes
+		assertTrue(statistics.getTimesFull() <= PACKET_COUNT);
+	}
+
+	public void test_UnboundedQueue_Threads() throws Exception {
+		
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		
+		InflowQueueStatistics statistics = _runFastSourceSlowSink(director);
+
+		assertEquals(PACKET_COUNT, _packetsReceived.get());
+		assertEquals(0, statistics.getTimesFull());
+		assertTrue(statistics.getMaxDepth() > 4);
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	public static class SlowSink {
+		public Object input;
+		public void step() throws InterruptedException { 
+			Thread.sleep(1);
+			_packetsReceived.incrementAndGet();
+		}
+	}
+
+	// runs a source that sends packets far faster than the sink can take them, and returns
+	// the statistics for the queue of the sink
+	private InflowQueueStatistics _runFastSourceSlowSink(MTDataDrivenDirector director) throws Exception {
+
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < PACKET_COUNT; i++) {
+			values.add(i);
+		}
+
+		Workflow workflow = new WorkflowBuilder()
+			.name("FastSourceSlowSink")
+			.context(context)
+			.director(director)
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/values"))
+			.node(new JavaNodeBuilder()
+				.name("Sink")
+				.inflow("/values", "input")
+				.bean(new SlowSink()))
+			.build();
+		
+		workflow.configure();
+		workflow.initialize();
+		workflow.run();
+		workflow.wrapup();
+		
+		List<InflowQueueStatistics> statistics = director.getInflowQueueStatistics();
+		workflow.dispose();
+
+		assertEquals(1, statistics.size());
+		return statistics.get(0);
+	}
+}
@@ -0,0 +1,126 @@
+package org.restflow.directors;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestRoutingTable extends RestFlowTestCase {
+
+	private RoutingTable _routingTable;
+	
+	public void setUp() throws Exception {
+		
+		super.setUp();
+		
+		WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder())
+			.build();
+
+		Workflow workflow = new WorkflowBuilder()
+			.name("FanOut")
+			.context(context)
+			.director(new PublishSubscribeDirector())
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.constant("value", 1)
+				.bean(new Object() {
+					public Object value, copy;
+					public void step() { copy = value; }
+				})
+				.outflow("value", "/value")
+				.outflow("copy", "/copy"))
+			.node(new JavaNodeBuilder()
+				.name("Left")
+				.inflow("/value", "input")
+				.bean(new Object() {
+					public Object input, output;
+					public void step() { output = input; }
+				})
+				.outflow("output", "/left"))
+			.node(new JavaNodeBuilder()
+				.name("Right")
+				.inflow("/value", "input")
+				.inflow("/left", "other")
+				.bean(new Object() {
+					public Object input, other;
+					public void step() {}
+				}))
+			.build();
+		
+		_routingTable = new RoutingTable(workflow.getNodes(), workflow.getInflowToOutflowsMap());
+	}
+	
+	public void test_NodeIds() {
+		assertEquals(3, _routingTable.getNodeCount());
+		for (int nodeId = 0; nodeId < 3; nodeId++) {
+			assertEquals(nodeId, _routingTable.nodeId(_routingTable.getNode(nodeId)));
+		}
+		assertEquals(-1, _routingTable.nodeId(null));
+	}
+
+	public void test_RoutesFromNode() {
+		
+		assertEquals(3, _routingTable.getRouteCount());
+
+		int sourceId = _nodeId("Source");
+		RoutingTable.Route[] routes = _routingTable.routesFrom(sourceId);
+		assertEquals(2, routes.length);
+
+		for (RoutingTable.Route route : routes) {
+			assertSame(route, _routingTable.getRoute(route.id));
+			assertEquals(sourceId, route.senderId);
+			assertEquals(route.outflowLabel, route.outflow.getLabel());
+			if (route.outflowLabel.equals("value")) {
+				assertEquals(2, route.receivers.length);
+				for (int i = 0; i < 2; i++) {
+					assertEquals("input", route.receiverLabels[i]);
+					assertSame(route.receivers[i], _routingTable.getNode(route.receiverIds[i]));
+				}
+			} else {
+				assertEquals("copy", route.outflowLabel);
+				assertFalse(route.hasReceivers());
+			}
+		}
+		
+		RoutingTable.Route[] leftRoutes = _routingTable.routesFrom(_nodeId("Left"));
+		assertEquals(1, leftRoutes.length);
+		assertEquals(1, leftRoutes[0].receivers.length);
+		assertEquals(_nodeId("Right"), leftRoutes[0].receiverIds[0]);
+		assertEquals("other", leftRoutes[0].receiverLabels[0]);
+		
+		assertEquals(0, _routingTable.routesFrom(_nodeId("Right")).length);
+	}
+
+	public void test_FeedsToNode() {
+		
+		assertEquals(0, _routingTable.feedsTo(_nodeId("Source")).length);
+		
+		RoutingTable.Feed[] feeds = _routingTable.feedsTo(_nodeId("Right"));
+		assertEquals(2, feeds.length);
+		for (RoutingTable.Feed feed : feeds) {
+			if (feed.inflowLabel.equals("input")) {
+				assertEquals(_nodeId("Source"), feed.senderId);
+				assertEquals("value", feed.outflow.getLabel());
+			} else {
+				assertEquals("other", feed.inflowLabel);
+				assertEquals(_nodeId("Left"), feed.senderId);
+			}
+		}
+	}
+	
+	private int _nodeId(String name) {
+		for (int nodeId = 0; nodeId < _routingTable.getNodeCount(); nodeId++) {
+			if (_routingTable.getNode(nodeId).getName().equals(name)) {
+				return nodeId;
+			}
+		}
+		return -1;
+	}
+}
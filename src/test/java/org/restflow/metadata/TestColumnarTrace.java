@@ -0,0 +1,153 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.metadata.TraceWriter.Operation;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestColumnarTrace extends RestFlowTestCase {
+
+	public void testReplay_DecodesCommittedRows() throws Exception {
+
+		String directory = new File(getRunDirectoryForTest("TestColumnarTrace"), "segments").getPath();
+		Timestamp time = new Timestamp(1234567890123L);
+
+		TraceSegmentWriter writer = new TraceSegmentWriter(directory);
+		writer.write(Operation.INSERT_PORT_EVENT, 1L, 3L, 1L, null, "w", 1L, time);
+		writer.write(Operation.INSERT_DATA, 1L, "hello", false, null);
+		writer.write(Operation.INSERT_DATA, 2L, null, true, null);
+		writer.write(Operation.INSERT_RESOURCE, 1L, "/a/b", 1L, null);
+		writer.write(Operation.INSERT_RESOURCE, 2L, "/a/b", 2L, "d41d8cd9");
+		writer.write(Operation.UPDATE_STEP_END, time, 4L);
+		writer.flush();
+
+		// rows written after the last flush are not committed
+		writer.write(Operation.INSERT_PACKET, 9L, null);
+
+		RecordingRowWriter recorder = new RecordingRowWriter();
+		TraceSegmentLoader.replay(directory, recorder);
+
+		// rows are replayed in the order of the operations and then of writing
+		assertEquals(Arrays.asList(
+				"INSERT_DATA [1, hello, false, null]",
+				"INSERT_DATA [2, null, true, null]",
+				"INSERT_RESOURCE [1, /a/b, 1, null]",
+				"INSERT_RESOURCE [2, /a/b, 2, d41d8cd9]",
+				"INSERT_PORT_EVENT [1, 3, 1, null, w, 1, " + time + "]",
+				"UPDATE_STEP_END [" + time + ", 4]"),
+			recorder.rows);
+
+		// closing the writer commits the remaining rows
+		writer.close();
+		recorder = new RecordingRowWriter();
+		TraceSegmentLoader.replay(directory, recorder);
+		assertEquals(7, recorder.rows.size());
+		assertEquals("INSERT_PACKET [9, null]", recorder.rows.get(4));
+	}
+
+	public void testRecordRun_ColumnarTraceMatchesDatabaseTrace() throws Exception {
+
+		WorkflowContext databaseContext = _createContext("TestColumnarTrace_Database", new BasicTraceRecorder());
+		_runWorkflow(databaseContext);
+		Trace databaseTrace = databaseContext.getTrace();
+
+		WorkflowContext columnarContext = _createContext("TestColumnarTrace_Columnar", new ColumnarTraceRecorder());
+		_runWorkflow(columnarContext);
+		String metadataDirectory = ((FileSystemMetadataManager)columnarContext.getMetaDataManager()).getMetadataDirectory();
+
+		// the run is recorded as segments rather than in a trace database file
+		assertTrue(TraceSegmentLoader.isSegmentDirectory(metadataDirectory + TraceSegmentLoader.SEGMENT_DIRECTORY));
+		assertFalse(new File(metadataDirectory + "tracedb.h2.db").exists());
+
+		// the trace is the same whether materialized by the recorder or restored from the run directory
+		for (Trace columnarTrace : new Trace[] {
+				columnarContext.getTrace(),
+				columnarContext.getTraceRecorder().getReadOnlyTrace()}) {
+			assertEquals(databaseTrace.getPortEventsProlog(), columnarTrace.getPortEventsProlog());
+			assertEquals(databaseTrace.getResourcesYaml(), columnarTrace.getResourcesYaml());
+			assertEquals(databaseTrace.getNodeStepCountsYaml(), columnarTrace.getNodeStepCountsYaml());
+			assertEquals(databaseTrace.dumpNodeTable(), columnarTrace.dumpNodeTable());
+			assertEquals(databaseTrace.dumpPortTable(), columnarTrace.dumpPortTable());
+			assertEquals(databaseTrace.dumpPacketTable(), columnarTrace.dumpPacketTable());
+			assertEquals(databaseTrace.dumpPacketResourceTable(), columnarTrace.dumpPacketResourceTable());
+			assertEquals(databaseTrace.dumpResourceTable(), columnarTrace.dumpResourceTable());
+			assertEquals(databaseTrace.dumpDataTable(), columnarTrace.dumpDataTable());
+			assertEquals(databaseTrace.dumpStepTable_NoTimestamps(), columnarTrace.dumpStepTable_NoTimestamps());
+		}
+	}
+
+	private WorkflowContext _createContext(String name, TraceRecorder recorder) throws Exception {
+
+		FileSystemMetadataManager metadataManager = new FileSystemMetadataManager();
+		metadataManager.setRunDirectory(getRunDirectoryForTest(name).getAbsolutePath());
+
+		return new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.metadataManager(metadataManager)
+			.recorder(recorder)
+			.build();
+	}
+
+	private void _runWorkflow(WorkflowContext context) throws Exception {
+
+		final Workflow workflow = new WorkflowBuilder()
+
+			.name("ColumnarTraceWorkflow")
+			.context(context)
+
+			.node(new JavaNodeBuilder()
+				.name("CreateSequenceData")
+				.sequence("c", new Integer[] {3, 8, 2})
+				.bean(new Object() {
+					public int c, v;
+					public void step() { v = c; }
+				})
+				.outflow("v", "/{STEP}/multiplicand"))
+
+			.node(new JavaNodeBuilder()
+				.name("MultiplySequenceBySingleton")
+				.constant("a", 5)
+				.inflow("/{}/multiplicand", "b")
+				.bean(new Object() {
+					public int a, b, c;
+					public void step() { c = a * b; }
+				})
+				.outflow("c", "/product"))
+
+			.node(new JavaNodeBuilder()
+				.name("RenderProducts")
+				.inflow("/product", "v")
+				.bean(new Object() {
+					public int v;
+					public void step() { System.out.println(v); }
+				}))
+
+			.build();
+
+		workflow.configure();
+		workflow.initialize();
+		workflow.run();
+	}
+
+	private static class RecordingRowWriter implements TraceRowWriter {
+
+		final List<String> rows = new ArrayList<String>();
+
+		public void write(Operation operation, Object... values) {
+			rows.add(operation + " " + Arrays.asList(values));
+		}
+
+		public void flush() {}
+	}
+}
@@ -0,0 +1,217 @@
+package org.restflow.metadata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.restflow.test.RestFlowTestCase;
+import org.restflow.util.StdoutRecorder;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+
+public class TestFileSystemMetadataManager_LazyRestore extends RestFlowTestCase {
+
+	private File _runDirectory;
+	private File _metadataDirectory;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_runDirectory = getRunDirectoryForTest("TestFileSystemMetadataManager_LazyRestore");
+		_metadataDirectory = new File(_runDirectory.getPath() + FileSystemMetadataManager.METADATA_DIR);
+		_metadataDirectory.mkdirs();
+	}
+
+	public void test_PartsAreReadWhenFirstRequested() throws Exception {
+
+		_write("outputs.yaml", "sum: 10" + EOL);
+		_write(StdoutRecorder.STDOUT_FILE, "first stdout");
+
+		RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(_runDirectory.getPath());
+		assertEquals(0, metadata.getRestoreErrors().size());
+
+		// files rewritten after restoring are read when first requested
+		_write("outputs.yaml", "sum: 11" + EOL);
+		_write(StdoutRecorder.STDOUT_FILE, "second stdout");
+
+		assertEquals(11, metadata.getOutputValue("sum"));
+		assertEquals(0, metadata.getRestoreErrors().size());
+
+		assertEquals("second stdout", metadata.getStdout());
+
+		// only the missing stderr file is reported when it is requested
+		assertNull(metadata.getStderr());
+		assertEquals(1, metadata.getRestoreErrors().size());
+
+		// values set replace the files
+		metadata.setStdoutText("set stdout");
+		assertEquals("set stdout", metadata.getStdout());
+	}
+
+	public void test_RestoreAllRecordsEveryError() throws Exception {
+
+		RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(_runDirectory.getPath());
+		assertEquals(0, metadata.getRestoreErrors().size());
+
+		metadata.restoreAll();
+		assertTrue(metadata.getRestoreErrors().size() >= 7);
+
+		// restoring again adds no errors
+		int errorCount = metadata.getRestoreErrors().size();
+		metadata.restoreAll();
+		assertEquals(errorCount, metadata.getRestoreErrors().size());
+	}
+
+	public void test_StdoutStream() throws Exception {
+
+		_write(StdoutRecorder.STDOUT_FILE, "recorded stdout");
+		RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(_runDirectory.getPath());
+
+		InputStream stream = metadata.getStdoutStream();
+		try {
+			assertEquals("recorded stdout", IOUtils.toString(stream));
+		} finally {
+			stream.close();
+		}
+
+		// the stream does not read the text into the metadata
+		_write(StdoutRecorder.STDOUT_FILE, "rewritten stdout");
+		assertEquals("rewritten stdout", metadata.getStdout());
+
+		stream = metadata.getStdoutStream();
+		try {
+			assertEquals("rewritten stdout", IOUtils.toString(stream));
+		} finally {
+			stream.close();
+		}
+	}
+
+	public void test_ProductsMatchWholeFileParse() throws Exception {
+
+		DumperOptions options = new DumperOptions();
+		options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+		options.setWidth(160);
+		Yaml yaml = new Yaml(options);
+
+		StringBuilder productsYaml = new StringBuilder();
+		productsYaml.append("/greeting: hello" + EOL);
+		productsYaml.append("/files/a.txt: !file /files/a.txt" + EOL);
+		productsYaml.append(_dump(yaml, "/multiline", "first line\nsecond line\nthird line"));
+		productsYaml.append(_dump(yaml, "/long", _repeat("a long value ", 40)));
+		productsYaml.append(_dump(yaml, "/quoted", "value: with 'colon' and \"quotes\""));
+		productsYaml.append(_dump(yaml, "/" + _repeat("longkey", 30), "value of long key"));
+		productsYaml.append("/count: 3" + EOL);
+		productsYaml.append(_dump(yaml, "/run/a", Arrays.asList(1, 2, 3)));
+		productsYaml.append(_dump(yaml, "/run/maps", Arrays.asList(Collections.singletonMap("x", 1), Collections.singletonMap("y", 2))));
+		productsYaml.append(_dump(yaml, "/run/empty", new ArrayList<Object>()));
+		productsYaml.append("/run/b: 5" + EOL);
+		productsYaml.append("/greeting: goodbye" + EOL);
+		_write("products.yaml", productsYaml.toString());
+
+		@SuppressWarnings("unchecked")
+		Map<String,Object> expected = (Map<String,Object>)RunMetadata.newProductsReader().load(productsYaml.toString());
+
+		ProductsFileMap products = new ProductsFileMap(new File(_metadataDirectory, "products.yaml"));
+		assertEquals(expected.size(), products.size());
+		assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(products.keySet()));
+		for (String key : expected.keySet()) {
+			assertEquals(key, expected.get(key), products.get(key));
+		}
+		assertEquals("goodbye", products.get("/greeting"));
+		assertEquals(3, products.get("/count"));
+		assertEquals(Arrays.asList(1, 2, 3), products.get("/run/a"));
+		assertEquals(5, products.get("/run/b"));
+		assertNull(products.get("/missing"));
+		assertFalse(products.containsKey("/missing"));
+
+		// file products are resolved against the run directory
+		RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(_runDirectory.getPath());
+		assertEquals(new File(_runDirectory.getPath() + "/files/a.txt"), metadata.getProductValueMap().get("/files/a.txt"));
+		assertEquals("first line\nsecond line\nthird line", metadata.getProductValueMap().get("/multiline"));
+		assertEquals(productsYaml.toString(), metadata.getProductsYaml());
+		assertEquals(0, metadata.getRestoreErrors().size());
+	}
+
+	public void test_ProductsFileMap_NonAsciiAndQuotedKeys() throws Exception {
+
+		DumperOptions options = new DumperOptions();
+		options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+		Yaml yaml = new Yaml(options);
+
+		StringBuilder productsYaml = new StringBuilder();
+		productsYaml.append("/grüße: héllo wörld" + EOL);
+		productsYaml.append(_dump(yaml, "/key: with colon", "quoted key"));
+		productsYaml.append(_dump(yaml, "/key #with hash", "hash in key"));
+		productsYaml.append("/path:with:colons: plain" + EOL);
+		_write("products.yaml", productsYaml.toString());
+
+		ProductsFileMap products = new ProductsFileMap(new File(_metadataDirectory, "products.yaml"));
+		assertEquals(Arrays.asList("/grüße", "/key: with colon", "/key #with hash", "/path:with:colons"),
+				new ArrayList<String>(products.keySet()));
+		assertEquals("héllo wörld", products.get("/grüße"));
+		assertEquals("quoted key", products.get("/key: with colon"));
+		assertEquals("hash in key", products.get("/key #with hash"));
+		assertEquals("plain", products.get("/path:with:colons"));
+	}
+
+	public void test_MetadataSignature_ChangesWithTrace() throws Exception {
+
+		String runDirectory = _runDirectory.getPath();
+		String signature = FileSystemMetadataManager.metadataSignature(runDirectory);
+		
+		// the trace database is part of the signature
+		_write("tracedb.h2.db", "trace");
+		String traceSignature = FileSystemMetadataManager.metadataSignature(runDirectory);
+		assertFalse(signature.equals(traceSignature));
+
+		// so is each trace segment file, including when a segment file grows in place
+		File segmentDirectory = new File(_metadataDirectory, TraceSegmentLoader.SEGMENT_DIRECTORY);
+		segmentDirectory.mkdirs();
+		File segmentFile = new File(segmentDirectory, "segment-0");
+		FileUtils.writeStringToFile(segmentFile, "rows");
+		String segmentSignature = FileSystemMetadataManager.metadataSignature(runDirectory);
+		assertFalse(traceSignature.equals(segmentSignature));
+
+		long directoryModified = segmentDirectory.lastModified();
+		FileOutputStream segmentStream = new FileOutputStream(segmentFile, true);
+		try {
+			segmentStream.write("more rows".getBytes("UTF-8"));
+		} finally {
+			segmentStream.close();
+		}
+		segmentDirectory.setLastModified(directoryModified);
+		assertFalse(segmentSignature.equals(FileSystemMetadataManager.metadataSignature(runDirectory)));
+	}
+
+	public void test_MissingProductsFile() throws Exception {
+
+		RunMetadata metadata = FileSystemMetadataManager.restoreMetadata(_runDirectory.getPath());
+		assertNull(metadata.getProductValueMap());
+		assertEquals(1, metadata.getRestoreErrors().size());
+	}
+
+	private String _dump(Yaml yaml, String key, Object value) {
+		Map<String,Object> map = new HashMap<String,Object>();
+		map.put(key, value);
+		return yaml.dump(map);
+	}
+
+	private String _repeat(String text, int count) {
+		StringBuilder repeated = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			repeated.append(text);
+		}
+		return repeated.toString().trim();
+	}
+
+	private void _write(String fileName, String text) throws Exception {
+		FileUtils.writeStringToFile(new File(_metadataDirectory, fileName), text, "UTF-8");
+	}
+}
@@ -0,0 +1,136 @@
+package org.restflow.metadata;
+
+import java.util.Map;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.nodes.JavaNodeBuilder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestProductsIndexWriter extends RestFlowTestCase {
+
+	public void test_Flush_WritesEntriesInQueuedOrder() throws Exception {
+
+		FileSystemMetadataManager first = _createMetadataManager("TestProductsIndexWriter_First");
+		FileSystemMetadataManager second = _createMetadataManager("TestProductsIndexWriter_Second");
+		ProductsIndexWriter writer = new ProductsIndexWriter();
+
+		// queue more entries than fit in one batch, alternating between the two products files
+		int entryCount = 10000;
+		for (int i = 0; i < entryCount; i++) {
+			FileSystemMetadataManager manager = (i % 2 == 0) ? first : second;
+			if (i % 3 == 0) {
+				writer.appendFile(manager, "/files/" + i);
+			} else {
+				writer.appendValue(manager, "/values/" + i, String.valueOf(i));
+			}
+		}
+		writer.flush();
+
+		// every entry is in the products file it was queued for, in the order it was queued
+		String firstProducts = first.getProductsAsString();
+		String secondProducts = second.getProductsAsString();
+		int[] lastIndex = new int[] {-1, -1};
+		for (int i = 0; i < entryCount; i++) {
+			String products = (i % 2 == 0) ? firstProducts : secondProducts;
+			String entry = (i % 3 == 0) ? "/files/" + i + ": !file /files/" + i : "/values/" + i + ": '" + i + "'";
+			int index = products.indexOf(entry + EOL);
+			assertTrue("Missing entry " + entry, index >= 0);
+			assertTrue("Out of order entry " + entry, index > lastIndex[i % 2]);
+			lastIndex[i % 2] = index;
+		}
+	}
+
+	public void test_Flush_ReportsWriteFailure() throws Exception {
+
+		final int[] failuresLeft = new int[] {1};
+		FileSystemMetadataManager manager = new FileSystemMetadataManager() {
+			public synchronized void writeToProductsFile(String message) {
+				if (failuresLeft[0]-- > 0) {
+					throw new IllegalStateException("Products file is not writable");
+				}
+				super.writeToProductsFile(message);
+			}
+		};
+		manager.setRunDirectory(getRunDirectoryForTest("TestProductsIndexWriter_Failure").getAbsolutePath());
+		manager.createProductsFileStream();
+		ProductsIndexWriter writer = new ProductsIndexWriter();
+
+		// the failure to write an entry is thrown by the next flush
+		writer.appendValue(manager, "/lost", "1");
+		Exception exception = null;
+		try {
+			writer.flush();
+		} catch (IllegalStateException e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		assertEquals("Products file is not writable", exception.getMessage());
+
+		// the failure is reported once and the writer continues to write later entries
+		writer.appendValue(manager, "/kept", "2");
+		writer.flush();
+		assertEquals("/kept: '2'" + EOL, manager.getProductsAsString());
+	}
+
+	public void test_GetRunMetadata_RestoresEntriesQueuedBeforeCall() throws Exception {
+
+		FileSystemMetadataManager metadataManager = new FileSystemMetadataManager();
+		metadataManager.setRunDirectory(getRunDirectoryForTest("TestProductsIndexWriter_Restore").getAbsolutePath());
+
+		final WorkflowContext context = new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.metadataManager(metadataManager)
+			.build();
+
+		final Object[] restoredProducts = new Object[1];
+
+		final Workflow workflow = new WorkflowBuilder()
+
+			.name("ProductsWorkflow")
+			.context(context)
+
+			.node(new JavaNodeBuilder()
+				.name("PublishValue")
+				.bean(new Object() {
+					public int v;
+					public void step() { v = 7; }
+				})
+				.outflow("v", "/value"))
+
+			// restore the run metadata while the products index writer may still hold the entry
+			.node(new JavaNodeBuilder()
+				.name("RestoreProducts")
+				.inflow("/value", "v")
+				.bean(new Object() {
+					public int v;
+					public void step() throws Exception {
+						RunMetadata metadata = context.getMetaDataManager().getRunMetadata(context.getTraceRecorder());
+						restoredProducts[0] = metadata.getProductValueMap();
+					}
+				}))
+
+			.build();
+
+		workflow.configure();
+		workflow.initialize();
+		workflow.run();
+		workflow.wrapup();
+
+		@SuppressWarnings("unchecked")
+		Map<String,Object> products = (Map<String,Object>)restoredProducts[0];
+		assertNotNull(products);
+		assertEquals("7", String.valueOf(products.get("/value")));
+	}
+
+	private FileSystemMetadataManager _createMetadataManager(String name) throws Exception {
+		FileSystemMetadataManager manager = new FileSystemMetadataManager();
+		manager.setRunDirectory(getRunDirectoryForTest(name).getAbsolutePath());
+		manager.createProductsFileStream();
+		return manager;
+	}
+}
@@ -2,6 +2,13 @@ package org.restflow.metadata;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 
 import org.restflow.WorkflowContext;
 import org.restflow.WorkflowContextBuilder;
@@ -810,4 +817,215 @@ public class TestTraceDatabase_Inserts extends RestFlowTestCase {
 		// close the connection and discard the database
 		connection.close();
 	}	
+
+	public void test_QueueResources_RowsVisibleAfterFlush() throws Exception {	
+		
+		// get a connection to a new private in-memory database instance
+		Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		// create all of the tables in the trace schema
+		WritableTrace.createTraceDBTables(_context, connection);
+		
+		// get a database access manager
+		WritableTrace manager = new WritableTrace(connection);
+	
+		// queue a packet with two resources
+		long packetID = manager.queuePacket(null);
+		long firstDatumID = manager.queueData("d1", false, null);
+		long firstResourceID = manager.queueResource("/d/1", firstDatumID, null);
+		manager.queuePacketResource(packetID, firstResourceID);
+		long secondDatumID = manager.queueData("d2", false, null);
+		long secondResourceID = manager.queueResource("/d/2", secondDatumID, null);
+		manager.queuePacketResource(packetID, secondResourceID);
+
+		// the keys are allocated when the rows are queued
+		assertEquals(1, packetID);
+		assertEquals(1, firstResourceID);
+		assertEquals(2, secondResourceID);
+		
+		// all of the rows are present once the queue is flushed
+		manager.flush();
+		assertEquals(1, manager.getRowCountForTable("Packet"));
+		assertEquals(2, manager.getRowCountForTable("Data"));
+		assertEquals(2, manager.getRowCountForTable("Resource"));
+		assertEquals(2, manager.getRowCountForTable("PacketResource"));
+
+		// close the connection and discard the database
+		connection.close();
+	}
+
+	public void test_QueueData_ConcurrentWriters() throws Exception {	
+		
+		// get a connection to a new private in-memory database instance
+		Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		// create all of the tables in the trace schema
+		WritableTrace.createTraceDBTables(_context, connection);
+		
+		// get a database access manager
+		final WritableTrace manager = new WritableTrace(connection);
+		
+		// insert one row synchronously so that queued keys must continue after it
+		assertEquals(1, manager.insertData("first", false, null));
+		
+		// queue rows from several threads at once
+		final int threadCount = 8;
+		final int rowsPerThread = 500;
+		final CountDownLatch finished = new CountDownLatch(threadCount);
+		for (int t = 0; t < threadCount; t++) {
+			new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < rowsPerThread; i++) {
+							manager.queueData(i, false, null);
+						}
+					} catch (SQLException e) {
+						e.printStackTrace();
+					} finally {
+						finished.countDown();
+					}
+				}
+			}).start();
+		}
+		finished.await();
+		
+		// every row is written with a distinct key
+		manager.flush();
+		assertEquals(1 + threadCount * rowsPerThread, manager.getRowCountForTable("Data"));
+		assertEquals(2 + threadCount * rowsPerThread, manager.insertData("last", false, null));
+
+		// close the connection and discard the database
+		connection.close();
+	}
+
+	public void test_Flush_ReportsWriteFailure() throws Exception {	
+		
+		// get a connection to a new private in-memory database instance
+		Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		// create all of the tables in the trace schema
+		WritableTrace.createTraceDBTables(_context, connection);
+		
+		// get a database access manager
+		WritableTrace manager = new WritableTrace(connection);
+	
+		// queue a resource referring to a datum that does not exist
+		manager.queueResource("/d/1", 99L, null);
+
+		// the failure is reported by the next flush
+		Exception exception = null;
+		try {
+			manager.flush();
+		} catch (SQLException e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		
+		// the failed batch is rolled back and later rows are still written
+		assertEquals(0, manager.getRowCountForTable("Resource"));
+		manager.insertResource("/d/2", null);
+		assertEquals(1, manager.getRowCountForTable("Resource"));
+
+		// close the connection and discard the database
+		connection.close();
+	}
+
+	public void test_Queue_ReportsWriteFailure() throws Exception {
+
+		// get a connection to a new private in-memory database instance
+		Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		// create all of the tables in the trace schema
+		WritableTrace.createTraceDBTables(_context, connection);
+
+		// get a database access manager
+		WritableTrace manager = new WritableTrace(connection);
+
+		// queue a resource referring to a datum that does not exist between two valid rows
+		manager.queueData("first", false, null);
+		manager.queueResource("/d/1", 99L, null);
+		manager.queueData("second", false, null);
+
+		// the failure is reported by a later call to queue a row without flushing
+		int queuedRowCount = 2;
+		Exception exception = null;
+		for (long deadline = System.currentTimeMillis() + 10000; System.currentTimeMillis() < deadline; ) {
+			try {
+				manager.queueData("later", false, null);
+				queuedRowCount++;
+				Thread.sleep(10);
+			} catch (SQLException e) {
+				exception = e;
+				break;
+			}
+		}
+		assertNotNull(exception);
+
+		// the failure is reported once and the valid rows queued with the failed row are written
+		manager.flush();
+		assertEquals(0, manager.getRowCountForTable("Resource"));
+		assertEquals(queuedRowCount, manager.getRowCountForTable("Data"));
+
+		// close the connection and discard the database
+		connection.close();
+	}
+
+	public void test_QueuePacket_DoesNotWaitForDatabase() throws Exception {	
+		
+		// get a connection to a new private in-memory database instance
+		final Connection connection = WritableTrace.createPrivateVolatileDatabase();
+
+		// create all of the tables in the trace schema
+		WritableTrace.createTraceDBTables(_context, connection);
+		
+		// get a database access manager
+		final WritableTrace manager = new WritableTrace(connection);
+
+		// insert one row into each table so that the key sequences are started
+		assertEquals(1, manager.insertPacket(null));
+		assertEquals(1, manager.insertData("d0", false, null));
+		assertEquals(1, manager.insertResource("/d0", 1L));
+		
+		// hold the database connection on another thread
+		final CountDownLatch connectionHeld = new CountDownLatch(1);
+		final CountDownLatch releaseConnection = new CountDownLatch(1);
+		Thread holder = new Thread(new Runnable() {
+			public void run() {
+				synchronized(connection) {
+					connectionHeld.countDown();
+					try {
+						releaseConnection.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+		});
+		holder.start();
+		connectionHeld.await();
+		
+		// packets, resources and data still get their keys immediately
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Long> packetID = executor.submit(new Callable<Long>() {
+			public Long call() throws Exception {
+				long packetID = manager.queuePacket(null);
+				long dataID = manager.queueData("d", false, null);
+				long resourceID = manager.queueResource("/d", dataID, null);
+				manager.queuePacketResource(packetID, resourceID);
+				return packetID;
+			}
+		});
+		assertEquals(2, (long)packetID.get(10, TimeUnit.SECONDS));
+		
+		// the queued rows are written once the connection is released
+		releaseConnection.countDown();
+		holder.join();
+		executor.shutdown();
+		manager.flush();
+		assertEquals(2, manager.getRowCountForTable("Packet"));
+		assertEquals(2, manager.getRowCountForTable("Resource"));
+		assertEquals(1, manager.getRowCountForTable("PacketResource"));
+
+		// close the connection and discard the database
+		connection.close();
+	}
 }
@@ -0,0 +1,138 @@
+package org.restflow.nodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restflow.WorkflowContext;
+import org.restflow.WorkflowContextBuilder;
+import org.restflow.actors.ActorStatus;
+import org.restflow.actors.Workflow;
+import org.restflow.actors.WorkflowBuilder;
+import org.restflow.data.ConsumableObjectStore;
+import org.restflow.directors.MTDataDrivenDirector;
+import org.restflow.metadata.NoopTraceRecorder;
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestActorWorkflowNode_ConcurrentSteps extends RestFlowTestCase {
+
+	private static final int PACKET_COUNT = 2000;
+	private static final int LAST_VALUE = 100;
+	private static final int RUN_COUNT = 20;
+	private static final AtomicInteger _packetsReceived = new AtomicInteger(0);
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_packetsReceived.set(0);
+	}
+
+	public void test_EndFlowOnActorException_StopsSubmittingSteps() throws Exception {
+		for (int run = 0; run < RUN_COUNT; run++) {
+			WorkflowContext context = _newContext();
+			ActorWorkflowNode node = _buildWorkNode(context, new ThrowAfterLast());
+			node.setEndFlowOnActorException(true);
+			_run(context, node);
+			assertTrue(_packetsReceived.get() < PACKET_COUNT);
+		}
+	}
+
+	public void test_EndFlowOnNoOutput_StopsSubmittingSteps() throws Exception {
+		for (int run = 0; run < RUN_COUNT; run++) {
+			WorkflowContext context = _newContext();
+			ActorWorkflowNode node = _buildWorkNode(context, new NoOutputAfterLast());
+			node.setEndFlowOnNoOutput(true);
+			_run(context, node);
+			assertTrue(_packetsReceived.get() < PACKET_COUNT);
+		}
+	}
+
+	public static class PassThrough {
+		public Object input, output;
+		public void step() { output = input; }
+	}
+
+	public static class ThrowAfterLast {
+		public Integer input, output;
+		public void step() {
+			if (input > LAST_VALUE) throw new IllegalStateException("Past the last value");
+			output = input;
+		}
+	}
+
+	public static class NoOutputAfterLast {
+		public Integer input, output;
+		private ActorStatus _status;
+		public void setStatus(ActorStatus status) { _status = status; }
+		public void step() {
+			output = input;
+			if (input > LAST_VALUE) _status.setOutputEnable("output", false);
+		}
+	}
+
+	public static class Sink {
+		public Object input;
+		public void step() {
+			_packetsReceived.incrementAndGet();
+		}
+	}
+
+	// the recorder pauses each node between finding that it is not done stepping and
+	// submitting its step, widening the window in which a finishing step may end the flow
+	private WorkflowContext _newContext() throws Exception {
+		return new WorkflowContextBuilder()
+			.store(new ConsumableObjectStore())
+			.recorder(new NoopTraceRecorder() {
+				public long recordStepStarted(WorkflowNode node) {
+					Thread.yield();
+					return 0;
+				}
+			})
+			.build();
+	}
+
+	private ActorWorkflowNode _buildWorkNode(WorkflowContext context, Object bean) throws Exception {
+		return new JavaNodeBuilder()
+			.context(context)
+			.name("Work")
+			.inflow("/values", "input")
+			.bean(bean)
+			.maxConcurrency(8)
+			.outflow("output", "/work")
+			.build();
+	}
+
+	// runs a source sending far more packets than the node steps on before ending its
+	// flow, the node stepping concurrently, and a sink counting the packets the node sends
+	private void _run(WorkflowContext context, ActorWorkflowNode workNode) throws Exception {
+
+		_packetsReceived.set(0);
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < PACKET_COUNT; i++) {
+			values.add(i);
+		}
+
+		Workflow workflow = new WorkflowBuilder()
+			.name("EndFlow")
+			.context(context)
+			.director(new MTDataDrivenDirector())
+			.node(new JavaNodeBuilder()
+				.name("Source")
+				.sequence("input", values)
+				.bean(new PassThrough())
+				.outflow("output", "/values"))
+			.node(workNode)
+			.node(new JavaNodeBuilder()
+				.name("Sink")
+				.inflow("/work", "input")
+				.bean(new Sink()))
+			.build();
+
+		workflow.configure();
+		workflow.initialize();
+		workflow.run();
+		workflow.wrapup();
+		workflow.dispose();
+	}
+}
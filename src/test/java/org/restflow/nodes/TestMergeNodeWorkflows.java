@@ -33,6 +33,12 @@ public class TestMergeNodeWorkflows extends RestFlowTestCase {
 		super.setUp();
 	}
 	
+	private MTDataDrivenDirector _pooledMTDataDrivenDirector() {
+		MTDataDrivenDirector director = new MTDataDrivenDirector();
+		director.setPooled(true);
+		return director;
+	}
+	
 	@SuppressWarnings("unused")
 	private void _createMergeIntegerStreamBuilders() throws Exception {
 		
@@ -302,6 +308,65 @@ public class TestMergeNodeWorkflows extends RestFlowTestCase {
 
 		assertEquals(0, _store.size());
 	}
+
+	public void testMergeIntegerStreams_PooledMTDataDrivenDirector() throws Exception {
+
+		_createMergeIntegerStreamBuilders();
+		
+		final Workflow workflow = new WorkflowBuilder()
+			.name("MergeIntegerStreams")
+			.context(_context)
+			.director(_pooledMTDataDrivenDirector())
+			.node(_sequenceOneNodeBuilder)
+			.node(_sequenceTwoNodeBuilder)
+			.node(_sequenceThreeNodeBuilder)
+			.node(_mergeNodeBuilder)
+			.node(_printerNodeBuilder)
+			.build();
+		
+		workflow.configure();
+		workflow.initialize();
+
+		StdoutRecorder recorder = new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {
+				workflow.run();
+			}
+		});
+
+		assertEquals("", recorder.getStderrRecording());
+		
+		assertEquals(24, _store.size());
+
+		assertEquals(2, 	_store.take("/sequenceOne/1"));
+		assertEquals(4, 	_store.take("/sequenceOne/2"));
+		assertEquals(6, 	_store.take("/sequenceOne/3"));
+		assertEquals(8, 	_store.take("/sequenceOne/4"));
+		assertEquals(1, 	_store.take("/sequenceTwo/1"));
+		assertEquals(3, 	_store.take("/sequenceTwo/2"));
+		assertEquals(5, 	_store.take("/sequenceTwo/3"));
+		assertEquals(13, 	_store.take("/sequenceThree/1"));
+		assertEquals(75, 	_store.take("/sequenceThree/2"));
+		assertEquals(60, 	_store.take("/sequenceThree/3"));
+		assertEquals(15, 	_store.take("/sequenceThree/4"));
+		assertEquals(20, 	_store.take("/sequenceThree/5"));
+		
+		assertEquals(12, _store.size());
+
+		_store.removeValue(2);
+		_store.removeValue(4);
+		_store.removeValue(6);
+		_store.removeValue(8);
+		_store.removeValue(1);
+		_store.removeValue(3);
+		_store.removeValue(5);
+		_store.removeValue(13);
+		_store.removeValue(75);
+		_store.removeValue(60);
+		_store.removeValue(15);
+		_store.removeValue(20);
+
+		assertEquals(0, _store.size());
+	}
 	
 	public void testMergeIntegerStreams_DoublyNested_PublishSubscribeDirector() throws Exception {
 
@@ -746,6 +811,127 @@ public class TestMergeNodeWorkflows extends RestFlowTestCase {
 		
 		assertEquals(0, _store.size());
 	}
+
+	public void testMergeIntegerStreams_DoublyNested_PooledMTDataDrivenDirector() throws Exception {
+
+		_createMergeIntegerStreamBuilders();
+
+		final Workflow workflow = new WorkflowBuilder()
+			.name("MergeIntegerStreams")
+			.context(_context)
+			.director(_pooledMTDataDrivenDirector())
+			.node(new WorkflowNodeBuilder()
+				.director(_pooledMTDataDrivenDirector())
+				.prefix("/sub{STEP}")
+				.node(_triggerNodeBuilder)
+				.node(new WorkflowNodeBuilder()
+					.prefix("/subsub{STEP}")
+					.director(_pooledMTDataDrivenDirector())
+					.inflow("/trigger", "/discard")
+					.node(_sequenceOneNodeBuilder)
+					.node(_sequenceTwoNodeBuilder)
+					.node(_sequenceThreeNodeBuilder)
+					.node(_mergeNodeBuilder)
+					.node(_printerNodeBuilder)
+					)
+			)
+			.build();
+		
+		workflow.configure();
+		workflow.initialize();
+
+		StdoutRecorder recorder = new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {
+				workflow.run();
+			}
+		});
+
+		assertEquals("", recorder.getStderrRecording());
+		
+		assertEquals(2, 	_store.take("/sub1/subsub1/sequenceOne/1"));
+		assertEquals(4, 	_store.take("/sub1/subsub1/sequenceOne/2"));
+		assertEquals(6, 	_store.take("/sub1/subsub1/sequenceOne/3"));
+		assertEquals(8, 	_store.take("/sub1/subsub1/sequenceOne/4"));
+		assertEquals(1, 	_store.take("/sub1/subsub1/sequenceTwo/1"));
+		assertEquals(3, 	_store.take("/sub1/subsub1/sequenceTwo/2"));
+		assertEquals(5, 	_store.take("/sub1/subsub1/sequenceTwo/3"));
+		assertEquals(13, 	_store.take("/sub1/subsub1/sequenceThree/1"));
+		assertEquals(75, 	_store.take("/sub1/subsub1/sequenceThree/2"));
+		assertEquals(60, 	_store.take("/sub1/subsub1/sequenceThree/3"));
+		assertEquals(15, 	_store.take("/sub1/subsub1/sequenceThree/4"));
+		assertEquals(20, 	_store.take("/sub1/subsub1/sequenceThree/5"));
+		assertEquals(2, 	_store.take("/sub1/subsub2/sequenceOne/1"));
+		assertEquals(4, 	_store.take("/sub1/subsub2/sequenceOne/2"));
+		assertEquals(6, 	_store.take("/sub1/subsub2/sequenceOne/3"));
+		assertEquals(8, 	_store.take("/sub1/subsub2/sequenceOne/4"));
+		assertEquals(1, 	_store.take("/sub1/subsub2/sequenceTwo/1"));
+		assertEquals(3, 	_store.take("/sub1/subsub2/sequenceTwo/2"));
+		assertEquals(5, 	_store.take("/sub1/subsub2/sequenceTwo/3"));
+		assertEquals(13, 	_store.take("/sub1/subsub2/sequenceThree/1"));
+		assertEquals(75, 	_store.take("/sub1/subsub2/sequenceThree/2"));
+		assertEquals(60, 	_store.take("/sub1/subsub2/sequenceThree/3"));
+		assertEquals(15, 	_store.take("/sub1/subsub2/sequenceThree/4"));
+		assertEquals(20, 	_store.take("/sub1/subsub2/sequenceThree/5"));
+		assertEquals(2, 	_store.take("/sub1/subsub3/sequenceOne/1"));
+		assertEquals(4, 	_store.take("/sub1/subsub3/sequenceOne/2"));
+		assertEquals(6, 	_store.take("/sub1/subsub3/sequenceOne/3"));
+		assertEquals(8, 	_store.take("/sub1/subsub3/sequenceOne/4"));
+		assertEquals(1, 	_store.take("/sub1/subsub3/sequenceTwo/1"));
+		assertEquals(3, 	_store.take("/sub1/subsub3/sequenceTwo/2"));
+		assertEquals(5, 	_store.take("/sub1/subsub3/sequenceTwo/3"));
+		assertEquals(13, 	_store.take("/sub1/subsub3/sequenceThree/1"));
+		assertEquals(75, 	_store.take("/sub1/subsub3/sequenceThree/2"));
+		assertEquals(60, 	_store.take("/sub1/subsub3/sequenceThree/3"));
+		assertEquals(15, 	_store.take("/sub1/subsub3/sequenceThree/4"));
+		assertEquals(20, 	_store.take("/sub1/subsub3/sequenceThree/5"));
+		
+		_store.removeValue(2);
+		_store.removeValue(4);
+		_store.removeValue(6);
+		_store.removeValue(8);
+		_store.removeValue(1);
+		_store.removeValue(3);
+		_store.removeValue(5);
+		_store.removeValue(13);
+		_store.removeValue(75);
+		_store.removeValue(60);
+		_store.removeValue(15);
+		_store.removeValue(20);		
+		_store.removeValue(2);
+		_store.removeValue(4);
+		_store.removeValue(6);
+		_store.removeValue(8);
+		_store.removeValue(1);
+		_store.removeValue(3);
+		_store.removeValue(5);
+		_store.removeValue(13);
+		_store.removeValue(75);
+		_store.removeValue(60);
+		_store.removeValue(15);
+		_store.removeValue(20);		
+		_store.removeValue(2);
+		_store.removeValue(4);
+		_store.removeValue(6);
+		_store.removeValue(8);
+		_store.removeValue(1);
+		_store.removeValue(3);
+		_store.removeValue(5);
+		_store.removeValue(13);
+		_store.removeValue(75);
+		_store.removeValue(60);
+		_store.removeValue(15);
+		_store.removeValue(20);
+		
+		assertEquals("A", 	_store.take("/sub1/trigger/1"));
+		assertEquals("B", 	_store.take("/sub1/trigger/2"));
+		assertEquals("C", 	_store.take("/sub1/trigger/3"));
+
+		assertEquals("A", 	_store.take("/sub1/subsub1/discard"));
+		assertEquals("B", 	_store.take("/sub1/subsub2/discard"));
+		assertEquals("C", 	_store.take("/sub1/subsub3/discard"));
+		
+		assertEquals(0, _store.size());
+	}
 	
 	public void testConditionalRouting_ThreeDirectors() throws Exception {
 		
@@ -1,7 +1,10 @@
 package org.restflow.nodes;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.restflow.WorkflowContext;
 import org.restflow.WorkflowContextBuilder;
@@ -10,6 +13,7 @@ import org.restflow.actors.ActorRunner;
 import org.restflow.actors.CloneableBean;
 import org.restflow.actors.JavaActor;
 import org.restflow.actors.JavaActorBuilder;
+import org.restflow.actors.StepRunnerPool;
 import org.restflow.actors.SynchronousActorRunner;
 import org.restflow.exceptions.RestFlowException;
 import org.restflow.nodes.AsynchronousActorCompletionService;
@@ -479,6 +483,77 @@ public class TestOrderedActorCompletionService extends RestFlowTestCase {
 		assertSame(AbstractActorRunner.EndOfActorRunners, runner);
 	}
 	
+	public void testSubmitRepeatTakeRepeat_StepRunnerPool() throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+		StepRunnerPool pool = new StepRunnerPool();
+
+		AsynchronousActorCompletionService service = new OrderedActorCompletionService(100, pool);
+		assertEquals(AsynchronousActorCompletionService.Service.STOPPED, service.getState());
+
+		service.start();
+		assertEquals(AsynchronousActorCompletionService.Service.IDLE, service.getState());
+
+		for (int chunk = 0; chunk < 10; chunk++) {
+		
+			for (int i = 0; i < 100; i++) {
+				_doublerActor.setInputValue("value", chunk * 100 + i);
+				service.submit(_doublerActor, variables);
+				assertEquals(AsynchronousActorCompletionService.Service.ACTIVE, service.getState());
+			}
+			
+			for (int i = 0; i < 100; i++) {
+				ActorRunner runner = service.take();
+				Object doubledValue = runner.getActor().getOutputValue("doubledValue");
+				assertEquals(2 * (chunk * 100 + i), doubledValue);
+			}
+		}
+		
+		assertEquals(AsynchronousActorCompletionService.Service.IDLE, service.getState());
+		
+		service.shutdown();
+		assertEquals(AsynchronousActorCompletionService.Service.SHUT_DOWN, service.getState());
+
+		ActorRunner runner = service.take();
+		assertEquals(AsynchronousActorCompletionService.Service.STOPPED, service.getState());
+		assertSame(AbstractActorRunner.EndOfActorRunners, runner);
+		
+		pool.shutdown();
+	}
+	
+	public void testSubmitTakeRepeat_RecycledActors() throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+
+		AsynchronousActorCompletionService service = new OrderedActorCompletionService(4);
+		service.setRecycleActors(true);
+		service.start();
+
+		// keep four steps outstanding, recycling each actor once its outputs are read
+		Set<Object> actors = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+		for (int i = 0; i < 1000; i++) {
+			if (i >= 4) {
+				ActorRunner runner = service.take();
+				assertEquals(2 * (i - 4), runner.getActor().getOutputValue("doubledValue"));
+				actors.add(runner.getActor());
+				service.recycle(runner.getActor());
+			}
+			_doublerActor.setInputValue("value", i);
+			service.submit(_doublerActor, variables);
+		}
+		
+		for (int i = 996; i < 1000; i++) {
+			ActorRunner runner = service.take();
+			assertEquals(2 * i, runner.getActor().getOutputValue("doubledValue"));
+		}
+		
+		// no more clones are created than there are steps outstanding at once
+		assertTrue(actors.size() <= 4);
+		
+		service.shutdown();
+		assertSame(AbstractActorRunner.EndOfActorRunners, service.take());
+	}
+	
 	public void testSubmitRepeatTakeRepeat_OneChunk() throws Exception {
 		
 		Map<String,Object> variables = new HashMap<String,Object>();
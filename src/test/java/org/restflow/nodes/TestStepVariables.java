@@ -0,0 +1,101 @@
+package org.restflow.nodes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestStepVariables extends RestFlowTestCase {
+
+	private StepVariables.Slots _slots;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_slots = new StepVariables.Slots(Arrays.asList("STEP", "RUN", "a", "b", "a"));
+	}
+
+	public void testSlots() {
+		assertEquals(4, _slots.size());
+		assertEquals(0, _slots.slotOf("STEP"));
+		assertEquals(2, _slots.slotOf("a"));
+		assertEquals(-1, _slots.slotOf("c"));
+		assertEquals("b", _slots.nameOf(3));
+	}
+
+	public void testPutGetRemove_BehavesLikeHashMap() {
+
+		StepVariables variables = new StepVariables(_slots);
+		Map<String,Object> expected = new HashMap<String,Object>();
+
+		for (Map<String,Object> map : Arrays.asList(variables, expected)) {
+			assertNull(map.put("a", 1));
+			assertEquals(1, map.put("a", 2));
+			assertNull(map.put("b", null));
+			assertNull(map.put("c", 3));
+			assertEquals(null, map.remove("STEP"));
+			assertEquals(3, map.remove("c"));
+			map.put("d", 4);
+		}
+
+		assertEquals(expected, variables);
+		assertEquals(variables, expected);
+		assertEquals(expected.hashCode(), variables.hashCode());
+		assertEquals(3, variables.size());
+		assertTrue(variables.containsKey("b"));
+		assertFalse(variables.containsKey("STEP"));
+		assertFalse(variables.containsKey("c"));
+		assertEquals(expected, new HashMap<String,Object>(variables));
+
+		variables.clear();
+		assertTrue(variables.isEmpty());
+		assertNull(variables.get("a"));
+		assertNull(variables.get("d"));
+	}
+
+	public void testCopyFrom() {
+
+		StepVariables original = new StepVariables(_slots);
+		original.put("STEP", 1);
+		original.put("a", "x");
+		original.put("unslotted", "y");
+
+		StepVariables copy = new StepVariables(_slots);
+		copy.put("b", "stale");
+		copy.put("other", "stale");
+		copy.copyFrom(original);
+		assertEquals(original, copy);
+
+		// the copy is independent of the original
+		original.put("a", "changed");
+		original.put("unslotted", "changed");
+		assertEquals("x", copy.get("a"));
+		assertEquals("y", copy.get("unslotted"));
+
+		// copying variables without unslotted values clears those of the copy
+		StepVariables slottedOnly = new StepVariables(_slots);
+		slottedOnly.put("RUN", 2);
+		copy.copyFrom(slottedOnly);
+		assertEquals(slottedOnly, copy);
+	}
+
+	public void testEntrySetIteratorRemove() {
+
+		StepVariables variables = new StepVariables(_slots);
+		variables.put("a", 1);
+		variables.put("b", 2);
+		variables.put("c", 3);
+
+		for (Iterator<Map.Entry<String,Object>> i = variables.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry<String,Object> entry = i.next();
+			if (!entry.getKey().equals("b")) {
+				i.remove();
+			}
+		}
+
+		assertEquals(1, variables.size());
+		assertEquals(2, variables.get("b"));
+	}
+}
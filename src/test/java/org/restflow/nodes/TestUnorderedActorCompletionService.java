@@ -1,17 +1,22 @@
 package org.restflow.nodes;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.bag.HashBag;
 import org.restflow.WorkflowContext;
 import org.restflow.WorkflowContextBuilder;
 import org.restflow.actors.AbstractActorRunner;
+import org.restflow.actors.Actor;
 import org.restflow.actors.ActorRunner;
 import org.restflow.actors.CloneableBean;
 import org.restflow.actors.JavaActor;
 import org.restflow.actors.JavaActorBuilder;
+import org.restflow.actors.StepRunnerPool;
 import org.restflow.actors.SynchronousActorRunner;
 import org.restflow.exceptions.RestFlowException;
 import org.restflow.nodes.AsynchronousActorCompletionService;
@@ -420,6 +425,142 @@ public class TestUnorderedActorCompletionService extends RestFlowTestCase {
 		assertSame(AbstractActorRunner.EndOfActorRunners, runner);
 	}
 	
+	@SuppressWarnings("unchecked")
+	public void testSubmitRepeatTakeRepeat_StepRunnerPool() throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+		StepRunnerPool pool = new StepRunnerPool();
+
+		AsynchronousActorCompletionService service = new UnorderedActorCompletionService(100, pool);
+		assertEquals(AsynchronousActorCompletionService.Service.STOPPED, service.getState());
+
+		service.start();
+		assertEquals(AsynchronousActorCompletionService.Service.IDLE, service.getState());
+
+		for (int chunk = 0; chunk < 10; chunk++) {
+		
+			for (int i = 0; i < 100; i++) {
+				_doublerActor.setInputValue("value", chunk * 100 + i);
+				service.submit(_doublerActor, variables);
+				assertEquals(AsynchronousActorCompletionService.Service.ACTIVE, service.getState());
+			}
+			
+			Collection<Integer> expectedOutputs = new HashBag();
+			Collection<Integer> actualOutputs = new HashBag();
+			for (int i = 0; i < 100; i++) {
+				ActorRunner runner = service.take();
+				actualOutputs.add((Integer) runner.getActor().getOutputValue("doubledValue"));
+				expectedOutputs.add(2 * (chunk * 100 + i));
+			}
+			assertEquals(expectedOutputs, actualOutputs);
+		}
+		
+		assertEquals(AsynchronousActorCompletionService.Service.IDLE, service.getState());
+		
+		service.shutdown();
+		assertEquals(AsynchronousActorCompletionService.Service.SHUT_DOWN, service.getState());
+
+		ActorRunner runner = service.take();
+		assertEquals(AsynchronousActorCompletionService.Service.STOPPED, service.getState());
+		assertSame(AbstractActorRunner.EndOfActorRunners, runner);
+		
+		pool.shutdown();
+	}
+	
+	public void testSubmitTakeRepeat_RecycledActors() throws Exception {
+		
+		Map<String,Object> variables = new HashMap<String,Object>();
+		@SuppressWarnings("unchecked")
+		Collection<Integer> expectedOutputs = new HashBag();
+		@SuppressWarnings("unchecked")
+		Collection<Integer> actualOutputs = new HashBag();
+
+		AsynchronousActorCompletionService service = new UnorderedActorCompletionService(4);
+		service.setRecycleActors(true);
+		service.start();
+
+		// keep four steps outstanding, recycling each actor once its outputs are read
+		Set<Object> actors = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+		for (int i = 0; i < 1000; i++) {
+			if (i >= 4) {
+				ActorRunner runner = service.take();
+				actualOutputs.add((Integer) runner.getActor().getOutputValue("doubledValue"));
+				actors.add(runner.getActor());
+				service.recycle(runner.getActor());
+			}
+			_doublerActor.setInputValue("value", i);
+			service.submit(_doublerActor, variables);
+			expectedOutputs.add(2 * i);
+		}
+		
+		for (int i = 996; i < 1000; i++) {
+			ActorRunner runner = service.take();
+			actualOutputs.add((Integer) runner.getActor().getOutputValue("doubledValue"));
+		}
+		
+		assertEquals(expectedOutputs, actualOutputs);
+		
+		// no more clones are created than there are steps outstanding at once
+		assertTrue(actors.size() <= 4);
+
+		service.shutdown();
+		assertSame(AbstractActorRunner.EndOfActorRunners, service.take());
+	}
+
+	public void testSubmit_RecycledActorFailsToReset() throws Exception {
+
+		Map<String,Object> variables = new HashMap<String,Object>();
+
+		AsynchronousActorCompletionService service = new UnorderedActorCompletionService(4);
+		service.setRecycleActors(true);
+		service.start();
+
+		JavaActor brokenClone = new JavaActor() {
+			public void resetClone(Actor master) throws CloneNotSupportedException {
+				throw new CloneNotSupportedException("reset failed");
+			}
+		};
+		service.recycle(brokenClone);
+
+		// the clone that fails to reset is discarded and a fresh clone of the master is stepped
+		_doublerActor.setInputValue("value", 21);
+		assertNotSame(brokenClone, service.submit(_doublerActor, variables));
+		ActorRunner runner = service.take();
+		assertNotSame(brokenClone, runner.getActor());
+		assertEquals(42, runner.getActor().getOutputValue("doubledValue"));
+
+		service.shutdown();
+		assertSame(AbstractActorRunner.EndOfActorRunners, service.take());
+	}
+
+	public void testSubmit_ActorFailsToClone() throws Exception {
+
+		Map<String,Object> variables = new HashMap<String,Object>();
+
+		AsynchronousActorCompletionService service = new UnorderedActorCompletionService(4);
+		service.start();
+
+		JavaActor uncloneableActor = new JavaActor() {
+			public Object clone() throws CloneNotSupportedException {
+				throw new CloneNotSupportedException("clone failed");
+			}
+		};
+
+		Exception exception = null;
+		try {
+			service.submit(uncloneableActor, variables);
+		} catch (IllegalStateException e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		assertTrue(exception.getCause() instanceof CloneNotSupportedException);
+
+		// the failed submission is not counted as an active actor
+		assertEquals(AsynchronousActorCompletionService.Service.IDLE, service.getState());
+		service.shutdown();
+		assertSame(AbstractActorRunner.EndOfActorRunners, service.take());
+	}
+
 	public void testSubmitRepeatTakeRepeat_OneChunk() throws Exception {
 		
 		Map<String,Object> variables = new HashMap<String,Object>();
@@ -0,0 +1,142 @@
+package org.restflow.reporter;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.restflow.metadata.FileSystemMetadataManager;
+import org.restflow.test.RestFlowTestCase;
+import org.restflow.util.StdoutRecorder;
+
+
+public class TestMultiRunReporter extends RestFlowTestCase {
+
+	private static AtomicInteger _reportCount = new AtomicInteger();
+
+	private File _baseDirectory;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_baseDirectory = getRunDirectoryForTest("TestMultiRunReporter");
+		_reportCount.set(0);
+	}
+
+	public void test_RendersRunsInDirectoryOrder() throws Exception {
+
+		String[] runNames = new String[] { "run1", "run2", "run3", "run4", "run5", "run6" };
+		for (String runName : runNames) {
+			_createRun(runName, runName + " output");
+		}
+
+		MultiRunReporter reporter = new MultiRunReporter(_baseDirectory.getPath(), "Counter");
+		reporter.setThreads(3);
+		String report = _render(reporter);
+
+		// the runs are listed in the order the base directory lists them
+		StringBuilder expected = new StringBuilder();
+		for (String runName : _baseDirectory.list(DirectoryFileFilter.INSTANCE)) {
+			expected.append("---" + EOL + "value: " + runName + " output" + EOL);
+		}
+
+		assertEquals(expected.toString(), report);
+		assertEquals(6, _reportCount.get());
+	}
+
+	public void test_IndexedReportsAreNotRenderedAgain() throws Exception {
+
+		_createRun("run1", "one");
+		_createRun("run2", "two");
+		_createRun("run3", "three");
+
+		String firstReport = _render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(3, _reportCount.get());
+		assertTrue(new ReportIndex(_baseDirectory, "Counter").getIndexFile().exists());
+
+		// a second reporter reads the saved index and renders nothing
+		String secondReport = _render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(3, _reportCount.get());
+		assertEquals(firstReport, secondReport);
+	}
+
+	public void test_ChangedAndNewRunsAreRenderedAgain() throws Exception {
+
+		_createRun("run1", "one");
+		_createRun("run2", "two");
+		_render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(2, _reportCount.get());
+
+		// rewrite the outputs of one run
+		File outputs = new File(_baseDirectory, "run2" + FileSystemMetadataManager.METADATA_DIR + "outputs.yaml");
+		FileUtils.writeStringToFile(outputs, "value: changed two" + EOL, "UTF-8");
+		outputs.setLastModified(outputs.lastModified() + 10000);
+
+		String report = _render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(3, _reportCount.get());
+		assertTrue(report.contains("value: changed two"));
+		assertFalse(report.contains("value: two" + EOL));
+
+		// add a run
+		_createRun("run3", "three");
+		report = _render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(4, _reportCount.get());
+		assertTrue(report.contains("value: three"));
+	}
+
+	public void test_IndexDisabled() throws Exception {
+
+		_createRun("run1", "one");
+		_createRun("run2", "two");
+		_render(new MultiRunReporter(_baseDirectory.getPath(), "Counter"));
+		assertEquals(2, _reportCount.get());
+
+		MultiRunReporter reporter = new MultiRunReporter(_baseDirectory.getPath(), "Counter");
+		reporter.setUseIndex(false);
+		_render(reporter);
+		assertEquals(4, _reportCount.get());
+	}
+
+	public void test_UndefinedReportIsIndexedUntilRunChanges() throws Exception {
+
+		_createRun("run1", "one");
+
+		String report = _render(new MultiRunReporter(_baseDirectory.getPath(), "Missing"));
+		assertTrue(report.contains("Report 'Missing' not defined in "));
+
+		ReportIndex index = new ReportIndex(_baseDirectory, "Missing");
+		index.load();
+		assertEquals(1, index.size());
+	}
+
+	private String _render(final MultiRunReporter reporter) throws Exception {
+		StdoutRecorder recorder = new StdoutRecorder(new StdoutRecorder.WrappedCode() {
+			public void execute() throws Exception {reporter.renderReport();}});
+		return recorder.getStdoutRecording();
+	}
+
+	private void _createRun(String runName, String value) throws Exception {
+
+		File runDirectory = new File(_baseDirectory, runName);
+
+		FileUtils.writeStringToFile(
+				new File(runDirectory.getPath() + FileSystemMetadataManager.REPORTS_DEFINITION_FILE),
+				"Counter: !!org.restflow.reporter.TestMultiRunReporter$CountingReporter {}" + EOL,
+				"UTF-8");
+
+		FileUtils.writeStringToFile(
+				new File(runDirectory.getPath() + FileSystemMetadataManager.METADATA_DIR + "outputs.yaml"),
+				"value: " + value + EOL,
+				"UTF-8");
+	}
+
+	public static class CountingReporter extends JavaReporter {
+
+		@SuppressWarnings("unchecked")
+		public String getReport() {
+			_reportCount.incrementAndGet();
+			Map<String,Object> outputs = (Map<String,Object>) _reportModel.get("outputs");
+			return "value: " + outputs.get("value") + EOL;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package org.restflow.util;
+
+import java.io.StringWriter;
+
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestDelimitedOutputWriter extends RestFlowTestCase {
+
+	public void testNoDelimiter() throws Exception {
+		StringWriter preamble = new StringWriter();
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", preamble);
+		writer.write("some output _ with __ partial __EN delimiters __END_");
+		writer.close();
+		assertFalse(writer.foundDelimiter());
+		assertEquals("some output _ with __ partial __EN delimiters __END_", preamble.toString());
+		assertEquals("", writer.getTextAfterDelimiter());
+	}
+
+	public void testOneDelimiter() throws Exception {
+		StringWriter preamble = new StringWriter();
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", preamble);
+		writer.write("output" + EOL + "__END__" + EOL + "a: 1" + EOL);
+		writer.close();
+		assertTrue(writer.foundDelimiter());
+		assertEquals("output" + EOL, preamble.toString());
+		assertEquals(EOL + "a: 1" + EOL, writer.getTextAfterDelimiter());
+	}
+
+	public void testLastDelimiterWins() throws Exception {
+		StringWriter preamble = new StringWriter();
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", preamble);
+		writer.write("one __END__ two __END__ three");
+		writer.close();
+		assertEquals("one __END__ two ", preamble.toString());
+		assertEquals(" three", writer.getTextAfterDelimiter());
+	}
+
+	public void testOverlappingPartialDelimiter() throws Exception {
+		StringWriter preamble = new StringWriter();
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", preamble);
+		writer.write("x___END__y");
+		writer.close();
+		assertEquals("x_", preamble.toString());
+		assertEquals("y", writer.getTextAfterDelimiter());
+	}
+
+	public void testDelimiterSplitAcrossWrites() throws Exception {
+		StringWriter preamble = new StringWriter();
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", preamble);
+		for (char c : "before__END__after".toCharArray()) {
+			writer.write(c);
+		}
+		assertEquals("before", preamble.toString());
+		writer.close();
+		assertEquals("after", writer.getTextAfterDelimiter());
+	}
+
+	public void testNullPreamble() throws Exception {
+		DelimitedOutputWriter writer = new DelimitedOutputWriter("__END__", null);
+		writer.write("discarded __END__ kept");
+		writer.close();
+		assertEquals(" kept", writer.getTextAfterDelimiter());
+	}
+
+	public void testDeferredOutputWriter_Spills() throws Exception {
+		DeferredOutputWriter writer = new DeferredOutputWriter(10);
+		writer.write("0123456789");
+		writer.write("abcdef");
+		writer.close();
+		StringBuilder replayed = new StringBuilder();
+		writer.writeTo(replayed);
+		assertEquals("0123456789abcdef", replayed.toString());
+		writer.dispose();
+	}
+}
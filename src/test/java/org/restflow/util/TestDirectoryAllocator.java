@@ -0,0 +1,52 @@
+package org.restflow.util;
+
+import java.io.File;
+
+import org.restflow.test.RestFlowTestCase;
+
+
+public class TestDirectoryAllocator extends RestFlowTestCase {
+
+	private File _parent;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		_parent = new File(getRunDirectoryForTest("TestDirectoryAllocator"), "runs");
+	}
+
+	public void testCreateUniqueDirectory_SuffixesTakenNames() throws Exception {
+
+		DirectoryAllocator allocator = new DirectoryAllocator();
+
+		assertEquals(new File(_parent, "run"), allocator.createUniqueDirectory(_parent, "run"));
+		assertEquals(new File(_parent, "run_1"), allocator.createUniqueDirectory(_parent, "run"));
+		assertEquals(new File(_parent, "run_2"), allocator.createUniqueDirectory(_parent, "run"));
+		assertEquals(new File(_parent, "other"), allocator.createUniqueDirectory(_parent, "other"));
+
+		assertTrue(new File(_parent, "run_2").isDirectory());
+	}
+
+	public void testCreateUniqueDirectory_SkipsDirectoriesCreatedElsewhere() throws Exception {
+
+		// directories left by earlier runs are counted when the name is first taken
+		assertTrue(new File(_parent, "run").mkdirs());
+		assertTrue(new File(_parent, "run_7").mkdirs());
+		assertTrue(new File(_parent, "run_x").mkdirs());
+
+		DirectoryAllocator allocator = new DirectoryAllocator();
+		assertEquals(new File(_parent, "run_8"), allocator.createUniqueDirectory(_parent, "run"));
+
+		// directories created after the name was counted are skipped
+		assertTrue(new File(_parent, "run_9").mkdirs());
+		assertEquals(new File(_parent, "run_10"), allocator.createUniqueDirectory(_parent, "run"));
+	}
+
+	public void testCreateDirectory_CreatesMissingParents() throws Exception {
+
+		File directory = new File(_parent, ".steps/Node_1");
+		assertTrue(DirectoryAllocator.createDirectory(directory));
+		assertTrue(directory.isDirectory());
+		assertFalse(DirectoryAllocator.createDirectory(directory));
+		assertTrue(DirectoryAllocator.createDirectory(new File(_parent, ".steps/Node_2")));
+	}
+}